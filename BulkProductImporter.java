@@ -0,0 +1,488 @@
+package com.newfoundsoftware.pos;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * BulkProductImporter - Streams a supplier CSV into products and the stock ledger
+ *
+ * Expected header (column order is free, stock is optional):
+ *   barcode,description,price,category,image_path,status,stock
+ *
+ * The file is read in chunks of pos.import.batchSize rows. Each chunk is
+ * validated on pos.import.threads import threads while the previous chunk
+ * is being written, then upserted (matched on barcode, which gets a unique
+ * key) with JDBC batches inside one transaction per chunk. Rows that fail
+ * validation, repeat a barcode earlier in their chunk or whose chunk fails
+ * to write go to a reject file next to the input with the reason appended.
+ *
+ * An image_path naming a local file is copied into the ImageStore (its
+ * thumbnails are generated in the background) and saved as a store
+ * reference; any other value is kept as a classpath path.
+ */
+public class BulkProductImporter {
+
+    private static final Logger LOGGER = Logger.getLogger(BulkProductImporter.class.getName());
+
+    private static final String INSERT_PRODUCT =
+            "INSERT INTO products (barcode, description, price, category, image_path, status) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_PRODUCT =
+            "UPDATE products SET description=?, price=?, category=?, image_path=?, status=? WHERE id=?";
+
+    private static final String BARCODE_KEY = "uk_products_barcode";
+
+    private final JdbcDao jdbcDao;
+    private final int batchSize;
+    private final int threads = Math.max(1, PosConfig.getInt("pos.import.threads",
+            Runtime.getRuntime().availableProcessors()));
+
+    public BulkProductImporter(JdbcDao jdbcDao) {
+        this(jdbcDao, PosConfig.getInt("pos.import.batchSize", 1000));
+    }
+
+    public BulkProductImporter(JdbcDao jdbcDao, int batchSize) {
+        this.jdbcDao = jdbcDao;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    // ==================== IMPORT ====================
+
+    /**
+     * Import a CSV file. Blocks until done - run it off the FX thread.
+     *
+     * @param progress called after every chunk (from the importing thread)
+     */
+    public ImportResult importCsv(Path csv, Consumer<ImportResult> progress) throws IOException, SQLException {
+        Path rejectFile = csv.resolveSibling(csv.getFileName() + ".rejects.csv");
+        ImportResult result = new ImportResult(rejectFile);
+        long start = System.nanoTime();
+        // Validation copies image files; keep that I/O off the common pool
+        ExecutorService validators = Executors.newFixedThreadPool(threads, PosExecutors.daemonFactory("import"));
+
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8);
+             Connection conn = jdbcDao.getConnection()) {
+
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                return result;
+            }
+            Map<String, Integer> header = parseHeader(headerLine);
+            rejects.write(headerLine + ",reject_reason");
+            rejects.newLine();
+
+            ensureBarcodeKey(conn);
+            Map<String, Integer> idsByBarcode = loadBarcodeIndex(conn);
+            conn.setAutoCommit(false);
+
+            // Validate chunk N+1 while chunk N is being written
+            CompletableFuture<List<Row>> pending = null;
+            long lineNumber = 1;
+            while (true) {
+                List<String> lines = readChunk(reader);
+                if (lines.isEmpty()) {
+                    break;
+                }
+                long firstLine = lineNumber + 1;
+                lineNumber += lines.size();
+                CompletableFuture<List<Row>> next = CompletableFuture.supplyAsync(
+                        () -> validateChunk(lines, firstLine, header, validators), PosExecutors.background());
+                if (pending != null) {
+                    writeChunk(conn, pending.join(), idsByBarcode, rejects, result);
+                    result.elapsedNanos = System.nanoTime() - start;
+                    progress.accept(result);
+                }
+                pending = next;
+            }
+            if (pending != null) {
+                writeChunk(conn, pending.join(), idsByBarcode, rejects, result);
+            }
+            conn.setAutoCommit(true);
+        } finally {
+            validators.shutdownNow();
+        }
+
+        result.elapsedNanos = System.nanoTime() - start;
+        progress.accept(result);
+        LOGGER.info(String.format("Imported %s: %d inserted, %d updated, %d rejected in %d ms (%.0f rows/s)",
+                csv.getFileName(), result.inserted, result.updated, result.rejected,
+                result.elapsedNanos / 1_000_000, result.getRowsPerSecond()));
+        return result;
+    }
+
+    private List<String> readChunk(BufferedReader reader) throws IOException {
+        List<String> lines = new ArrayList<>(batchSize);
+        String line;
+        while (lines.size() < batchSize && (line = reader.readLine()) != null) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Add the unique key on products.barcode that matching rows by barcode
+     * relies on. DDL, so call it outside a transaction. Fails, naming one,
+     * if the table already holds duplicate barcodes.
+     */
+    static void ensureBarcodeKey(Connection conn) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, "products", true, false)) {
+            while (rs.next()) {
+                if ("barcode".equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT barcode, COUNT(*) FROM products WHERE barcode IS NOT NULL " +
+                    "GROUP BY barcode HAVING COUNT(*) > 1 LIMIT 1")) {
+                if (rs.next()) {
+                    throw new SQLException("Barcode '" + rs.getString(1) + "' is on " + rs.getInt(2)
+                            + " products; make barcodes unique before importing");
+                }
+            }
+            stmt.executeUpdate("ALTER TABLE products ADD UNIQUE KEY " + BARCODE_KEY + " (barcode)");
+        }
+        LOGGER.info("Added unique key on products.barcode");
+    }
+
+    private Map<String, Integer> loadBarcodeIndex(Connection conn) throws SQLException {
+        Map<String, Integer> index = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, barcode FROM products WHERE barcode IS NOT NULL")) {
+            while (rs.next()) {
+                index.put(rs.getString("barcode"), rs.getInt("id"));
+            }
+        }
+        return index;
+    }
+
+    // ==================== VALIDATION ====================
+
+    private static Map<String, Integer> parseHeader(String headerLine) {
+        List<String> names = parseCsvLine(headerLine);
+        Map<String, Integer> header = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            header.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String required : new String[]{"barcode", "description", "price", "category"}) {
+            if (!header.containsKey(required)) {
+                throw new IllegalArgumentException("CSV header is missing column: " + required);
+            }
+        }
+        return header;
+    }
+
+    private static List<Row> validateChunk(List<String> lines, long firstLine, Map<String, Integer> header,
+                                           ExecutorService validators) {
+        List<Row> rows = new ArrayList<>(lines.size());
+        List<CompletableFuture<Void>> validations = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            Row row = new Row(firstLine + i, lines.get(i));
+            rows.add(row);
+            validations.add(CompletableFuture.runAsync(() -> row.validate(header), validators));
+        }
+        CompletableFuture.allOf(validations.toArray(new CompletableFuture<?>[0])).join();
+        return rows;
+    }
+
+    /**
+     * Minimal RFC 4180 field splitter: commas, double-quoted fields, "" escapes.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // ==================== WRITING ====================
+
+    private void writeChunk(Connection conn, List<Row> rows, Map<String, Integer> idsByBarcode,
+                            BufferedWriter rejects, ImportResult result) throws IOException {
+        // One row per barcode per chunk: a repeat is most likely a mistake, so keep the first
+        Map<String, Row> valid = new LinkedHashMap<>();
+        for (Row row : rows) {
+            Row first = row.error == null ? valid.get(row.barcode) : null;
+            if (row.error != null) {
+                reject(rejects, row, row.error, result);
+            } else if (first != null) {
+                reject(rejects, row, "duplicate barcode " + row.barcode + ", already on row " + first.lineNumber, result);
+            } else {
+                valid.put(row.barcode, row);
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        List<Row> updates = valid.values().stream()
+                .filter(row -> idsByBarcode.containsKey(row.barcode))
+                .collect(Collectors.toList());
+        List<Row> inserts = valid.values().stream()
+                .filter(row -> !idsByBarcode.containsKey(row.barcode))
+                .collect(Collectors.toList());
+
+        try {
+            try (PreparedStatement ps = conn.prepareStatement(UPDATE_PRODUCT)) {
+                for (Row row : updates) {
+                    row.productId = idsByBarcode.get(row.barcode);
+                    ps.setString(1, row.description);
+                    ps.setDouble(2, row.price);
+                    ps.setString(3, row.category);
+                    ps.setString(4, row.imagePath);
+                    ps.setString(5, row.status);
+                    ps.setInt(6, row.productId);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement(INSERT_PRODUCT, Statement.RETURN_GENERATED_KEYS)) {
+                for (Row row : inserts) {
+                    ps.setString(1, row.barcode);
+                    ps.setString(2, row.description);
+                    ps.setDouble(3, row.price);
+                    ps.setString(4, row.category);
+                    ps.setString(5, row.imagePath);
+                    ps.setString(6, row.status);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (Row row : inserts) {
+                        if (!keys.next()) {
+                            throw new SQLException("Missing generated key for barcode " + row.barcode);
+                        }
+                        row.productId = keys.getInt(1);
+                    }
+                }
+            }
+
+            // Stock counts go through the ledger so the change shows up in the history
+            Map<Integer, Integer> counts = new HashMap<>();
+            for (Row row : valid.values()) {
+                if (row.stock != null) {
+                    counts.put(row.productId, row.stock);
+                }
+            }
+            StockLedger.setCounts(conn, counts, "import");
+
+            conn.commit();
+            LowStockIndex.onStockChanged(counts);
+            for (Row row : inserts) {
+                idsByBarcode.put(row.barcode, row.productId);
+            }
+            result.inserted += inserts.size();
+            result.updated += updates.size();
+
+        } catch (SQLException e) {
+            LOGGER.warning("Chunk ending at row " + rows.get(rows.size() - 1).lineNumber
+                    + " failed and was rolled back: " + e.getMessage());
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackError) {
+                JdbcDao.printSQLException(rollbackError);
+            }
+            for (Row row : valid.values()) {
+                reject(rejects, row, "database error: " + e.getMessage(), result);
+            }
+        }
+    }
+
+    private static void reject(BufferedWriter rejects, Row row, String reason, ImportResult result) throws IOException {
+        rejects.write(row.line + ",\"row " + row.lineNumber + ": " + reason.replace("\"", "\"\"") + "\"");
+        rejects.newLine();
+        result.rejected++;
+    }
+
+    // ==================== MODEL ====================
+
+    private static final class Row {
+        private final long lineNumber;
+        private final String line;
+        private String barcode;
+        private String description;
+        private double price;
+        private String category;
+        private String imagePath;
+        private String status;
+        private Integer stock;
+        private int productId;
+        private String error;
+
+        Row(long lineNumber, String line) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+        }
+
+        void validate(Map<String, Integer> header) {
+            List<String> fields = parseCsvLine(line);
+            barcode = field(fields, header, "barcode");
+            description = field(fields, header, "description");
+            category = field(fields, header, "category").toUpperCase(Locale.ROOT);
+            imagePath = field(fields, header, "image_path");
+            String rawStatus = field(fields, header, "status");
+            String rawPrice = field(fields, header, "price");
+            String rawStock = field(fields, header, "stock");
+
+            if (barcode.isEmpty()) {
+                error = "barcode is required";
+                return;
+            }
+            if (description.isEmpty()) {
+                error = "description is required";
+                return;
+            }
+            if (category.isEmpty()) {
+                error = "category is required";
+                return;
+            }
+            try {
+                price = Double.parseDouble(rawPrice);
+            } catch (NumberFormatException e) {
+                error = "invalid price '" + rawPrice + "'";
+                return;
+            }
+            if (price <= 0) {
+                error = "price must be greater than 0";
+                return;
+            }
+            if (rawStatus.isEmpty() || rawStatus.equalsIgnoreCase(Products.STATUS_ACTIVE)) {
+                status = Products.STATUS_ACTIVE;
+            } else if (rawStatus.equalsIgnoreCase(Products.STATUS_INACTIVE)) {
+                status = Products.STATUS_INACTIVE;
+            } else {
+                error = "unknown status '" + rawStatus + "'";
+                return;
+            }
+            Path localImage = localFile(imagePath);
+            if (localImage != null) {
+                try {
+                    imagePath = ImageStore.importFile(localImage);
+                } catch (IOException e) {
+                    error = "could not store image '" + imagePath + "': " + e.getMessage();
+                    return;
+                }
+            }
+            if (!rawStock.isEmpty()) {
+                try {
+                    stock = Integer.parseInt(rawStock);
+                } catch (NumberFormatException e) {
+                    error = "invalid stock '" + rawStock + "'";
+                    return;
+                }
+                if (stock < 0) {
+                    error = "stock cannot be negative";
+                }
+            }
+        }
+
+        private static Path localFile(String imagePath) {
+            if (imagePath.isEmpty() || ImageStore.isStored(imagePath)) {
+                return null;
+            }
+            try {
+                Path path = Paths.get(imagePath);
+                return Files.isRegularFile(path) ? path : null;
+            } catch (InvalidPathException e) {
+                return null; // not a file name on this OS - treat as a classpath path
+            }
+        }
+
+        private static String field(List<String> fields, Map<String, Integer> header, String name) {
+            Integer index = header.get(name);
+            if (index == null || index >= fields.size()) {
+                return "";
+            }
+            return fields.get(index).trim();
+        }
+    }
+
+    /**
+     * Running totals of an import; also passed to the progress callback.
+     */
+    public static final class ImportResult {
+        private final Path rejectFile;
+        private volatile int inserted;
+        private volatile int updated;
+        private volatile int rejected;
+        private volatile long elapsedNanos;
+
+        ImportResult(Path rejectFile) {
+            this.rejectFile = rejectFile;
+        }
+
+        public int getInserted() { return inserted; }
+        public int getUpdated() { return updated; }
+        public int getRejected() { return rejected; }
+        public int getProcessed() { return inserted + updated + rejected; }
+        public Path getRejectFile() { return rejectFile; }
+        public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos > 0 ? getProcessed() * 1_000_000_000.0 / elapsedNanos : 0;
+        }
+    }
+
+    // Command-line import: java ... BulkProductImporter products.csv
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: BulkProductImporter <file.csv>");
+            return;
+        }
+        ImportResult result = new BulkProductImporter(new JdbcDao()).importCsv(Paths.get(args[0]),
+                progress -> System.out.printf("%d rows (%.0f rows/s)%n", progress.getProcessed(), progress.getRowsPerSecond()));
+        System.out.printf("Done: %d inserted, %d updated, %d rejected -> %s%n",
+                result.getInserted(), result.getUpdated(), result.getRejected(), result.getRejectFile());
+    }
+}
@@ -0,0 +1,176 @@
+package com.newfoundsoftware.pos;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * CatalogService - Product maintenance and the sellable catalog, without any UI
+ *
+ * Used by ProductsController and DashboardController, and by anything
+ * headless (importers, the load generator) that needs the same operations.
+ */
+public final class CatalogService {
+
+    private static final Logger LOGGER = Logger.getLogger(CatalogService.class.getName());
+    private static final CatalogService INSTANCE = new CatalogService();
+
+    // Ids per UPDATE/DELETE ... WHERE id IN (...) statement
+    private static final int BULK_CHUNK_SIZE = 500;
+
+    private CatalogService() {
+    }
+
+    public static CatalogService getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== PRODUCTS ====================
+
+    /**
+     * Every product row, newest first.
+     */
+    public List<Products> listProducts() throws SQLException {
+        List<Products> products = new ArrayList<>();
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM products ORDER BY id DESC");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    products.add(new Products(
+                        rs.getInt("id"),
+                        rs.getString("barcode"),
+                        rs.getString("description"),
+                        rs.getDouble("price"),
+                        rs.getString("category"),
+                        rs.getString("image_path"),
+                        rs.getString("status")
+                    ));
+                }
+            }
+        }
+        LOGGER.info("Loaded " + products.size() + " products");
+        return products;
+    }
+
+    /**
+     * Set the status of every given product in one transaction. Returns the number of rows changed.
+     */
+    public int updateStatus(Collection<Integer> ids, String status) throws SQLException {
+        return executeForIds("UPDATE products SET status=? WHERE id IN ", status, ids);
+    }
+
+    /**
+     * Delete every given product in one transaction. Returns the number of rows deleted.
+     */
+    public int deleteProducts(Collection<Integer> ids) throws SQLException {
+        return executeForIds("DELETE FROM products WHERE id IN ", null, ids);
+    }
+
+    /**
+     * Run "<sqlPrefix>(?, ?, ...)" for every id in one transaction,
+     * BULK_CHUNK_SIZE ids per statement. statusParam, when not null, is bound
+     * before the ids. Rolls back and rethrows on failure.
+     */
+    private int executeForIds(String sqlPrefix, String statusParam, Collection<Integer> ids) throws SQLException {
+        List<Integer> targets = new ArrayList<>(ids);
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            conn.setAutoCommit(false);
+            int affected = 0;
+            try {
+                for (int from = 0; from < targets.size(); from += BULK_CHUNK_SIZE) {
+                    List<Integer> chunk = targets.subList(from, Math.min(from + BULK_CHUNK_SIZE, targets.size()));
+                    String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+                    try (PreparedStatement ps = conn.prepareStatement(sqlPrefix + "(" + placeholders + ")")) {
+                        int index = 1;
+                        if (statusParam != null) {
+                            ps.setString(index++, statusParam);
+                        }
+                        for (Integer id : chunk) {
+                            ps.setInt(index++, id);
+                        }
+                        affected += ps.executeUpdate();
+                    }
+                }
+                conn.commit();
+                return affected;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Insert or update products from a CSV file; see BulkProductImporter.
+     */
+    public BulkProductImporter.ImportResult importCsv(Path file, Consumer<BulkProductImporter.ImportResult> progress)
+            throws IOException, SQLException {
+        return new BulkProductImporter(new JdbcDao()).importCsv(file, progress);
+    }
+
+    // ==================== SELLABLE CATALOG ====================
+
+    /**
+     * The cached catalog (products with stock) as shown on the dashboard.
+     */
+    public List<DashboardController.Product> getCatalog() {
+        return ProductCatalog.getSnapshot();
+    }
+
+    public List<DashboardController.Product> reloadCatalog() {
+        return ProductCatalog.reload();
+    }
+
+    /**
+     * Refresh the cached catalog, reloading it only if the products changed;
+     * see ProductCatalog.reconcile().
+     */
+    public List<DashboardController.Product> reconcileCatalog() {
+        return ProductCatalog.reconcile();
+    }
+
+    /**
+     * A product from the cached catalog (loading it first if needed), or null.
+     */
+    public DashboardController.Product findProduct(int productId) {
+        if (!isCatalogLoaded()) {
+            reloadCatalog();
+        }
+        return ProductCatalog.find(productId);
+    }
+
+    /**
+     * Categories of the cached catalog with item and in-stock counts.
+     */
+    public List<ProductCatalog.Category> getCategories() {
+        return ProductCatalog.getCategories();
+    }
+
+    /**
+     * Products of one category from the cached catalog's category index.
+     */
+    public List<DashboardController.Product> getCatalogCategory(String category) {
+        return ProductCatalog.inCategory(category);
+    }
+
+    public boolean isCatalogLoaded() {
+        return ProductCatalog.isLoaded();
+    }
+}
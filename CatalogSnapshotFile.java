@@ -0,0 +1,160 @@
+package com.newfoundsoftware.pos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * CatalogSnapshotFile - The sellable catalog as a local binary file
+ *
+ * Lets the till show products before the database answers (or when it is
+ * down). Written after every catalog load from the database, read once at
+ * startup through a memory map.
+ *
+ * Layout (big-endian):
+ *   "PCAT" | short format | long catalog stamp | long written at | int count
+ *   per product: int id | double price | int stock | description | image path | category | status
+ *   int CRC32 of everything before it
+ * Strings are a short byte length (-1 for null) and UTF-8 bytes.
+ *
+ * The stamp identifies the products table contents the file was built from
+ * (see ProductCatalog); stock is only a hint and is refreshed separately.
+ */
+public final class CatalogSnapshotFile {
+
+    private static final int MAGIC = 0x50434154; // "PCAT"
+    private static final short FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 2 + 8 + 8 + 4;
+
+    private CatalogSnapshotFile() {
+    }
+
+    /**
+     * Write the snapshot through a temporary file, so a crash mid-write
+     * leaves the previous file intact.
+     */
+    public static void write(Path file, long stamp, List<DashboardController.Product> products) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES + products.size() * 96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeLong(stamp);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(products.size());
+            for (DashboardController.Product product : products) {
+                out.writeInt(product.getId());
+                out.writeDouble(product.getPrice());
+                out.writeInt(product.getStock());
+                writeString(out, product.getName());
+                writeString(out, product.getImagePath());
+                writeString(out, product.getCategory());
+                writeString(out, product.getStatus());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+        }
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, "catalog", ".tmp");
+        try {
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read a snapshot, or return null if there is none or it is from another
+     * format version, truncated or corrupt.
+     */
+    public static Snapshot read(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + 4 || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit((int) size - 4));
+            if ((int) crc.getValue() != buffer.getInt((int) size - 4)) {
+                return null;
+            }
+            if (buffer.getInt() != MAGIC || buffer.getShort() != FORMAT_VERSION) {
+                return null;
+            }
+            long stamp = buffer.getLong();
+            long writtenAt = buffer.getLong();
+            int count = buffer.getInt();
+            List<DashboardController.Product> products = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int id = buffer.getInt();
+                double price = buffer.getDouble();
+                int stock = buffer.getInt();
+                String description = readString(buffer);
+                String imagePath = readString(buffer);
+                String category = readString(buffer);
+                String status = readString(buffer);
+                products.add(new DashboardController.Product(id, description, price, imagePath, category, status, stock));
+            }
+            return new Snapshot(stamp, writtenAt, products);
+        } catch (RuntimeException e) {
+            // Buffer underflow and the like: the CRC matched but the layout did not
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    public static final class Snapshot {
+        private final long stamp;
+        private final long writtenAt;
+        private final List<DashboardController.Product> products;
+
+        Snapshot(long stamp, long writtenAt, List<DashboardController.Product> products) {
+            this.stamp = stamp;
+            this.writtenAt = writtenAt;
+            this.products = Collections.unmodifiableList(products);
+        }
+
+        public long getStamp() { return stamp; }
+        public long getWrittenAt() { return writtenAt; }
+        public List<DashboardController.Product> getProducts() { return products; }
+    }
+}
@@ -0,0 +1,220 @@
+package com.newfoundsoftware.pos;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * CheckoutService - Totals, stock deduction and sales recording for an order, without any UI
+ *
+ * PaymentController shows the screens; LoadGenerator and other headless
+ * callers run the same checkout through checkout(). Every completed sale
+ * is appended to the ReceiptArchive.
+ */
+public final class CheckoutService {
+
+    private static final Logger LOGGER = Logger.getLogger(CheckoutService.class.getName());
+    private static final CheckoutService INSTANCE = new CheckoutService();
+
+    public static final double VAT_RATE = 0.12;
+
+    private final InventoryService inventoryService = InventoryService.getInstance();
+    private final ReportService reportService = ReportService.getInstance();
+    private final ReceiptService receiptService = ReceiptService.getInstance();
+    private final ReservationService reservationService = ReservationService.getInstance();
+
+    private CheckoutService() {
+    }
+
+    public static CheckoutService getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== TOTALS ====================
+
+    public Totals totals(List<DashboardController.OrderItem> items) {
+        double subTotal = 0;
+        for (DashboardController.OrderItem item : items) {
+            subTotal += item.getTotal();
+        }
+        return totals(subTotal);
+    }
+
+    public Totals totals(double subTotal) {
+        double vat = subTotal * VAT_RATE;
+        return new Totals(subTotal, vat, subTotal + vat);
+    }
+
+    // ==================== CHECKOUT ====================
+
+    /**
+     * Validate the payment, then check and deduct stock, record the sale and
+     * store its receipt in one transaction. Either all of it is committed or,
+     * if the payment is short, any line lacks stock or a write fails, none.
+     * The invoice number is assigned in that transaction (see
+     * ReceiptService.nextInvoiceNumber) and is on the result's receipt.
+     */
+    public CheckoutResult checkout(List<DashboardController.OrderItem> items, double amountPaid) {
+        return checkout(items, amountPaid, null);
+    }
+
+    /**
+     * checkout() for a cart holding stock reservations: what the cart holds
+     * is available to it, while other carts' reservations are not, and the
+     * cart's reservations are released in the same transaction. A failed checkout
+     * leaves them in place so the customer can try again.
+     */
+    public CheckoutResult checkout(List<DashboardController.OrderItem> items, double amountPaid, String cartId) {
+        Totals totals = totals(items);
+        if (amountPaid < totals.getGrandTotal()) {
+            return new CheckoutResult(Status.INSUFFICIENT_PAYMENT, totals, amountPaid, 0,
+                    String.format("Amount paid (₱%.2f) is less than total amount (₱%.2f)!",
+                            amountPaid, totals.getGrandTotal()));
+        }
+
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        for (DashboardController.OrderItem item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        Receipt receipt;
+        InventoryService.Deduction deduction;
+        List<SalesReportController.SalesItem> salesRows;
+        try {
+            // Schema checks run DDL, which would commit the transaction below
+            reservationService.ensureSchema();
+            receiptService.ensureSchema();
+            try (Connection conn = new JdbcDao().getConnection()) {
+                if (conn == null) {
+                    throw new SQLException("Could not connect to database");
+                }
+                conn.setAutoCommit(false);
+                try {
+                    // Counter row before product rows, as in ReturnService, so the two cannot deadlock
+                    String invoiceNumber = receiptService.nextInvoiceNumber(conn);
+                    deduction = inventoryService.deductStock(conn, quantities, cartId, invoiceNumber);
+                    if (!deduction.isTaken()) {
+                        conn.rollback();
+                        return new CheckoutResult(Status.INSUFFICIENT_STOCK, totals, amountPaid, 0,
+                                describeShortages(items, quantities, deduction.getShortages()));
+                    }
+                    receipt = Receipt.of(invoiceNumber, items, totals, amountPaid);
+                    salesRows = reportService.writeSales(conn, items);
+                    receiptService.save(conn, receipt);
+                    if (cartId != null) {
+                        reservationService.releaseCart(conn, cartId);
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Checkout failed and was rolled back", e);
+            return new CheckoutResult(Status.FAILED, totals, amountPaid, 0,
+                    "The sale could not be saved and nothing was recorded: " + e.getMessage());
+        }
+
+        // Only once committed, so the report, the low-stock index and the archive never show an unsaved sale
+        reportService.addToRecent(salesRows);
+        LowStockIndex.onStockChanged(deduction.getStocks());
+        archive(receipt);
+        return new CheckoutResult(Status.COMPLETED, totals, amountPaid, items.size(), null, receipt);
+    }
+
+    /**
+     * Keep the receipt in the ReceiptArchive, which every sale's PDF is
+     * rendered from. A failure is logged; the sale itself stands.
+     */
+    private static void archive(Receipt receipt) {
+        try {
+            ReceiptArchive.getInstance().append(receipt);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to archive receipt " + receipt.getInvoiceNumber(), e);
+        }
+    }
+
+    /**
+     * One "• name (Need, Available)" per short product, in order of first appearance.
+     */
+    private static String describeShortages(List<DashboardController.OrderItem> items, Map<Integer, Integer> quantities,
+                                            Map<Integer, Integer> shortages) {
+        StringBuilder stockErrors = new StringBuilder();
+        Set<Integer> described = new HashSet<>();
+        for (DashboardController.OrderItem item : items) {
+            Integer available = shortages.get(item.getProductId());
+            if (available != null && described.add(item.getProductId())) {
+                stockErrors.append("• ").append(item.getDescription())
+                          .append(" (Need: ").append(quantities.get(item.getProductId()))
+                          .append(", Available: ").append(Math.max(0, available)).append(")\n");
+            }
+        }
+        return stockErrors.toString();
+    }
+
+    // ==================== MODEL ====================
+
+    public enum Status {
+        COMPLETED, INSUFFICIENT_PAYMENT, INSUFFICIENT_STOCK, FAILED
+    }
+
+    public static final class Totals {
+        private final double subTotal;
+        private final double vat;
+        private final double grandTotal;
+
+        Totals(double subTotal, double vat, double grandTotal) {
+            this.subTotal = subTotal;
+            this.vat = vat;
+            this.grandTotal = grandTotal;
+        }
+
+        public double getSubTotal() { return subTotal; }
+        public double getVat() { return vat; }
+        public double getGrandTotal() { return grandTotal; }
+    }
+
+    public static final class CheckoutResult {
+        private final Status status;
+        private final Totals totals;
+        private final double amountPaid;
+        private final int deductedLines;
+        private final String message;
+        private final Receipt receipt;
+
+        CheckoutResult(Status status, Totals totals, double amountPaid, int deductedLines, String message) {
+            this(status, totals, amountPaid, deductedLines, message, null);
+        }
+
+        CheckoutResult(Status status, Totals totals, double amountPaid, int deductedLines, String message,
+                       Receipt receipt) {
+            this.status = status;
+            this.totals = totals;
+            this.amountPaid = amountPaid;
+            this.deductedLines = deductedLines;
+            this.message = message;
+            this.receipt = receipt;
+        }
+
+        public boolean isCompleted() { return status == Status.COMPLETED; }
+        public Status getStatus() { return status; }
+        public Totals getTotals() { return totals; }
+        public double getAmountPaid() { return amountPaid; }
+        public double getChange() { return amountPaid - totals.getGrandTotal(); }
+        /** Order lines whose stock was taken: all of them when completed, otherwise none. */
+        public int getDeductedLines() { return deductedLines; }
+        /** The stored receipt, or null unless completed. */
+        public Receipt getReceipt() { return receipt; }
+        /** What went wrong, or null when completed. */
+        public String getMessage() { return message; }
+    }
+}
@@ -0,0 +1,224 @@
+package com.newfoundsoftware.pos;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ConnectionPool - Small fixed-size JDBC pool
+ *
+ * Callers get a proxy whose close() hands the physical connection back to the
+ * pool instead of tearing down the socket. Always close what you borrow
+ * (try-with-resources) or the pool will run dry.
+ */
+final class ConnectionPool {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+    private static final long VALIDATE_AFTER_IDLE_MS = 30_000;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+
+    private final BlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger borrowed = new AtomicInteger();
+    private final AtomicInteger created = new AtomicInteger();
+
+    ConnectionPool(String url, String username, String password, int maxSize, long borrowTimeoutMs) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Borrow a connection, waiting up to the configured timeout if all are in use.
+     */
+    Connection borrow() throws SQLException {
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection ("
+                        + borrowed.get() + "/" + maxSize + " in use)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            Connection physical = takeIdle();
+            if (physical == null) {
+                physical = DriverManager.getConnection(url, username, password);
+                created.incrementAndGet();
+            }
+            borrowed.incrementAndGet();
+            return wrap(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Connection takeIdle() {
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            Connection physical = entry.connection;
+            try {
+                boolean stale = System.currentTimeMillis() - entry.returnedAt > VALIDATE_AFTER_IDLE_MS;
+                if (!physical.isClosed() && (!stale || physical.isValid(2))) {
+                    return physical;
+                }
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Discarding broken pooled connection", e);
+            }
+            discard(physical);
+        }
+        return null;
+    }
+
+    /**
+     * Open connections up front so the first query does not pay for the TCP/auth handshake.
+     */
+    void warmUp(int count) throws SQLException {
+        int target = Math.min(count, maxSize);
+        while (idle.size() < target) {
+            idle.offerLast(new PooledEntry(DriverManager.getConnection(url, username, password)));
+            created.incrementAndGet();
+        }
+    }
+
+    private void release(Connection physical) {
+        borrowed.decrementAndGet();
+        try {
+            if (physical.isClosed()) {
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            idle.offerFirst(new PooledEntry(physical));
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Dropping connection that failed reset", e);
+            discard(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(Connection physical) {
+        try {
+            physical.close();
+        } catch (SQLException ignored) {
+            // already broken
+        }
+    }
+
+    int getBorrowedCount() {
+        return borrowed.get();
+    }
+
+    int getIdleCount() {
+        return idle.size();
+    }
+
+    int getCreatedCount() {
+        return created.get();
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    void shutdown() {
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            discard(entry.connection);
+        }
+    }
+
+    // ==================== PROXY ====================
+
+    private Connection wrap(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new PooledHandler(physical));
+    }
+
+    private final class PooledHandler implements InvocationHandler {
+        private final Connection physical;
+        private boolean closed;
+
+        PooledHandler(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!closed) {
+                            closed = true;
+                            release(physical);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    synchronized (this) {
+                        return closed || physical.isClosed();
+                    }
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(physical)) {
+                        return physical;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + physical + "]";
+                default:
+                    break;
+            }
+            synchronized (this) {
+                if (closed) {
+                    throw new SQLException("Connection already returned to the pool");
+                }
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class PooledEntry {
+        private final Connection connection;
+        private final long returnedAt;
+
+        PooledEntry(Connection connection) {
+            this.connection = connection;
+            this.returnedAt = System.currentTimeMillis();
+        }
+    }
+}
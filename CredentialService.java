@@ -0,0 +1,330 @@
+package com.newfoundsoftware.pos;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * CredentialService - Verifies user logins against salted PBKDF2 hashes
+ *
+ * Stored format: pbkdf2_sha256$iterations$salt$hash (salt and hash in Base64).
+ * Rows that still hold a plaintext password are re-hashed on their first
+ * successful login. The iteration count is calibrated once per process so a
+ * hash takes roughly pos.auth.hashTargetMs on this machine.
+ *
+ * A successful login leaves a short-lived session in memory, so logging in
+ * again (shift change, accidental logout) skips the hash. The stored row is
+ * still read every time, and the session only counts while that row is
+ * unchanged, so a changed password or removed user takes effect at once.
+ * Logging out ends the session.
+ */
+public final class CredentialService {
+
+    private static final Logger LOGGER = Logger.getLogger(CredentialService.class.getName());
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2_sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int MIN_ITERATIONS = 100_000;
+    private static final int CALIBRATION_ITERATIONS = 20_000;
+    private static final int HASHED_COLUMN_WIDTH = 255;
+
+    private static final String SELECT_PASSWORD = "SELECT password FROM users WHERE username = ?";
+    private static final String UPDATE_PASSWORD = "UPDATE users SET password = ? WHERE username = ?";
+
+    private static final CredentialService INSTANCE = new CredentialService();
+
+    private final SecureRandom random = new SecureRandom();
+    private final byte[] sessionKey = new byte[32];
+    private final Map<String, Session> sessionsByUser = new ConcurrentHashMap<>();
+    private final long sessionTtlMillis;
+    private final long hashTargetMillis;
+    private volatile int iterations;
+    private volatile boolean schemaReady;
+
+    private CredentialService() {
+        random.nextBytes(sessionKey);
+        sessionTtlMillis = PosConfig.getLong("pos.auth.sessionTtlMinutes", 15) * 60_000L;
+        hashTargetMillis = PosConfig.getLong("pos.auth.hashTargetMs", 250);
+        iterations = PosConfig.getInt("pos.auth.iterations", 0);
+    }
+
+    public static CredentialService getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== SCHEMA ====================
+
+    /**
+     * Widen users.password to hold a hash. Run once at startup, not on the
+     * login path: until it has run, plaintext rows that do not fit a hash
+     * are left as they are.
+     */
+    public void ensureSchema() throws SQLException {
+        if (schemaReady) return;
+        synchronized (this) {
+            if (schemaReady) return;
+            try (Connection conn = new JdbcDao().getConnection()) {
+                if (conn == null) {
+                    throw new SQLException("Could not connect to database");
+                }
+                int width = 0;
+                try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, "users", "password")) {
+                    if (rs.next()) {
+                        width = rs.getInt("COLUMN_SIZE");
+                    }
+                }
+                if (width > 0 && width < HASHED_COLUMN_WIDTH) {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.executeUpdate("ALTER TABLE users MODIFY password VARCHAR(" + HASHED_COLUMN_WIDTH + ")");
+                    }
+                    LOGGER.info("Widened users.password to " + HASHED_COLUMN_WIDTH + " for password hashes");
+                }
+            }
+            schemaReady = true;
+        }
+    }
+
+    // ==================== LOGIN ====================
+
+    /**
+     * Verify a username/password pair. Blocks on hashing and the database,
+     * so call it from a background thread.
+     *
+     * @return true if the login is accepted
+     */
+    public boolean authenticate(JdbcDao jdbcDao, String username, String password) {
+        if (username == null || password == null || username.isEmpty()) {
+            return false;
+        }
+        return verifyAgainstDatabase(jdbcDao, username, password);
+    }
+
+    /**
+     * End the user's session (logout), so their next login goes through the full check.
+     */
+    public void invalidate(String username) {
+        if (username != null) {
+            sessionsByUser.remove(username);
+        }
+    }
+
+    /**
+     * True if username logged in with this password within the session TTL
+     * and the row still holds the value it had then.
+     */
+    private boolean hasSession(String username, String password, String stored) {
+        Session session = sessionsByUser.get(username);
+        if (session == null) {
+            return false;
+        }
+        if (session.isExpired() || !session.stored.equals(stored)) {
+            sessionsByUser.remove(username, session);
+            return false;
+        }
+        return MessageDigest.isEqual(session.verifier, sessionVerifier(username, password));
+    }
+
+    private void startSession(String username, String password, String stored) {
+        sessionsByUser.put(username, new Session(sessionVerifier(username, password), stored,
+                System.currentTimeMillis() + sessionTtlMillis));
+    }
+
+    private boolean verifyAgainstDatabase(JdbcDao jdbcDao, String username, String password) {
+        try (Connection conn = jdbcDao.getConnection()) {
+            if (conn == null) {
+                LOGGER.severe("Cannot validate user: database connection is null");
+                return false;
+            }
+
+            String stored;
+            int columnWidth;
+            try (PreparedStatement ps = conn.prepareStatement(SELECT_PASSWORD)) {
+                ps.setString(1, username);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        sessionsByUser.remove(username);
+                        // Burn the same time as a real check so unknown users are not distinguishable
+                        hash(password.toCharArray(), newSalt(), currentIterations());
+                        return false;
+                    }
+                    stored = rs.getString(1);
+                    columnWidth = rs.getMetaData().getPrecision(1);
+                }
+            }
+            if (stored == null) {
+                sessionsByUser.remove(username);
+                return false;
+            }
+            if (hasSession(username, password, stored)) {
+                return true;
+            }
+
+            if (isHashed(stored)) {
+                String[] parts = stored.split("\\$");
+                int storedIterations = Integer.parseInt(parts[1]);
+                byte[] salt = Base64.getDecoder().decode(parts[2]);
+                byte[] expected = Base64.getDecoder().decode(parts[3]);
+                if (!MessageDigest.isEqual(expected, hash(password.toCharArray(), salt, storedIterations))) {
+                    return false;
+                }
+                if (storedIterations < currentIterations()) {
+                    stored = storeHash(conn, username, password, columnWidth, stored);
+                }
+                startSession(username, password, stored);
+                return true;
+            }
+
+            // Legacy plaintext row: compare, then migrate it to a hash
+            if (!MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8),
+                    password.getBytes(StandardCharsets.UTF_8))) {
+                return false;
+            }
+            startSession(username, password, storeHash(conn, username, password, columnWidth, stored));
+            return true;
+
+        } catch (SQLException e) {
+            JdbcDao.printSQLException(e);
+            return false;
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Malformed password hash for user", e);
+            return false;
+        }
+    }
+
+    /**
+     * Replace the stored password with a fresh hash. Returns what the row
+     * holds afterwards: the new hash, or current if it was left alone.
+     */
+    private String storeHash(Connection conn, String username, String password, int columnWidth, String current) {
+        String encoded = encode(password);
+        if (columnWidth > 0 && columnWidth < encoded.length()) {
+            // Login still succeeds; migration waits until ensureSchema() has widened the column
+            LOGGER.warning("users.password is too narrow for a hash; password left as stored");
+            return current;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(UPDATE_PASSWORD)) {
+            ps.setString(1, encoded);
+            ps.setString(2, username);
+            ps.executeUpdate();
+            LOGGER.info("Upgraded stored password hash for a user account");
+            return encoded;
+        } catch (SQLException e) {
+            // Login still succeeds; migration is retried on the next login
+            LOGGER.log(Level.WARNING, "Could not migrate password hash", e);
+            return current;
+        }
+    }
+
+    // ==================== HASHING ====================
+
+    /**
+     * Produce the stored representation of a password with the calibrated cost.
+     */
+    public String encode(String password) {
+        int cost = currentIterations();
+        byte[] salt = newSalt();
+        byte[] hash = hash(password.toCharArray(), salt, cost);
+        return PREFIX + "$" + cost + "$"
+                + Base64.getEncoder().encodeToString(salt) + "$"
+                + Base64.getEncoder().encodeToString(hash);
+    }
+
+    static boolean isHashed(String stored) {
+        return stored.startsWith(PREFIX + "$") && stored.split("\\$").length == 4;
+    }
+
+    private int currentIterations() {
+        int cost = iterations;
+        if (cost <= 0) {
+            synchronized (this) {
+                if (iterations <= 0) {
+                    iterations = calibrate();
+                }
+                cost = iterations;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Measure this machine and pick an iteration count that lands near the target hash time.
+     */
+    private int calibrate() {
+        char[] sample = "calibration".toCharArray();
+        byte[] salt = newSalt();
+        hash(sample, salt, CALIBRATION_ITERATIONS); // warm up the JIT
+        long start = System.nanoTime();
+        hash(sample, salt, CALIBRATION_ITERATIONS);
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+        long scaled = CALIBRATION_ITERATIONS * hashTargetMillis / elapsedMillis;
+        int cost = (int) Math.max(MIN_ITERATIONS, Math.min(Integer.MAX_VALUE, scaled));
+        LOGGER.info("Calibrated password hashing to " + cost + " iterations");
+        return cost;
+    }
+
+    private static byte[] hash(char[] password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private byte[] newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        return salt;
+    }
+
+    // ==================== SESSIONS ====================
+
+    private byte[] sessionVerifier(String username, String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(sessionKey, "HmacSHA256"));
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private static final class Session {
+        private final byte[] verifier;
+        // The users.password value the session was started against
+        private final String stored;
+        private final long expiresAt;
+
+        Session(byte[] verifier, String stored, long expiresAt) {
+            this.verifier = verifier;
+            this.stored = stored;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+}
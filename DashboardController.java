@@ -1,12 +1,15 @@
 package com.newfoundsoftware.pos;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.geometry.Insets;
+import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -16,13 +19,10 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
-import javafx.scene.input.MouseEvent;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
-import javafx.scene.layout.StackPane;
-import javafx.scene.layout.ColumnConstraints;
-import javafx.scene.layout.Priority;
-import javafx.scene.layout.RowConstraints;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 
@@ -30,10 +30,16 @@ import java.io.IOException;
 import java.net.URL;
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,6 +50,8 @@ public class DashboardController implements Initializable {
     private static final String PRODUCTS_FXML = "Products.fxml";
     private static final String LOOKUP_FXML = "Lookup.fxml";
     private static final String SALES_REPORT_FXML = "SalesReport.fxml";
+    private static final String PAYMENT_FXML = "Payment.fxml";
+    private static final DateTimeFormatter PARKED_TIME = DateTimeFormatter.ofPattern("HH:mm");
 
     @FXML private Label lblUsername;
     @FXML private Label lblGrandTotal;
@@ -52,31 +60,22 @@ public class DashboardController implements Initializable {
     @FXML private TableColumn<OrderItem, Double> colPrice;
     @FXML private TableColumn<OrderItem, Integer> colQuantity;
     @FXML private TableColumn<OrderItem, Double> colTotal;
-    @FXML private GridPane productGrid;
-    @FXML private Button foundationButton, blushButton, concealerButton, lipstickButton, eyeshadowButton;
+    @FXML private ProductTileGrid productGrid;
+    @FXML private VBox categoryBox;
     @FXML private ImageView landingLabel;
-    @FXML private ImageView imageView1, imageView2, imageView3, imageView4, imageView5, imageView6, imageView7, imageView8, imageView9;
-    @FXML private Label priceLabel1, priceLabel2, priceLabel3, priceLabel4, priceLabel5, priceLabel6, priceLabel7, priceLabel8, priceLabel9;
-    @FXML private Label nameLabel1, nameLabel2, nameLabel3, nameLabel4, nameLabel5, nameLabel6, nameLabel7, nameLabel8, nameLabel9;
     @FXML private Button btnManageProduct;
     @FXML private Button btnSalesInventory;
-    @FXML private StackPane productPane1;
-    @FXML private StackPane productPane2;
-    @FXML private StackPane productPane3;
-    @FXML private StackPane productPane4;
-    @FXML private StackPane productPane5;
-    @FXML private StackPane productPane6;
-    @FXML private StackPane productPane7;
-    @FXML private StackPane productPane8;
-    @FXML private StackPane productPane9;
-
-    private List<ImageView> imageViews;
-    private List<Label> priceLabels;
-    private List<Label> nameLabels;
+
     private ObservableList<OrderItem> orderItems = FXCollections.observableArrayList();
-    private List<Product> allProducts = new ArrayList<>();
-    private String currentCategory = "FOUNDATION";
+    // Selected category key; null until the catalog has categories
+    private String currentCategory;
     private boolean orderActive = false;
+    // A park or resume is running; see setOrderBusy()
+    private boolean orderBusy;
+    // Reservations for the open order are held under this id
+    private String cartId;
+    private final ReservationService reservationService = ReservationService.getInstance();
+    private final ParkedOrderService parkedOrderService = ParkedOrderService.getInstance();
     private static Stage pStage;
 
     @Override
@@ -86,51 +85,21 @@ public class DashboardController implements Initializable {
             throw new IllegalStateException("UI components not properly injected.");
         }
 
-        imageViews = List.of(imageView1, imageView2, imageView3, imageView4, imageView5, imageView6, imageView7, imageView8, imageView9);
-        priceLabels = List.of(priceLabel1, priceLabel2, priceLabel3, priceLabel4, priceLabel5, priceLabel6, priceLabel7, priceLabel8, priceLabel9);
-        nameLabels = List.of(nameLabel1, nameLabel2, nameLabel3, nameLabel4, nameLabel5, nameLabel6, nameLabel7, nameLabel8, nameLabel9);
-
         colDescription.setCellValueFactory(new PropertyValueFactory<>("description"));
         colPrice.setCellValueFactory(new PropertyValueFactory<>("price"));
         colQuantity.setCellValueFactory(new PropertyValueFactory<>("quantity"));
         colTotal.setCellValueFactory(new PropertyValueFactory<>("total"));
         orderTable.setItems(orderItems);
 
-        // Setup GridPane constraints for proper layout
-        setupGridPane();
+        // Clicking a tile or pressing Enter on it adds the product
+        productGrid.setOnActivate(this::addToOrder);
 
-        loadProducts();
-        showLandingPage();
-    }
-
-    /**
-     * Setup GridPane constraints to ensure proper sizing and spacing
-     */
-    private void setupGridPane() {
-        // Clear existing constraints (if any)
-        productGrid.getColumnConstraints().clear();
-        productGrid.getRowConstraints().clear();
-        
-        // Create column constraints (3 columns)
-        for (int i = 0; i < 3; i++) {
-            ColumnConstraints colConstraints = new ColumnConstraints();
-            colConstraints.setMinWidth(200);
-            colConstraints.setPrefWidth(220);
-            colConstraints.setHgrow(Priority.SOMETIMES); // Allow horizontal growth
-            productGrid.getColumnConstraints().add(colConstraints);
+        // Use the snapshot warmed during login when there is one
+        if (!CatalogService.getInstance().isCatalogLoaded()) {
+            loadProducts();
         }
-        
-        // Create row constraints (3 rows)
-        for (int i = 0; i < 3; i++) {
-            RowConstraints rowConstraints = new RowConstraints();
-            rowConstraints.setMinHeight(150);
-            rowConstraints.setPrefHeight(170);
-            rowConstraints.setVgrow(Priority.SOMETIMES); // Allow vertical growth
-            productGrid.getRowConstraints().add(rowConstraints);
-        }
-        
-        // Set alignment to center
-        productGrid.setAlignment(javafx.geometry.Pos.CENTER);
+        buildCategoryButtons();
+        showLandingPage();
     }
 
     private void showLandingPage() {
@@ -139,14 +108,12 @@ public class DashboardController implements Initializable {
         productGrid.setVisible(false);
         orderTable.setVisible(true);
         lblGrandTotal.setVisible(false);
-        foundationButton.setDisable(true);
-        blushButton.setDisable(true);
-        concealerButton.setDisable(true);
-        lipstickButton.setDisable(true);
-        eyeshadowButton.setDisable(true);
+        setCategoriesDisabled(true);
     }
     
     public void resetToLandingPage() {
+        releaseCartAsync(cartId);
+        cartId = null;
         orderItems.clear();
         updateGrandTotal();
         orderTable.refresh();
@@ -176,6 +143,7 @@ public class DashboardController implements Initializable {
 
     public void setUsername(String username) {
         lblUsername.setText((username != null && !username.trim().isEmpty()) ? username : "Guest");
+        ReceiptService.getInstance().setCashier(lblUsername.getText());
     }
 
     private void setPrimaryStage(Stage pStage) {
@@ -187,119 +155,77 @@ public class DashboardController implements Initializable {
     }
 
     private void loadProducts() {
-        allProducts.clear();
-        JdbcDao jdbcDao = new JdbcDao();
-        Connection conn = jdbcDao.getConnection();
-    
-        if (conn == null) {
-            LOGGER.warning("Could not connect to database");
-            return;
-        }
-        
-        String query = "SELECT * FROM products ORDER BY category, description";
-        
-        try (PreparedStatement ps = conn.prepareStatement(query);
-             ResultSet rs = ps.executeQuery()) {
-            
-            while (rs.next()) {
-                int productId = rs.getInt("id");
-                int stock = SalesInventoryController.getStock(productId);
-                
-                Product product = new Product(
-                    productId,
-                    rs.getString("description"),
-                    rs.getDouble("price"),
-                    rs.getString("image_path"),
-                    rs.getString("category"),
-                    rs.getString("status"),
-                    stock
-                );
-                allProducts.add(product);
-            }
-            
-            LOGGER.info("Loaded " + allProducts.size() + " products");
-            
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error loading products", e);
-        }
+        CatalogService.getInstance().reloadCatalog();
+    }
+
+    /**
+     * Reload the catalog on a worker thread and redraw the grid when it arrives.
+     */
+    private void refreshProductsAsync() {
+        CompletableFuture.supplyAsync(CatalogService.getInstance()::reconcileCatalog, PosExecutors.background())
+            .thenAccept(products -> Platform.runLater(() -> {
+                buildCategoryButtons();
+                if (orderActive) productGrid.updateProducts(productsInCategory());
+            }));
     }
 
     private void displayProducts() {
-        List<Product> filteredProducts = allProducts.stream()
-                .filter(p -> p.getCategory().equalsIgnoreCase(currentCategory))
-                .limit(9)
-                .toList();
-
-        for (int i = 0; i < imageViews.size(); i++) {
-            if (i < filteredProducts.size()) {
-                Product product = filteredProducts.get(i);
-                
-                try {
-                    var inputStream = getClass().getResourceAsStream(product.getImagePath());
-                    if (inputStream != null) {
-                        imageViews.get(i).setImage(new Image(inputStream));
-                    } else {
-                        LOGGER.warning("Image not found: " + product.getImagePath());
-                    }
-                    
-                    // Check both status and stock
-                    boolean available = product.isAvailable() && product.getStock() > 0;
-                    
-                    if (!available) {
-                        imageViews.get(i).setOpacity(0.4);
-                        imageViews.get(i).setStyle("-fx-effect: grayscale;");
-                    } else {
-                        imageViews.get(i).setOpacity(1.0);
-                        imageViews.get(i).setStyle("");
-                    }
-                    
-                    priceLabels.get(i).setText("₱" + product.getPrice());
-                    
-                    // Show stock and availability
-                    if (!product.isAvailable()) {
-                        nameLabels.get(i).setText(product.getName() + " - NOT AVAILABLE");
-                        nameLabels.get(i).setStyle("-fx-background-color: rgba(255,0,0,0.7); -fx-text-fill: white;");
-                    } else if (product.getStock() == 0) {
-                        nameLabels.get(i).setText(product.getName() + " - OUT OF STOCK");
-                        nameLabels.get(i).setStyle("-fx-background-color: rgba(255,0,0,0.7); -fx-text-fill: white;");
-                    } else if (product.getStock() < 10) {
-                        nameLabels.get(i).setText(product.getName() + " - Only " + product.getStock() + " left");
-                        nameLabels.get(i).setStyle("-fx-background-color: rgba(255,165,0,0.7); -fx-text-fill: white;");
-                    } else {
-                        nameLabels.get(i).setText(product.getName());
-                        nameLabels.get(i).setStyle("-fx-background-color: rgba(220,190,255,0.7); -fx-text-fill: black;");
-                    }
-                    
-                    imageViews.get(i).setUserData(product);
-                    
-                } catch (Exception e) {
-                    LOGGER.warning("Failed to update UI for: " + product.getName());
-                }
-            } else {
-                imageViews.get(i).setImage(null);
-                imageViews.get(i).setOpacity(1.0);
-                imageViews.get(i).setStyle("");
-                nameLabels.get(i).setText("No Product");
-                nameLabels.get(i).setStyle("-fx-background-color: rgba(220,190,255,0.7); -fx-text-fill: black;");
-                imageViews.get(i).setUserData(null);
-            }
-        }
+        // Every product in the category - the grid only builds the rows on screen
+        productGrid.setProducts(productsInCategory());
+    }
+
+    private List<Product> productsInCategory() {
+        if (currentCategory == null) return List.of();
+        // Precomputed with the snapshot - no scan per switch
+        return CatalogService.getInstance().getCatalogCategory(currentCategory);
     }
 
-    @FXML
     private void filterProducts(ActionEvent event) {
         if (!orderActive) return;
         Button source = (Button) event.getSource();
-        currentCategory = source.getText().toUpperCase();
+        currentCategory = (String) source.getUserData();
         displayProducts();
+        productGrid.requestFocus();
     }
 
-    @FXML
-    private void addToOrder(MouseEvent event) {
+    // ==================== CATEGORIES ====================
+
+    /**
+     * One button per category in the catalog, labelled with its in-stock and
+     * item counts. Rebuilt whenever the catalog is refreshed.
+     */
+    private void buildCategoryButtons() {
+        List<ProductCatalog.Category> categories = CatalogService.getInstance().getCategories();
+        List<Button> buttons = new ArrayList<>(categories.size());
+        boolean selectedExists = false;
+        for (ProductCatalog.Category category : categories) {
+            Button button = new Button(category.getName() + "  (" + category.getInStock() + "/" + category.getItems() + ")");
+            button.setUserData(category.getName());
+            button.setMnemonicParsing(false);
+            button.setPrefSize(183.0, 32.0);
+            button.setStyle("-fx-background-color: PINK;");
+            button.setTextFill(Color.web("#4a4747"));
+            button.setFont(Font.font("System", FontWeight.BOLD, 12.0));
+            button.setTooltip(new Tooltip(category.getItems() + " products, " + category.getInStock() + " in stock"));
+            button.setOnAction(this::filterProducts);
+            button.setDisable(!orderActive);
+            buttons.add(button);
+            selectedExists |= category.getName().equals(currentCategory);
+        }
+        categoryBox.getChildren().setAll(buttons);
+        if (!selectedExists) {
+            currentCategory = categories.isEmpty() ? null : categories.get(0).getName();
+        }
+    }
+
+    private void setCategoriesDisabled(boolean disabled) {
+        for (Node button : categoryBox.getChildren()) {
+            button.setDisable(disabled);
+        }
+    }
+
+    private void addToOrder(Product product) {
         if (!orderActive) return;
-    
-        ImageView source = (ImageView) event.getSource();
-        Product product = (Product) source.getUserData();
         
         if (product != null) {
             // Check if product is available
@@ -378,46 +304,79 @@ public class DashboardController implements Initializable {
                     }
                 }
                 
-                int totalQty = currentOrderQty + requestedQty;
-                
-                if (totalQty > product.getStock()) {
-                    showAlert(Alert.AlertType.WARNING, "Insufficient Stock", 
-                        "Cannot add " + requestedQty + " items!\n\n" +
-                        "Available Stock: " + product.getStock() + "\n" +
-                        "Already in Cart: " + currentOrderQty + "\n" +
-                        "Requested: " + requestedQty + "\n" +
-                        "Total Needed: " + totalQty + "\n\n" +
-                        "Maximum you can add: " + (product.getStock() - currentOrderQty));
-                    return;
-                }
-                
-                // Add to order only after validation passes
-                boolean found = false;
-                for (OrderItem item : orderItems) {
-                    if (item.getProductId() == product.getId()) {
-                        item.setQuantity(item.getQuantity() + requestedQty);
-                        item.setTotal(item.getPrice() * item.getQuantity());
-                        found = true;
-                        break;
-                    }
-                }
-                
-                if (!found) {
-                    orderItems.add(new OrderItem(
-                        product.getId(),
-                        product.getName(), 
-                        product.getPrice(), 
-                        requestedQty, 
-                        product.getPrice() * requestedQty
-                    ));
-                }
-                
-                updateGrandTotal();
-                orderTable.refresh();
+                reserveAndAdd(product, requestedQty, currentOrderQty);
             });
         }
     }
 
+    /**
+     * Reserve the quantity for this cart off the FX thread, then add it to the
+     * order or say how much is left. If the reservation cannot be made the
+     * snapshot stock is checked instead, and checkout has the final say.
+     */
+    private void reserveAndAdd(Product product, int requestedQty, int currentOrderQty) {
+        String cart = cartId;
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return reservationService.reserve(cart, product.getId(), requestedQty);
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Could not reserve stock for " + product.getName(), e);
+                return null;
+            }
+        }, PosExecutors.background()).thenAccept(reservation -> Platform.runLater(() -> {
+            if (!cart.equals(cartId)) {
+                // The order was closed while reserving
+                releaseCartAsync(cart);
+                return;
+            }
+            int canAdd = reservation != null ? reservation.getAvailable() + (reservation.isGranted() ? requestedQty : 0)
+                    : product.getStock() - currentOrderQty;
+            if (requestedQty > canAdd) {
+                showAlert(Alert.AlertType.WARNING, "Insufficient Stock",
+                    "Cannot add " + requestedQty + " items!\n\n" +
+                    "Already in Cart: " + currentOrderQty + "\n" +
+                    "Requested: " + requestedQty + "\n\n" +
+                    "Maximum you can add: " + Math.max(0, canAdd) +
+                    (reservation != null ? "\n(stock held by other open orders is not counted)" : ""));
+                return;
+            }
+
+            boolean found = false;
+            for (OrderItem item : orderItems) {
+                if (item.getProductId() == product.getId()) {
+                    item.setQuantity(item.getQuantity() + requestedQty);
+                    item.setTotal(item.getPrice() * item.getQuantity());
+                    found = true;
+                    break;
+                }
+            }
+
+            if (!found) {
+                orderItems.add(new OrderItem(
+                    product.getId(),
+                    product.getName(),
+                    product.getPrice(),
+                    requestedQty,
+                    product.getPrice() * requestedQty
+                ));
+            }
+
+            updateGrandTotal();
+            orderTable.refresh();
+        }));
+    }
+
+    private static void releaseCartAsync(String cart) {
+        if (cart == null) return;
+        PosExecutors.background().execute(() -> {
+            try {
+                ReservationService.getInstance().releaseCart(cart);
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Could not release reservations for cart " + cart, e);
+            }
+        });
+    }
+
     private void updateGrandTotal() {
         double total = orderItems.stream().mapToDouble(OrderItem::getTotal).sum();
         lblGrandTotal.setText("₱" + String.format("%.2f", total));
@@ -425,19 +384,15 @@ public class DashboardController implements Initializable {
 
     private void openModalWindow(String resource, String title) {
         try {
-            Parent root = FXMLLoader.load(getClass().getResource(resource));
-            if (root == null) throw new IOException("Failed to load FXML: " + resource);
-            
-            Scene fxmlFile = new Scene(root);
-            Stage window = new Stage();
-            window.setScene(fxmlFile);
-            window.initModality(Modality.APPLICATION_MODAL);
-            window.setTitle(title);
+            // Parsed once, then reused; the controller refreshes itself on reopen
+            SceneCache.CachedView view = SceneCache.get(resource);
+            Stage window = view.getStage(title, Modality.APPLICATION_MODAL);
             
             // Set window to maximized
             window.setMaximized(true);
             
             setPrimaryStage(window);
+            view.prepareForShow();
             window.showAndWait();
         } catch (IOException ex) {
             LOGGER.log(Level.SEVERE, "Error opening modal window for " + resource, ex);
@@ -460,18 +415,17 @@ public class DashboardController implements Initializable {
     @FXML
     private void newOrder(ActionEvent event) {
         orderActive = true;
+        cartId = reservationService.newCartId();
         landingLabel.setVisible(false);
         productGrid.setVisible(true);
         orderTable.setVisible(true);
         lblGrandTotal.setVisible(true);
-        foundationButton.setDisable(false);
-        blushButton.setDisable(false);
-        concealerButton.setDisable(false);
-        lipstickButton.setDisable(false);
-        eyeshadowButton.setDisable(false);
+        setCategoriesDisabled(false);
 
-        loadProducts();
+        // Show the snapshot right away, then pick up any stock changes
         displayProducts();
+        productGrid.requestFocus();
+        refreshProductsAsync();
     }
 
     @FXML
@@ -482,18 +436,16 @@ public class DashboardController implements Initializable {
         }
         
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("Payment.fxml"));
-            Parent root = loader.load();
+            SceneCache.CachedView view = SceneCache.get(PAYMENT_FXML);
+            view.prepareForShow();
             
-            PaymentController controller = loader.getController();
+            PaymentController controller = view.getController();
             controller.setTotalAmount(calculateTotal());
             controller.setOrderItems(orderItems);
+            controller.setCartId(cartId);
             controller.setDashboardController(this);
             
-            Stage stage = new Stage();
-            stage.setTitle("Payment");
-            stage.setScene(new Scene(root));
-            stage.initModality(Modality.APPLICATION_MODAL);
+            Stage stage = view.getStage("Payment", Modality.APPLICATION_MODAL);
             stage.setWidth(400);
             stage.setHeight(400);
             stage.setResizable(true);
@@ -502,11 +454,178 @@ public class DashboardController implements Initializable {
             resetToLandingPage();
 
         } catch (IOException e) {
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Failed to open payment window", e);
             showErrorAlert("Payment Error", "Failed to open payment window: " + e.getMessage());
         }
     }
     
+    // ==================== PARKED ORDERS ====================
+
+    /**
+     * Put the current order aside under a label and free the terminal. The
+     * order keeps its stock reservations while parked.
+     */
+    @FXML
+    private void parkOrder(ActionEvent event) {
+        if (orderBusy) return;
+        if (!orderActive || orderItems.isEmpty()) {
+            showAlert(Alert.AlertType.WARNING, "Park Order", "There is no order to park.");
+            return;
+        }
+
+        String defaultLabel = "Customer " + LocalTime.now().format(PARKED_TIME);
+        TextInputDialog dialog = new TextInputDialog(defaultLabel);
+        dialog.setTitle("Park Order");
+        dialog.setHeaderText("Name this order so it can be found again");
+        dialog.setContentText("Label:");
+        Optional<String> result = dialog.showAndWait();
+        if (!result.isPresent()) return;
+
+        String entered = result.get().trim().isEmpty() ? defaultLabel : result.get().trim();
+        String label = entered.length() > 64 ? entered.substring(0, 64) : entered;
+        String cart = cartId;
+        List<OrderItem> items = new ArrayList<>(orderItems);
+        Task<Long> parkTask = new Task<>() {
+            @Override
+            protected Long call() throws SQLException {
+                return parkedOrderService.park(label, cart, items);
+            }
+        };
+        setOrderBusy(true);
+        parkTask.setOnSucceeded(e -> {
+            setOrderBusy(false);
+            // The parked order owns the reservations now
+            cartId = null;
+            resetToLandingPage();
+        });
+        parkTask.setOnFailed(e -> {
+            setOrderBusy(false);
+            LOGGER.log(Level.SEVERE, "Error parking order", parkTask.getException());
+            showErrorAlert("Park Order", "Could not park the order: " + parkTask.getException().getMessage());
+        });
+        try {
+            PosExecutors.background().execute(parkTask);
+        } catch (RejectedExecutionException e) {
+            setOrderBusy(false);
+            LOGGER.log(Level.WARNING, "Park order not started, background queue full", e);
+            showErrorAlert("Park Order", "The system is busy, please try again.");
+        }
+    }
+
+    /**
+     * Pick a parked order and continue it, after revalidating its prices and stock.
+     */
+    @FXML
+    private void showParkedOrders(ActionEvent event) {
+        if (orderBusy) return;
+        if (orderActive && !orderItems.isEmpty()) {
+            showAlert(Alert.AlertType.WARNING, "Parked Orders", "Park or finish the current order first.");
+            return;
+        }
+
+        Task<List<ParkedOrderService.ParkedOrder>> listTask = new Task<>() {
+            @Override
+            protected List<ParkedOrderService.ParkedOrder> call() throws SQLException {
+                return parkedOrderService.list();
+            }
+        };
+        setOrderBusy(true);
+        listTask.setOnSucceeded(e -> {
+            setOrderBusy(false);
+            chooseParkedOrder(listTask.getValue());
+        });
+        listTask.setOnFailed(e -> {
+            setOrderBusy(false);
+            LOGGER.log(Level.SEVERE, "Error loading parked orders", listTask.getException());
+            showErrorAlert("Parked Orders", "Could not load parked orders: " + listTask.getException().getMessage());
+        });
+        try {
+            PosExecutors.background().execute(listTask);
+        } catch (RejectedExecutionException e) {
+            setOrderBusy(false);
+            LOGGER.log(Level.WARNING, "Parked order list not started, background queue full", e);
+            showErrorAlert("Parked Orders", "The system is busy, please try again.");
+        }
+    }
+
+    private void chooseParkedOrder(List<ParkedOrderService.ParkedOrder> parked) {
+        if (parked.isEmpty()) {
+            showAlert(Alert.AlertType.INFORMATION, "Parked Orders", "There are no parked orders.");
+            return;
+        }
+
+        Map<String, ParkedOrderService.ParkedOrder> byText = new LinkedHashMap<>();
+        for (ParkedOrderService.ParkedOrder order : parked) {
+            byText.put(String.format("%s  •  %d items  •  ₱%.2f  •  parked %s", order.getLabel(),
+                    order.getItemCount(), order.getSubTotal(), order.getParkedAt().format(PARKED_TIME)), order);
+        }
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(byText.keySet().iterator().next(), byText.keySet());
+        dialog.setTitle("Parked Orders");
+        dialog.setHeaderText("Resume which order?");
+        dialog.setContentText("Order:");
+        Optional<String> choice = dialog.showAndWait();
+        if (!choice.isPresent()) return;
+
+        long id = byText.get(choice.get()).getId();
+        Task<ParkedOrderService.ResumedOrder> resumeTask = new Task<>() {
+            @Override
+            protected ParkedOrderService.ResumedOrder call() throws SQLException {
+                return parkedOrderService.resume(id);
+            }
+        };
+        setOrderBusy(true);
+        resumeTask.setOnSucceeded(e -> {
+            setOrderBusy(false);
+            applyResumedOrder(resumeTask.getValue());
+        });
+        resumeTask.setOnFailed(e -> {
+            setOrderBusy(false);
+            LOGGER.log(Level.SEVERE, "Error resuming parked order", resumeTask.getException());
+            showErrorAlert("Parked Orders", "Could not resume the order: " + resumeTask.getException().getMessage());
+        });
+        try {
+            PosExecutors.background().execute(resumeTask);
+        } catch (RejectedExecutionException e) {
+            setOrderBusy(false);
+            LOGGER.log(Level.WARNING, "Resume order not started, background queue full", e);
+            showErrorAlert("Parked Orders", "The system is busy, please try again.");
+        }
+    }
+
+    private void applyResumedOrder(ParkedOrderService.ResumedOrder resumed) {
+        if (resumed == null) {
+            showAlert(Alert.AlertType.INFORMATION, "Parked Orders", "That order was already resumed on another terminal.");
+            return;
+        }
+        String changes = resumed.getChanges().isEmpty() ? "" : "• " + String.join("\n• ", resumed.getChanges());
+        if (resumed.getItems().isEmpty()) {
+            releaseCartAsync(resumed.getCartId());
+            showAlert(Alert.AlertType.WARNING, "Parked Orders",
+                "Nothing in this order can be sold any more:\n\n" + changes);
+            return;
+        }
+
+        if (!orderActive) newOrder(null);
+        cartId = resumed.getCartId();
+        orderItems.setAll(resumed.getItems());
+        updateGrandTotal();
+        orderTable.refresh();
+        if (!changes.isEmpty()) {
+            showAlert(Alert.AlertType.INFORMATION, "Order Updated",
+                "The order changed while it was parked:\n\n" + changes);
+        }
+    }
+
+    /**
+     * While a park or resume is in flight the order cannot be changed, so
+     * what is stored is what was on screen.
+     */
+    private void setOrderBusy(boolean busy) {
+        orderBusy = busy;
+        productGrid.setDisable(busy);
+        orderTable.setDisable(busy);
+    }
+
     private double calculateTotal() {
         return orderItems.stream().mapToDouble(OrderItem::getTotal).sum();
     }
@@ -519,6 +638,17 @@ public class DashboardController implements Initializable {
             return;
         }
 
+        String cart = cartId;
+        for (OrderItem item : selectedItems) {
+            int productId = item.getProductId();
+            PosExecutors.background().execute(() -> {
+                try {
+                    reservationService.release(cart, productId);
+                } catch (SQLException e) {
+                    LOGGER.log(Level.WARNING, "Could not release reservation for product " + productId, e);
+                }
+            });
+        }
         orderItems.removeAll(selectedItems);
         updateGrandTotal();
         orderTable.refresh();
@@ -527,14 +657,16 @@ public class DashboardController implements Initializable {
     @FXML
     private void salesReport(ActionEvent event) {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("SalesReport.fxml"));
-            Parent root = loader.load();
-            Stage stage = new Stage();
-            stage.setTitle("Sales Report");
-            stage.setScene(new Scene(root));
+            SceneCache.CachedView view = SceneCache.get(SALES_REPORT_FXML);
+            Stage stage = view.getStage("Sales Report", null);
+            if (stage.isShowing()) {
+                stage.toFront();
+                return;
+            }
+            view.prepareForShow();
             stage.show();
         } catch (Exception e) {
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Failed to open sales report", e);
         }
     }
     
@@ -548,6 +680,8 @@ public class DashboardController implements Initializable {
         
         Optional<ButtonType> result = confirmAlert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
+            // The next login, even by the same user, goes through the full password check
+            CredentialService.getInstance().invalidate(lblUsername.getText());
             try {
                 // Load the login window
                 FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/newfoundsoftware/pos/Login.fxml"));
@@ -562,6 +696,9 @@ public class DashboardController implements Initializable {
                 // Show login window
                 loginStage.show();
                 
+                // Have a dashboard ready for whoever logs in next
+                StartupOrchestrator.getInstance().preloadDashboard();
+                
                 // Close current dashboard window
                 Stage currentStage = (Stage) lblUsername.getScene().getWindow();
                 currentStage.close();
@@ -584,6 +721,11 @@ public class DashboardController implements Initializable {
         logout(event);
     }
 
+    @FXML
+    private void showDiagnostics(ActionEvent event) {
+        DiagnosticsView.show();
+    }
+
     @FXML
     private void actionSalesInventory(ActionEvent event) {
         openModalWindow(SALESINVENTORY_FXML, "Sales Inventory");
@@ -610,6 +752,8 @@ public class DashboardController implements Initializable {
             case F6: salesReport(null); break;
             case F7: logout(null); break;
             case F8: backToLanding(null); break;
+            case F9: parkOrder(null); break;
+            case F10: showParkedOrders(null); break;
         }
     }
 
@@ -668,4 +812,4 @@ public class DashboardController implements Initializable {
         public double getTotal() { return total; }
         public void setTotal(double total) { this.total = total; }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+package com.newfoundsoftware.pos;
+
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * DiagnosticsView - Window showing what QueryProfiler has collected
+ *
+ * Three tables: statements by total time, the slowest single executions
+ * and statements repeated within one action (N+1). The tables are a
+ * snapshot; Refresh takes a new one. Opened from Help > Diagnostics.
+ */
+public final class DiagnosticsView {
+
+    private static final Logger LOGGER = Logger.getLogger(DiagnosticsView.class.getName());
+    private static DiagnosticsView instance;
+
+    private final Stage stage = new Stage();
+    private final TableView<QueryProfiler.StatementTotals> totalsTable = new TableView<>();
+    private final TableView<QueryProfiler.Execution> slowestTable = new TableView<>();
+    private final TableView<QueryProfiler.RepeatedStatement> repeatsTable = new TableView<>();
+    private final Label status = new Label();
+
+    private DiagnosticsView() {
+        stage.setTitle("Diagnostics - Database Statements");
+        stage.setScene(new Scene(build(), 1000, 560));
+    }
+
+    /**
+     * Show the window (one per application), refreshed. FX thread only.
+     */
+    public static void show() {
+        if (instance == null) {
+            instance = new DiagnosticsView();
+        }
+        instance.refresh();
+        if (instance.stage.isShowing()) {
+            instance.stage.toFront();
+        } else {
+            instance.stage.show();
+        }
+    }
+
+    private BorderPane build() {
+        totalsTable.getColumns().addAll(List.of(
+                column("Count", "count", 70),
+                column("Total ms", "totalMillis", 85),
+                column("Avg ms", "avgMillis", 75),
+                column("Max ms", "maxMillis", 75),
+                column("Fetch ms", "fetchMillis", 80),
+                column("Rows", "rows", 80),
+                column("Binds", "binds", 70),
+                column("Statement", "statement", 520)));
+        slowestTable.getColumns().addAll(List.of(
+                column("At", "at", 140),
+                column("Total ms", "totalMillis", 85),
+                column("Execute ms", "executeMillis", 85),
+                column("Fetch ms", "fetchMillis", 80),
+                column("Rows", "rows", 70),
+                column("Binds", "binds", 60),
+                column("Thread", "thread", 120),
+                column("Statement", "statement", 420)));
+        repeatsTable.getColumns().addAll(List.of(
+                column("At", "at", 140),
+                column("Times", "count", 70),
+                column("Called from", "site", 240),
+                column("Thread", "thread", 120),
+                column("Statement", "statement", 480)));
+        totalsTable.setPlaceholder(new Label(QueryProfiler.isEnabled()
+                ? "No statements yet" : "Profiling is off (pos.db.profile=false)"));
+        slowestTable.setPlaceholder(new Label("No statements yet"));
+        repeatsTable.setPlaceholder(new Label("No repeated statements"));
+
+        TabPane tabs = new TabPane(
+                new Tab("Statements", totalsTable),
+                new Tab("Slowest", slowestTable),
+                new Tab("Repeated (N+1)", repeatsTable));
+        tabs.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+
+        Button refresh = new Button("Refresh");
+        refresh.setOnAction(e -> refresh());
+        Button reset = new Button("Reset");
+        reset.setOnAction(e -> {
+            QueryProfiler.reset();
+            refresh();
+        });
+        Button save = new Button("Save Report");
+        save.setOnAction(e -> saveReport());
+        HBox bar = new HBox(10, status, refresh, reset, save);
+        bar.setAlignment(Pos.CENTER_RIGHT);
+        bar.setPadding(new Insets(8));
+        HBox.setMargin(status, new Insets(0, 20, 0, 0));
+
+        BorderPane root = new BorderPane(tabs);
+        root.setBottom(bar);
+        return root;
+    }
+
+    private static <S, T> TableColumn<S, T> column(String title, String property, double width) {
+        TableColumn<S, T> column = new TableColumn<>(title);
+        column.setCellValueFactory(new PropertyValueFactory<>(property));
+        column.setPrefWidth(width);
+        return column;
+    }
+
+    private void refresh() {
+        List<QueryProfiler.StatementTotals> totals = QueryProfiler.totals();
+        List<QueryProfiler.RepeatedStatement> repeats = QueryProfiler.repeats();
+        totalsTable.setItems(FXCollections.observableArrayList(totals));
+        slowestTable.setItems(FXCollections.observableArrayList(QueryProfiler.slowest()));
+        repeatsTable.setItems(FXCollections.observableArrayList(repeats));
+        status.setText(totals.size() + " distinct statements, " + repeats.size() + " repeated");
+    }
+
+    private void saveReport() {
+        try {
+            QueryProfiler.writeReport(QueryProfiler.getReportFile());
+            showAlert(Alert.AlertType.INFORMATION, "Report Saved",
+                    "Written to " + QueryProfiler.getReportFile().toAbsolutePath());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write query profile", e);
+            showAlert(Alert.AlertType.ERROR, "Save Failed", "Could not write the report: " + e.getMessage());
+        }
+    }
+
+    private static void showAlert(Alert.AlertType type, String title, String message) {
+        Alert alert = new Alert(type);
+        alert.setTitle(title);
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
+}
@@ -0,0 +1,302 @@
+package com.newfoundsoftware.pos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * EscPosPrinter - Receipts as raw ESC/POS bytes for thermal printers
+ *
+ * Much lighter than a PDF: the shop header, column titles and the cut
+ * command are encoded once, and each receipt is written into one reused
+ * buffer and sent to the printer in a single write.
+ *
+ * pos.printer.sink selects where the bytes go:
+ *   none                      printing disabled (default)
+ *   file:receipts.escpos      append to a local file (testing)
+ *   device:/dev/usb/lp0       a printer device file
+ *   tcp:192.168.1.50:9100     a network printer (raw port)
+ * pos.printer.columns is 48 for 80mm paper, 32 for 58mm.
+ */
+public final class EscPosPrinter {
+
+    private static final Logger LOGGER = Logger.getLogger(EscPosPrinter.class.getName());
+
+    private static final String SHOP_NAME = "SHEGLAM COSMETICS";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final int TCP_TIMEOUT_MS = 2000;
+
+    // ==================== ESC/POS COMMANDS ====================
+
+    private static final byte ESC = 0x1B;
+    private static final byte GS = 0x1D;
+    private static final byte[] INIT = {ESC, '@'};
+    private static final byte[] ALIGN_LEFT = {ESC, 'a', 0};
+    private static final byte[] ALIGN_CENTER = {ESC, 'a', 1};
+    private static final byte[] BOLD_ON = {ESC, 'E', 1};
+    private static final byte[] BOLD_OFF = {ESC, 'E', 0};
+    private static final byte[] DOUBLE_SIZE = {GS, '!', 0x11};
+    private static final byte[] NORMAL_SIZE = {GS, '!', 0x00};
+    private static final byte[] FEED_AND_CUT = {ESC, 'd', 4, GS, 'V', 66, 0};
+
+    // Created after the commands above, which the constructor encodes
+    private static final EscPosPrinter INSTANCE = new EscPosPrinter(
+            PosConfig.get("pos.printer.sink", "none"), PosConfig.getInt("pos.printer.columns", 48));
+
+    private final String sink;
+    private final int columns;
+    private final byte[] header;
+    private final byte[] columnTitles;
+    private final byte[] rule;
+    private final byte[] footer;
+    // Reused for every receipt; only touched on the print thread
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(2048);
+    private final ExecutorService printThread =
+            Executors.newSingleThreadExecutor(PosExecutors.daemonFactory("receipt-printer"));
+
+    EscPosPrinter(String sink, int columns) {
+        this.sink = sink;
+        this.columns = columns;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(INIT);
+        out.writeBytes(ALIGN_CENTER);
+        out.writeBytes(DOUBLE_SIZE);
+        out.writeBytes(BOLD_ON);
+        writeLine(out, SHOP_NAME);
+        out.writeBytes(BOLD_OFF);
+        out.writeBytes(NORMAL_SIZE);
+        out.writeBytes(ALIGN_LEFT);
+        this.header = out.toByteArray();
+
+        this.rule = ascii("-".repeat(columns) + "\n");
+        out.reset();
+        out.writeBytes(BOLD_ON);
+        writeLine(out, row("QTY ITEM", "TOTAL"));
+        out.writeBytes(BOLD_OFF);
+        out.writeBytes(rule);
+        this.columnTitles = out.toByteArray();
+
+        out.reset();
+        out.writeBytes(ALIGN_CENTER);
+        writeLine(out, "Thank you for shopping!");
+        out.writeBytes(FEED_AND_CUT);
+        this.footer = out.toByteArray();
+    }
+
+    public static EscPosPrinter getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return !"none".equalsIgnoreCase(sink);
+    }
+
+    // ==================== PRINTING ====================
+
+    /**
+     * Queue a receipt for printing and return at once. Receipts print in the
+     * order queued; failures are logged.
+     */
+    public void printAsync(Receipt receipt) {
+        if (!isEnabled()) return;
+        printThread.execute(() -> {
+            try {
+                print(receipt);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Could not print receipt " + receipt.getInvoiceNumber() + " to " + sink, e);
+            }
+        });
+    }
+
+    /**
+     * Print a receipt now, on the calling thread.
+     */
+    public synchronized void print(Receipt receipt) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes = render(receipt);
+        send(bytes);
+        LOGGER.fine("Printed receipt " + receipt.getInvoiceNumber() + " (" + bytes.length + " bytes) in "
+                + (System.nanoTime() - start) / 1_000 + " us");
+    }
+
+    /**
+     * Queue a report for printing and return at once; it prints after the
+     * receipts already queued. The future fails with the IOException if
+     * printing does.
+     */
+    public CompletableFuture<Void> printReportAsync(String title, List<String[]> rows) {
+        CompletableFuture<Void> printed = new CompletableFuture<>();
+        printThread.execute(() -> {
+            try {
+                printReport(title, rows);
+                printed.complete(null);
+            } catch (IOException e) {
+                printed.completeExceptionally(e);
+            }
+        });
+        return printed;
+    }
+
+    /**
+     * Print a report of {label, value} rows under a title, e.g. the Z-report.
+     * A row with an empty value and a label not starting with a space is
+     * printed bold as a section heading.
+     */
+    public synchronized void printReport(String title, List<String[]> rows) throws IOException {
+        if (!isEnabled()) {
+            throw new IOException("No receipt printer configured (pos.printer.sink)");
+        }
+        buffer.reset();
+        buffer.writeBytes(header);
+        buffer.writeBytes(ALIGN_CENTER);
+        buffer.writeBytes(BOLD_ON);
+        writeLine(buffer, title);
+        buffer.writeBytes(BOLD_OFF);
+        buffer.writeBytes(ALIGN_LEFT);
+        buffer.writeBytes(rule);
+        for (String[] row : rows) {
+            boolean heading = !row[0].isEmpty() && row[1].isEmpty() && !row[0].startsWith(" ");
+            if (heading) buffer.writeBytes(BOLD_ON);
+            writeLine(buffer, row(row[0], row[1]));
+            if (heading) buffer.writeBytes(BOLD_OFF);
+        }
+        buffer.writeBytes(rule);
+        buffer.writeBytes(FEED_AND_CUT);
+        send(buffer.toByteArray());
+    }
+
+    private void send(byte[] bytes) throws IOException {
+        try (OutputStream out = openSink()) {
+            out.write(bytes);
+            out.flush();
+        }
+    }
+
+    /**
+     * The receipt as ESC/POS bytes.
+     */
+    synchronized byte[] render(Receipt receipt) {
+        buffer.reset();
+        buffer.writeBytes(header);
+        writeLine(buffer, "Receipt No: " + receipt.getInvoiceNumber());
+        writeLine(buffer, receipt.getIssuedAt().format(DATE_FORMAT));
+        buffer.writeBytes(rule);
+        buffer.writeBytes(columnTitles);
+
+        for (Receipt.Line line : receipt.getLines()) {
+            writeLine(buffer, row(line.getQuantity() + " x " + line.getDescription(),
+                    ReceiptRenderer.money(line.getTotal())));
+            writeLine(buffer, "    @ " + ReceiptRenderer.money(line.getUnitPrice()));
+        }
+
+        buffer.writeBytes(rule);
+        writeLine(buffer, row("SUB TOTAL", ReceiptRenderer.money(receipt.getSubTotal())));
+        writeLine(buffer, row("VAT (" + Math.round(CheckoutService.VAT_RATE * 100) + "%)",
+                ReceiptRenderer.money(receipt.getVat())));
+        buffer.writeBytes(BOLD_ON);
+        writeLine(buffer, row("GRAND TOTAL", ReceiptRenderer.money(receipt.getGrandTotal())));
+        buffer.writeBytes(BOLD_OFF);
+        writeLine(buffer, row("Amount Paid", ReceiptRenderer.money(receipt.getAmountPaid())));
+        writeLine(buffer, row("Change", ReceiptRenderer.money(receipt.getChange())));
+        buffer.writeBytes(rule);
+        buffer.writeBytes(footer);
+        return buffer.toByteArray();
+    }
+
+    private OutputStream openSink() throws IOException {
+        int colon = sink.indexOf(':');
+        String kind = colon < 0 ? sink : sink.substring(0, colon);
+        String target = colon < 0 ? "" : sink.substring(colon + 1);
+        switch (kind.toLowerCase()) {
+            case "file":
+                return new FileOutputStream(target, true);
+            case "device":
+                return new FileOutputStream(target);
+            case "tcp": {
+                int portSeparator = target.lastIndexOf(':');
+                String host = portSeparator < 0 ? target : target.substring(0, portSeparator);
+                int port = portSeparator < 0 ? 9100 : Integer.parseInt(target.substring(portSeparator + 1));
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(host, port), TCP_TIMEOUT_MS);
+                socket.setTcpNoDelay(true);
+                return new SocketOutput(socket);
+            }
+            default:
+                throw new IOException("Unknown pos.printer.sink: " + sink);
+        }
+    }
+
+    // ==================== TEXT ====================
+
+    /**
+     * left and right on one line, right-aligned to the paper width; left is
+     * cut short if both do not fit.
+     */
+    private String row(String left, String right) {
+        int room = columns - right.length() - 1;
+        if (left.length() > room) {
+            left = left.substring(0, Math.max(0, room));
+        }
+        StringBuilder line = new StringBuilder(columns).append(left);
+        while (line.length() < columns - right.length()) {
+            line.append(' ');
+        }
+        return line.append(right).toString();
+    }
+
+    private static void writeLine(ByteArrayOutputStream out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            // Printers start in a code page whose lower half is ASCII; anything else prints as '?'
+            out.write(c >= 0x20 && c < 0x7F ? c : '?');
+        }
+        out.write('\n');
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Closes the socket along with its stream
+    private static final class SocketOutput extends OutputStream {
+        private final Socket socket;
+        private final OutputStream out;
+
+        SocketOutput(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
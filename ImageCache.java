@@ -0,0 +1,221 @@
+package com.newfoundsoftware.pos;
+
+import javafx.scene.image.Image;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ImageCache - Decoded product images shared across screens
+ *
+ * Images are decoded once per path and display size and kept in a bounded
+ * LRU (pos.images.cacheSize entries), so browsing a large catalog does not
+ * grow memory without limit. Bytes come from ImageStore (thumbnails when
+ * available) and are decoded straight to the requested size. prime()
+ * decodes a batch on the calling thread; getAsync() decodes on one of
+ * pos.images.decodeThreads decoder threads for cells that scroll into view.
+ * Requests for the same image share one decode, and a request cancelled
+ * before its decode starts (a cell rebound while scrolling) is dropped
+ * once no one else is waiting for it. Methods without a size use the
+ * Dashboard tile size.
+ */
+public final class ImageCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ImageCache.class.getName());
+    private static final int MAX_ENTRIES = PosConfig.getInt("pos.images.cacheSize", 300);
+    private static final int DECODE_THREADS = Math.max(1, PosConfig.getInt("pos.images.decodeThreads", 2));
+
+    private static final Map<String, Image> CACHE = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    // Decodes waiting or running, by key; guarded by itself
+    private static final Map<String, Load> IN_FLIGHT = new HashMap<>();
+    private static final ExecutorService DECODER = newDecoder();
+
+    private ImageCache() {
+    }
+
+    /**
+     * Cached tile-sized image, or null if the image is missing.
+     * Decodes on the calling thread when not cached.
+     */
+    public static Image get(String path) {
+        return get(path, ImageStore.TILE_SIZE);
+    }
+
+    /**
+     * Cached image scaled to fit a size x size box, or null if the image is missing.
+     * Decodes on the calling thread when not cached.
+     */
+    public static Image get(String path, int size) {
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        Image cached = getIfCached(path, size);
+        if (cached != null) {
+            return cached;
+        }
+        Image image = decode(path, size);
+        if (image != null) {
+            synchronized (CACHE) {
+                CACHE.putIfAbsent(key(path, size), image);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Cached tile-sized image or null - never decodes.
+     */
+    public static Image getIfCached(String path) {
+        return getIfCached(path, ImageStore.TILE_SIZE);
+    }
+
+    public static Image getIfCached(String path, int size) {
+        if (path == null) {
+            return null;
+        }
+        synchronized (CACHE) {
+            return CACHE.get(key(path, size));
+        }
+    }
+
+    /**
+     * Decode a tile-sized image on a decoder thread. Completes immediately when it is cached.
+     */
+    public static CompletableFuture<Image> getAsync(String path) {
+        return getAsync(path, ImageStore.TILE_SIZE);
+    }
+
+    /**
+     * Decode an image scaled to fit a size x size box on a decoder thread.
+     * Completes immediately when it is cached, with null if the image is
+     * missing. Cancel the returned future when the image is no longer
+     * wanted; the decode is skipped if nobody else is waiting for it.
+     */
+    public static CompletableFuture<Image> getAsync(String path, int size) {
+        Image cached = getIfCached(path, size);
+        if (cached != null || path == null || path.isEmpty()) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        String key = key(path, size);
+        Load load;
+        synchronized (IN_FLIGHT) {
+            load = IN_FLIGHT.get(key);
+            if (load == null) {
+                Load started = new Load();
+                try {
+                    DECODER.execute(() -> decodeAsync(key, path, size, started));
+                } catch (RejectedExecutionException e) {
+                    LOGGER.fine("Decode queue full, not loading " + path);
+                    return CompletableFuture.completedFuture(null);
+                }
+                IN_FLIGHT.put(key, started);
+                load = started;
+            }
+            load.waiters++;
+        }
+
+        Load shared = load;
+        CompletableFuture<Image> request = new CompletableFuture<>();
+        shared.result.thenAccept(request::complete);
+        request.whenComplete((image, error) -> {
+            if (request.isCancelled()) {
+                abandon(key, shared);
+            }
+        });
+        return request;
+    }
+
+    private static void abandon(String key, Load load) {
+        synchronized (IN_FLIGHT) {
+            if (--load.waiters == 0 && !load.started) {
+                // decodeAsync() sees no waiters and skips it
+                IN_FLIGHT.remove(key, load);
+            }
+        }
+    }
+
+    private static void decodeAsync(String key, String path, int size, Load load) {
+        synchronized (IN_FLIGHT) {
+            if (load.waiters == 0) {
+                IN_FLIGHT.remove(key, load);
+                return;
+            }
+            load.started = true;
+        }
+        Image image = null;
+        try {
+            image = get(path, size);
+        } finally {
+            synchronized (IN_FLIGHT) {
+                IN_FLIGHT.remove(key, load);
+            }
+            load.result.complete(image);
+        }
+    }
+
+    private static ExecutorService newDecoder() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(MAX_ENTRIES * 2),
+                PosExecutors.daemonFactory("image-decoder"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Decode every tile image not already cached, up to the cache size. Safe to call from any thread.
+     */
+    public static int prime(Collection<String> paths) {
+        int decoded = 0;
+        for (String path : paths) {
+            if (decoded >= MAX_ENTRIES) {
+                break;
+            }
+            if (path != null && getIfCached(path) == null && get(path) != null) {
+                decoded++;
+            }
+        }
+        return decoded;
+    }
+
+    private static String key(String path, int size) {
+        return size + "|" + path;
+    }
+
+    private static Image decode(String path, int size) {
+        try (InputStream in = ImageStore.open(path, size)) {
+            if (in == null) {
+                LOGGER.warning("Image not found: " + path);
+                return null;
+            }
+            // Decode straight to display size instead of holding full-resolution pixels
+            return new Image(in, size, size, true, true);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to decode image " + path, e);
+            return null;
+        }
+    }
+
+    // One decode and everyone waiting for it
+    private static final class Load {
+        private final CompletableFuture<Image> result = new CompletableFuture<>();
+        private int waiters;
+        private boolean started;
+    }
+}
@@ -0,0 +1,289 @@
+package com.newfoundsoftware.pos;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ImageStore - Content-addressed product images on disk, with thumbnails
+ *
+ * Imported files are stored under pos.images.dir by SHA-256 of their bytes
+ * and referenced from products.image_path as "store:<hash>.<ext>", so
+ * images can change without rebuilding the app and identical files are
+ * kept once. For each original, scaled PNG thumbnails are generated in the
+ * background for the sizes the screens actually draw: once at a time per
+ * image, and not retried for an image that failed until the app restarts.
+ *
+ * Paths without the store: prefix are still read from the classpath, so
+ * existing rows keep working.
+ */
+public final class ImageStore {
+
+    private static final Logger LOGGER = Logger.getLogger(ImageStore.class.getName());
+
+    public static final String STORE_PREFIX = "store:";
+
+    /** Bounding box of a Dashboard tile. */
+    public static final int TILE_SIZE = 200;
+    /** Bounding box of the detail / edit previews. */
+    public static final int PREVIEW_SIZE = 400;
+    private static final int[] THUMBNAIL_SIZES = {TILE_SIZE, PREVIEW_SIZE};
+
+    private static final Path ROOT = Paths.get(PosConfig.get("pos.images.dir",
+            Paths.get(System.getProperty("user.home"), ".newfoundpos", "images").toString()));
+
+    // Thumbnail runs in progress, and images whose thumbnails could not be made, by stored name
+    private static final Map<String, CompletableFuture<Void>> GENERATING = new ConcurrentHashMap<>();
+    private static final Set<String> FAILED = ConcurrentHashMap.newKeySet();
+
+    private ImageStore() {
+    }
+
+    // ==================== IMPORT ====================
+
+    /**
+     * Copy a file into the store and queue its thumbnails.
+     *
+     * @return the reference to save in products.image_path
+     */
+    public static String importFile(Path source) throws IOException {
+        String hash = sha256(source);
+        String name = hash + extensionOf(source);
+        Path original = originalPath(name);
+        if (!Files.exists(original)) {
+            Files.createDirectories(original.getParent());
+            Path tmp = Files.createTempFile(original.getParent(), hash, ".tmp");
+            try {
+                Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmp, original, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        generateThumbnailsAsync(name);
+        return STORE_PREFIX + name;
+    }
+
+    public static boolean isStored(String imagePath) {
+        return imagePath != null && imagePath.startsWith(STORE_PREFIX);
+    }
+
+    // ==================== READ ====================
+
+    /**
+     * Open the smallest stored rendition that still fills a maxSize box:
+     * a thumbnail if one exists, else the stored original (and its
+     * thumbnails are queued), else the classpath resource. Stored files are
+     * memory-mapped. Returns null when nothing is found.
+     */
+    public static InputStream open(String imagePath, int maxSize) throws IOException {
+        if (imagePath == null || imagePath.isEmpty()) {
+            return null;
+        }
+        if (!isStored(imagePath)) {
+            return ImageStore.class.getResourceAsStream(imagePath);
+        }
+
+        String name = imagePath.substring(STORE_PREFIX.length());
+        for (int size : THUMBNAIL_SIZES) {
+            if (size >= maxSize) {
+                Path thumbnail = thumbnailPath(name, size);
+                if (Files.exists(thumbnail)) {
+                    return mapped(thumbnail);
+                }
+            }
+        }
+        Path original = originalPath(name);
+        if (!Files.exists(original)) {
+            return null;
+        }
+        generateThumbnailsAsync(name);
+        return mapped(original);
+    }
+
+    private static InputStream mapped(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ByteBufferInputStream(buffer);
+        }
+    }
+
+    // ==================== THUMBNAILS ====================
+
+    /**
+     * Queue thumbnail generation for a stored image. Returns the run already
+     * in progress if there is one, and does nothing for an image that failed before.
+     */
+    public static CompletableFuture<Void> generateThumbnailsAsync(String name) {
+        if (FAILED.contains(name)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> started = new CompletableFuture<>();
+        CompletableFuture<Void> running = GENERATING.putIfAbsent(name, started);
+        if (running != null) {
+            return running;
+        }
+        try {
+            PosExecutors.background().execute(() -> {
+                try {
+                    generateThumbnails(name);
+                } finally {
+                    GENERATING.remove(name, started);
+                    started.complete(null);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Background queue full: a later read queues it again
+            GENERATING.remove(name, started);
+            started.complete(null);
+        }
+        return started;
+    }
+
+    private static void generateThumbnails(String name) {
+        Path original = originalPath(name);
+        BufferedImage source = null;
+        for (int size : THUMBNAIL_SIZES) {
+            Path thumbnail = thumbnailPath(name, size);
+            if (Files.exists(thumbnail)) {
+                continue;
+            }
+            Path tmp = null;
+            try {
+                if (source == null) {
+                    source = ImageIO.read(original.toFile());
+                    if (source == null) {
+                        LOGGER.warning("Unsupported image format: " + original);
+                        FAILED.add(name);
+                        return;
+                    }
+                }
+                Files.createDirectories(thumbnail.getParent());
+                tmp = Files.createTempFile(thumbnail.getParent(), "thumb", ".tmp");
+                ImageIO.write(scale(source, size), "png", tmp.toFile());
+                Files.move(tmp, thumbnail, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to create " + size + "px thumbnail for " + name, e);
+                FAILED.add(name);
+                return;
+            } finally {
+                deleteQuietly(tmp);
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not delete " + file, e);
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage source, int maxSize) {
+        double ratio = Math.min(1.0, (double) maxSize / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    // ==================== LAYOUT ====================
+
+    // originals/ab/abcdef....jpg and thumbnails/200/ab/abcdef....png
+    private static Path originalPath(String name) {
+        return ROOT.resolve("originals").resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static Path thumbnailPath(String name, int size) {
+        String hash = name.contains(".") ? name.substring(0, name.indexOf('.')) : name;
+        return ROOT.resolve("thumbnails").resolve(String.valueOf(size))
+                .resolve(hash.substring(0, 2)).resolve(hash + ".png");
+    }
+
+    private static String extensionOf(Path file) {
+        String fileName = file.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 ? fileName.substring(dot).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
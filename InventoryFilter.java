@@ -0,0 +1,301 @@
+package com.newfoundsoftware.pos;
+
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * InventoryFilter - Search index over a snapshot of inventory items
+ *
+ * The search text matches items whose name, category or id contains it,
+ * ignoring case ("stick" finds LIPSTICK, "20" finds id 120). Names,
+ * categories and ids are lowercased and broken into three-character grams
+ * once, when the index is built; a search of three or more characters only
+ * checks the items having every gram of the text instead of scanning every
+ * item, so it stays cheap on very large catalogs. Shorter texts are
+ * checked against each candidate. A query can also be limited to a set of
+ * product ids (e.g. the ids from LowStockIndex), which only visits those
+ * items. Categories are indexed too, so a category filter starts from
+ * that category's items.
+ *
+ * Building the index walks the whole list; do it off the FX thread.
+ * Instances are immutable and safe to evaluate from a background thread.
+ */
+public final class InventoryFilter {
+
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+    private static final int GRAM = 3;
+
+    private final List<SalesInventoryController.InventoryItem> items;
+    // Category key (see ProductCatalog.categoryKey) -> positions, sorted by key
+    private final NavigableMap<String, BitSet> categories;
+    // Lowercased name, category and id by position, and gram -> positions
+    private final String[] searchable;
+    private final Map<String, int[]> grams;
+    private final Map<SalesInventoryController.InventoryItem, Integer> positions;
+    private final Map<Integer, Integer> positionsById;
+
+    public InventoryFilter(List<SalesInventoryController.InventoryItem> source) {
+        this.items = new ArrayList<>(source);
+        this.categories = new TreeMap<>();
+        this.positions = new IdentityHashMap<>(items.size() * 2);
+        this.positionsById = new HashMap<>(items.size() * 2);
+        this.searchable = new String[items.size() * 3];
+
+        Map<String, PostingList> postings = new HashMap<>();
+        for (int pos = 0; pos < items.size(); pos++) {
+            SalesInventoryController.InventoryItem item = items.get(pos);
+            positions.put(item, pos);
+            positionsById.put(item.getId(), pos);
+            categories.computeIfAbsent(ProductCatalog.categoryKey(item.getCategory()), k -> new BitSet()).set(pos);
+            searchable[pos * 3] = lower(item.getName());
+            searchable[pos * 3 + 1] = lower(item.getCategory());
+            searchable[pos * 3 + 2] = String.valueOf(item.getId());
+            for (int field = 0; field < 3; field++) {
+                String value = searchable[pos * 3 + field];
+                for (int i = 0; i + GRAM <= value.length(); i++) {
+                    postings.computeIfAbsent(value.substring(i, i + GRAM), g -> new PostingList()).add(pos);
+                }
+            }
+        }
+
+        this.grams = new HashMap<>(postings.size() * 2);
+        for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+            grams.put(entry.getKey(), entry.getValue().toArray());
+        }
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * The category keys present in the index, alphabetically.
+     */
+    public List<String> categories() {
+        return new ArrayList<>(categories.keySet());
+    }
+
+    /**
+     * Position of an item in the indexed list, or -1 if it is not part of this index.
+     */
+    public int positionOf(SalesInventoryController.InventoryItem item) {
+        Integer pos = positions.get(item);
+        return pos != null ? pos : -1;
+    }
+
+    // ==================== EVALUATION ====================
+
+    /**
+     * Items matching the query, in indexed order. Returns null if cancelled
+     * reports true part-way through.
+     */
+    public List<SalesInventoryController.InventoryItem> filter(Query query, BooleanSupplier cancelled) {
+        BitSet candidates = null;
+        if (query.category != null) {
+            BitSet inCategory = categories.get(query.category);
+            if (inCategory == null) {
+                return new ArrayList<>();
+            }
+            candidates = (BitSet) inCategory.clone();
+        }
+        if (query.onlyIds != null) {
+            BitSet ids = new BitSet(items.size());
+            for (Integer id : query.onlyIds) {
+                Integer pos = positionsById.get(id);
+                if (pos != null) {
+                    ids.set(pos);
+                }
+            }
+            if (candidates == null) {
+                candidates = ids;
+            } else {
+                candidates.and(ids);
+            }
+        }
+        String text = query.text;
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            int[] list = grams.get(text.substring(i, i + GRAM));
+            if (list == null) {
+                return new ArrayList<>();
+            }
+            BitSet gramMatches = new BitSet(items.size());
+            for (int pos : list) {
+                gramMatches.set(pos);
+            }
+            if (candidates == null) {
+                candidates = gramMatches;
+            } else {
+                candidates.and(gramMatches);
+            }
+            if (candidates.isEmpty()) {
+                return new ArrayList<>();
+            }
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+        }
+
+        List<SalesInventoryController.InventoryItem> result = new ArrayList<>();
+        int checked = 0;
+        int pos = candidates != null ? candidates.nextSetBit(0) : 0;
+        while (pos >= 0 && pos < items.size()) {
+            if (++checked % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                return null;
+            }
+            SalesInventoryController.InventoryItem item = items.get(pos);
+            // Having every gram does not mean containing the text, so check the text itself
+            if ((text.isEmpty() || contains(pos, text))
+                    && (query.lowStockBelow < 0 || item.getStock() < query.lowStockBelow)) {
+                result.add(item);
+            }
+            pos = candidates != null ? candidates.nextSetBit(pos + 1) : pos + 1;
+        }
+        return result;
+    }
+
+    private boolean contains(int pos, String text) {
+        return searchable[pos * 3].contains(text)
+                || searchable[pos * 3 + 1].contains(text)
+                || searchable[pos * 3 + 2].contains(text);
+    }
+
+    private static String lower(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : "";
+    }
+
+    // ==================== TABLE UPDATES ====================
+
+    /**
+     * Turn shown into next with range removals and insertions instead of a
+     * clear-and-refill, so the TableView only touches rows that changed.
+     * Both lists are expected in position order; anything else (or a change
+     * touching most rows) falls back to setAll.
+     */
+    public static <T> void applyDiff(ObservableList<T> shown, List<T> next, ToIntFunction<T> position) {
+        if (shown.equals(next)) {
+            return;
+        }
+        if (shown.isEmpty() || next.isEmpty() || !isOrdered(shown, position)) {
+            shown.setAll(next);
+            return;
+        }
+
+        int i = 0;
+        int j = 0;
+        int edits = 0;
+        while (j < next.size()) {
+            T target = next.get(j);
+            int targetPos = position.applyAsInt(target);
+
+            // Drop the run of shown rows that sort before the next wanted row
+            int removeEnd = i;
+            while (removeEnd < shown.size() && position.applyAsInt(shown.get(removeEnd)) < targetPos) {
+                removeEnd++;
+            }
+            if (removeEnd > i) {
+                shown.remove(i, removeEnd);
+                edits++;
+            }
+
+            if (i < shown.size() && shown.get(i) == target) {
+                i++;
+                j++;
+                continue;
+            }
+
+            // Insert the run of wanted rows missing before the next shown row
+            int nextShownPos = i < shown.size() ? position.applyAsInt(shown.get(i)) : Integer.MAX_VALUE;
+            int insertEnd = j;
+            while (insertEnd < next.size() && position.applyAsInt(next.get(insertEnd)) < nextShownPos) {
+                insertEnd++;
+            }
+            if (insertEnd == j) {
+                // Same position, different object - replace it
+                shown.set(i, target);
+                insertEnd = j + 1;
+            } else {
+                shown.addAll(i, next.subList(j, insertEnd));
+            }
+            i += insertEnd - j;
+            j = insertEnd;
+            edits++;
+
+            if (edits > 64 && edits > next.size() / 4) {
+                shown.setAll(next);
+                return;
+            }
+        }
+        if (i < shown.size()) {
+            shown.remove(i, shown.size());
+        }
+    }
+
+    private static <T> boolean isOrdered(List<T> list, ToIntFunction<T> position) {
+        int last = -1;
+        for (T item : list) {
+            int pos = position.applyAsInt(item);
+            if (pos <= last) {
+                return false;
+            }
+            last = pos;
+        }
+        return true;
+    }
+
+    // ==================== MODEL ====================
+
+    /**
+     * Search text, category (null = all), low-stock threshold (-1 = off) and
+     * the product ids to limit to (null = all).
+     */
+    public static final class Query {
+        private final String text;
+        private final String category;
+        private final int lowStockBelow;
+        private final Set<Integer> onlyIds;
+
+        public Query(String text, String category, int lowStockBelow) {
+            this(text, category, lowStockBelow, null);
+        }
+
+        public Query(String text, String category, int lowStockBelow, Set<Integer> onlyIds) {
+            this.text = lower(text).trim();
+            this.category = category != null ? ProductCatalog.categoryKey(category) : null;
+            this.lowStockBelow = lowStockBelow;
+            this.onlyIds = onlyIds;
+        }
+    }
+
+    private static final class PostingList {
+        private int[] positions = new int[4];
+        private int size;
+
+        void add(int pos) {
+            // Positions arrive in order; a gram seen twice in one item is listed once
+            if (size > 0 && positions[size - 1] == pos) {
+                return;
+            }
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = pos;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.newfoundsoftware.pos;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * InventoryService - Stock levels and stock changes, without any UI
+ *
+ * Wraps StockLedger and LowStockIndex behind one thread-safe API. Stock
+ * deductions lock the products' product_stock rows for the check and the
+ * movement, so concurrent checkouts on any terminal cannot both pass the
+ * stock check and oversell.
+ */
+public final class InventoryService {
+
+    private static final Logger LOGGER = Logger.getLogger(InventoryService.class.getName());
+    private static final InventoryService INSTANCE = new InventoryService();
+
+    private static final String INVENTORY_QUERY =
+            "SELECT p.*, s.stock, s.capacity, s.reorder_point FROM products p " +
+            "LEFT JOIN current_stock s ON s.product_id = p.id ORDER BY p.id ASC";
+
+    private final ReservationService reservationService = ReservationService.getInstance();
+
+    private InventoryService() {
+    }
+
+    public static InventoryService getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== READ ====================
+
+    /**
+     * Every product with its stock, capacity and reorder point. Also resyncs LowStockIndex.
+     */
+    public List<SalesInventoryController.InventoryItem> loadInventory() throws SQLException {
+        StockLedger.ensureSchema();
+        List<SalesInventoryController.InventoryItem> items = new ArrayList<>();
+        List<LowStockIndex.StockLevel> levels = new ArrayList<>();
+        long loadStart = LowStockIndex.beginLoad();
+
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            // Default stock rows for new products, so the join below finds one for every product
+            StockLedger.ensureSnapshots(conn);
+            try (PreparedStatement ps = conn.prepareStatement(INVENTORY_QUERY);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int productId = rs.getInt("id");
+                    int stock = rs.getInt("stock");
+                    if (rs.wasNull()) {
+                        // Added since ensureSnapshots() ran
+                        StockLedger.ensureSnapshot(conn, productId);
+                        stock = StockLedger.currentStock(conn, productId);
+                    }
+                    int capacity = rs.getInt("capacity");
+                    if (rs.wasNull()) capacity = LowStockIndex.DEFAULT_CAPACITY;
+                    int reorderPoint = rs.getInt("reorder_point");
+                    if (rs.wasNull()) reorderPoint = LowStockIndex.DEFAULT_REORDER_POINT;
+
+                    items.add(new SalesInventoryController.InventoryItem(
+                        productId,
+                        rs.getString("description"),
+                        rs.getString("category"),
+                        stock,
+                        rs.getDouble("price"),
+                        rs.getString("status"),
+                        rs.getString("image_path"),
+                        capacity,
+                        reorderPoint
+                    ));
+                    levels.add(new LowStockIndex.StockLevel(productId, stock, capacity, reorderPoint));
+                }
+            }
+        }
+
+        // The full load doubles as a resync of the low-stock index
+        LowStockIndex.replaceAll(levels, loadStart);
+        LOGGER.info("Loaded " + items.size() + " inventory items");
+        return items;
+    }
+
+    /**
+     * Current stock; creates the default stock entry if the product has none.
+     */
+    public int getStock(int productId) throws SQLException {
+        return StockLedger.currentStock(productId);
+    }
+
+    /**
+     * Cached stock, capacity and reorder point, or null if the product is not known.
+     */
+    public LowStockIndex.StockLevel stockLevel(int productId) {
+        return LowStockIndex.get(productId);
+    }
+
+    /**
+     * Ids of products at or below their reorder point.
+     */
+    public Set<Integer> lowStockIds() {
+        return LowStockIndex.lowStockIds();
+    }
+
+    public List<StockLedger.Movement> history(int productId, int limit) throws SQLException {
+        return StockLedger.history(productId, limit);
+    }
+
+    // ==================== WRITE ====================
+
+    /**
+     * Take quantity units out for a sale. Returns false, changing nothing, if
+     * there is not enough stock besides what open carts have reserved.
+     */
+    public boolean deductStock(int productId, int quantity, String reference) throws SQLException {
+        reservationService.ensureSchema();
+        Deduction deduction;
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            conn.setAutoCommit(false);
+            try {
+                deduction = deductStock(conn, Map.of(productId, quantity), null, reference);
+                if (deduction.isTaken()) {
+                    conn.commit();
+                } else {
+                    conn.rollback();
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        LowStockIndex.onStockChanged(deduction.getStocks());
+        return deduction.isTaken();
+    }
+
+    /**
+     * Take stock for a sale (productId -> quantity) on the caller's connection
+     * and transaction. The products stay locked until the caller commits, so
+     * the check and the SALE movements cannot interleave with another
+     * terminal's checkout or cart reservation. Stock that other carts than
+     * cartId (null: any cart) have reserved is not available. If any
+     * product is short nothing is recorded; the caller should roll back.
+     * Pass getStocks() to LowStockIndex after committing.
+     */
+    Deduction deductStock(Connection conn, Map<Integer, Integer> quantities, String cartId, String reference)
+            throws SQLException {
+        StockLedger.lock(conn, quantities.keySet());
+        Map<Integer, Integer> heldByOthers = reservationService.heldByOthers(conn, cartId, quantities.keySet());
+        Map<Integer, Integer> shortages = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            int available = StockLedger.currentStock(conn, entry.getKey())
+                    - heldByOthers.getOrDefault(entry.getKey(), 0);
+            if (available < entry.getValue()) {
+                shortages.put(entry.getKey(), available);
+            }
+        }
+        if (!shortages.isEmpty()) {
+            return new Deduction(shortages, Collections.emptyMap());
+        }
+
+        Map<Integer, Integer> stocks = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            stocks.put(entry.getKey(), StockLedger.record(conn, entry.getKey(),
+                    StockLedger.MovementType.SALE, entry.getValue(), reference));
+        }
+        return new Deduction(Collections.emptyMap(), stocks);
+    }
+
+    /**
+     * Add delivered stock (a RECEIVE movement).
+     */
+    public void receiveStock(int productId, int quantity, String reference) throws SQLException {
+        StockLedger.record(productId, StockLedger.MovementType.RECEIVE, quantity, reference);
+    }
+
+    /**
+     * Set stock to a counted value (an ADJUST movement for the difference).
+     */
+    public void setCount(int productId, int count, String reference) throws SQLException {
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            conn.setAutoCommit(false);
+            try {
+                StockLedger.setCounts(conn, Map.of(productId, count), reference);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        LowStockIndex.onStockChanged(productId, count);
+    }
+
+    public void setLevels(int productId, int capacity, int reorderPoint) throws SQLException {
+        if (capacity <= 0 || reorderPoint < 0 || reorderPoint >= capacity) {
+            throw new IllegalArgumentException("Capacity must be positive and the reorder point must be below it");
+        }
+        StockLedger.setLevels(productId, capacity, reorderPoint);
+    }
+
+    // ==================== MODEL ====================
+
+    public static final class Deduction {
+        private final Map<Integer, Integer> shortages;
+        private final Map<Integer, Integer> stocks;
+
+        Deduction(Map<Integer, Integer> shortages, Map<Integer, Integer> stocks) {
+            this.shortages = shortages;
+            this.stocks = stocks;
+        }
+
+        public boolean isTaken() { return shortages.isEmpty(); }
+        /** Products that were short, productId -> what was available. */
+        public Map<Integer, Integer> getShortages() { return shortages; }
+        /** New stock of every product taken, productId -> stock; empty unless taken. */
+        public Map<Integer, Integer> getStocks() { return stocks; }
+    }
+}
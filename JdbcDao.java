@@ -1,92 +1,82 @@
 package com.newfoundsoftware.pos;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class JdbcDao {
 
-    private static final String DATABASE_URL = "jdbc:mysql://localhost:3306/posjavafxxx?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC";
-    private static final String DATABASE_USERNAME = "root";  
-    private static final String DATABASE_PASSWORD = "";      
+    private static final Logger LOGGER = Logger.getLogger(JdbcDao.class.getName());
 
-    private static final String SELECT_QUERY = "SELECT * FROM users WHERE username = ? AND password = ?";
+    private static final String DATABASE_URL = PosConfig.get("pos.db.url",
+            "jdbc:mysql://localhost:3306/posjavafxxx?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC&rewriteBatchedStatements=true");
+    private static final String DATABASE_USERNAME = PosConfig.get("pos.db.username", "root");
+    private static final String DATABASE_PASSWORD = PosConfig.get("pos.db.password", "");
+
+    // One pool per process - every JdbcDao instance shares it
+    private static final ConnectionPool POOL = new ConnectionPool(
+            DATABASE_URL, DATABASE_USERNAME, DATABASE_PASSWORD,
+            PosConfig.getInt("pos.db.poolSize", 8),
+            PosConfig.getLong("pos.db.poolTimeoutMs", 5000));
 
     public JdbcDao() {
         try {
             // Optional: load driver explicitly
             Class.forName("com.mysql.cj.jdbc.Driver");
         } catch (ClassNotFoundException e) {
-            System.err.println("MySQL Driver not found!");
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "MySQL driver not found", e);
         }
     }
 
     /**
-     * Validate username and password.
+     * Validate username and password against the stored hash.
      * Returns false if connection fails or user is invalid.
+     * Hashing is deliberately slow - do not call this on the FX thread.
      */
     public boolean validate(String username, String password) {
-        Connection connection = getConnection();
-        if (connection == null) {
-            System.err.println("Cannot validate user: Database connection is null!");
-            return false; // prevents NullPointerException
-        }
-
-        try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_QUERY)) {
-            preparedStatement.setString(1, username);
-            preparedStatement.setString(2, password);
-
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                return resultSet.next();
-            }
-
-        } catch (SQLException e) {
-            printSQLException(e);
-        } finally {
-            // Close connection explicitly
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                System.err.println("Failed to close the connection");
-            }
-        }
-
-        return false;
+        return CredentialService.getInstance().authenticate(this, username, password);
     }
 
     /**
-     * Get a database connection. Returns null if fails.
+     * Get a pooled database connection. Returns null if fails.
+     * Closing the connection returns it to the pool, so always close it.
+     * Statements run through it are timed by QueryProfiler unless pos.db.profile=false.
      */
     public Connection getConnection() {
         try {
-            Connection connection = DriverManager.getConnection(DATABASE_URL, DATABASE_USERNAME, DATABASE_PASSWORD);
-            System.out.println("Database connection successful!");
-            return connection;
+            Connection connection = POOL.borrow();
+            return QueryProfiler.isEnabled() ? QueryProfiler.wrap(connection) : connection;
         } catch (SQLException e) {
+            LOGGER.severe("Database connection failed");
             printSQLException(e);
-            System.err.println("Database connection failed!");
             return null;
         }
     }
 
     /**
-     * Print detailed SQL exceptions
+     * Open the pool's idle connections ahead of first use.
+     */
+    public void warmUpPool(int connections) throws SQLException {
+        POOL.warmUp(connections);
+    }
+
+    /**
+     * Number of connections currently borrowed and not yet closed.
+     */
+    public static int getBorrowedConnections() {
+        return POOL.getBorrowedCount();
+    }
+
+    /**
+     * Log detailed SQL exceptions (every exception in the chain, with its
+     * SQLState and vendor error code)
      */
     public static void printSQLException(SQLException ex) {
         for (Throwable e : ex) {
             if (e instanceof SQLException) {
-                e.printStackTrace(System.err);
-                System.err.println("SQLState: " + ((SQLException) e).getSQLState());
-                System.err.println("Error Code: " + ((SQLException) e).getErrorCode());
-                System.err.println("Message: " + e.getMessage());
-                Throwable t = e.getCause();
-                while (t != null) {
-                    System.err.println("Cause: " + t);
-                    t = t.getCause();
-                }
+                LOGGER.log(Level.SEVERE, "SQLState " + ((SQLException) e).getSQLState()
+                        + ", error code " + ((SQLException) e).getErrorCode() + ": " + e.getMessage(), e);
             }
         }
     }
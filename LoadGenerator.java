@@ -0,0 +1,413 @@
+package com.newfoundsoftware.pos;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LoadGenerator - Headless multi-terminal checkout soak test
+ *
+ * Simulates N tills ringing up random orders against the configured
+ * database through CheckoutService.checkout, the same call
+ * PaymentController makes. Reports
+ * throughput, latency percentiles, oversells and leaked pool connections,
+ * and exits with status 1 when an invariant breaks.
+ *
+ * Each terminal runs in its own JVM by default, like real tills, so
+ * nothing is shared between them but the database: no in-process locks,
+ * caches or connection pool can hide a missing database guarantee. Each
+ * child gets its own pos.terminal.id and reports back on stdout.
+ * --threads runs the terminals as threads of this JVM instead, which
+ * starts faster but shares this process's state.
+ *
+ * It WRITES to the database (stock counts, movements, sales rows), so
+ * point it at a test schema with -Dpos.db.url=... and pass --confirm.
+ *
+ * Usage: LoadGenerator --confirm [--terminals=8] [--seconds=30] [--products=20]
+ *                      [--stock=500] [--lines=3] [--thinkMs=0] [--threads]
+ */
+public class LoadGenerator {
+
+    private final int terminals;
+    private final long durationMillis;
+    private final int maxLines;
+    private final long thinkMillis;
+    private final int initialStock;
+    private final List<DashboardController.Product> products;
+
+    private final Map<Integer, AtomicInteger> soldUnits = new HashMap<>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger rejectedNoStock = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger childLeaks = new AtomicInteger();
+
+    LoadGenerator(int terminals, long durationMillis, int maxLines, long thinkMillis,
+                  int initialStock, List<DashboardController.Product> products) {
+        this.terminals = terminals;
+        this.durationMillis = durationMillis;
+        this.maxLines = maxLines;
+        this.thinkMillis = thinkMillis;
+        this.initialStock = initialStock;
+        this.products = products;
+        for (DashboardController.Product product : products) {
+            soldUnits.put(product.getId(), new AtomicInteger());
+        }
+    }
+
+    // ==================== RUN ====================
+
+    /**
+     * Reset stock, run every terminal for the configured time and check the results.
+     *
+     * @param processes one child JVM per terminal, rather than one thread
+     * @return true if every invariant held
+     */
+    boolean run(boolean processes) throws Exception {
+        resetStock();
+
+        long start = System.nanoTime();
+        List<Long> latencies = processes ? runProcesses() : runThreads();
+        return report(latencies, System.nanoTime() - start);
+    }
+
+    private List<Long> runThreads() throws Exception {
+        long deadline = System.currentTimeMillis() + durationMillis;
+        List<Future<long[]>> results = new ArrayList<>();
+        ExecutorService executor = PosExecutors.perTask("terminal", terminals);
+        try {
+            for (int t = 1; t <= terminals; t++) {
+                results.add(executor.submit(() -> runTerminal(deadline)));
+            }
+            List<Long> latencies = new ArrayList<>();
+            for (Future<long[]> result : results) {
+                for (long nanos : result.get()) {
+                    latencies.add(nanos);
+                }
+            }
+            return latencies;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Start one child JVM per terminal on the same classpath and settings,
+     * wait for them and add up what they report.
+     */
+    private List<Long> runProcesses() throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        StringBuilder productIds = new StringBuilder();
+        for (DashboardController.Product product : products) {
+            productIds.append(productIds.length() == 0 ? "" : ",").append(product.getId());
+        }
+
+        List<Process> children = new ArrayList<>();
+        List<Path> outputs = new ArrayList<>();
+        try {
+            for (int t = 1; t <= terminals; t++) {
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                for (String key : System.getProperties().stringPropertyNames()) {
+                    if (key.startsWith("pos.") && !key.equals("pos.terminal.id")) {
+                        command.add("-D" + key + "=" + System.getProperty(key));
+                    }
+                }
+                command.add("-Dpos.terminal.id=LOADTEST" + t);
+                command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+                        LoadGenerator.class.getName(), "--confirm", "--child",
+                        "--seconds=" + TimeUnit.MILLISECONDS.toSeconds(durationMillis),
+                        "--lines=" + maxLines, "--thinkMs=" + thinkMillis, "--productIds=" + productIds));
+                Path output = Files.createTempFile("loadtest-terminal" + t + "-", ".txt");
+                outputs.add(output);
+                children.add(new ProcessBuilder(command)
+                        .redirectOutput(output.toFile())
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start());
+            }
+
+            List<Long> latencies = new ArrayList<>();
+            for (int i = 0; i < children.size(); i++) {
+                int exit = children.get(i).waitFor();
+                if (exit != 0) {
+                    System.out.println("Terminal " + (i + 1) + " exited with status " + exit);
+                    errors.incrementAndGet();
+                }
+                readChildReport(outputs.get(i), latencies);
+            }
+            return latencies;
+        } finally {
+            for (Process child : children) {
+                child.destroyForcibly();
+            }
+            for (Path output : outputs) {
+                Files.deleteIfExists(output);
+            }
+        }
+    }
+
+    // What a child printed in childMain(): latency, sold, result lines
+    private void readChildReport(Path output, List<Long> latencies) throws IOException {
+        for (String line : Files.readAllLines(output)) {
+            String[] fields = line.split(" ");
+            switch (fields[0]) {
+                case "latency":
+                    latencies.add(Long.parseLong(fields[1]));
+                    break;
+                case "sold":
+                    soldUnits.get(Integer.parseInt(fields[1])).addAndGet(Integer.parseInt(fields[2]));
+                    break;
+                case "result":
+                    completed.addAndGet(Integer.parseInt(fields[1]));
+                    rejectedNoStock.addAndGet(Integer.parseInt(fields[2]));
+                    failed.addAndGet(Integer.parseInt(fields[3]));
+                    errors.addAndGet(Integer.parseInt(fields[4]));
+                    childLeaks.addAndGet(Integer.parseInt(fields[5]));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * One terminal of a process run: sell until the deadline, then print
+     * the results for the parent to collect.
+     */
+    private void runChild() throws InterruptedException {
+        long[] latencies = runTerminal(System.currentTimeMillis() + durationMillis);
+        StringBuilder report = new StringBuilder();
+        for (long nanos : latencies) {
+            report.append("latency ").append(nanos).append('\n');
+        }
+        for (Map.Entry<Integer, AtomicInteger> entry : soldUnits.entrySet()) {
+            report.append("sold ").append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        long waitUntil = System.currentTimeMillis() + 2000;
+        while (JdbcDao.getBorrowedConnections() > 0 && System.currentTimeMillis() < waitUntil) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        report.append("result ").append(completed.get()).append(' ').append(rejectedNoStock.get()).append(' ')
+                .append(failed.get()).append(' ').append(errors.get()).append(' ')
+                .append(JdbcDao.getBorrowedConnections()).append('\n');
+        System.out.print(report);
+        System.out.flush();
+    }
+
+    private long[] runTerminal(long deadline) {
+        long[] latencies = new long[1024];
+        int count = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        while (System.currentTimeMillis() < deadline) {
+            List<DashboardController.OrderItem> order = randomOrder(random);
+
+            long started = System.nanoTime();
+            try {
+                checkout(order);
+            } catch (RuntimeException e) {
+                errors.incrementAndGet();
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - started;
+
+            if (thinkMillis > 0) {
+                try {
+                    Thread.sleep(thinkMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    // Same call as PaymentController.handleConfirmPayment, paying the exact amount
+    private void checkout(List<DashboardController.OrderItem> order) {
+        CheckoutService checkoutService = CheckoutService.getInstance();
+        double amountDue = checkoutService.totals(order).getGrandTotal();
+        CheckoutService.CheckoutResult result = checkoutService.checkout(order, amountDue);
+
+        // A checkout takes the stock of all its lines or none
+        for (int i = 0; i < result.getDeductedLines(); i++) {
+            soldUnits.get(order.get(i).getProductId()).addAndGet(order.get(i).getQuantity());
+        }
+        switch (result.getStatus()) {
+            case COMPLETED:
+                completed.incrementAndGet();
+                break;
+            case INSUFFICIENT_STOCK:
+                rejectedNoStock.incrementAndGet();
+                break;
+            case FAILED:
+                failed.incrementAndGet();
+                break;
+            default:
+                errors.incrementAndGet();
+                break;
+        }
+    }
+
+    private List<DashboardController.OrderItem> randomOrder(ThreadLocalRandom random) {
+        int lines = 1 + random.nextInt(maxLines);
+        List<DashboardController.OrderItem> order = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            DashboardController.Product product = products.get(random.nextInt(products.size()));
+            int quantity = 1 + random.nextInt(3);
+            order.add(new DashboardController.OrderItem(product.getId(), product.getName(),
+                    product.getPrice(), quantity, product.getPrice() * quantity));
+        }
+        return order;
+    }
+
+    private void resetStock() throws SQLException {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (DashboardController.Product product : products) {
+            counts.put(product.getId(), initialStock);
+        }
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            conn.setAutoCommit(false);
+            try {
+                StockLedger.setCounts(conn, counts, "loadtest");
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        LowStockIndex.onStockChanged(counts);
+    }
+
+    // ==================== REPORT ====================
+
+    private boolean report(List<Long> latencies, long elapsedNanos) throws Exception {
+        latencies.sort(null);
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        int attempts = latencies.size();
+
+        System.out.println("==== Load test: " + terminals + " terminals, " + String.format("%.1f", seconds) + " s ====");
+        System.out.printf("Checkouts:      %d completed, %d out of stock, %d failed, %d errors%n",
+                completed.get(), rejectedNoStock.get(), failed.get(), errors.get());
+        System.out.printf("Throughput:     %.1f checkouts/s (%.1f attempts/s)%n",
+                completed.get() / seconds, attempts / seconds);
+        System.out.printf("Latency (ms):   p50 %.1f  p95 %.1f  p99 %.1f  max %.1f%n",
+                percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                percentile(latencies, 100));
+
+        boolean ok = true;
+
+        // Stock: what is left must equal what was loaded minus what was sold, and never below zero
+        int oversold = 0;
+        int mismatched = 0;
+        for (DashboardController.Product product : products) {
+            int sold = soldUnits.get(product.getId()).get();
+            int remaining = InventoryService.getInstance().getStock(product.getId());
+            if (remaining < 0 || sold > initialStock) {
+                oversold++;
+                System.out.printf("OVERSOLD:       %s sold %d of %d, stock now %d%n",
+                        product.getName(), sold, initialStock, remaining);
+            }
+            if (remaining != initialStock - sold) {
+                mismatched++;
+                System.out.printf("MISMATCH:       %s expected %d left, ledger says %d%n",
+                        product.getName(), initialStock - sold, remaining);
+            }
+        }
+        System.out.println("Oversold SKUs:  " + oversold);
+        ok &= oversold == 0 && mismatched == 0;
+
+        // Every borrowed connection must have been returned
+        long waitUntil = System.currentTimeMillis() + 2000;
+        while (JdbcDao.getBorrowedConnections() > 0 && System.currentTimeMillis() < waitUntil) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        int leaked = JdbcDao.getBorrowedConnections() + childLeaks.get();
+        System.out.println("Leaked conns:   " + leaked);
+        ok &= leaked == 0;
+        ok &= errors.get() == 0;
+
+        System.out.println(ok ? "RESULT:         PASS" : "RESULT:         FAIL");
+        return ok;
+    }
+
+    private static double percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) return 0;
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1))) / 1_000_000.0;
+    }
+
+    // ==================== MAIN ====================
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+        if (!options.containsKey("confirm")) {
+            System.err.println("LoadGenerator writes stock and sales rows to the configured database.");
+            System.err.println("Point -Dpos.db.url at a test schema and re-run with --confirm.");
+            System.exit(2);
+        }
+
+        int terminals = Integer.parseInt(options.getOrDefault("terminals", "8"));
+        long seconds = Long.parseLong(options.getOrDefault("seconds", "30"));
+        int productCount = Integer.parseInt(options.getOrDefault("products", "20"));
+        int stock = Integer.parseInt(options.getOrDefault("stock", "500"));
+        int lines = Integer.parseInt(options.getOrDefault("lines", "3"));
+        long thinkMs = Long.parseLong(options.getOrDefault("thinkMs", "0"));
+
+        List<DashboardController.Product> products = new ArrayList<>();
+        if (options.containsKey("child")) {
+            // The parent's products, by id, in its order
+            Map<Integer, DashboardController.Product> byId = new HashMap<>();
+            for (DashboardController.Product product : CatalogService.getInstance().reloadCatalog()) {
+                byId.put(product.getId(), product);
+            }
+            for (String id : options.getOrDefault("productIds", "").split(",")) {
+                DashboardController.Product product = byId.get(Integer.parseInt(id));
+                if (product == null) {
+                    System.err.println("Product " + id + " is not in the catalog.");
+                    System.exit(2);
+                }
+                products.add(product);
+            }
+            new LoadGenerator(1, TimeUnit.SECONDS.toMillis(seconds), lines, thinkMs, stock, products).runChild();
+            System.exit(0);
+        }
+        for (DashboardController.Product product : CatalogService.getInstance().reloadCatalog()) {
+            if (product.isAvailable() && products.size() < productCount) {
+                products.add(product);
+            }
+        }
+        if (products.isEmpty()) {
+            System.err.println("No active products to sell.");
+            System.exit(2);
+        }
+
+        boolean ok = new LoadGenerator(terminals, TimeUnit.SECONDS.toMillis(seconds), lines, thinkMs,
+                stock, products).run(!options.containsKey("threads"));
+        System.exit(ok ? 0 : 1);
+    }
+}
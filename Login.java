@@ -7,6 +7,9 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
  * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
@@ -18,6 +21,8 @@ import javafx.stage.Stage;
  */
 public class Login extends Application {
 
+    private static final Logger LOGGER = Logger.getLogger(Login.class.getName());
+
     @Override
     public void start(Stage primaryStage) throws Exception {
         try{
@@ -27,15 +32,19 @@ public class Login extends Application {
             primaryStage.setIconified(false);
             primaryStage.setScene(new Scene(parentRoot));
             primaryStage.show();
+            
+            // Warm DB pool, catalog and heavy screens while the user types
+            StartupOrchestrator.getInstance().warmUp();
         }catch(Exception ex){
-            System.err.println(ex.getMessage());
-            ex.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Could not start the application", ex);
             System.exit(0);
             
         }
     }
     
     public static void main(String[]args){
+        // Before anything logs, so no record goes to the synchronous console handler
+        PosLog.install();
         launch(args);
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -7,15 +7,20 @@ package com.newfoundsoftware.pos;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ResourceBundle;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
@@ -36,6 +41,10 @@ public class LoginController implements Initializable {
     private Label lblUsername;
     @FXML
     private Label lblPassword;
+    @FXML
+    private Button btnLogin;
+    
+    private static final Logger LOGGER = Logger.getLogger(LoginController.class.getName());
     /**
      * Initializes the controller class.
      */
@@ -46,8 +55,6 @@ public class LoginController implements Initializable {
     @FXML
     private void actionLogin(ActionEvent event) {
         Window owner = txtUsername.getScene().getWindow();
-        System.out.println(txtUsername.getText());
-        System.out.println(txtPassword.getText());
         
         if(txtUsername.getText().isEmpty()){
             showAlert(Alert.AlertType.ERROR, owner, "Please enter a valid username","Form error!");
@@ -61,37 +68,84 @@ public class LoginController implements Initializable {
         String username = txtUsername.getText();
         String password = txtPassword.getText();
         
+        // Hashing + DB lookup run off the FX thread so the form stays responsive
         JdbcDao jdbcDao = new JdbcDao();
-        boolean flag = jdbcDao.validate(username, password);
+        Task<Boolean> loginTask = new Task<>() {
+            @Override
+            protected Boolean call() {
+                return jdbcDao.validate(username, password);
+            }
+        };
+        setFormDisabled(true);
+        loginTask.setOnSucceeded(e -> {
+            setFormDisabled(false);
+            txtPassword.clear();
+            onLoginResult(loginTask.getValue(), username);
+        });
+        loginTask.setOnFailed(e -> {
+            setFormDisabled(false);
+            LOGGER.log(Level.SEVERE, "Login check failed", loginTask.getException());
+            infoBox("Please enter correct username and password", null,"Failed");
+        });
+        try {
+            PosExecutors.background().execute(loginTask);
+        } catch (RejectedExecutionException e) {
+            setFormDisabled(false);
+            LOGGER.log(Level.WARNING, "Login not started, background queue full", e);
+            infoBox("The system is busy, please try again", null, "Failed");
+        }
+    }
+    
+    private void onLoginResult(boolean flag, String username) {
         if(!flag){
             infoBox("Please enter correct username and password", null,"Failed");
         }else{
             infoBox("Login successful!", null, "Success");
-            try{
-                FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("/com/newfoundsoftware/pos/Dashboard.fxml"));
-                Parent root = fxmlLoader.load();
-                
-                // Get the controller and set username
-                DashboardController controller = (DashboardController) fxmlLoader.getController();
-                controller.setUsername(username);
-                
-                // Create the Dashboard stage
-                Stage dashboardStage = new Stage();
-                dashboardStage.setTitle("POS | Dashboard");
-                dashboardStage.setScene(new Scene(root));
-                
-                // IMPORTANT: Set to maximized BEFORE showing the stage
-                dashboardStage.setMaximized(true);
-                
-                // Show the Dashboard
-                dashboardStage.show();
-                
-                // Close the login window
-                ((Node)(event.getSource())).getScene().getWindow().hide();
-                
-            }catch(IOException ex){
-                ex.printStackTrace();
+            // Usually already parsed in the background while the login form was up
+            StartupOrchestrator.getInstance().takeDashboard().whenComplete((loader, error) ->
+                Platform.runLater(() -> showDashboard(loader, username)));
+        }
+    }
+    
+    private void showDashboard(FXMLLoader preloaded, String username) {
+        try{
+            FXMLLoader fxmlLoader = preloaded;
+            Parent root;
+            if (fxmlLoader != null) {
+                root = fxmlLoader.getRoot();
+            } else {
+                fxmlLoader = new FXMLLoader(getClass().getResource("/com/newfoundsoftware/pos/Dashboard.fxml"));
+                root = fxmlLoader.load();
             }
+            
+            // Get the controller and set username
+            DashboardController controller = (DashboardController) fxmlLoader.getController();
+            controller.setUsername(username);
+            
+            // Create the Dashboard stage
+            Stage dashboardStage = new Stage();
+            dashboardStage.setTitle("POS | Dashboard");
+            dashboardStage.setScene(new Scene(root));
+            
+            // IMPORTANT: Set to maximized BEFORE showing the stage
+            dashboardStage.setMaximized(true);
+            
+            // Show the Dashboard
+            dashboardStage.show();
+            
+            // Close the login window
+            txtUsername.getScene().getWindow().hide();
+            
+        }catch(IOException ex){
+            LOGGER.log(Level.SEVERE, "Failed to open dashboard", ex);
+        }
+    }
+    
+    private void setFormDisabled(boolean disabled) {
+        txtUsername.setDisable(disabled);
+        txtPassword.setDisable(disabled);
+        if (btnLogin != null) {
+            btnLogin.setDisable(disabled);
         }
     }
     
@@ -111,4 +165,4 @@ public class LoginController implements Initializable {
         alert.initOwner(owner);
         alert.show();
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
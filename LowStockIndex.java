@@ -0,0 +1,260 @@
+package com.newfoundsoftware.pos;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * LowStockIndex - Products at or below their reorder point
+ *
+ * Keeps every product's stock, capacity and reorder point in memory, plus
+ * the set of product ids that are currently low. Writers update it once
+ * their movements are committed, so listing low-stock products is a lookup
+ * of the k low ids rather than a scan of the whole catalog. When a product
+ * drops to its reorder point a ReorderAlert is queued for the inventory screen.
+ *
+ * A full load races with commits made while it reads, so each update is
+ * numbered: replaceAll() keeps a product's level if it changed after the
+ * load began (see beginLoad()) rather than going back to what was read.
+ *
+ * Products without their own capacity / reorder point use
+ * pos.stock.defaultCapacity (100) and pos.stock.defaultReorderPoint (10).
+ */
+public final class LowStockIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(LowStockIndex.class.getName());
+
+    public static final int DEFAULT_CAPACITY = PosConfig.getInt("pos.stock.defaultCapacity", 100);
+    public static final int DEFAULT_REORDER_POINT = PosConfig.getInt("pos.stock.defaultReorderPoint", 10);
+
+    private static final Map<Integer, StockLevel> LEVELS = new ConcurrentHashMap<>();
+    private static final Set<Integer> LOW = ConcurrentHashMap.newKeySet();
+    private static final Queue<ReorderAlert> ALERTS = new ConcurrentLinkedQueue<>();
+    private static volatile boolean loaded;
+    // Number of the last update, and per product the number of its last update; guarded by the class
+    private static long updates;
+    private static final Map<Integer, Long> UPDATED_AT = new ConcurrentHashMap<>();
+
+    private LowStockIndex() {
+    }
+
+    // ==================== LOADING ====================
+
+    /**
+     * Rebuild the index from the database.
+     */
+    public static void reload() throws SQLException {
+        StockLedger.ensureSchema();
+        List<StockLevel> levels = new ArrayList<>();
+        long loadStart = beginLoad();
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            String query = "SELECT product_id, stock, capacity, reorder_point FROM current_stock";
+            try (PreparedStatement ps = conn.prepareStatement(query);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    levels.add(StockLevel.from(rs));
+                }
+            }
+        }
+        replaceAll(levels, loadStart);
+    }
+
+    /**
+     * Call before reading levels for replaceAll(), and pass it what this returns.
+     */
+    public static synchronized long beginLoad() {
+        return updates;
+    }
+
+    /**
+     * Replace the index with levels read elsewhere (e.g. the inventory load).
+     * Products updated since loadStart keep their newer level. Products that
+     * are already low do not raise a new alert.
+     */
+    public static synchronized void replaceAll(Collection<StockLevel> levels, long loadStart) {
+        Set<Integer> ids = new HashSet<>();
+        for (StockLevel level : levels) {
+            ids.add(level.productId);
+            if (!updatedSince(level.productId, loadStart)) {
+                put(level, loaded);
+            }
+        }
+        LEVELS.keySet().removeIf(id -> !ids.contains(id) && !updatedSince(id, loadStart));
+        LOW.retainAll(LEVELS.keySet());
+        // Older updates are all reflected in what was just loaded
+        UPDATED_AT.values().removeIf(update -> update <= loadStart);
+        loaded = true;
+    }
+
+    private static boolean updatedSince(int productId, long loadStart) {
+        Long update = UPDATED_AT.get(productId);
+        return update != null && update > loadStart;
+    }
+
+    private static void ensureLoaded() {
+        if (loaded) return;
+        try {
+            reload();
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Could not load stock levels", e);
+        }
+    }
+
+    // ==================== UPDATES ====================
+
+    /**
+     * Called once a movement is committed, with the product's new stock.
+     */
+    public static synchronized void onStockChanged(int productId, int stock) {
+        StockLevel old = LEVELS.get(productId);
+        int capacity = old != null ? old.capacity : DEFAULT_CAPACITY;
+        int reorderPoint = old != null ? old.reorderPoint : DEFAULT_REORDER_POINT;
+        update(new StockLevel(productId, stock, capacity, reorderPoint));
+    }
+
+    /**
+     * onStockChanged() for several products (productId -> new stock).
+     */
+    public static synchronized void onStockChanged(Map<Integer, Integer> stocks) {
+        for (Map.Entry<Integer, Integer> entry : stocks.entrySet()) {
+            onStockChanged(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Called by StockLedger after a product's capacity or reorder point changed.
+     */
+    public static synchronized void onLevelsChanged(int productId, int capacity, int reorderPoint) {
+        StockLevel old = LEVELS.get(productId);
+        int stock = old != null ? old.stock : 0;
+        update(new StockLevel(productId, stock, capacity, reorderPoint));
+    }
+
+    // A committed change, numbered so a load that began before it does not undo it
+    private static void update(StockLevel level) {
+        UPDATED_AT.put(level.productId, ++updates);
+        put(level, true);
+    }
+
+    private static void put(StockLevel level, boolean alertOnDrop) {
+        LEVELS.put(level.productId, level);
+        if (level.isLow()) {
+            if (LOW.add(level.productId) && alertOnDrop) {
+                ALERTS.add(new ReorderAlert(level));
+                LOGGER.info("Product " + level.productId + " reached its reorder point ("
+                        + level.stock + " <= " + level.reorderPoint + ")");
+            }
+        } else {
+            LOW.remove(level.productId);
+        }
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Ids of products at or below their reorder point.
+     */
+    public static Set<Integer> lowStockIds() {
+        ensureLoaded();
+        return new HashSet<>(LOW);
+    }
+
+    public static int lowStockCount() {
+        ensureLoaded();
+        return LOW.size();
+    }
+
+    /**
+     * Stock level of a product, or null if it is not known.
+     */
+    public static StockLevel get(int productId) {
+        ensureLoaded();
+        return LEVELS.get(productId);
+    }
+
+    /**
+     * get() without loading the index first: null until it has been loaded.
+     */
+    public static StockLevel getIfLoaded(int productId) {
+        return LEVELS.get(productId);
+    }
+
+    /**
+     * Take every queued alert, oldest first.
+     */
+    public static List<ReorderAlert> drainAlerts() {
+        List<ReorderAlert> drained = new ArrayList<>();
+        ReorderAlert alert;
+        while ((alert = ALERTS.poll()) != null) {
+            drained.add(alert);
+        }
+        return drained;
+    }
+
+    // ==================== MODEL ====================
+
+    public static final class StockLevel {
+        private final int productId;
+        private final int stock;
+        private final int capacity;
+        private final int reorderPoint;
+
+        public StockLevel(int productId, int stock, int capacity, int reorderPoint) {
+            this.productId = productId;
+            this.stock = stock;
+            this.capacity = capacity;
+            this.reorderPoint = reorderPoint;
+        }
+
+        /**
+         * Read product_id, stock, capacity and reorder_point; NULL levels become the defaults.
+         */
+        static StockLevel from(ResultSet rs) throws SQLException {
+            int capacity = rs.getInt("capacity");
+            if (rs.wasNull()) capacity = DEFAULT_CAPACITY;
+            int reorderPoint = rs.getInt("reorder_point");
+            if (rs.wasNull()) reorderPoint = DEFAULT_REORDER_POINT;
+            return new StockLevel(rs.getInt("product_id"), rs.getInt("stock"), capacity, reorderPoint);
+        }
+
+        public int getProductId() { return productId; }
+        public int getStock() { return stock; }
+        public int getCapacity() { return capacity; }
+        public int getReorderPoint() { return reorderPoint; }
+
+        public boolean isLow() {
+            return stock <= reorderPoint;
+        }
+    }
+
+    public static final class ReorderAlert {
+        private final StockLevel level;
+        private final long raisedAt = System.currentTimeMillis();
+
+        ReorderAlert(StockLevel level) {
+            this.level = level;
+        }
+
+        public int getProductId() { return level.productId; }
+        public int getStock() { return level.stock; }
+        public int getReorderPoint() { return level.reorderPoint; }
+        /** Units needed to fill the product back up to capacity. */
+        public int getSuggestedQuantity() { return Math.max(0, level.capacity - level.stock); }
+        public long getRaisedAt() { return raisedAt; }
+    }
+}
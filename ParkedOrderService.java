@@ -0,0 +1,373 @@
+package com.newfoundsoftware.pos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * ParkedOrderService - Orders put aside so the terminal can serve the next customer
+ *
+ * A parked order is one parked_orders row: a label and totals for the list,
+ * plus the cart as a small binary record (product id, quantity and the
+ * price it was added at, per line). Parking keeps the cart's stock
+ * reservations; they run out with the usual TTL if the customer does not
+ * come back.
+ *
+ * Resuming locks the row (so two terminals cannot resume the same order),
+ * checks every line's price, status and free stock in one query, resets
+ * the cart's reservations and deletes the row in one transaction; if any
+ * of it fails the order stays parked. Parked orders are shared by all
+ * terminals on the database.
+ */
+public final class ParkedOrderService {
+
+    private static final Logger LOGGER = Logger.getLogger(ParkedOrderService.class.getName());
+    private static final ParkedOrderService INSTANCE = new ParkedOrderService();
+
+    private static final byte FORMAT_VERSION = 1;
+
+    // Price, status, stock and what other live carts hold, for every product in the cart
+    private static final String REVALIDATE_SQL =
+            "SELECT p.id, p.description, p.price, p.status, COALESCE(s.stock, 0) AS stock, " +
+            "(SELECT COALESCE(SUM(r.quantity), 0) FROM stock_reservations r " +
+            " WHERE r.product_id = p.id AND r.cart_id <> ? AND r.expires_at > ?) AS held " +
+            "FROM products p LEFT JOIN current_stock s ON s.product_id = p.id WHERE p.id IN (%s)";
+
+    private final ReservationService reservationService = ReservationService.getInstance();
+    private volatile boolean schemaReady;
+
+    private ParkedOrderService() {
+    }
+
+    public static ParkedOrderService getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== SCHEMA ====================
+
+    public void ensureSchema() throws SQLException {
+        if (schemaReady) return;
+        synchronized (this) {
+            if (schemaReady) return;
+            reservationService.ensureSchema();
+            try (Connection conn = connect();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS parked_orders (" +
+                        "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                        "label VARCHAR(64) NOT NULL, " +
+                        "cart_id CHAR(36) NOT NULL, " +
+                        "item_count INT NOT NULL, " +
+                        "sub_total DECIMAL(12,2) NOT NULL, " +
+                        "parked_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                        "cart VARBINARY(8192) NOT NULL)");
+            }
+            schemaReady = true;
+            LOGGER.info("Parked orders initialized");
+        }
+    }
+
+    // ==================== PARK ====================
+
+    /**
+     * Store the cart and return the parked order's id. The cart's reservations
+     * are extended so they outlive a short wait.
+     */
+    public long park(String label, String cartId, List<DashboardController.OrderItem> items)
+            throws SQLException {
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("Cannot park an empty order");
+        }
+        ensureSchema();
+        double subTotal = 0;
+        int itemCount = 0;
+        for (DashboardController.OrderItem item : items) {
+            subTotal += item.getTotal();
+            itemCount += item.getQuantity();
+        }
+
+        long id;
+        try (Connection conn = connect();
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT INTO parked_orders (label, cart_id, item_count, sub_total, cart) VALUES (?, ?, ?, ?, ?)",
+                     Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, label);
+            ps.setString(2, cartId);
+            ps.setInt(3, itemCount);
+            ps.setDouble(4, subTotal);
+            ps.setBytes(5, encode(items));
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                keys.next();
+                id = keys.getLong(1);
+            }
+        }
+        reservationService.touch(cartId);
+        LOGGER.info("Parked order " + id + " (" + label + ", " + items.size() + " lines)");
+        return id;
+    }
+
+    /**
+     * Parked orders, oldest first, without their carts.
+     */
+    public List<ParkedOrder> list() throws SQLException {
+        ensureSchema();
+        List<ParkedOrder> orders = new ArrayList<>();
+        try (Connection conn = connect();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT id, label, item_count, sub_total, parked_at FROM parked_orders ORDER BY id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                orders.add(new ParkedOrder(rs.getLong("id"), rs.getString("label"), rs.getInt("item_count"),
+                        rs.getDouble("sub_total"), rs.getTimestamp("parked_at").toLocalDateTime()));
+            }
+        }
+        return orders;
+    }
+
+    // ==================== RESUME ====================
+
+    /**
+     * Take a parked order back and revalidate it against the catalog: current
+     * prices, no inactive or deleted products, quantities cut to the stock
+     * left after other carts. The cart's reservations are set to what was
+     * resumed. Returns null if the order is gone (already resumed elsewhere).
+     */
+    public ResumedOrder resume(long id) throws SQLException {
+        ensureSchema();
+        try (Connection conn = connect()) {
+            conn.setAutoCommit(false);
+            try {
+                String cartId;
+                List<ParkedLine> parked;
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT cart_id, cart FROM parked_orders WHERE id = ? FOR UPDATE")) {
+                    ps.setLong(1, id);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) {
+                            conn.rollback();
+                            return null;
+                        }
+                        cartId = rs.getString("cart_id");
+                        parked = decode(rs.getBytes("cart"));
+                    }
+                }
+                List<Integer> productIds = new ArrayList<>(parked.size());
+                for (ParkedLine line : parked) {
+                    productIds.add(line.productId);
+                }
+                // Free stock cannot change between the check and hold() below
+                StockLedger.lock(conn, productIds);
+
+                ResumedOrder resumed = revalidate(conn, cartId, parked);
+                reservationService.hold(conn, cartId, resumed.held);
+                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM parked_orders WHERE id = ?")) {
+                    ps.setLong(1, id);
+                    ps.executeUpdate();
+                }
+                conn.commit();
+                return resumed;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Check the parked lines against the catalog, in one query, and build the resumed order.
+     */
+    private ResumedOrder revalidate(Connection conn, String cartId, List<ParkedLine> parked) throws SQLException {
+        Map<Integer, CatalogState> current = catalogStates(conn, cartId, parked);
+        List<DashboardController.OrderItem> items = new ArrayList<>();
+        List<String> changes = new ArrayList<>();
+        Map<Integer, Integer> held = new HashMap<>();
+        for (ParkedLine line : parked) {
+            CatalogState state = current.get(line.productId);
+            if (state == null) {
+                changes.add("Product #" + line.productId + " no longer exists - removed");
+                continue;
+            }
+            if (!"Active".equalsIgnoreCase(state.status)) {
+                changes.add(state.description + " is not available - removed");
+                continue;
+            }
+            int quantity = line.quantity;
+            if (quantity > state.free) {
+                if (state.free <= 0) {
+                    changes.add(state.description + " is out of stock - removed");
+                    continue;
+                }
+                changes.add(state.description + ": only " + state.free + " left (was " + quantity + ")");
+                quantity = state.free;
+            }
+            if (Math.abs(state.price - line.price) >= 0.005) {
+                changes.add(String.format("%s: price changed from ₱%.2f to ₱%.2f",
+                        state.description, line.price, state.price));
+            }
+            items.add(new DashboardController.OrderItem(line.productId, state.description, state.price,
+                    quantity, state.price * quantity));
+            held.put(line.productId, quantity);
+        }
+        return new ResumedOrder(cartId, items, changes, held);
+    }
+
+    private Map<Integer, CatalogState> catalogStates(Connection conn, String cartId, List<ParkedLine> lines)
+            throws SQLException {
+        Map<Integer, CatalogState> states = new HashMap<>();
+        if (lines.isEmpty()) return states;
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        try (PreparedStatement ps = conn.prepareStatement(String.format(REVALIDATE_SQL, placeholders))) {
+            ps.setString(1, cartId);
+            ps.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+            for (int i = 0; i < lines.size(); i++) {
+                ps.setInt(i + 3, lines.get(i).productId);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    states.put(rs.getInt("id"), new CatalogState(rs.getString("description"), rs.getDouble("price"),
+                            rs.getString("status"), rs.getInt("stock") - rs.getInt("held")));
+                }
+            }
+        }
+        return states;
+    }
+
+    // ==================== ENCODING ====================
+
+    /**
+     * version | line count | (product id, quantity, price) per line - 16 bytes a line.
+     * Descriptions are not stored; resume reads them back from the catalog.
+     */
+    static byte[] encode(List<DashboardController.OrderItem> items) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(5 + items.size() * 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(items.size());
+            for (DashboardController.OrderItem item : items) {
+                out.writeInt(item.getProductId());
+                out.writeInt(item.getQuantity());
+                out.writeDouble(item.getPrice());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen writing to memory
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<ParkedLine> decode(byte[] data) throws SQLException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new SQLException("Unknown parked cart format " + version);
+            }
+            int count = in.readInt();
+            List<ParkedLine> lines = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                lines.add(new ParkedLine(in.readInt(), in.readInt(), in.readDouble()));
+            }
+            return lines;
+        } catch (IOException e) {
+            throw new SQLException("Corrupt parked cart", e);
+        }
+    }
+
+    private static Connection connect() throws SQLException {
+        Connection conn = new JdbcDao().getConnection();
+        if (conn == null) {
+            throw new SQLException("Could not connect to database");
+        }
+        return conn;
+    }
+
+    // ==================== MODEL ====================
+
+    static final class ParkedLine {
+        final int productId;
+        final int quantity;
+        final double price;
+
+        ParkedLine(int productId, int quantity, double price) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.price = price;
+        }
+    }
+
+    private static final class CatalogState {
+        final String description;
+        final double price;
+        final String status;
+        final int free;
+
+        CatalogState(String description, double price, String status, int free) {
+            this.description = description;
+            this.price = price;
+            this.status = status;
+            this.free = free;
+        }
+    }
+
+    public static final class ParkedOrder {
+        private final long id;
+        private final String label;
+        private final int itemCount;
+        private final double subTotal;
+        private final LocalDateTime parkedAt;
+
+        ParkedOrder(long id, String label, int itemCount, double subTotal, LocalDateTime parkedAt) {
+            this.id = id;
+            this.label = label;
+            this.itemCount = itemCount;
+            this.subTotal = subTotal;
+            this.parkedAt = parkedAt;
+        }
+
+        public long getId() { return id; }
+        public String getLabel() { return label; }
+        public int getItemCount() { return itemCount; }
+        public double getSubTotal() { return subTotal; }
+        public LocalDateTime getParkedAt() { return parkedAt; }
+    }
+
+    public static final class ResumedOrder {
+        private final String cartId;
+        private final List<DashboardController.OrderItem> items;
+        private final List<String> changes;
+        // productId -> quantity, what the cart's reservations are set to
+        private final Map<Integer, Integer> held;
+
+        ResumedOrder(String cartId, List<DashboardController.OrderItem> items, List<String> changes,
+                     Map<Integer, Integer> held) {
+            this.cartId = cartId;
+            this.items = Collections.unmodifiableList(items);
+            this.changes = Collections.unmodifiableList(changes);
+            this.held = held;
+        }
+
+        /** The cart's reservation id, kept from when it was parked. */
+        public String getCartId() { return cartId; }
+        public List<DashboardController.OrderItem> getItems() { return items; }
+        /** What revalidation changed, one line each; empty if nothing did. */
+        public List<String> getChanges() { return changes; }
+    }
+}
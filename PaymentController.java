@@ -1,9 +1,8 @@
 package com.newfoundsoftware.pos;
 
 import javafx.scene.control.TextField;
-import com.lowagie.text.*;
-import com.lowagie.text.pdf.*;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
@@ -11,10 +10,15 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.event.ActionEvent;
 
-import java.io.*;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * PaymentController - Redesigned Flow
@@ -22,9 +26,10 @@ import java.util.Random;
  * Step 2: Enter Payment Amount
  * Step 3: Show Receipt
  */
-public class PaymentController {
+public class PaymentController implements ReusableController {
 
-    private static final double VAT_RATE = 0.12;
+    private static final Logger LOGGER = Logger.getLogger(PaymentController.class.getName());
+    private final CheckoutService checkoutService = CheckoutService.getInstance();
 
     // ========== STEP 1: INVOICE PANE ==========
     @FXML private VBox invoicePane;
@@ -68,7 +73,25 @@ public class PaymentController {
     private double change;
     private ObservableList<DashboardController.OrderItem> currentOrderItems;
     private DashboardController dashboardController;
+    private String cartId;
     private String invoiceNumber;
+    private Receipt receipt;
+
+    /**
+     * The cart whose stock reservations this payment turns into deductions.
+     * Its expiry is pushed out so the reservations outlast the payment screen.
+     */
+    public void setCartId(String cartId) {
+        this.cartId = cartId;
+        if (cartId == null) return;
+        PosExecutors.background().execute(() -> {
+            try {
+                ReservationService.getInstance().touch(cartId);
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Could not extend reservations for cart " + cartId, e);
+            }
+        });
+    }
 
     public void setDashboardController(DashboardController dashboardController) {
         this.dashboardController = dashboardController;
@@ -132,33 +155,54 @@ public class PaymentController {
 
     // ==================== PUBLIC SETTERS ====================
 
+    /**
+     * Clear the previous transaction before the cached screen is shown again.
+     */
+    @Override
+    public void reset() {
+        subTotal = 0;
+        vat = 0;
+        grandTotal = 0;
+        amountPaid = 0;
+        change = 0;
+        invoiceNumber = null;
+        receipt = null;
+        cartId = null;
+        currentOrderItems = null;
+        tableInvoiceItems.setItems(null);
+        tableReceiptItems.setItems(null);
+        txtAmountPaid.clear();
+        lblChangePreview.setText("₱0.00");
+    }
+
     public void setTotalAmount(double totalAmount) {
-        this.subTotal = totalAmount;
-        this.vat = totalAmount * VAT_RATE;
-        this.grandTotal = totalAmount + vat;
+        applyTotals(checkoutService.totals(totalAmount));
     }
 
     public void setOrderItems(ObservableList<DashboardController.OrderItem> orderItems) {
         this.currentOrderItems = orderItems;
         
         // Calculate totals from order items
-        this.subTotal = currentOrderItems.stream()
-                .mapToDouble(DashboardController.OrderItem::getTotal)
-                .sum();
-        this.vat = subTotal * VAT_RATE;
-        this.grandTotal = subTotal + vat;
+        applyTotals(checkoutService.totals(currentOrderItems));
 
         // Show invoice (Step 1)
         showInvoice();
     }
 
+    private void applyTotals(CheckoutService.Totals totals) {
+        this.subTotal = totals.getSubTotal();
+        this.vat = totals.getVat();
+        this.grandTotal = totals.getGrandTotal();
+    }
+
     // ==================== STEP 1: SHOW INVOICE ====================
 
     private void showInvoice() {
-        invoiceNumber = generateInvoiceNumber();
+        // The number comes from the checkout transaction, so an abandoned payment does not use one up
+        invoiceNumber = null;
         LocalDateTime now = LocalDateTime.now();
 
-        lblInvoiceNumber.setText("Invoice No: " + invoiceNumber);
+        lblInvoiceNumber.setText("Invoice No: (assigned on payment)");
         lblInvoiceDate.setText("Date: " + now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
 
         // Populate table
@@ -231,6 +275,9 @@ public class PaymentController {
 
     @FXML
     private void handleConfirmPayment(ActionEvent event) {
+        if (paymentPane.isDisabled()) {
+            return; // Already confirming
+        }
         try {
             // Validate amount
             if (txtAmountPaid.getText() == null || txtAmountPaid.getText().trim().isEmpty()) {
@@ -239,72 +286,70 @@ public class PaymentController {
             }
 
             amountPaid = Double.parseDouble(txtAmountPaid.getText().trim());
-
-            if (amountPaid < grandTotal) {
-                showAlert(Alert.AlertType.ERROR, "Insufficient Payment",
-                    String.format("Amount paid (₱%.2f) is less than total amount (₱%.2f)!",
-                        amountPaid, grandTotal));
-                txtAmountPaid.selectAll();
-                txtAmountPaid.requestFocus();
-                return;
-            }
-
-            change = amountPaid - grandTotal;
-
-            // Check and deduct stock
-            if (!checkAndDeductStock()) {
-                return;
-            }
-
-            // Add to sales report
-            if (currentOrderItems != null && !currentOrderItems.isEmpty()) {
-                SalesReportController.addSales(currentOrderItems);
-            }
-
-            // Save PDF receipt
-            saveReceiptPDF();
-
-            // Show receipt (Step 3)
-            showReceipt();
-
         } catch (NumberFormatException e) {
             showAlert(Alert.AlertType.ERROR, "Invalid Amount", "Please enter a valid amount!");
             txtAmountPaid.selectAll();
             txtAmountPaid.requestFocus();
+            return;
         }
-    }
 
-    private boolean checkAndDeductStock() {
-        // Check stock availability first
-        StringBuilder stockErrors = new StringBuilder();
-        boolean hasStockIssues = false;
-
-        for (DashboardController.OrderItem item : currentOrderItems) {
-            int currentStock = SalesInventoryController.getStock(item.getProductId());
-            if (currentStock < item.getQuantity()) {
-                hasStockIssues = true;
-                stockErrors.append("• ").append(item.getDescription())
-                          .append(" (Need: ").append(item.getQuantity())
-                          .append(", Available: ").append(currentStock).append(")\n");
+        // Validate payment, deduct stock and record the sale off the FX thread
+        List<DashboardController.OrderItem> items = new ArrayList<>(currentOrderItems);
+        double paidAmount = amountPaid;
+        String cart = cartId;
+        Task<CheckoutService.CheckoutResult> checkoutTask = new Task<>() {
+            @Override
+            protected CheckoutService.CheckoutResult call() {
+                return checkoutService.checkout(items, paidAmount, cart);
             }
+        };
+        paymentPane.setDisable(true);
+        checkoutTask.setOnSucceeded(e -> {
+            paymentPane.setDisable(false);
+            onCheckoutResult(checkoutTask.getValue());
+        });
+        checkoutTask.setOnFailed(e -> {
+            paymentPane.setDisable(false);
+            LOGGER.log(Level.SEVERE, "Checkout failed", checkoutTask.getException());
+            showAlert(Alert.AlertType.ERROR, "Checkout Failed", "The sale could not be completed. Please try again.");
+        });
+        try {
+            PosExecutors.background().execute(checkoutTask);
+        } catch (RejectedExecutionException e) {
+            // Nothing was recorded yet
+            paymentPane.setDisable(false);
+            LOGGER.log(Level.WARNING, "Checkout not started, background queue full", e);
+            showAlert(Alert.AlertType.ERROR, "System Busy", "The sale could not be started. Please try again.");
         }
+    }
 
-        if (hasStockIssues) {
-            showAlert(Alert.AlertType.ERROR, "Insufficient Stock",
-                "Cannot complete transaction. Insufficient stock:\n\n" + stockErrors.toString());
-            return false;
+    private void onCheckoutResult(CheckoutService.CheckoutResult result) {
+        switch (result.getStatus()) {
+            case INSUFFICIENT_PAYMENT:
+                showAlert(Alert.AlertType.ERROR, "Insufficient Payment", result.getMessage());
+                txtAmountPaid.selectAll();
+                txtAmountPaid.requestFocus();
+                return;
+            case INSUFFICIENT_STOCK:
+                showAlert(Alert.AlertType.ERROR, "Insufficient Stock",
+                    "Cannot complete transaction. Insufficient stock:\n\n" + result.getMessage());
+                return;
+            case FAILED:
+                showAlert(Alert.AlertType.ERROR, "Checkout Failed", result.getMessage());
+                return;
+            default:
+                break;
         }
 
-        // Deduct stock
-        for (DashboardController.OrderItem item : currentOrderItems) {
-            if (!SalesInventoryController.deductStock(item.getProductId(), item.getQuantity())) {
-                showAlert(Alert.AlertType.ERROR, "Stock Error",
-                    "Failed to update stock for: " + item.getDescription());
-                return false;
-            }
-        }
+        change = result.getChange();
+        receipt = result.getReceipt();
+        invoiceNumber = receipt.getInvoiceNumber();
 
-        return true;
+        // Print off the FX thread - the receipt is immutable; checkout has already archived it
+        EscPosPrinter.getInstance().printAsync(receipt);
+
+        // Show receipt (Step 3)
+        showReceipt();
     }
 
     // ==================== STEP 3: SHOW RECEIPT ====================
@@ -365,112 +410,8 @@ public class PaymentController {
         });
     }
 
-    // ==================== PDF GENERATION ====================
-
-    private void saveReceiptPDF() {
-        try {
-            File invoiceFolder = new File("invoices");
-            if (!invoiceFolder.exists()) invoiceFolder.mkdir();
-
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            File file = new File(invoiceFolder, "Receipt_" + invoiceNumber + "_" + timestamp + ".pdf");
-
-            Document document = new Document(new com.lowagie.text.Rectangle(250, 600), 10, 10, 10, 10);
-            PdfWriter.getInstance(document, new FileOutputStream(file));
-            document.open();
-
-            // Header
-            Font headerFont = new Font(Font.COURIER, 10, Font.BOLD);
-            Font textFont = new Font(Font.COURIER, 9);
-
-            Paragraph header = new Paragraph("SHEGLAM COSMETICS", headerFont);
-            header.setAlignment(Paragraph.ALIGN_CENTER);
-            document.add(header);
-
-            document.add(new Paragraph("Receipt No: " + invoiceNumber, textFont));
-            document.add(new Paragraph(LocalDateTime.now().format(
-                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")), textFont));
-            document.add(new Paragraph(" "));
-
-            // Items Table
-            PdfPTable table = new PdfPTable(4);
-            table.setWidths(new int[]{30, 100, 40, 40});
-            table.setWidthPercentage(100);
-
-            Font tableHeaderFont = new Font(Font.COURIER, 8, Font.BOLD);
-            table.addCell(makeTableCell("QTY", tableHeaderFont));
-            table.addCell(makeTableCell("ITEM", tableHeaderFont));
-            table.addCell(makeTableCell("PRICE", tableHeaderFont));
-            table.addCell(makeTableCell("TOTAL", tableHeaderFont));
-
-            Font tableFont = new Font(Font.COURIER, 8);
-            for (DashboardController.OrderItem item : currentOrderItems) {
-                table.addCell(makeTableCell(String.valueOf(item.getQuantity()), tableFont));
-                table.addCell(makeTableCell(item.getDescription(), tableFont));
-                table.addCell(makeTableCell(String.format("%.2f", item.getPrice()), tableFont));
-                table.addCell(makeTableCell(String.format("%.2f", item.getTotal()), tableFont));
-            }
-
-            document.add(table);
-            document.add(new Paragraph(" "));
-
-            // Totals
-            PdfPTable totalsTable = new PdfPTable(2);
-            totalsTable.setWidthPercentage(100);
-            totalsTable.setWidths(new int[]{70, 40});
-
-            totalsTable.addCell(makeLabelCell("SUB TOTAL:"));
-            totalsTable.addCell(makeValueCell(String.format("%.2f", subTotal)));
-
-            totalsTable.addCell(makeLabelCell("VAT (12%):"));
-            totalsTable.addCell(makeValueCell(String.format("%.2f", vat)));
-
-            totalsTable.addCell(makeLabelCell("GRAND TOTAL:"));
-            totalsTable.addCell(makeValueCell(String.format("%.2f", grandTotal)));
-
-            totalsTable.addCell(makeLabelCell("Amount Paid:"));
-            totalsTable.addCell(makeValueCell(String.format("%.2f", amountPaid)));
-
-            totalsTable.addCell(makeLabelCell("Change:"));
-            totalsTable.addCell(makeValueCell(String.format("%.2f", change)));
-
-            document.add(totalsTable);
-
-            document.close();
-            System.out.println("✓ Receipt saved: " + file.getAbsolutePath());
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("✗ Failed to save receipt PDF: " + e.getMessage());
-        }
-    }
-
-    private PdfPCell makeTableCell(String text, Font font) {
-        PdfPCell cell = new PdfPCell(new Phrase(text, font));
-        cell.setBorder(com.lowagie.text.Rectangle.BOX);
-        cell.setHorizontalAlignment(PdfPCell.ALIGN_CENTER);
-        return cell;
-    }
-
-    private PdfPCell makeLabelCell(String text) {
-        PdfPCell cell = new PdfPCell(new Phrase(text, new Font(Font.COURIER, 9)));
-        cell.setBorder(com.lowagie.text.Rectangle.NO_BORDER);
-        return cell;
-    }
-
-    private PdfPCell makeValueCell(String text) {
-        PdfPCell cell = new PdfPCell(new Phrase(text, new Font(Font.COURIER, 9, Font.BOLD)));
-        cell.setHorizontalAlignment(PdfPCell.ALIGN_RIGHT);
-        cell.setBorder(com.lowagie.text.Rectangle.NO_BORDER);
-        return cell;
-    }
-
     // ==================== UTILITIES ====================
 
-    private String generateInvoiceNumber() {
-        return String.valueOf(100000 + new Random().nextInt(900000));
-    }
-
     private void showAlert(Alert.AlertType type, String title, String message) {
         Alert alert = new Alert(type);
         alert.setTitle(title);
@@ -478,4 +419,4 @@ public class PaymentController {
         alert.setContentText(message);
         alert.showAndWait();
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
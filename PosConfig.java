@@ -0,0 +1,82 @@
+package com.newfoundsoftware.pos;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * PosConfig - Tunable settings for the POS terminal
+ * Values come from pos.properties in the working directory and can be
+ * overridden per launch with -Dpos.some.key=value
+ */
+public final class PosConfig {
+
+    private static final Logger LOGGER = Logger.getLogger(PosConfig.class.getName());
+    private static final String CONFIG_FILE = "pos.properties";
+    private static final Properties PROPERTIES = load();
+
+    private PosConfig() {
+    }
+
+    private static Properties load() {
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(CONFIG_FILE)) {
+            props.load(in);
+        } catch (IOException e) {
+            // No config file - defaults apply
+            LOGGER.log(Level.FINE, "No " + CONFIG_FILE + " found, using defaults");
+        }
+        return props;
+    }
+
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = PROPERTIES.getProperty(key);
+        }
+        return (value != null && !value.trim().isEmpty()) ? value.trim() : defaultValue;
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Invalid number for " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(get(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Invalid number for " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(get(key, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Every key starting with prefix (file and -D overrides), mapped to its
+     * value, with the prefix stripped from the key.
+     */
+    public static Map<String, String> withPrefix(String prefix) {
+        Map<String, String> values = new TreeMap<>();
+        for (Properties source : new Properties[] {PROPERTIES, System.getProperties()}) {
+            for (String key : source.stringPropertyNames()) {
+                if (key.startsWith(prefix) && key.length() > prefix.length()) {
+                    values.put(key.substring(prefix.length()), get(key, ""));
+                }
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,75 @@
+package com.newfoundsoftware.pos;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * PosExecutors - Shared background threads for work that must stay off the FX thread
+ * (password hashing, database round trips, file I/O).
+ *
+ * background() is bounded: at most pos.background.threads threads, with
+ * up to pos.background.queue tasks waiting. Past that, a submit fails with
+ * RejectedExecutionException rather than starting ever more threads
+ * (each holding a database connection or a hash's memory).
+ */
+public final class PosExecutors {
+
+    private static final Logger LOGGER = Logger.getLogger(PosExecutors.class.getName());
+
+    private static final int BACKGROUND_THREADS = Math.max(1, PosConfig.getInt("pos.background.threads",
+            Math.max(4, Runtime.getRuntime().availableProcessors())));
+    private static final int BACKGROUND_QUEUE = Math.max(1, PosConfig.getInt("pos.background.queue", 256));
+    private static final ExecutorService BACKGROUND = newBackground();
+
+    private PosExecutors() {
+    }
+
+    private static ExecutorService newBackground() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(BACKGROUND_THREADS, BACKGROUND_THREADS,
+                30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(BACKGROUND_QUEUE), daemonFactory("pos-worker"),
+                (task, pool) -> {
+                    LOGGER.warning("Background queue full (" + BACKGROUND_QUEUE + " waiting), task rejected");
+                    throw new RejectedExecutionException("Background queue full");
+                });
+        // Idle threads exit, so an idle till holds none
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Executor for short background tasks. Threads are daemons so they never block shutdown.
+     */
+    public static ExecutorService background() {
+        return BACKGROUND;
+    }
+
+    /**
+     * One virtual thread per task when the runtime has them (JDK 21+),
+     * otherwise a fixed pool of fallbackThreads daemon threads.
+     */
+    public static ExecutorService perTask(String prefix, int fallbackThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(fallbackThreads, daemonFactory(prefix));
+        }
+    }
+
+    static ThreadFactory daemonFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
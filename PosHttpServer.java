@@ -0,0 +1,385 @@
+package com.newfoundsoftware.pos;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * PosHttpServer - Local HTTP API over the service layer
+ *
+ * Lets thin clients and kiosks on the LAN share this process's connection
+ * pool, catalog cache and stock locks instead of each talking to MySQL.
+ * Built on the JDK's com.sun.net.httpserver; requests run on virtual
+ * threads when the runtime has them.
+ *
+ *   GET  /api/health
+ *   GET  /api/catalog                         cached catalog (stock as of the last reload)
+ *   GET  /api/stock/{id}                      live stock, capacity and reorder point
+ *   GET  /api/stock/low                       ids at or below their reorder point
+ *   POST /api/checkout   items=12:2,15:1&paid=500.00
+ *   GET  /api/reports/summary?from=2024-01-01&to=2024-01-31&q=lip
+ *
+ * Request parameters are form-encoded (query string or body); responses are
+ * JSON. Prices always come from the catalog, never from the client.
+ *
+ * Settings: pos.api.host (127.0.0.1), pos.api.port (8085), pos.api.threads
+ * (fallback pool size without virtual threads) and pos.api.token - when set,
+ * every request must send it in the X-POS-Token header.
+ */
+public final class PosHttpServer {
+
+    private static final Logger LOGGER = Logger.getLogger(PosHttpServer.class.getName());
+    private static final PosHttpServer INSTANCE = new PosHttpServer();
+
+    private static final String HOST = PosConfig.get("pos.api.host", "127.0.0.1");
+    private static final int PORT = PosConfig.getInt("pos.api.port", 8085);
+    private static final int FALLBACK_THREADS = PosConfig.getInt("pos.api.threads", 16);
+    private static final String TOKEN = PosConfig.get("pos.api.token", "");
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private PosHttpServer() {
+    }
+
+    public static PosHttpServer getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== LIFECYCLE ====================
+
+    public synchronized void start() throws IOException {
+        if (server != null) return;
+        if (TOKEN.isEmpty() && !"127.0.0.1".equals(HOST) && !"localhost".equals(HOST)) {
+            LOGGER.warning("pos.api.host is " + HOST + " but pos.api.token is not set - the API is open to the network");
+        }
+
+        HttpServer created = HttpServer.create(new InetSocketAddress(HOST, PORT), 0);
+        created.createContext("/api/health", guarded(this::health));
+        created.createContext("/api/catalog", guarded(this::catalog));
+        created.createContext("/api/stock/", guarded(this::stock));
+        created.createContext("/api/checkout", guarded(this::checkout));
+        created.createContext("/api/reports/summary", guarded(this::reportSummary));
+        executor = PosExecutors.perTask("pos-api", FALLBACK_THREADS);
+        created.setExecutor(executor);
+        created.start();
+        server = created;
+        LOGGER.info("HTTP API listening on " + HOST + ":" + PORT);
+    }
+
+    public synchronized void stop() {
+        if (server == null) return;
+        server.stop(1);
+        executor.shutdown();
+        server = null;
+        executor = null;
+        LOGGER.info("HTTP API stopped");
+    }
+
+    public synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    // ==================== ENDPOINTS ====================
+
+    private Response health(HttpExchange exchange, Map<String, String> params) {
+        requireMethod(exchange, "GET");
+        return Response.ok("{\"status\":\"ok\",\"borrowedConnections\":" + JdbcDao.getBorrowedConnections() + "}");
+    }
+
+    private Response catalog(HttpExchange exchange, Map<String, String> params) {
+        requireMethod(exchange, "GET");
+        CatalogService catalogService = CatalogService.getInstance();
+        List<DashboardController.Product> products = catalogService.isCatalogLoaded()
+                ? catalogService.getCatalog() : catalogService.reloadCatalog();
+
+        StringBuilder json = new StringBuilder("[");
+        for (DashboardController.Product product : products) {
+            if (json.length() > 1) json.append(',');
+            json.append("{\"id\":").append(product.getId())
+                .append(",\"name\":").append(quote(product.getName()))
+                .append(",\"category\":").append(quote(product.getCategory()))
+                .append(",\"price\":").append(money(product.getPrice()))
+                .append(",\"stock\":").append(product.getStock())
+                .append(",\"available\":").append(product.isAvailable())
+                .append('}');
+        }
+        return Response.ok(json.append(']').toString());
+    }
+
+    private Response stock(HttpExchange exchange, Map<String, String> params) throws SQLException {
+        requireMethod(exchange, "GET");
+        InventoryService inventoryService = InventoryService.getInstance();
+        String tail = exchange.getRequestURI().getPath().substring("/api/stock/".length());
+
+        if (tail.equals("low")) {
+            StringBuilder json = new StringBuilder("[");
+            for (Integer id : inventoryService.lowStockIds()) {
+                if (json.length() > 1) json.append(',');
+                json.append(id);
+            }
+            return Response.ok(json.append(']').toString());
+        }
+
+        int productId = parseInt(tail, "product id");
+        int stock = inventoryService.getStock(productId);
+        LowStockIndex.StockLevel level = inventoryService.stockLevel(productId);
+        int capacity = level != null ? level.getCapacity() : LowStockIndex.DEFAULT_CAPACITY;
+        int reorderPoint = level != null ? level.getReorderPoint() : LowStockIndex.DEFAULT_REORDER_POINT;
+        return Response.ok("{\"id\":" + productId + ",\"stock\":" + stock + ",\"capacity\":" + capacity
+                + ",\"reorderPoint\":" + reorderPoint + ",\"low\":" + (stock <= reorderPoint) + "}");
+    }
+
+    private Response checkout(HttpExchange exchange, Map<String, String> params) {
+        requireMethod(exchange, "POST");
+        String itemsParam = params.get("items");
+        if (itemsParam == null || itemsParam.trim().isEmpty()) {
+            throw new IllegalArgumentException("items is required, e.g. items=12:2,15:1");
+        }
+
+        CatalogService catalogService = CatalogService.getInstance();
+        List<DashboardController.OrderItem> order = new ArrayList<>();
+        for (String line : itemsParam.split(",")) {
+            String[] parts = line.trim().split(":");
+            int productId = parseInt(parts[0], "product id");
+            int quantity = parts.length > 1 ? parseInt(parts[1], "quantity") : 1;
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive for product " + productId);
+            }
+            DashboardController.Product product = catalogService.findProduct(productId);
+            if (product == null || !product.isAvailable()) {
+                throw new IllegalArgumentException("Product " + productId + " is not for sale");
+            }
+            order.add(new DashboardController.OrderItem(productId, product.getName(),
+                    product.getPrice(), quantity, product.getPrice() * quantity));
+        }
+        double paid = parseDouble(params.get("paid"), "paid");
+
+        CheckoutService checkoutService = CheckoutService.getInstance();
+        CheckoutService.CheckoutResult result = checkoutService.checkout(order, paid);
+        CheckoutService.Totals totals = result.getTotals();
+
+        String json = "{\"status\":" + quote(result.getStatus().name())
+                + ",\"invoice\":" + (result.isCompleted() ? quote(result.getReceipt().getInvoiceNumber()) : "null")
+                + ",\"subTotal\":" + money(totals.getSubTotal())
+                + ",\"vat\":" + money(totals.getVat())
+                + ",\"grandTotal\":" + money(totals.getGrandTotal())
+                + ",\"paid\":" + money(result.getAmountPaid())
+                + ",\"change\":" + (result.isCompleted() ? money(result.getChange()) : "null")
+                + ",\"message\":" + quote(result.getMessage()) + "}";
+        return new Response(result.isCompleted() ? 200 : 409, json);
+    }
+
+    private Response reportSummary(HttpExchange exchange, Map<String, String> params) throws SQLException {
+        requireMethod(exchange, "GET");
+        LocalDate from = parseDate(params.get("from"), "from");
+        LocalDate to = parseDate(params.get("to"), "to");
+        if ((from == null) != (to == null)) {
+            throw new IllegalArgumentException("from and to must be given together");
+        }
+
+        ReportService reportService = ReportService.getInstance();
+        List<SalesReportController.SalesItem> source = from != null && !reportService.isInMemory(from)
+                ? reportService.loadRange(from, to) : reportService.recentSales();
+        ReportService.Summary summary = reportService.summarize(
+                reportService.filter(source, from, to, params.get("q")));
+        return Response.ok("{\"totalSales\":" + money(summary.getTotalSales())
+                + ",\"totalItems\":" + summary.getTotalItems()
+                + ",\"transactions\":" + summary.getTransactions() + "}");
+    }
+
+    // ==================== PLUMBING ====================
+
+    /**
+     * Wrap an endpoint with the token check, parameter parsing and error mapping.
+     */
+    private HttpHandler guarded(Endpoint endpoint) {
+        return exchange -> {
+            Response response;
+            try {
+                if (!TOKEN.isEmpty() && !TOKEN.equals(exchange.getRequestHeaders().getFirst("X-POS-Token"))) {
+                    response = Response.error(401, "Missing or wrong X-POS-Token");
+                } else {
+                    response = endpoint.handle(exchange, readParams(exchange));
+                }
+            } catch (MethodNotAllowed e) {
+                response = Response.error(405, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                response = Response.error(400, e.getMessage());
+            } catch (SQLException e) {
+                LOGGER.log(Level.SEVERE, "Database error serving " + exchange.getRequestURI(), e);
+                response = Response.error(503, "Database unavailable");
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Error serving " + exchange.getRequestURI(), e);
+                response = Response.error(500, "Internal error");
+            }
+            send(exchange, response);
+        };
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        if ("POST".equals(exchange.getRequestMethod())) {
+            try (InputStream in = exchange.getRequestBody()) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, read);
+                    if (body.size() > MAX_BODY_BYTES) {
+                        throw new IllegalArgumentException("Request body too large");
+                    }
+                }
+                parseForm(body.toString(StandardCharsets.UTF_8.name()), params);
+            }
+        }
+        return params;
+    }
+
+    private static void parseForm(String form, Map<String, String> into) {
+        if (form == null || form.isEmpty()) return;
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            into.put(key, value);
+        }
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!method.equals(exchange.getRequestMethod())) {
+            throw new MethodNotAllowed(method + " required");
+        }
+    }
+
+    private static int parseInt(String text, String name) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + text);
+        }
+    }
+
+    private static double parseDouble(String text, String name) {
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + text);
+        }
+    }
+
+    private static LocalDate parseDate(String text, String name) {
+        if (text == null || text.isEmpty()) return null;
+        try {
+            return LocalDate.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid " + name + " date: " + text);
+        }
+    }
+
+    private static String money(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    static String quote(String text) {
+        if (text == null) return "null";
+        StringBuilder json = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    @FunctionalInterface
+    private interface Endpoint {
+        Response handle(HttpExchange exchange, Map<String, String> params) throws Exception;
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response ok(String body) {
+            return new Response(200, body);
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, "{\"error\":" + quote(message) + "}");
+        }
+    }
+
+    private static final class MethodNotAllowed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MethodNotAllowed(String message) {
+            super(message);
+        }
+    }
+
+    // ==================== MAIN ====================
+
+    /**
+     * Run the API headless, without the JavaFX client.
+     */
+    public static void main(String[] args) throws Exception {
+        StockLedger.ensureSchema();
+        StockLedger.startCompaction();
+        ReportService.getInstance().ensureSchema();
+        ReportService.getInstance().reloadRecent();
+        LowStockIndex.reload();
+        CatalogService.getInstance().reloadCatalog();
+
+        PosHttpServer api = getInstance();
+        api.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(api::stop, "pos-api-shutdown"));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,315 @@
+package com.newfoundsoftware.pos;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * PosLog - Asynchronous, structured output for java.util.logging
+ *
+ * install() replaces the root logger's console handler, which writes to
+ * stderr on the calling thread (often the FX thread), with this handler.
+ * Logging a record only puts it in a fixed-size ring buffer; one daemon
+ * thread formats and writes the records. If the buffer is full the record
+ * is dropped and counted rather than blocking the caller; the count is
+ * written as a warning once there is room again.
+ *
+ * Each record is one logfmt line (ts, level, sub, thread, msg, error) in
+ * pos.log.dir/pos.log, rolled over to pos.log.1 ... pos.log.N at
+ * pos.log.maxBytes.
+ *
+ * Settings, where "subsystem" is the simple class name (e.g. JdbcDao):
+ *   pos.log.level=INFO                overall level
+ *   pos.log.level.<subsystem>=FINE     level for one subsystem
+ *   pos.log.sample.<subsystem>=10      keep 1 in 10 records below WARNING
+ *   pos.log.console=false             also echo the lines to stderr
+ */
+public final class PosLog extends Handler {
+
+    private static final String PACKAGE = "com.newfoundsoftware.pos.";
+    private static final String FILE_NAME = "pos.log";
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final int BUFFER_SIZE = PosConfig.getInt("pos.log.bufferSize", 8192);
+    private static final Path DIRECTORY = Paths.get(PosConfig.get("pos.log.dir", "logs"));
+    private static final long MAX_BYTES = PosConfig.getLong("pos.log.maxBytes", 10L * 1024 * 1024);
+    private static final int FILES = Math.max(1, PosConfig.getInt("pos.log.files", 5));
+    private static final boolean CONSOLE = PosConfig.getBoolean("pos.log.console", false);
+
+    // JUL only holds loggers weakly; a collected logger would lose its configured level
+    private static final List<Logger> CONFIGURED = new ArrayList<>();
+    private static PosLog installed;
+    // Queued by close() behind everything already buffered: the writer stops when it reaches it
+    private static final Entry END = new Entry(null, null, null);
+
+    private final ArrayBlockingQueue<Entry> ring = new ArrayBlockingQueue<>(BUFFER_SIZE);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Map<String, Integer> sampleEvery = new HashMap<>();
+    private final Map<String, AtomicLong> sampleCounters = new ConcurrentHashMap<>();
+    private final SimpleFormatter messageFormatter = new SimpleFormatter();
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    // Writer thread only
+    private Writer out;
+    private long fileBytes;
+
+    private PosLog() {
+        for (Map.Entry<String, String> entry : PosConfig.withPrefix("pos.log.sample.").entrySet()) {
+            try {
+                int every = Integer.parseInt(entry.getValue());
+                if (every > 1) {
+                    sampleEvery.put(entry.getKey(), every);
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid pos.log.sample." + entry.getKey() + ": " + entry.getValue());
+            }
+        }
+        setLevel(Level.ALL);
+        writerThread = new Thread(this::drain, "log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Route all logging through the asynchronous handler. Call once, first
+     * thing at startup; later calls do nothing.
+     */
+    public static synchronized void install() {
+        if (installed != null) return;
+        Logger root = Logger.getLogger("");
+        for (Handler handler : root.getHandlers()) {
+            root.removeHandler(handler);
+        }
+        root.setLevel(parseLevel("pos.log.level", PosConfig.get("pos.log.level", "INFO"), Level.INFO));
+        for (Map.Entry<String, String> entry : PosConfig.withPrefix("pos.log.level.").entrySet()) {
+            Logger logger = Logger.getLogger(PACKAGE + entry.getKey());
+            logger.setLevel(parseLevel("pos.log.level." + entry.getKey(), entry.getValue(), null));
+            CONFIGURED.add(logger);
+        }
+
+        installed = new PosLog();
+        root.addHandler(installed);
+        Runtime.getRuntime().addShutdownHook(new Thread(installed::close, "log-flush"));
+    }
+
+    private static Level parseLevel(String key, String value, Level fallback) {
+        try {
+            return Level.parse(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid " + key + ": " + value);
+            return fallback;
+        }
+    }
+
+    // ==================== PRODUCERS ====================
+
+    /**
+     * Called on the logging thread: sample, then hand the record to the
+     * writer. Never blocks and never does I/O.
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) return;
+        String subsystem = subsystem(record.getLoggerName());
+        if (record.getLevel().intValue() < Level.WARNING.intValue()) {
+            Integer every = sampleEvery.get(subsystem);
+            if (every != null
+                    && sampleCounters.computeIfAbsent(subsystem, k -> new AtomicLong()).getAndIncrement() % every != 0) {
+                return;
+            }
+        }
+        if (!ring.offer(new Entry(record, subsystem, Thread.currentThread().getName()))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * The writer flushes by itself whenever the buffer runs empty.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Write what is buffered and close the file. Waits up to a second.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            // Not an interrupt: that would abort a write in progress and could leave the file closed
+            if (ring.offer(END, 1, TimeUnit.SECONDS)) {
+                writerThread.join(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String subsystem(String loggerName) {
+        if (loggerName == null || loggerName.isEmpty()) return "root";
+        return loggerName.startsWith(PACKAGE) ? loggerName.substring(PACKAGE.length()) : loggerName;
+    }
+
+    // ==================== WRITER ====================
+
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(256);
+        try {
+            open();
+            boolean ended = false;
+            while (!ended) {
+                try {
+                    batch.add(ring.take());
+                } catch (InterruptedException e) {
+                    continue; // only close() stops the writer
+                }
+                ring.drainTo(batch, 255);
+                for (Entry entry : batch) {
+                    if (entry == END) {
+                        ended = true;
+                    } else {
+                        write(format(entry));
+                    }
+                }
+                batch.clear();
+
+                long lost = dropped.getAndSet(0);
+                if (lost > 0) {
+                    write(line(System.currentTimeMillis(), Level.WARNING, "PosLog", writerThread.getName(),
+                            "Log buffer full, dropped " + lost + " records", null));
+                }
+                if (ring.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Logging to " + DIRECTORY + " failed, log output is lost: " + e);
+        } finally {
+            try {
+                if (out != null) out.close();
+            } catch (IOException ignored) {
+                // Exiting anyway
+            }
+        }
+    }
+
+    private String format(Entry entry) {
+        LogRecord record = entry.record;
+        return line(record.getMillis(), record.getLevel(), entry.subsystem, entry.thread,
+                messageFormatter.formatMessage(record), record.getThrown());
+    }
+
+    private static String line(long millis, Level level, String subsystem, String thread, String message,
+                               Throwable thrown) {
+        StringBuilder line = new StringBuilder(160)
+                .append("ts=").append(TIME_FORMAT.format(Instant.ofEpochMilli(millis)))
+                .append(" level=").append(level.getName())
+                .append(" sub=").append(subsystem)
+                .append(" thread=");
+        quote(line, thread);
+        line.append(" msg=");
+        quote(line, message);
+        if (thrown != null) {
+            line.append(" error=");
+            quote(line, thrown.toString());
+            StringWriter stack = new StringWriter();
+            thrown.printStackTrace(new PrintWriter(stack));
+            line.append(" stack=");
+            quote(line, stack.toString());
+        }
+        return line.append('\n').toString();
+    }
+
+    // logfmt value: quoted, with quotes, backslashes and line breaks escaped, so every record is one line
+    private static void quote(StringBuilder line, String value) {
+        line.append('"');
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"': line.append("\\\""); break;
+                    case '\\': line.append("\\\\"); break;
+                    case '\n': line.append("\\n"); break;
+                    case '\r': break;
+                    case '\t': line.append("\\t"); break;
+                    default: line.append(c);
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    private void write(String line) throws IOException {
+        if (CONSOLE) {
+            System.err.print(line);
+        }
+        out.write(line);
+        fileBytes += line.length();
+        if (fileBytes >= MAX_BYTES) {
+            roll();
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(DIRECTORY);
+        Path file = DIRECTORY.resolve(FILE_NAME);
+        fileBytes = Files.exists(file) ? Files.size(file) : 0;
+        out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+    }
+
+    // pos.log -> pos.log.1 -> ... -> pos.log.N, the oldest falls off
+    private void roll() throws IOException {
+        out.close();
+        Path file = DIRECTORY.resolve(FILE_NAME);
+        Files.deleteIfExists(DIRECTORY.resolve(FILE_NAME + "." + FILES));
+        for (int i = FILES - 1; i >= 1; i--) {
+            Path older = DIRECTORY.resolve(FILE_NAME + "." + i);
+            if (Files.exists(older)) {
+                Files.move(older, DIRECTORY.resolve(FILE_NAME + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, DIRECTORY.resolve(FILE_NAME + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        open();
+    }
+
+    private static final class Entry {
+        private final LogRecord record;
+        private final String subsystem;
+        private final String thread;
+
+        Entry(LogRecord record, String subsystem, String thread) {
+            this.record = record;
+            this.subsystem = subsystem;
+            this.thread = thread;
+        }
+    }
+}
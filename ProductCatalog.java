@@ -0,0 +1,297 @@
+package com.newfoundsoftware.pos;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ProductCatalog - Process-wide snapshot of the sellable catalog
+ *
+ * Products and their stock are read in one joined query instead of one
+ * stock lookup per product. The snapshot is immutable; a reload swaps it
+ * in atomically so readers on other threads never see a half-built list.
+ *
+ * Every load from the database is also saved to pos.catalog.snapshotFile
+ * (see CatalogSnapshotFile), tagged with a stamp of the products table.
+ * At startup loadLocal() shows that file straight away; reconcile() then
+ * compares the stamp with the database and only reloads the catalog if the
+ * products changed - otherwise just the stock figures are refreshed.
+ *
+ * Each published snapshot comes with a category index: the products of
+ * every category and its item / in-stock counts, built once per publish,
+ * so the dashboard's category buttons come from the data and switching
+ * category is a map lookup.
+ */
+public final class ProductCatalog {
+
+    private static final Logger LOGGER = Logger.getLogger(ProductCatalog.class.getName());
+
+    private static final Path SNAPSHOT_FILE =
+            Paths.get(PosConfig.get("pos.catalog.snapshotFile", "cache/catalog.snapshot"));
+
+    // One row: changes whenever a product is added, removed or edited
+    private static final String STAMP_QUERY =
+            "SELECT COUNT(*) AS products, COALESCE(SUM(CRC32(CONCAT_WS('|', id, description, price, " +
+            "COALESCE(image_path, ''), COALESCE(category, ''), COALESCE(status, '')))), 0) AS hash FROM products";
+    private static final String STOCK_QUERY = "SELECT product_id, stock FROM current_stock";
+
+    private static final String CATALOG_QUERY =
+            "SELECT p.id, p.description, p.price, p.image_path, p.category, p.status, s.stock " +
+            "FROM products p LEFT JOIN current_stock s ON s.product_id = p.id " +
+            "ORDER BY p.category, p.description";
+
+    private static volatile List<DashboardController.Product> snapshot = Collections.emptyList();
+    private static volatile long loadedAt;
+    // Stamp of the products the snapshot was built from; 0 = unknown
+    private static volatile long stamp;
+    // Category key -> its products, in catalog order; rebuilt with every snapshot
+    private static volatile Map<String, List<DashboardController.Product>> byCategory = Collections.emptyMap();
+    private static volatile List<Category> categories = Collections.emptyList();
+    private static volatile Map<Integer, DashboardController.Product> byId = Collections.emptyMap();
+
+    /** Key for products without a category. */
+    public static final String UNCATEGORIZED = "UNCATEGORIZED";
+
+    private ProductCatalog() {
+    }
+
+    /**
+     * Reload the catalog from the database and publish it as the current snapshot.
+     * Leaves the previous snapshot in place if the database is unreachable.
+     */
+    public static List<DashboardController.Product> reload() {
+        JdbcDao jdbcDao = new JdbcDao();
+        long start = System.nanoTime();
+
+        try (Connection conn = jdbcDao.getConnection()) {
+            if (conn == null) {
+                LOGGER.warning("Could not connect to database");
+                return snapshot;
+            }
+
+            StockLedger.ensureSchema();
+            // Taken first, so an edit during the load shows up as a changed stamp next time
+            long loadStamp = readStamp(conn);
+            // Default stock rows for new products, so the join below finds one for every product
+            StockLedger.ensureSnapshots(conn);
+            List<DashboardController.Product> products = new ArrayList<>();
+            try (PreparedStatement ps = conn.prepareStatement(CATALOG_QUERY);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int productId = rs.getInt("id");
+                    int stock = rs.getInt("stock");
+                    if (rs.wasNull()) {
+                        // Added since ensureSnapshots() ran
+                        StockLedger.ensureSnapshot(conn, productId);
+                        stock = StockLedger.currentStock(conn, productId);
+                    }
+                    products.add(new DashboardController.Product(
+                        productId,
+                        rs.getString("description"),
+                        rs.getDouble("price"),
+                        rs.getString("image_path"),
+                        rs.getString("category"),
+                        rs.getString("status"),
+                        stock
+                    ));
+                }
+            }
+
+            publish(products, loadStamp);
+            LOGGER.info("Loaded " + products.size() + " products in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error loading products", e);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Show the catalog saved by the last database load, if there is one and
+     * nothing newer is loaded yet. Returns true if a catalog is available.
+     */
+    public static boolean loadLocal() {
+        if (isLoaded()) return true;
+        long start = System.nanoTime();
+        try {
+            CatalogSnapshotFile.Snapshot local = CatalogSnapshotFile.read(SNAPSHOT_FILE);
+            if (local == null) {
+                LOGGER.info("No usable catalog snapshot at " + SNAPSHOT_FILE);
+                return false;
+            }
+            synchronized (ProductCatalog.class) {
+                if (isLoaded()) return true;
+                swap(local.getProducts(), local.getStamp());
+            }
+            LOGGER.info("Showing " + local.getProducts().size() + " products from the local snapshot in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read catalog snapshot " + SNAPSHOT_FILE, e);
+            return false;
+        }
+    }
+
+    /**
+     * Bring the snapshot up to date with the database as cheaply as possible:
+     * a full reload if the products changed, otherwise only the stock figures.
+     * Leaves the snapshot as it is if the database is unreachable.
+     */
+    public static List<DashboardController.Product> reconcile() {
+        if (stamp == 0) {
+            return reload();
+        }
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                LOGGER.warning("Could not connect to database");
+                return snapshot;
+            }
+            long current = readStamp(conn);
+            if (current != stamp) {
+                LOGGER.info("Catalog changed since the snapshot was taken - reloading");
+                return reload();
+            }
+
+            StockLedger.ensureSchema();
+            Map<Integer, Integer> stock = new HashMap<>();
+            try (PreparedStatement ps = conn.prepareStatement(STOCK_QUERY);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    stock.put(rs.getInt("product_id"), rs.getInt("stock"));
+                }
+            }
+            List<DashboardController.Product> products = new ArrayList<>(snapshot.size());
+            for (DashboardController.Product p : snapshot) {
+                products.add(new DashboardController.Product(p.getId(), p.getName(), p.getPrice(), p.getImagePath(),
+                        p.getCategory(), p.getStatus(), stock.getOrDefault(p.getId(), p.getStock())));
+            }
+            publish(products, current);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error reconciling catalog", e);
+        }
+        return snapshot;
+    }
+
+    private static long readStamp(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(STAMP_QUERY);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            // Never 0, which means "unknown"
+            return rs.getLong("hash") * 31 + rs.getLong("products") + 1;
+        }
+    }
+
+    private static void publish(List<DashboardController.Product> products, long productsStamp) {
+        List<DashboardController.Product> published = Collections.unmodifiableList(products);
+        synchronized (ProductCatalog.class) {
+            swap(published, productsStamp);
+        }
+        try {
+            CatalogSnapshotFile.write(SNAPSHOT_FILE, productsStamp, published);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save catalog snapshot " + SNAPSHOT_FILE, e);
+        }
+    }
+
+    // Caller holds the class lock
+    private static void swap(List<DashboardController.Product> products, long productsStamp) {
+        Map<String, List<DashboardController.Product>> index = new TreeMap<>();
+        Map<Integer, DashboardController.Product> ids = new HashMap<>(products.size() * 2);
+        for (DashboardController.Product product : products) {
+            index.computeIfAbsent(categoryKey(product.getCategory()), k -> new ArrayList<>()).add(product);
+            ids.put(product.getId(), product);
+        }
+        List<Category> counts = new ArrayList<>(index.size());
+        for (Map.Entry<String, List<DashboardController.Product>> entry : index.entrySet()) {
+            int inStock = 0;
+            for (DashboardController.Product product : entry.getValue()) {
+                if (product.isAvailable() && product.getStock() > 0) inStock++;
+            }
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            counts.add(new Category(entry.getKey(), entry.getValue().size(), inStock));
+        }
+
+        snapshot = products;
+        byCategory = Collections.unmodifiableMap(index);
+        categories = Collections.unmodifiableList(counts);
+        byId = ids;
+        stamp = productsStamp;
+        loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * The key a product category is indexed under: trimmed and upper case,
+     * UNCATEGORIZED for none.
+     */
+    public static String categoryKey(String category) {
+        if (category == null || category.isBlank()) {
+            return UNCATEGORIZED;
+        }
+        return category.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Categories in the current snapshot, alphabetically, with their counts.
+     */
+    public static List<Category> getCategories() {
+        return categories;
+    }
+
+    /**
+     * Products of one category (any case), empty for an unknown category.
+     */
+    public static List<DashboardController.Product> inCategory(String category) {
+        return byCategory.getOrDefault(categoryKey(category), Collections.emptyList());
+    }
+
+    /**
+     * A product from the current snapshot, or null.
+     */
+    public static DashboardController.Product find(int productId) {
+        return byId.get(productId);
+    }
+
+    /**
+     * Current snapshot, possibly empty if nothing has been loaded yet.
+     */
+    public static List<DashboardController.Product> getSnapshot() {
+        return snapshot;
+    }
+
+    public static boolean isLoaded() {
+        return loadedAt > 0;
+    }
+
+    // ==================== MODEL ====================
+
+    public static final class Category {
+        private final String name;
+        private final int items;
+        private final int inStock;
+
+        Category(String name, int items, int inStock) {
+            this.name = name;
+            this.items = items;
+            this.inStock = inStock;
+        }
+
+        public String getName() { return name; }
+        public int getItems() { return items; }
+        /** Active products with stock left. */
+        public int getInStock() { return inStock; }
+    }
+}
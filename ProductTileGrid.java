@@ -0,0 +1,274 @@
+package com.newfoundsoftware.pos;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.StackPane;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontPosture;
+import javafx.scene.text.FontWeight;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * ProductTileGrid - Virtualized product grid for the Dashboard
+ *
+ * Products are chunked into rows and shown through a ListView, so only the
+ * rows on screen exist as nodes and row cells are recycled while scrolling.
+ * Each tile loads its image when it becomes visible. Arrow keys move the
+ * highlighted tile, Enter/Space activates it, and a click does the same.
+ */
+public class ProductTileGrid extends ListView<List<DashboardController.Product>> {
+
+    private static final double TILE_WIDTH = 200;
+    private static final double TILE_HEIGHT = 150;
+    private static final double TILE_GAP = 20;
+
+    private static final String TILE_STYLE = "-fx-border-color: black; -fx-border-width: 2px;";
+    private static final String TILE_FOCUSED_STYLE = "-fx-border-color: #92709A; -fx-border-width: 4px;";
+    private static final String NAME_STYLE_NORMAL = "-fx-background-color: rgba(220,190,255,0.7); -fx-text-fill: black;";
+    private static final String NAME_STYLE_WARNING = "-fx-background-color: rgba(255,165,0,0.7); -fx-text-fill: white;";
+    private static final String NAME_STYLE_ERROR = "-fx-background-color: rgba(255,0,0,0.7); -fx-text-fill: white;";
+
+    private List<DashboardController.Product> products = Collections.emptyList();
+    private int columns = 3;
+    private int focusedIndex = -1;
+    private Consumer<DashboardController.Product> onActivate = product -> { };
+
+    public ProductTileGrid() {
+        setCellFactory(list -> new RowCell());
+        setFixedCellSize(TILE_HEIGHT + TILE_GAP);
+        widthProperty().addListener((obs, oldVal, newVal) -> {
+            int fitted = Math.max(1, (int) ((newVal.doubleValue() - 40) / (TILE_WIDTH + TILE_GAP)));
+            if (fitted != columns) {
+                columns = fitted;
+                rebuildRows();
+            }
+        });
+        addEventFilter(KeyEvent.KEY_PRESSED, this::handleKey);
+        setPlaceholder(new Label("No products in this category"));
+    }
+
+    /**
+     * Show a new product list. Only the visible rows are built.
+     */
+    public void setProducts(List<DashboardController.Product> products) {
+        this.products = products != null ? products : Collections.emptyList();
+        focusedIndex = this.products.isEmpty() ? -1 : 0;
+        rebuildRows();
+        if (!getItems().isEmpty()) {
+            scrollTo(0);
+        }
+    }
+
+    /**
+     * Swap in refreshed data for the same view (e.g. new stock levels) without
+     * moving the highlight or scrolling back to the top.
+     */
+    public void updateProducts(List<DashboardController.Product> products) {
+        this.products = products != null ? products : Collections.emptyList();
+        focusedIndex = Math.min(focusedIndex, this.products.size() - 1);
+        rebuildRows();
+    }
+
+    /**
+     * Called when a tile is clicked or activated from the keyboard.
+     */
+    public void setOnActivate(Consumer<DashboardController.Product> onActivate) {
+        this.onActivate = onActivate != null ? onActivate : product -> { };
+    }
+
+    private void rebuildRows() {
+        List<List<DashboardController.Product>> rows = new ArrayList<>((products.size() + columns - 1) / columns);
+        for (int i = 0; i < products.size(); i += columns) {
+            rows.add(products.subList(i, Math.min(i + columns, products.size())));
+        }
+        getItems().setAll(rows);
+    }
+
+    // ==================== KEYBOARD ====================
+
+    private void handleKey(KeyEvent event) {
+        if (products.isEmpty()) return;
+        int next = focusedIndex;
+        switch (event.getCode()) {
+            case LEFT: next = focusedIndex - 1; break;
+            case RIGHT: next = focusedIndex + 1; break;
+            case UP: next = focusedIndex - columns; break;
+            case DOWN: next = focusedIndex + columns; break;
+            case HOME: next = 0; break;
+            case END: next = products.size() - 1; break;
+            case ENTER:
+            case SPACE:
+                if (focusedIndex >= 0) onActivate.accept(products.get(focusedIndex));
+                event.consume();
+                return;
+            default:
+                return; // let F-keys etc. reach the dashboard
+        }
+        event.consume();
+        if (next < 0 || next >= products.size()) return;
+
+        moveFocus(next);
+        scrollTo(Math.max(0, next / columns - 1));
+    }
+
+    private void moveFocus(int index) {
+        int oldRow = focusedIndex / columns;
+        focusedIndex = index;
+        refreshRow(oldRow);
+        refreshRow(index / columns);
+    }
+
+    private void refreshRow(int row) {
+        if (row >= 0 && row < getItems().size()) {
+            // Re-setting the same element makes just that row's cell redraw
+            getItems().set(row, getItems().get(row));
+        }
+    }
+
+    // ==================== CELLS ====================
+
+    private final class RowCell extends ListCell<List<DashboardController.Product>> {
+        private final HBox box = new HBox(TILE_GAP);
+        private final List<Tile> tiles = new ArrayList<>();
+
+        RowCell() {
+            box.setAlignment(Pos.CENTER_LEFT);
+            setStyle("-fx-background-color: transparent; -fx-padding: 0;");
+        }
+
+        @Override
+        protected void updateItem(List<DashboardController.Product> row, boolean empty) {
+            super.updateItem(row, empty);
+            if (empty || row == null) {
+                setGraphic(null);
+                return;
+            }
+            while (tiles.size() < row.size()) {
+                Tile tile = new Tile();
+                tiles.add(tile);
+                box.getChildren().add(tile);
+            }
+            int rowStart = getIndex() * columns;
+            for (int i = 0; i < tiles.size(); i++) {
+                Tile tile = tiles.get(i);
+                if (i < row.size()) {
+                    tile.bind(row.get(i), rowStart + i);
+                } else {
+                    tile.unbind();
+                }
+            }
+            setGraphic(box);
+        }
+    }
+
+    private final class Tile extends StackPane {
+        private final ImageView imageView = new ImageView();
+        private final Label priceLabel = new Label();
+        private final Label nameLabel = new Label();
+        private DashboardController.Product product;
+        private int index;
+        private CompletableFuture<Image> pendingImage;
+
+        Tile() {
+            setMinSize(TILE_WIDTH, TILE_HEIGHT);
+            setPrefSize(TILE_WIDTH, TILE_HEIGHT);
+            setMaxSize(TILE_WIDTH + 50, TILE_HEIGHT + 50);
+            setStyle(TILE_STYLE);
+
+            imageView.setFitWidth(TILE_WIDTH);
+            imageView.setFitHeight(TILE_HEIGHT);
+            imageView.setPreserveRatio(true);
+            imageView.setPickOnBounds(true);
+
+            priceLabel.setMaxWidth(Double.MAX_VALUE);
+            priceLabel.setStyle("-fx-background-color: rgba(0,0,0,0.7); -fx-text-fill: white;");
+            priceLabel.setFont(Font.font("System", FontWeight.BOLD, FontPosture.ITALIC, 12));
+            priceLabel.setPadding(new Insets(2, 5, 2, 5));
+            StackPane.setAlignment(priceLabel, Pos.BOTTOM_LEFT);
+
+            nameLabel.setMaxWidth(Double.MAX_VALUE);
+            nameLabel.setFont(Font.font("Arial Rounded MT Bold", 12));
+            nameLabel.setPadding(new Insets(2, 5, 2, 5));
+            StackPane.setAlignment(nameLabel, Pos.TOP_LEFT);
+
+            getChildren().addAll(imageView, priceLabel, nameLabel);
+            setOnMouseClicked(e -> {
+                if (product != null) {
+                    moveFocus(index);
+                    onActivate.accept(product);
+                }
+            });
+        }
+
+        void bind(DashboardController.Product product, int index) {
+            this.product = product;
+            this.index = index;
+            setVisible(true);
+            setStyle(index == focusedIndex ? TILE_FOCUSED_STYLE : TILE_STYLE);
+
+            // Load the image only now that the tile is on screen; drop the load for what it showed before
+            cancelPendingImage();
+            Image cached = ImageCache.getIfCached(product.getImagePath());
+            imageView.setImage(cached);
+            if (cached == null) {
+                CompletableFuture<Image> request = ImageCache.getAsync(product.getImagePath());
+                pendingImage = request;
+                request.thenAccept(image ->
+                    Platform.runLater(() -> {
+                        if (pendingImage == request) {
+                            pendingImage = null;
+                            imageView.setImage(image);
+                        }
+                    }));
+            }
+
+            // Check both status and stock
+            boolean available = product.isAvailable() && product.getStock() > 0;
+            imageView.setOpacity(available ? 1.0 : 0.4);
+
+            priceLabel.setText("₱" + product.getPrice());
+
+            // Show stock and availability
+            if (!product.isAvailable()) {
+                nameLabel.setText(product.getName() + " - NOT AVAILABLE");
+                nameLabel.setStyle(NAME_STYLE_ERROR);
+            } else if (product.getStock() == 0) {
+                nameLabel.setText(product.getName() + " - OUT OF STOCK");
+                nameLabel.setStyle(NAME_STYLE_ERROR);
+            } else if (product.getStock() < 10) {
+                nameLabel.setText(product.getName() + " - Only " + product.getStock() + " left");
+                nameLabel.setStyle(NAME_STYLE_WARNING);
+            } else {
+                nameLabel.setText(product.getName());
+                nameLabel.setStyle(NAME_STYLE_NORMAL);
+            }
+        }
+
+        void unbind() {
+            cancelPendingImage();
+            product = null;
+            imageView.setImage(null);
+            setVisible(false);
+        }
+
+        private void cancelPendingImage() {
+            if (pendingImage != null) {
+                pendingImage.cancel(false);
+                pendingImage = null;
+            }
+        }
+    }
+}
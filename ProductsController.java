@@ -1,6 +1,9 @@
 package com.newfoundsoftware.pos;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.concurrent.Task;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -8,12 +11,20 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.stage.FileChooser;
 
 import java.io.*;
 import java.net.URL;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,7 +32,7 @@ import java.util.logging.Logger;
  * ProductsController - Fixed for your current FXML
  * Simplified version matching your updated UI
  */
-public class ProductsController implements Initializable {
+public class ProductsController implements Initializable, ReusableController {
     
     private static final Logger LOGGER = Logger.getLogger(ProductsController.class.getName());
     
@@ -49,10 +60,16 @@ public class ProductsController implements Initializable {
     // Buttons
     @FXML private Button btnUpdate;
     @FXML private Button btnDelete;
+    @FXML private Button btnImport;
+    @FXML private ProgressBar pbImport;
+    @FXML private Label lblImportStatus;
+    
+    private final CatalogService catalogService = CatalogService.getInstance();
     
     // Data
     private ObservableList<Products> productList = FXCollections.observableArrayList();
     private Products selectedProduct = null;
+    private CompletableFuture<Image> previewImage;
     
     @Override
     public void initialize(URL url, ResourceBundle rb) {
@@ -66,6 +83,16 @@ public class ProductsController implements Initializable {
         btnDelete.setDisable(true);
     }
     
+    /**
+     * Called when the cached screen is reopened: drop the old selection and
+     * bring the table up to date in place.
+     */
+    @Override
+    public void reset() {
+        clearForm();
+        loadProducts();
+    }
+    
     // ==================== SETUP METHODS ====================
     
     private void setupTableColumns() {
@@ -124,6 +151,7 @@ public class ProductsController implements Initializable {
         });
         
         tableProducts.setItems(productList);
+        tableProducts.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
     }
     
     private void setupComboBoxes() {
@@ -137,9 +165,10 @@ public class ProductsController implements Initializable {
     }
     
     private void setupEventHandlers() {
-        // Table selection handler
-        tableProducts.getSelectionModel().selectedItemProperty().addListener(
-            (obs, oldVal, newVal) -> handleTableSelection(newVal)
+        // Table selection handler - the form shows the focused row, actions apply to all selected
+        tableProducts.getSelectionModel().getSelectedItems().addListener(
+            (ListChangeListener<Products>) change -> handleTableSelection(
+                tableProducts.getSelectionModel().getSelectedItem())
         );
         
         // Double-click to edit
@@ -154,139 +183,158 @@ public class ProductsController implements Initializable {
     // ==================== DATABASE OPERATIONS ====================
     
     private void loadProducts() {
-        productList.clear();
-        JdbcDao jdbcDao = new JdbcDao();
-        Connection conn = jdbcDao.getConnection();
-        
-        if (conn == null) {
-            showError("Database Error", "Could not connect to database");
-            return;
-        }
-        
-        String query = "SELECT * FROM products ORDER BY id DESC";
-        
-        try (PreparedStatement ps = conn.prepareStatement(query);
-             ResultSet rs = ps.executeQuery()) {
-            
-            while (rs.next()) {
-                Products product = new Products(
-                    rs.getInt("id"),
-                    rs.getString("barcode"),
-                    rs.getString("description"),
-                    rs.getDouble("price"),
-                    rs.getString("category"),
-                    rs.getString("image_path"),
-                    rs.getString("status")
-                );
-                productList.add(product);
-            }
-            
-            LOGGER.info("Loaded " + productList.size() + " products");
-            
+        try {
+            mergeProducts(catalogService.listProducts());
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, "Error loading products", e);
             showError("Database Error", "Failed to load products: " + e.getMessage());
         }
     }
     
+    /**
+     * Apply freshly loaded rows to productList in place. Rows that still exist
+     * keep their object (only changed properties fire), so the table does not
+     * rebuild unless rows were added, removed or reordered.
+     */
+    private void mergeProducts(List<Products> fresh) {
+        Map<Integer, Products> existingById = new HashMap<>();
+        for (Products product : productList) {
+            existingById.put(product.getId(), product);
+        }
+        
+        List<Products> merged = new ArrayList<>(fresh.size());
+        for (Products product : fresh) {
+            Products existing = existingById.get(product.getId());
+            if (existing == null) {
+                merged.add(product);
+                continue;
+            }
+            existing.setBarcode(product.getBarcode());
+            existing.setDescription(product.getDescription());
+            existing.setPrice(product.getPrice());
+            existing.setCategory(product.getCategory());
+            existing.setImagePath(product.getImagePath());
+            existing.setStatus(product.getStatus());
+            merged.add(existing);
+        }
+        
+        // Products.equals compares ids, so this is true when only field values changed
+        if (!merged.equals(productList)) {
+            productList.setAll(merged);
+        } else {
+            tableProducts.refresh(); // re-run the row styling for changed statuses
+        }
+    }
+    
     @FXML
     private void editEntry() {
-        if (selectedProduct == null) {
+        List<Products> targets = selectedProducts();
+        if (targets.isEmpty()) {
             showWarning("No Selection", "Please select a product to update");
             return;
         }
         
         if (!validateInput()) return;
         
+        String status = cbStatus.getValue();
+        
         // Confirm update
         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
         confirm.setTitle("Confirm Update");
-        confirm.setHeaderText("Update Product?");
-        confirm.setContentText("Are you sure you want to update: " + selectedProduct.getDescription() + "?");
+        confirm.setHeaderText(targets.size() == 1 ? "Update Product?" : "Update " + targets.size() + " Products?");
+        confirm.setContentText(targets.size() == 1
+                ? "Are you sure you want to update: " + targets.get(0).getDescription() + "?"
+                : "Set the status of " + targets.size() + " selected products to " + status + "?");
         
         Optional<ButtonType> result = confirm.showAndWait();
         if (result.isEmpty() || result.get() != ButtonType.OK) {
             return;
         }
         
-        JdbcDao jdbcDao = new JdbcDao();
-        Connection conn = jdbcDao.getConnection();
-        
-        if (conn == null) {
-            showError("Database Error", "Could not connect to database");
+        // ⭐ Only update status - keep other fields unchanged
+        int updated = runBulkChange(() -> catalogService.updateStatus(idsOf(targets), status));
+        if (updated < 0) {
             return;
         }
         
-        // ⭐ Only update status - keep other fields unchanged
-        String query = "UPDATE products SET status=? WHERE id=?";
-        
-        try (PreparedStatement ps = conn.prepareStatement(query)) {
-            ps.setString(1, cbStatus.getValue());
-            ps.setInt(2, selectedProduct.getId());
-            
-            int updateResult = ps.executeUpdate();
-            
-            if (updateResult > 0) {
-                showInfo("Success", "Product status updated successfully!");
-                loadProducts();
-                clearForm();
-            }
-            
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error updating product", e);
-            showError("Database Error", "Failed to update product: " + e.getMessage());
+        // Apply the change in place instead of reloading the whole table
+        for (Products product : targets) {
+            product.setStatus(status);
         }
+        tableProducts.refresh();
+        clearForm();
+        showInfo("Success", targets.size() == 1
+                ? "Product status updated successfully!"
+                : updated + " products set to " + status + ".");
     }
     
     @FXML
     private void deleteEntry() {
-        if (selectedProduct == null) {
+        List<Products> targets = selectedProducts();
+        if (targets.isEmpty()) {
             showWarning("No Selection", "Please select a product to delete");
             return;
         }
         
         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
         confirm.setTitle("Confirm Delete");
-        confirm.setHeaderText("Delete Product?");
-        confirm.setContentText("Are you sure you want to delete: " + selectedProduct.getDescription() + "?\n\nThis action cannot be undone!");
+        confirm.setHeaderText(targets.size() == 1 ? "Delete Product?" : "Delete " + targets.size() + " Products?");
+        confirm.setContentText((targets.size() == 1
+                ? "Are you sure you want to delete: " + targets.get(0).getDescription() + "?"
+                : "Are you sure you want to delete the " + targets.size() + " selected products?")
+                + "\n\nThis action cannot be undone!");
         
         Optional<ButtonType> result = confirm.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            deleteProduct(selectedProduct.getId());
+            deleteProducts(targets);
         }
     }
     
-    private void deleteProduct(int productId) {
-        JdbcDao jdbcDao = new JdbcDao();
-        Connection conn = jdbcDao.getConnection();
-        
-        if (conn == null) {
-            showError("Database Error", "Could not connect to database");
+    private void deleteProducts(List<Products> targets) {
+        int deleted = runBulkChange(() -> catalogService.deleteProducts(idsOf(targets)));
+        if (deleted < 0) {
             return;
         }
         
-        String query = "DELETE FROM products WHERE id=?";
-        
-        try (PreparedStatement ps = conn.prepareStatement(query)) {
-            ps.setInt(1, productId);
-            int result = ps.executeUpdate();
-            
-            if (result > 0) {
-                showInfo("Success", "Product deleted successfully!");
-                loadProducts();
-                clearForm();
-            }
-            
+        clearForm();
+        productList.removeAll(new HashSet<>(targets));
+        showInfo("Success", targets.size() == 1
+                ? "Product deleted successfully!"
+                : deleted + " products deleted.");
+    }
+    
+    /**
+     * Run a bulk change through CatalogService. Returns the number of rows
+     * affected, or -1 after the error has been shown.
+     */
+    private int runBulkChange(BulkChange change) {
+        try {
+            return change.run();
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error deleting product", e);
-            showError("Database Error", "Failed to delete product: " + e.getMessage());
+            LOGGER.log(Level.SEVERE, "Error running bulk product change", e);
+            showError("Database Error", "Failed to update products: " + e.getMessage());
+            return -1;
+        }
+    }
+    
+    private static List<Integer> idsOf(List<Products> products) {
+        List<Integer> ids = new ArrayList<>(products.size());
+        for (Products product : products) {
+            ids.add(product.getId());
         }
+        return ids;
+    }
+    
+    @FunctionalInterface
+    private interface BulkChange {
+        int run() throws SQLException;
     }
     
     // ==================== UI HELPERS ====================
     
     private void handleTableSelection(Products product) {
         selectedProduct = product;
+        int count = tableProducts.getSelectionModel().getSelectedItems().size();
         
         if (product != null) {
             btnUpdate.setDisable(false);
@@ -296,6 +344,12 @@ public class ProductsController implements Initializable {
             btnUpdate.setDisable(true);
             btnDelete.setDisable(true);
         }
+        btnUpdate.setText(count > 1 ? "Update Status (" + count + ")" : "Update Status");
+        btnDelete.setText(count > 1 ? "Delete (" + count + ")" : "Delete");
+    }
+    
+    private List<Products> selectedProducts() {
+        return new ArrayList<>(tableProducts.getSelectionModel().getSelectedItems());
     }
     
     private void loadProductToForm(Products product) {
@@ -305,22 +359,27 @@ public class ProductsController implements Initializable {
         etPrice.setText(String.format("%.2f", product.getPrice()));
         cbStatus.setValue(product.getStatus());
         
-        // Load image preview
-        if (product.getImagePath() != null && !product.getImagePath().isEmpty()) {
-            try {
-                InputStream imgStream = getClass().getResourceAsStream(product.getImagePath());
-                if (imgStream != null) {
-                    ivProduct.setImage(new Image(imgStream));
-                } else {
-                    LOGGER.warning("Image not found: " + product.getImagePath());
-                    ivProduct.setImage(null);
-                }
-            } catch (Exception e) {
-                LOGGER.log(Level.WARNING, "Failed to load product image", e);
-                ivProduct.setImage(null);
+        // Load image preview, decoding off the FX thread unless cached
+        cancelPreview();
+        CompletableFuture<Image> request = ImageCache.getAsync(product.getImagePath(), ImageStore.PREVIEW_SIZE);
+        if (request.isDone()) {
+            ivProduct.setImage(request.join());
+            return;
+        }
+        ivProduct.setImage(null);
+        previewImage = request;
+        request.thenAccept(image -> Platform.runLater(() -> {
+            if (previewImage == request) {
+                previewImage = null;
+                ivProduct.setImage(image);
             }
-        } else {
-            ivProduct.setImage(null);
+        }));
+    }
+    
+    private void cancelPreview() {
+        if (previewImage != null) {
+            previewImage.cancel(false);
+            previewImage = null;
         }
     }
     
@@ -330,6 +389,7 @@ public class ProductsController implements Initializable {
         etDescription.clear();
         etPrice.clear();
         cbStatus.setValue(Products.STATUS_ACTIVE);
+        cancelPreview();
         ivProduct.setImage(null);
         
         selectedProduct = null;
@@ -361,6 +421,79 @@ public class ProductsController implements Initializable {
         return true;
     }
     
+    // ==================== BULK IMPORT ====================
+    
+    @FXML
+    private void importCsv() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import Products");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+        File file = chooser.showOpenDialog(tableProducts.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        
+        // Size the progress bar by line count; cheap next to the import itself
+        long totalRows;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            totalRows = Math.max(1, reader.lines().count() - 1);
+        } catch (IOException e) {
+            showError("Import Error", "Could not read " + file.getName() + ": " + e.getMessage());
+            return;
+        }
+        
+        Task<BulkProductImporter.ImportResult> task = new Task<>() {
+            @Override
+            protected BulkProductImporter.ImportResult call() throws Exception {
+                return catalogService.importCsv(file.toPath(), progress -> {
+                    updateProgress(progress.getProcessed(), totalRows);
+                    updateMessage(String.format("%d / %d rows (%.0f rows/s)",
+                            progress.getProcessed(), totalRows, progress.getRowsPerSecond()));
+                });
+            }
+        };
+        
+        btnImport.setDisable(true);
+        pbImport.setVisible(true);
+        pbImport.progressProperty().bind(task.progressProperty());
+        lblImportStatus.textProperty().bind(task.messageProperty());
+        
+        task.setOnSucceeded(e -> {
+            finishImport();
+            BulkProductImporter.ImportResult result = task.getValue();
+            lblImportStatus.setText(String.format("Imported in %.1f s", result.getElapsedMillis() / 1000.0));
+            loadProducts();
+            String summary = "Inserted: " + result.getInserted() + "\nUpdated: " + result.getUpdated()
+                    + "\nRejected: " + result.getRejected();
+            if (result.getRejected() > 0) {
+                showWarning("Import Finished", summary + "\n\nRejected rows were written to:\n" + result.getRejectFile());
+            } else {
+                showInfo("Import Finished", summary);
+            }
+        });
+        task.setOnFailed(e -> {
+            finishImport();
+            lblImportStatus.setText("");
+            LOGGER.log(Level.SEVERE, "Product import failed", task.getException());
+            showError("Import Error", "Import failed: " + task.getException().getMessage());
+        });
+        
+        try {
+            PosExecutors.background().execute(task);
+        } catch (RejectedExecutionException e) {
+            finishImport();
+            LOGGER.log(Level.WARNING, "Import not started, background queue full", e);
+            showError("Import Error", "The system is busy, please try again.");
+        }
+    }
+    
+    private void finishImport() {
+        pbImport.progressProperty().unbind();
+        lblImportStatus.textProperty().unbind();
+        pbImport.setVisible(false);
+        btnImport.setDisable(false);
+    }
+    
     // ==================== ALERT DIALOGS ====================
     
     private void showError(String title, String message) {
@@ -386,4 +519,4 @@ public class ProductsController implements Initializable {
         alert.setContentText(message);
         alert.showAndWait();
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
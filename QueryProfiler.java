@@ -0,0 +1,597 @@
+package com.newfoundsoftware.pos;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * QueryProfiler - Per-statement timing for every pooled connection
+ *
+ * JdbcDao hands out connections wrapped in a proxy whose statements and
+ * result sets are proxied too. Each execution records the statement's
+ * fingerprint (SQL with literals and IN lists folded to ?), bind count,
+ * execution time, fetch time (time spent in ResultSet.next()) and rows.
+ *
+ * Kept in memory and shown in DiagnosticsView:
+ *   - totals per fingerprint
+ *   - the pos.db.profileTopN slowest single executions
+ *   - repeated statements: the same fingerprint run pos.db.repeatThreshold
+ *     times on one thread without a pause of pos.db.repeatGapMs in between,
+ *     i.e. within one action - the N+1 pattern of a query per row/line
+ *
+ * Executions slower than pos.db.slowQueryMs and every repeated statement
+ * are logged as warnings (so they end up in the log file); writeReport()
+ * saves all of it to pos.db.profileReport, also done on exit.
+ * pos.db.profile=false turns the wrapping off.
+ */
+public final class QueryProfiler {
+
+    private static final Logger LOGGER = Logger.getLogger(QueryProfiler.class.getName());
+
+    private static final boolean ENABLED = PosConfig.getBoolean("pos.db.profile", true);
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(PosConfig.getLong("pos.db.slowQueryMs", 200));
+    private static final int TOP_N = PosConfig.getInt("pos.db.profileTopN", 25);
+    private static final int REPEAT_THRESHOLD = PosConfig.getInt("pos.db.repeatThreshold", 20);
+    private static final long REPEAT_GAP_NANOS = TimeUnit.MILLISECONDS.toNanos(PosConfig.getLong("pos.db.repeatGapMs", 500));
+    private static final int MAX_REPEATS = 50;
+    private static final int MAX_FINGERPRINTS = 4096;
+    private static final Path REPORT_FILE = Paths.get(PosConfig.get("pos.db.profileReport", "logs/query-profile.txt"));
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final Map<String, String> FINGERPRINTS = new ConcurrentHashMap<>();
+    private static final Map<String, Totals> TOTALS = new ConcurrentHashMap<>();
+    // Min-heap on time, so the fastest of the kept executions is the one to evict
+    private static final PriorityQueue<Execution> SLOWEST =
+            new PriorityQueue<>(Comparator.comparingLong(Execution::getTotalNanos));
+    private static final Deque<RepeatedStatement> REPEATS = new ArrayDeque<>();
+    private static final ThreadLocal<Burst> BURSTS = ThreadLocal.withInitial(Burst::new);
+    private static volatile long since = System.currentTimeMillis();
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    writeReport(REPORT_FILE);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not write query profile " + REPORT_FILE, e);
+                }
+            }, "query-profile"));
+        }
+    }
+
+    private QueryProfiler() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * A connection that profiles everything run through it; closing it closes
+     * the wrapped one.
+     */
+    static Connection wrap(Connection connection) {
+        return proxy(Connection.class, new ConnectionHandler(connection));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object forward(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // ==================== PROXIES ====================
+
+    private static final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Profiled[" + target + "]";
+                default:
+                    break;
+            }
+            Object result = forward(target, method, args);
+            if (result instanceof Statement) {
+                // prepareStatement / prepareCall get their SQL now, createStatement per execute
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                @SuppressWarnings("unchecked")
+                Class<? extends Statement> type = (Class<? extends Statement>) method.getReturnType();
+                return proxy(type, new StatementHandler((Statement) result, sql));
+            }
+            return result;
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final String preparedSql;
+        private int binds;
+        private int batchBinds;
+        private Execution open;
+
+        StatementHandler(Statement target, String preparedSql) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            switch (name) {
+                case "addBatch":
+                    batchBinds += binds;
+                    binds = 0;
+                    break;
+                case "clearParameters":
+                    binds = 0;
+                    break;
+                case "clearBatch":
+                    batchBinds = 0;
+                    break;
+                case "close":
+                    finish();
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    // Parameter setters take (index, value...); Statement's own setters take one argument
+                    if (name.startsWith("set") && args != null && args.length >= 2) {
+                        binds++;
+                    }
+                    break;
+            }
+            return forward(target, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            finish();
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            boolean batch = method.getName().startsWith("executeBatch")
+                    || method.getName().startsWith("executeLargeBatch");
+            // Binds set since the last execute / addBatch; unchanged parameters are reused without a call
+            Execution execution = new Execution(fingerprint(sql), batch ? batchBinds : binds);
+            binds = 0;
+            if (batch) {
+                batchBinds = 0;
+            }
+
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = forward(target, method, args);
+            } finally {
+                execution.executeNanos = System.nanoTime() - start;
+            }
+            if (result instanceof ResultSet) {
+                // Recorded once the rows are read: on close of the result set or statement, or the next execute
+                open = execution;
+                return proxy(ResultSet.class, new ResultSetHandler((ResultSet) result, execution, this));
+            }
+            if (result instanceof Integer || result instanceof Long) {
+                execution.rows = ((Number) result).longValue();
+            } else if (result instanceof int[]) {
+                for (int count : (int[]) result) execution.rows += Math.max(count, 0);
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) execution.rows += Math.max(count, 0);
+            }
+            record(execution);
+            return result;
+        }
+
+        void finish(Execution execution) {
+            if (open == execution) {
+                open = null;
+                record(execution);
+            }
+        }
+
+        private void finish() {
+            if (open != null) {
+                finish(open);
+            }
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final Execution execution;
+        private final StatementHandler statement;
+
+        ResultSetHandler(ResultSet target, Execution execution, StatementHandler statement) {
+            this.target = target;
+            this.execution = execution;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next": {
+                    long start = System.nanoTime();
+                    Object more = forward(target, method, args);
+                    execution.fetchNanos += System.nanoTime() - start;
+                    if (Boolean.TRUE.equals(more)) execution.rows++;
+                    return more;
+                }
+                case "close":
+                    statement.finish(execution);
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            return forward(target, method, args);
+        }
+    }
+
+    // ==================== RECORDING ====================
+
+    private static void record(Execution execution) {
+        Totals totals = TOTALS.computeIfAbsent(execution.fingerprint, Totals::new);
+        totals.add(execution);
+
+        synchronized (SLOWEST) {
+            if (SLOWEST.size() < TOP_N) {
+                SLOWEST.add(execution);
+            } else if (execution.getTotalNanos() > SLOWEST.peek().getTotalNanos()) {
+                SLOWEST.poll();
+                SLOWEST.add(execution);
+            }
+        }
+        if (execution.getTotalNanos() >= SLOW_NANOS) {
+            LOGGER.warning("Slow query " + execution.getTotalMillis() + " ms (execute "
+                    + millis(execution.executeNanos) + ", fetch " + millis(execution.fetchNanos) + ", "
+                    + execution.rows + " rows, " + execution.binds + " binds): " + execution.fingerprint);
+        }
+        detectRepeats(execution);
+    }
+
+    private static void detectRepeats(Execution execution) {
+        Burst burst = BURSTS.get();
+        long now = System.nanoTime();
+        if (now - burst.lastNanos > REPEAT_GAP_NANOS) {
+            burst.counts.clear();
+            burst.flagged.clear();
+        }
+        burst.lastNanos = now;
+
+        int[] count = burst.counts.computeIfAbsent(execution.fingerprint, k -> new int[1]);
+        count[0]++;
+        RepeatedStatement flagged = burst.flagged.get(execution.fingerprint);
+        if (flagged != null) {
+            flagged.count = count[0];
+        } else if (count[0] == REPEAT_THRESHOLD) {
+            flagged = new RepeatedStatement(execution.fingerprint, callSite(), Thread.currentThread().getName(), count[0]);
+            burst.flagged.put(execution.fingerprint, flagged);
+            synchronized (REPEATS) {
+                REPEATS.addFirst(flagged);
+                if (REPEATS.size() > MAX_REPEATS) REPEATS.removeLast();
+            }
+            LOGGER.warning("Statement repeated " + count[0] + "+ times in one action at " + flagged.getSite()
+                    + ": " + execution.fingerprint);
+        }
+    }
+
+    // First frame outside the JDBC plumbing: the loop issuing the statements
+    private static String callSite() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(f -> f.getClassName().startsWith("com.newfoundsoftware.pos.")
+                        && !f.getClassName().startsWith(QueryProfiler.class.getName())
+                        && !f.getClassName().startsWith(ConnectionPool.class.getName()))
+                .findFirst()
+                .map(f -> f.getClassName().substring(f.getClassName().lastIndexOf('.') + 1)
+                        + "." + f.getMethodName() + ":" + f.getLineNumber())
+                .orElse("unknown"));
+    }
+
+    /**
+     * SQL with string and number literals replaced by ?, IN lists folded to
+     * IN (?...) and whitespace collapsed, so executions differing only in
+     * values or list length count as one statement.
+     */
+    static String fingerprint(String sql) {
+        if (sql == null) return "(no sql)";
+        String cached = FINGERPRINTS.get(sql);
+        if (cached != null) return cached;
+
+        StringBuilder out = new StringBuilder(sql.length());
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = i + 1;
+                while (end < sql.length()) {
+                    char d = sql.charAt(end);
+                    if (d == '\\') {
+                        end += 2;
+                    } else if (d == c && end + 1 < sql.length() && sql.charAt(end + 1) == c) {
+                        end += 2; // doubled quote inside the literal
+                    } else if (d == c) {
+                        break;
+                    } else {
+                        end++;
+                    }
+                }
+                out.append('?');
+                i = end + 1;
+            } else if (Character.isDigit(c) && (out.length() == 0 || !isWordChar(out.charAt(out.length() - 1)))) {
+                while (i < sql.length() && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+                out.append('?');
+            } else if (Character.isWhitespace(c)) {
+                if (out.length() > 0 && out.charAt(out.length() - 1) != ' ') out.append(' ');
+                i++;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        String fingerprint = out.toString().trim().replaceAll("(?i)\\bIN ?\\(\\?(?: ?, ?\\?)*\\)", "IN (?...)");
+        if (FINGERPRINTS.size() >= MAX_FINGERPRINTS) {
+            FINGERPRINTS.clear(); // Statements built by concatenation; keep the map from growing without bound
+        }
+        FINGERPRINTS.put(sql, fingerprint);
+        return fingerprint;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    // ==================== RESULTS ====================
+
+    /**
+     * Totals per statement, most total time first.
+     */
+    public static List<StatementTotals> totals() {
+        List<StatementTotals> rows = new ArrayList<>();
+        for (Totals totals : TOTALS.values()) {
+            rows.add(totals.snapshot());
+        }
+        rows.sort(Comparator.comparingDouble(StatementTotals::getTotalMillis).reversed());
+        return rows;
+    }
+
+    /**
+     * The slowest single executions, slowest first.
+     */
+    public static List<Execution> slowest() {
+        List<Execution> rows;
+        synchronized (SLOWEST) {
+            rows = new ArrayList<>(SLOWEST);
+        }
+        rows.sort(Comparator.comparingLong(Execution::getTotalNanos).reversed());
+        return rows;
+    }
+
+    /**
+     * Statements repeated within one action, newest first.
+     */
+    public static List<RepeatedStatement> repeats() {
+        synchronized (REPEATS) {
+            return new ArrayList<>(REPEATS);
+        }
+    }
+
+    /**
+     * Start collecting from scratch.
+     */
+    public static void reset() {
+        TOTALS.clear();
+        synchronized (SLOWEST) {
+            SLOWEST.clear();
+        }
+        synchronized (REPEATS) {
+            REPEATS.clear();
+        }
+        since = System.currentTimeMillis();
+    }
+
+    public static Path getReportFile() {
+        return REPORT_FILE;
+    }
+
+    /**
+     * Write the three tables as plain text.
+     */
+    public static void writeReport(Path file) throws IOException {
+        StringBuilder report = new StringBuilder();
+        report.append("Query profile ").append(TIME_FORMAT.format(LocalDateTime.now()))
+                .append(", collecting since ")
+                .append(TIME_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(since), ZoneId.systemDefault())))
+                .append("\n\n");
+
+        report.append("== Statements by total time ==\n");
+        report.append(String.format("%8s %10s %9s %9s %9s %10s %7s  %s%n",
+                "count", "total ms", "avg ms", "max ms", "fetch ms", "rows", "binds", "statement"));
+        for (StatementTotals row : totals()) {
+            report.append(String.format("%8d %10.1f %9.2f %9.2f %9.1f %10d %7d  %s%n", row.getCount(),
+                    row.getTotalMillis(), row.getAvgMillis(), row.getMaxMillis(), row.getFetchMillis(),
+                    row.getRows(), row.getBinds(), row.getStatement()));
+        }
+
+        report.append("\n== Slowest executions ==\n");
+        for (Execution row : slowest()) {
+            report.append(String.format("%s %9.2f ms (execute %.2f, fetch %.2f) %8d rows %5d binds [%s]  %s%n",
+                    row.getAt(), row.getTotalMillis(), row.getExecuteMillis(), row.getFetchMillis(), row.getRows(),
+                    row.getBinds(), row.getThread(), row.getStatement()));
+        }
+
+        report.append("\n== Repeated within one action (N+1) ==\n");
+        for (RepeatedStatement row : repeats()) {
+            report.append(String.format("%s %6dx at %s [%s]  %s%n", row.getAt(), row.getCount(), row.getSite(),
+                    row.getThread(), row.getStatement()));
+        }
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Files.write(file, report.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // ==================== MODEL ====================
+
+    private static final class Burst {
+        private long lastNanos;
+        private final Map<String, int[]> counts = new HashMap<>();
+        private final Map<String, RepeatedStatement> flagged = new HashMap<>();
+    }
+
+    private static final class Totals {
+        private final String fingerprint;
+        private long count;
+        private long executeNanos;
+        private long fetchNanos;
+        private long maxNanos;
+        private long rows;
+        private long binds;
+
+        Totals(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        synchronized void add(Execution execution) {
+            count++;
+            executeNanos += execution.executeNanos;
+            fetchNanos += execution.fetchNanos;
+            maxNanos = Math.max(maxNanos, execution.getTotalNanos());
+            rows += execution.rows;
+            binds += execution.binds;
+        }
+
+        synchronized StatementTotals snapshot() {
+            return new StatementTotals(fingerprint, count, executeNanos + fetchNanos, fetchNanos, maxNanos, rows, binds);
+        }
+    }
+
+    public static final class StatementTotals {
+        private final String statement;
+        private final long count;
+        private final double totalMillis;
+        private final double fetchMillis;
+        private final double maxMillis;
+        private final long rows;
+        private final long binds;
+
+        StatementTotals(String statement, long count, long totalNanos, long fetchNanos, long maxNanos,
+                        long rows, long binds) {
+            this.statement = statement;
+            this.count = count;
+            this.totalMillis = millis(totalNanos);
+            this.fetchMillis = millis(fetchNanos);
+            this.maxMillis = millis(maxNanos);
+            this.rows = rows;
+            this.binds = binds;
+        }
+
+        public String getStatement() { return statement; }
+        public long getCount() { return count; }
+        public double getTotalMillis() { return totalMillis; }
+        public double getAvgMillis() { return count == 0 ? 0 : Math.round(totalMillis / count * 100) / 100.0; }
+        public double getMaxMillis() { return maxMillis; }
+        public double getFetchMillis() { return fetchMillis; }
+        public long getRows() { return rows; }
+        public long getBinds() { return binds; }
+    }
+
+    public static final class Execution {
+        private final String fingerprint;
+        private final int binds;
+        private final String thread = Thread.currentThread().getName();
+        private final String at = TIME_FORMAT.format(LocalDateTime.now());
+        private long executeNanos;
+        private long fetchNanos;
+        private long rows;
+
+        Execution(String fingerprint, int binds) {
+            this.fingerprint = fingerprint;
+            this.binds = binds;
+        }
+
+        long getTotalNanos() { return executeNanos + fetchNanos; }
+
+        public String getStatement() { return fingerprint; }
+        public String getAt() { return at; }
+        public String getThread() { return thread; }
+        public int getBinds() { return binds; }
+        public long getRows() { return rows; }
+        public double getExecuteMillis() { return millis(executeNanos); }
+        public double getFetchMillis() { return millis(fetchNanos); }
+        public double getTotalMillis() { return millis(getTotalNanos()); }
+    }
+
+    public static final class RepeatedStatement {
+        private final String fingerprint;
+        private final String site;
+        private final String thread;
+        private final String at = TIME_FORMAT.format(LocalDateTime.now());
+        // Keeps counting while the burst lasts
+        private volatile int count;
+
+        RepeatedStatement(String fingerprint, String site, String thread, int count) {
+            this.fingerprint = fingerprint;
+            this.site = site;
+            this.thread = thread;
+            this.count = count;
+        }
+
+        public String getStatement() { return fingerprint; }
+        public String getSite() { return site; }
+        public String getThread() { return thread; }
+        public String getAt() { return at; }
+        public int getCount() { return count; }
+    }
+}
@@ -0,0 +1,81 @@
+package com.newfoundsoftware.pos;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Receipt - Everything printed on a customer receipt
+ *
+ * Immutable snapshot of a completed checkout, used by the PDF renderer and
+ * by reprints from the invoices table.
+ */
+public final class Receipt {
+
+    private final String invoiceNumber;
+    private final LocalDateTime issuedAt;
+    private final List<Line> lines;
+    private final double subTotal;
+    private final double vat;
+    private final double grandTotal;
+    private final double amountPaid;
+    private final double change;
+
+    public Receipt(String invoiceNumber, LocalDateTime issuedAt, List<Line> lines,
+                   double subTotal, double vat, double grandTotal, double amountPaid, double change) {
+        this.invoiceNumber = invoiceNumber;
+        this.issuedAt = issuedAt;
+        this.lines = Collections.unmodifiableList(new ArrayList<>(lines));
+        this.subTotal = subTotal;
+        this.vat = vat;
+        this.grandTotal = grandTotal;
+        this.amountPaid = amountPaid;
+        this.change = change;
+    }
+
+    /**
+     * Receipt for an order that was just paid.
+     */
+    public static Receipt of(String invoiceNumber, List<DashboardController.OrderItem> items,
+                             CheckoutService.Totals totals, double amountPaid) {
+        List<Line> lines = new ArrayList<>(items.size());
+        for (DashboardController.OrderItem item : items) {
+            lines.add(new Line(item.getProductId(), item.getDescription(), item.getQuantity(),
+                    item.getPrice(), item.getTotal()));
+        }
+        return new Receipt(invoiceNumber, LocalDateTime.now(), lines, totals.getSubTotal(), totals.getVat(),
+                totals.getGrandTotal(), amountPaid, amountPaid - totals.getGrandTotal());
+    }
+
+    public String getInvoiceNumber() { return invoiceNumber; }
+    public LocalDateTime getIssuedAt() { return issuedAt; }
+    public List<Line> getLines() { return lines; }
+    public double getSubTotal() { return subTotal; }
+    public double getVat() { return vat; }
+    public double getGrandTotal() { return grandTotal; }
+    public double getAmountPaid() { return amountPaid; }
+    public double getChange() { return change; }
+
+    public static final class Line {
+        private final int productId;
+        private final String description;
+        private final int quantity;
+        private final double unitPrice;
+        private final double total;
+
+        public Line(int productId, String description, int quantity, double unitPrice, double total) {
+            this.productId = productId;
+            this.description = description;
+            this.quantity = quantity;
+            this.unitPrice = unitPrice;
+            this.total = total;
+        }
+
+        public int getProductId() { return productId; }
+        public String getDescription() { return description; }
+        public int getQuantity() { return quantity; }
+        public double getUnitPrice() { return unitPrice; }
+        public double getTotal() { return total; }
+    }
+}
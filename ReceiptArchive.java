@@ -0,0 +1,516 @@
+package com.newfoundsoftware.pos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * ReceiptArchive - Append-only, daily-rolled receipt storage
+ *
+ * Replaces one PDF file per sale. Each day gets one segment file,
+ * receipts-yyyy-MM-dd.seg, holding records of
+ *
+ *   int magic | byte type | UTF invoice | long issuedAt | int length | int crc32 | payload
+ *
+ * RECEIPT records carry the receipt's data, deflate-compressed; the PDF is
+ * rendered from it only when someone asks for it. PDF records carry the
+ * bytes of a legacy PDF packed by migrate(). Records are never rewritten.
+ *
+ * The invoice -> offset index of a segment is built on first use by reading
+ * record headers only (payloads are skipped), then kept in memory and
+ * extended on every append. Invoice numbers start with yyMMdd, so a lookup
+ * normally touches a single segment; older numbers fall back to all of them.
+ * A torn record at the end of a segment (crash mid-write) ends the scan and
+ * is overwritten by the next append.
+ *
+ * Appends hold an exclusive lock on the segment file, and under it first
+ * index any records another process (e.g. --migrate while the app runs)
+ * appended since this one last looked, so neither overwrites the other.
+ */
+public final class ReceiptArchive {
+
+    private static final Logger LOGGER = Logger.getLogger(ReceiptArchive.class.getName());
+    private static final ReceiptArchive INSTANCE = new ReceiptArchive(
+            Paths.get(PosConfig.get("pos.receipts.archiveDir", "invoices/archive")));
+
+    private static final int MAGIC = 0x52435054; // "RCPT"
+    private static final byte TYPE_RECEIPT = 1;
+    private static final byte TYPE_PDF = 2;
+    private static final String SEGMENT_PREFIX = "receipts-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final DateTimeFormatter INVOICE_DAY = DateTimeFormatter.ofPattern("yyMMdd");
+    private static final Pattern LEGACY_NAME = Pattern.compile("Receipt_(.+)_(\\d{8}_\\d{6})\\.pdf");
+    private static final DateTimeFormatter LEGACY_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    private final Path dir;
+    private final Map<LocalDate, Segment> segments = new ConcurrentHashMap<>();
+    // Reused for every append; only touched while holding the archive lock
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(4096);
+    private final ByteArrayOutputStream payloadBuffer = new ByteArrayOutputStream(4096);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    ReceiptArchive(Path dir) {
+        this.dir = dir;
+    }
+
+    public static ReceiptArchive getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== WRITING ====================
+
+    /**
+     * Append a receipt to its day's segment.
+     */
+    public void append(Receipt receipt) throws IOException {
+        LocalDate day = receipt.getIssuedAt().toLocalDate();
+        synchronized (this) {
+            payloadBuffer.reset();
+            deflater.reset();
+            DeflaterOutputStream compressed = new DeflaterOutputStream(payloadBuffer, deflater);
+            writeReceipt(new DataOutputStream(compressed), receipt);
+            compressed.finish();
+            write(day, TYPE_RECEIPT, receipt.getInvoiceNumber(), receipt.getIssuedAt(),
+                    payloadBuffer.toByteArray());
+        }
+    }
+
+    private synchronized void write(LocalDate day, byte type, String invoiceNumber, LocalDateTime issuedAt,
+                                    byte[] payload) throws IOException {
+        Segment segment = segment(day);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        recordBuffer.reset();
+        DataOutputStream out = new DataOutputStream(recordBuffer);
+        out.writeInt(MAGIC);
+        out.writeByte(type);
+        out.writeUTF(invoiceNumber);
+        out.writeLong(issuedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+        out.flush();
+
+        Files.createDirectories(dir);
+        try (FileChannel channel = FileChannel.open(segment.file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                // Another process may have appended since the last look (or, if shorter, rewritten the file)
+                long size = channel.size();
+                if (size != segment.end) {
+                    segment.end = segment.scan(channel, size > segment.end ? segment.end : 0);
+                }
+                // Write at the end of the last good record, dropping any torn tail
+                ByteBuffer buffer = ByteBuffer.wrap(recordBuffer.toByteArray());
+                long position = segment.end;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                channel.truncate(position);
+                channel.force(false);
+                segment.index.put(invoiceNumber, segment.end);
+                segment.end = position;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    // ==================== READING ====================
+
+    public boolean contains(String invoiceNumber) throws IOException {
+        return locate(invoiceNumber) != null;
+    }
+
+    /**
+     * Write the receipt's PDF to out, rendering it if it was stored as data.
+     *
+     * @return false if the invoice is not in the archive
+     */
+    public boolean writePdf(String invoiceNumber, OutputStream out) throws IOException {
+        Record record = read(invoiceNumber);
+        if (record == null) {
+            return false;
+        }
+        if (record.type == TYPE_PDF) {
+            out.write(record.payload);
+        } else {
+            ReceiptRenderer.render(decode(record), out);
+        }
+        return true;
+    }
+
+    /**
+     * The archived receipt's data, or null if it is unknown or was archived
+     * as a legacy PDF only.
+     */
+    public Receipt find(String invoiceNumber) throws IOException {
+        Record record = read(invoiceNumber);
+        return record != null && record.type == TYPE_RECEIPT ? decode(record) : null;
+    }
+
+    private Record read(String invoiceNumber) throws IOException {
+        Location location = locate(invoiceNumber);
+        if (location == null) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(location.segment.file, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(new ChannelInput(channel, location.offset));
+            RecordHeader header = RecordHeader.read(in);
+            byte[] payload = new byte[header.length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != header.crc) {
+                throw new IOException("Archived receipt " + invoiceNumber + " is corrupt");
+            }
+            return new Record(header.type, payload);
+        }
+    }
+
+    private Location locate(String invoiceNumber) throws IOException {
+        LocalDate day = dayOf(invoiceNumber);
+        if (day != null) {
+            Segment segment = segment(day);
+            Long offset = segment.index.get(invoiceNumber);
+            if (offset != null) {
+                return new Location(segment, offset);
+            }
+        }
+        // Older invoice numbers do not carry their date - check every segment
+        for (LocalDate other : days()) {
+            Segment segment = segment(other);
+            Long offset = segment.index.get(invoiceNumber);
+            if (offset != null) {
+                return new Location(segment, offset);
+            }
+        }
+        return null;
+    }
+
+    private static LocalDate dayOf(String invoiceNumber) {
+        if (invoiceNumber.length() < 6) return null;
+        try {
+            return LocalDate.parse(invoiceNumber.substring(0, 6), INVOICE_DAY);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Days that have a segment, oldest first.
+     */
+    public List<LocalDate> days() throws IOException {
+        TreeSet<LocalDate> days = new TreeSet<>();
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    try {
+                        days.add(LocalDate.parse(name.substring(SEGMENT_PREFIX.length(),
+                                name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (DateTimeParseException e) {
+                        LOGGER.warning("Ignoring unexpected file in receipt archive: " + name);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(days);
+    }
+
+    // ==================== SEGMENTS ====================
+
+    private Segment segment(LocalDate day) throws IOException {
+        Segment segment = segments.get(day);
+        if (segment != null) {
+            return segment;
+        }
+        synchronized (this) {
+            segment = segments.get(day);
+            if (segment == null) {
+                segment = new Segment(dir.resolve(SEGMENT_PREFIX + day + SEGMENT_SUFFIX));
+                segment.scan();
+                segments.put(day, segment);
+            }
+            return segment;
+        }
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final Map<String, Long> index = new ConcurrentHashMap<>();
+        private volatile long end;
+
+        Segment(Path file) {
+            this.file = file;
+        }
+
+        /**
+         * Build the index from record headers, skipping payloads.
+         */
+        void scan() throws IOException {
+            if (!Files.exists(file)) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                end = scan(channel, 0);
+            }
+        }
+
+        /**
+         * Index the records from position on.
+         *
+         * @return the end of the last good record
+         */
+        long scan(FileChannel channel, long position) throws IOException {
+            long size = channel.size();
+            while (position < size) {
+                ChannelInput input = new ChannelInput(channel, position);
+                RecordHeader header;
+                try {
+                    header = RecordHeader.read(new DataInputStream(input));
+                } catch (EOFException | InvalidRecordException e) {
+                    break;
+                }
+                long next = input.position() + header.length;
+                if (next > size) {
+                    break; // torn record
+                }
+                index.put(header.invoiceNumber, position);
+                position = next;
+            }
+            if (position < size) {
+                LOGGER.warning(file + " has " + (size - position) + " unreadable trailing bytes; "
+                        + "they will be overwritten by the next receipt");
+            }
+            return position;
+        }
+    }
+
+    private static final class RecordHeader {
+        private byte type;
+        private String invoiceNumber;
+        private int length;
+        private int crc;
+
+        static RecordHeader read(DataInputStream in) throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new InvalidRecordException();
+            }
+            RecordHeader header = new RecordHeader();
+            header.type = in.readByte();
+            header.invoiceNumber = in.readUTF();
+            in.readLong(); // issuedAt - kept for tools, not needed to locate records
+            header.length = in.readInt();
+            header.crc = in.readInt();
+            if (header.length < 0) {
+                throw new InvalidRecordException();
+            }
+            return header;
+        }
+    }
+
+    private static final class InvalidRecordException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Sequential reads from a channel starting at a given position, tracking where they got to.
+     */
+    private static final class ChannelInput extends InputStream {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        private long position;
+
+        ChannelInput(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+            buffer.limit(0);
+        }
+
+        long position() {
+            return position - buffer.remaining();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) return true;
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            buffer.flip();
+            if (read <= 0) return false;
+            position += read;
+            return true;
+        }
+    }
+
+    private static final class Location {
+        private final Segment segment;
+        private final long offset;
+
+        Location(Segment segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    private static final class Record {
+        private final byte type;
+        private final byte[] payload;
+
+        Record(byte type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    // ==================== RECEIPT ENCODING ====================
+
+    private static void writeReceipt(DataOutputStream out, Receipt receipt) throws IOException {
+        out.writeUTF(receipt.getInvoiceNumber());
+        out.writeLong(receipt.getIssuedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        out.writeDouble(receipt.getSubTotal());
+        out.writeDouble(receipt.getVat());
+        out.writeDouble(receipt.getGrandTotal());
+        out.writeDouble(receipt.getAmountPaid());
+        out.writeDouble(receipt.getChange());
+        out.writeInt(receipt.getLines().size());
+        for (Receipt.Line line : receipt.getLines()) {
+            out.writeInt(line.getProductId());
+            out.writeUTF(line.getDescription());
+            out.writeInt(line.getQuantity());
+            out.writeDouble(line.getUnitPrice());
+            out.writeDouble(line.getTotal());
+        }
+        out.flush();
+    }
+
+    private static Receipt decode(Record record) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(record.payload)))) {
+            String invoiceNumber = in.readUTF();
+            LocalDateTime issuedAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(in.readLong()), ZoneId.systemDefault());
+            double subTotal = in.readDouble();
+            double vat = in.readDouble();
+            double grandTotal = in.readDouble();
+            double amountPaid = in.readDouble();
+            double change = in.readDouble();
+            int count = in.readInt();
+            List<Receipt.Line> lines = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                lines.add(new Receipt.Line(in.readInt(), in.readUTF(), in.readInt(), in.readDouble(), in.readDouble()));
+            }
+            return new Receipt(invoiceNumber, issuedAt, lines, subTotal, vat, grandTotal, amountPaid, change);
+        }
+    }
+
+    // ==================== MIGRATION ====================
+
+    /**
+     * Pack every Receipt_<invoice>_<yyyyMMdd_HHmmss>.pdf in legacyDir into the
+     * archive, filed under the day in its name. Invoices already archived are
+     * skipped, so an interrupted migration can simply be run again. Originals
+     * are deleted once archived unless keepOriginals is set.
+     *
+     * @return number of files packed
+     */
+    public int migrate(Path legacyDir, boolean keepOriginals) throws IOException {
+        int packed = 0;
+        int skipped = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(legacyDir, "Receipt_*.pdf")) {
+            for (Path file : files) {
+                Matcher matcher = LEGACY_NAME.matcher(file.getFileName().toString());
+                if (!matcher.matches()) {
+                    LOGGER.warning("Skipping unrecognised receipt file " + file);
+                    skipped++;
+                    continue;
+                }
+                String invoiceNumber = matcher.group(1);
+                LocalDateTime issuedAt = LocalDateTime.parse(matcher.group(2), LEGACY_TIMESTAMP);
+
+                Segment segment = segment(issuedAt.toLocalDate());
+                if (!segment.index.containsKey(invoiceNumber)) {
+                    write(issuedAt.toLocalDate(), TYPE_PDF, invoiceNumber, issuedAt, Files.readAllBytes(file));
+                    packed++;
+                }
+                if (!keepOriginals) {
+                    Files.delete(file);
+                }
+            }
+        }
+        LOGGER.info("Migrated " + packed + " receipt PDFs from " + legacyDir + " into " + dir
+                + (skipped > 0 ? " (" + skipped + " unrecognised files left in place)" : ""));
+        return packed;
+    }
+
+    /**
+     * Command line:
+     *   ReceiptArchive --migrate [legacyDir] [--keep]
+     *   ReceiptArchive --export <invoice> <out.pdf>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 1 && args[0].equals("--migrate")) {
+            Path legacy = Paths.get(args.length > 1 && !args[1].startsWith("--")
+                    ? args[1] : PosConfig.get("pos.receipts.dir", "invoices"));
+            boolean keep = args[args.length - 1].equals("--keep");
+            System.out.println("Packed " + getInstance().migrate(legacy, keep) + " receipts");
+        } else if (args.length == 3 && args[0].equals("--export")) {
+            try (OutputStream out = Files.newOutputStream(Paths.get(args[2]))) {
+                if (!getInstance().writePdf(args[1], out)) {
+                    System.err.println("Invoice " + args[1] + " is not in the archive");
+                    System.exit(1);
+                }
+            }
+        } else {
+            System.err.println("Usage: ReceiptArchive --migrate [legacyDir] [--keep] | --export <invoice> <out.pdf>");
+            System.exit(2);
+        }
+    }
+}
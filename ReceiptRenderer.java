@@ -0,0 +1,193 @@
+package com.newfoundsoftware.pos;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * ReceiptRenderer - Receipt PDFs from a precompiled layout
+ *
+ * Fonts, column widths, page size and the fixed cells (column headers,
+ * totals labels) are built once. Per receipt only the paragraphs and cells
+ * holding its own values are created; PdfPTable copies the prototype cells
+ * on add, so they are never modified and are safe to share between threads.
+ *
+ * A BatchWriter streams many receipts into one PDF, one page per receipt;
+ * each page is written out as soon as the next one starts, so memory stays
+ * flat however many receipts are in the batch.
+ */
+public final class ReceiptRenderer {
+
+    private static final String SHOP_NAME = "SHEGLAM COSMETICS";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private static final Rectangle PAGE = new Rectangle(250, 600);
+    private static final float MARGIN = 10;
+    private static final float[] ITEM_WIDTHS = {30, 100, 40, 40};
+    private static final float[] TOTAL_WIDTHS = {70, 40};
+
+    private static final Font HEADER_FONT = new Font(Font.COURIER, 10, Font.BOLD);
+    private static final Font TEXT_FONT = new Font(Font.COURIER, 9);
+    private static final Font TABLE_HEADER_FONT = new Font(Font.COURIER, 8, Font.BOLD);
+    private static final Font TABLE_FONT = new Font(Font.COURIER, 8);
+    private static final Font VALUE_FONT = new Font(Font.COURIER, 9, Font.BOLD);
+
+    private static final PdfPCell[] ITEM_HEADER_CELLS = {
+        itemCell("QTY", TABLE_HEADER_FONT), itemCell("ITEM", TABLE_HEADER_FONT),
+        itemCell("PRICE", TABLE_HEADER_FONT), itemCell("TOTAL", TABLE_HEADER_FONT)
+    };
+    private static final PdfPCell SUB_TOTAL_LABEL = labelCell("SUB TOTAL:");
+    private static final PdfPCell VAT_LABEL = labelCell("VAT (" + Math.round(CheckoutService.VAT_RATE * 100) + "%):");
+    private static final PdfPCell GRAND_TOTAL_LABEL = labelCell("GRAND TOTAL:");
+    private static final PdfPCell PAID_LABEL = labelCell("Amount Paid:");
+    private static final PdfPCell CHANGE_LABEL = labelCell("Change:");
+
+    private ReceiptRenderer() {
+    }
+
+    // ==================== RENDERING ====================
+
+    /**
+     * Write one receipt as a PDF to out. out is left open.
+     */
+    public static void render(Receipt receipt, OutputStream out) throws IOException {
+        try (BatchWriter writer = new BatchWriter(out)) {
+            writer.add(receipt);
+        }
+    }
+
+    /**
+     * Streams receipts into one PDF, a page each. Closing finishes the PDF; out is left open.
+     */
+    public static final class BatchWriter implements Closeable {
+        private final Document document;
+        private int count;
+
+        public BatchWriter(OutputStream out) throws IOException {
+            document = new Document(PAGE, MARGIN, MARGIN, MARGIN, MARGIN);
+            try {
+                PdfWriter writer = PdfWriter.getInstance(document, out);
+                writer.setCloseStream(false);
+            } catch (DocumentException e) {
+                throw new IOException("Could not start receipt PDF", e);
+            }
+            document.open();
+        }
+
+        public void add(Receipt receipt) throws IOException {
+            try {
+                if (count > 0) {
+                    document.newPage(); // flushes the previous page to the stream
+                }
+                layout(document, receipt);
+                count++;
+            } catch (DocumentException e) {
+                throw new IOException("Could not render receipt " + receipt.getInvoiceNumber(), e);
+            }
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public void close() {
+            if (count == 0) {
+                // An empty document cannot be closed cleanly
+                document.add(new Paragraph("No receipts.", TEXT_FONT));
+            }
+            document.close();
+        }
+    }
+
+    private static void layout(Document document, Receipt receipt) throws DocumentException {
+        document.add(headerParagraph());
+        document.add(new Paragraph("Receipt No: " + receipt.getInvoiceNumber(), TEXT_FONT));
+        document.add(new Paragraph(receipt.getIssuedAt().format(DATE_FORMAT), TEXT_FONT));
+        document.add(new Paragraph(" "));
+
+        PdfPTable items = new PdfPTable(ITEM_WIDTHS);
+        items.setWidthPercentage(100);
+        for (PdfPCell cell : ITEM_HEADER_CELLS) {
+            items.addCell(cell);
+        }
+        for (Receipt.Line line : receipt.getLines()) {
+            items.addCell(itemCell(String.valueOf(line.getQuantity()), TABLE_FONT));
+            items.addCell(itemCell(line.getDescription(), TABLE_FONT));
+            items.addCell(itemCell(money(line.getUnitPrice()), TABLE_FONT));
+            items.addCell(itemCell(money(line.getTotal()), TABLE_FONT));
+        }
+        document.add(items);
+        document.add(new Paragraph(" "));
+
+        PdfPTable totals = new PdfPTable(TOTAL_WIDTHS);
+        totals.setWidthPercentage(100);
+        totals.addCell(SUB_TOTAL_LABEL);
+        totals.addCell(valueCell(money(receipt.getSubTotal())));
+        totals.addCell(VAT_LABEL);
+        totals.addCell(valueCell(money(receipt.getVat())));
+        totals.addCell(GRAND_TOTAL_LABEL);
+        totals.addCell(valueCell(money(receipt.getGrandTotal())));
+        totals.addCell(PAID_LABEL);
+        totals.addCell(valueCell(money(receipt.getAmountPaid())));
+        totals.addCell(CHANGE_LABEL);
+        totals.addCell(valueCell(money(receipt.getChange())));
+        document.add(totals);
+    }
+
+    // ==================== CELLS ====================
+
+    private static Paragraph headerParagraph() {
+        Paragraph header = new Paragraph(SHOP_NAME, HEADER_FONT);
+        header.setAlignment(Element.ALIGN_CENTER);
+        return header;
+    }
+
+    private static PdfPCell itemCell(String text, Font font) {
+        PdfPCell cell = new PdfPCell(new Phrase(text, font));
+        cell.setBorder(Rectangle.BOX);
+        cell.setHorizontalAlignment(Element.ALIGN_CENTER);
+        return cell;
+    }
+
+    private static PdfPCell labelCell(String text) {
+        PdfPCell cell = new PdfPCell(new Phrase(text, TEXT_FONT));
+        cell.setBorder(Rectangle.NO_BORDER);
+        return cell;
+    }
+
+    private static PdfPCell valueCell(String text) {
+        PdfPCell cell = new PdfPCell(new Phrase(text, VALUE_FONT));
+        cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+        cell.setBorder(Rectangle.NO_BORDER);
+        return cell;
+    }
+
+    /**
+     * "1234.50" without going through String.format.
+     */
+    static String money(double value) {
+        long cents = Math.round(value * 100);
+        StringBuilder text = new StringBuilder(12);
+        if (cents < 0) {
+            text.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % 100;
+        text.append(cents / 100).append('.');
+        if (fraction < 10) text.append('0');
+        return text.append(fraction).toString();
+    }
+}
@@ -0,0 +1,447 @@
+package com.newfoundsoftware.pos;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * ReceiptService - Stored invoices, receipt PDFs and batch reprints
+ *
+ * Every completed checkout is saved to the invoices / invoice_lines tables
+ * so its receipt can be rendered again later; the receipt itself is kept in
+ * ReceiptArchive rather than as a PDF file per sale. Reprints read the rows in
+ * one ordered query and stream them through ReceiptRenderer.BatchWriter,
+ * one receipt at a time, into a single multi-page PDF.
+ */
+public final class ReceiptService {
+
+    private static final Logger LOGGER = Logger.getLogger(ReceiptService.class.getName());
+    private static final ReceiptService INSTANCE = new ReceiptService();
+
+    // Invoice numbers per SELECT ... WHERE invoice_no IN (...) statement
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+    private static final String RECEIPT_COLUMNS =
+            "i.invoice_no, i.issued_at, i.sub_total, i.vat, i.grand_total, i.amount_paid, i.change_due, " +
+            "l.product_id, l.description, l.quantity, l.unit_price, l.total";
+
+    // Stored with every invoice, for the end-of-day report
+    static final String TERMINAL_ID = PosConfig.get("pos.terminal.id", defaultTerminalId());
+    static final String PAYMENT_CASH = "CASH";
+
+    // Invoice numbers are yyMMdd-TERMINAL-counter; the counter is a row per terminal in invoice_sequence
+    private static final String INVOICE_TERMINAL = invoiceTerminal(TERMINAL_ID);
+    private static final DateTimeFormatter INVOICE_DAY = DateTimeFormatter.ofPattern("yyMMdd");
+    private static final String NEXT_INVOICE_SQL =
+            "INSERT INTO invoice_sequence (terminal, last_no) VALUES (?, LAST_INSERT_ID(1)) " +
+            "ON DUPLICATE KEY UPDATE last_no = LAST_INSERT_ID(last_no + 1)";
+
+    private volatile boolean schemaReady;
+    private volatile String cashier;
+
+    private ReceiptService() {
+    }
+
+    public static ReceiptService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The user logged in on this terminal; recorded on every invoice saved after this.
+     */
+    public void setCashier(String cashier) {
+        this.cashier = cashier;
+    }
+
+    public String getCashier() {
+        return cashier;
+    }
+
+    private static String defaultTerminalId() {
+        try {
+            String host = InetAddress.getLocalHost().getHostName();
+            return host.length() > 32 ? host.substring(0, 32) : host;
+        } catch (UnknownHostException e) {
+            return "TERMINAL";
+        }
+    }
+
+    // Letters and digits only, at most 12, so a number fits invoice_no with a return's "R" in front
+    private static String invoiceTerminal(String terminalId) {
+        String cleaned = terminalId.toUpperCase().replaceAll("[^A-Z0-9]", "");
+        if (cleaned.isEmpty()) return "POS";
+        return cleaned.length() > 12 ? cleaned.substring(0, 12) : cleaned;
+    }
+
+    // ==================== SCHEMA ====================
+
+    public void ensureSchema() throws SQLException {
+        if (schemaReady) return;
+        synchronized (this) {
+            if (schemaReady) return;
+            try (Connection conn = new JdbcDao().getConnection()) {
+                if (conn == null) {
+                    throw new SQLException("Could not connect to database");
+                }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE IF NOT EXISTS invoices (" +
+                            "invoice_no VARCHAR(32) PRIMARY KEY, " +
+                            "issued_at DATETIME NOT NULL, " +
+                            "sub_total DOUBLE NOT NULL, " +
+                            "vat DOUBLE NOT NULL, " +
+                            "grand_total DOUBLE NOT NULL, " +
+                            "amount_paid DOUBLE NOT NULL, " +
+                            "change_due DOUBLE NOT NULL, " +
+                            "terminal_id VARCHAR(32), " +
+                            "cashier VARCHAR(64), " +
+                            "payment_method VARCHAR(16) NOT NULL DEFAULT 'CASH', " +
+                            "INDEX idx_invoices_issued (issued_at))");
+                    if (!StockLedger.hasColumn(conn, "invoices", "terminal_id")) {
+                        stmt.execute("ALTER TABLE invoices ADD COLUMN terminal_id VARCHAR(32), " +
+                                "ADD COLUMN cashier VARCHAR(64), " +
+                                "ADD COLUMN payment_method VARCHAR(16) NOT NULL DEFAULT 'CASH'");
+                    }
+                    stmt.execute("CREATE TABLE IF NOT EXISTS invoice_lines (" +
+                            "invoice_no VARCHAR(32) NOT NULL, " +
+                            "line_no INT NOT NULL, " +
+                            "product_id INT NOT NULL, " +
+                            "description VARCHAR(255) NOT NULL, " +
+                            "quantity INT NOT NULL, " +
+                            "unit_price DOUBLE NOT NULL, " +
+                            "total DOUBLE NOT NULL, " +
+                            "returned_qty INT NOT NULL DEFAULT 0, " +
+                            "PRIMARY KEY (invoice_no, line_no), " +
+                            "FOREIGN KEY (invoice_no) REFERENCES invoices(invoice_no) ON DELETE CASCADE)");
+                    if (!StockLedger.hasColumn(conn, "invoice_lines", "returned_qty")) {
+                        stmt.execute("ALTER TABLE invoice_lines ADD COLUMN returned_qty INT NOT NULL DEFAULT 0");
+                    }
+                    stmt.execute("CREATE TABLE IF NOT EXISTS invoice_sequence (" +
+                            "terminal VARCHAR(12) PRIMARY KEY, " +
+                            "last_no BIGINT NOT NULL)");
+                }
+            }
+            schemaReady = true;
+        }
+    }
+
+    // ==================== STORAGE ====================
+
+    /**
+     * A new invoice number, e.g. 261019-TILL2-00000042, on the caller's
+     * connection and transaction: the date (ReceiptArchive finds the day's
+     * segment by it), this terminal and the terminal's next counter value.
+     * The counter row stays locked until the caller commits, and a rollback
+     * gives the number back, so numbers are unique and gap-free per
+     * terminal. Terminals whose ids reduce to the same name share a counter.
+     */
+    String nextInvoiceNumber(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(NEXT_INVOICE_SQL)) {
+            ps.setString(1, INVOICE_TERMINAL);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement("SELECT LAST_INSERT_ID()");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return LocalDate.now().format(INVOICE_DAY) + "-" + INVOICE_TERMINAL + "-"
+                    + String.format("%08d", rs.getLong(1));
+        }
+    }
+
+    /**
+     * Store a completed receipt (header and lines in one transaction).
+     */
+    public void save(Receipt receipt) throws SQLException {
+        ensureSchema();
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            conn.setAutoCommit(false);
+            try {
+                save(conn, receipt);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Same as save(), on the caller's connection and transaction. Call
+     * ensureSchema() first: its DDL would commit the caller's transaction.
+     */
+    void save(Connection conn, Receipt receipt) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO invoices (invoice_no, issued_at, sub_total, vat, grand_total, amount_paid, change_due, " +
+                "terminal_id, cashier, payment_method) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            ps.setString(1, receipt.getInvoiceNumber());
+            ps.setTimestamp(2, Timestamp.valueOf(receipt.getIssuedAt()));
+            ps.setDouble(3, receipt.getSubTotal());
+            ps.setDouble(4, receipt.getVat());
+            ps.setDouble(5, receipt.getGrandTotal());
+            ps.setDouble(6, receipt.getAmountPaid());
+            ps.setDouble(7, receipt.getChange());
+            ps.setString(8, TERMINAL_ID);
+            ps.setString(9, cashier);
+            ps.setString(10, PAYMENT_CASH);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO invoice_lines (invoice_no, line_no, product_id, description, quantity, unit_price, total) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            int lineNo = 0;
+            for (Receipt.Line line : receipt.getLines()) {
+                ps.setString(1, receipt.getInvoiceNumber());
+                ps.setInt(2, ++lineNo);
+                ps.setInt(3, line.getProductId());
+                ps.setString(4, line.getDescription());
+                ps.setInt(5, line.getQuantity());
+                ps.setDouble(6, line.getUnitPrice());
+                ps.setDouble(7, line.getTotal());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * A stored receipt, or null if there is no such invoice.
+     */
+    public Receipt find(String invoiceNumber) throws SQLException {
+        List<Receipt> found = new ArrayList<>(1);
+        forEachReceipt(Collections.singletonList(invoiceNumber), found::add);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    // ==================== PDF ====================
+
+    /**
+     * Write one invoice's receipt PDF to target, from the receipt archive or,
+     * failing that, the invoices table.
+     *
+     * @return false if the invoice is in neither
+     */
+    public boolean exportPdf(String invoiceNumber, Path target) throws IOException, SQLException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), WRITE_BUFFER_BYTES)) {
+            if (ReceiptArchive.getInstance().writePdf(invoiceNumber, out)) {
+                return true;
+            }
+            Receipt receipt = find(invoiceNumber);
+            if (receipt != null) {
+                ReceiptRenderer.render(receipt, out);
+                return true;
+            }
+        }
+        Files.deleteIfExists(target);
+        return false;
+    }
+
+    /**
+     * Reprint every receipt issued between from and to (inclusive) into one PDF.
+     * Returns the number of receipts written.
+     */
+    public int reprint(LocalDate from, LocalDate to, Path target) throws IOException, SQLException {
+        ensureSchema();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), WRITE_BUFFER_BYTES);
+             ReceiptRenderer.BatchWriter writer = new ReceiptRenderer.BatchWriter(out);
+             Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            String query = "SELECT " + RECEIPT_COLUMNS + " FROM invoices i " +
+                    "JOIN invoice_lines l ON l.invoice_no = i.invoice_no " +
+                    "WHERE i.issued_at >= ? AND i.issued_at < ? " +
+                    "ORDER BY i.issued_at, i.invoice_no, l.line_no";
+            try (PreparedStatement ps = conn.prepareStatement(query)) {
+                ps.setTimestamp(1, Timestamp.valueOf(from.atStartOfDay()));
+                ps.setTimestamp(2, Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+                streamReceipts(ps, writer);
+            }
+            LOGGER.info("Reprinted " + writer.getCount() + " receipts for " + from + " to " + to + " to " + target);
+            return writer.getCount();
+        }
+    }
+
+    /**
+     * Reprint the given invoices, in the order stored, into one PDF. Unknown
+     * invoice numbers are skipped. Returns the number of receipts written.
+     */
+    public int reprint(List<String> invoiceNumbers, Path target) throws IOException, SQLException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), WRITE_BUFFER_BYTES);
+             ReceiptRenderer.BatchWriter writer = new ReceiptRenderer.BatchWriter(out)) {
+            forEachReceipt(invoiceNumbers, receipt -> {
+                try {
+                    writer.add(receipt);
+                } catch (IOException e) {
+                    throw new ReceiptWriteException(e);
+                }
+            });
+            LOGGER.info("Reprinted " + writer.getCount() + " of " + invoiceNumbers.size() + " receipts to " + target);
+            return writer.getCount();
+        } catch (ReceiptWriteException e) {
+            throw e.getCause();
+        }
+    }
+
+    // ==================== READING ====================
+
+    private void forEachReceipt(List<String> invoiceNumbers, ReceiptSink sink) throws SQLException {
+        ensureSchema();
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            for (int from = 0; from < invoiceNumbers.size(); from += LOOKUP_CHUNK_SIZE) {
+                List<String> chunk = invoiceNumbers.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, invoiceNumbers.size()));
+                String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+                String query = "SELECT " + RECEIPT_COLUMNS + " FROM invoices i " +
+                        "JOIN invoice_lines l ON l.invoice_no = i.invoice_no " +
+                        "WHERE i.invoice_no IN (" + placeholders + ") " +
+                        "ORDER BY i.issued_at, i.invoice_no, l.line_no";
+                try (PreparedStatement ps = conn.prepareStatement(query)) {
+                    int index = 1;
+                    for (String invoiceNumber : chunk) {
+                        ps.setString(index++, invoiceNumber);
+                    }
+                    readReceipts(ps, sink);
+                }
+            }
+        }
+    }
+
+    private static void streamReceipts(PreparedStatement ps, ReceiptRenderer.BatchWriter writer)
+            throws SQLException, IOException {
+        try {
+            readReceipts(ps, receipt -> {
+                try {
+                    writer.add(receipt);
+                } catch (IOException e) {
+                    throw new ReceiptWriteException(e);
+                }
+            });
+        } catch (ReceiptWriteException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Turn header+line rows (ordered by invoice, then line) into receipts,
+     * handing each to the sink as soon as its last line has been read.
+     */
+    private static void readReceipts(PreparedStatement ps, ReceiptSink sink) throws SQLException {
+        ps.setFetchSize(Integer.MIN_VALUE); // MySQL: stream rows instead of buffering the result
+        try (ResultSet rs = ps.executeQuery()) {
+            String current = null;
+            ResultSetHeader header = null;
+            List<Receipt.Line> lines = new ArrayList<>();
+            while (rs.next()) {
+                String invoiceNumber = rs.getString("invoice_no");
+                if (!invoiceNumber.equals(current)) {
+                    if (header != null) {
+                        sink.accept(header.toReceipt(lines));
+                        lines.clear();
+                    }
+                    current = invoiceNumber;
+                    header = new ResultSetHeader(rs);
+                }
+                lines.add(new Receipt.Line(rs.getInt("product_id"), rs.getString("description"),
+                        rs.getInt("quantity"), rs.getDouble("unit_price"), rs.getDouble("total")));
+            }
+            if (header != null) {
+                sink.accept(header.toReceipt(lines));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReceiptSink {
+        void accept(Receipt receipt);
+    }
+
+    private static final class ResultSetHeader {
+        private final String invoiceNumber;
+        private final LocalDateTime issuedAt;
+        private final double subTotal;
+        private final double vat;
+        private final double grandTotal;
+        private final double amountPaid;
+        private final double change;
+
+        ResultSetHeader(ResultSet rs) throws SQLException {
+            invoiceNumber = rs.getString("invoice_no");
+            issuedAt = rs.getTimestamp("issued_at").toLocalDateTime();
+            subTotal = rs.getDouble("sub_total");
+            vat = rs.getDouble("vat");
+            grandTotal = rs.getDouble("grand_total");
+            amountPaid = rs.getDouble("amount_paid");
+            change = rs.getDouble("change_due");
+        }
+
+        Receipt toReceipt(List<Receipt.Line> lines) {
+            return new Receipt(invoiceNumber, issuedAt, lines, subTotal, vat, grandTotal, amountPaid, change);
+        }
+    }
+
+    // ==================== MAIN ====================
+
+    /**
+     * Bulk reprint from the command line:
+     *   ReceiptService out.pdf 2024-01-01 2024-01-31
+     *   ReceiptService out.pdf --invoices=240101-TILL1-00000123,240101-TILL2-00000042
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ReceiptService <out.pdf> <from> [to] | <out.pdf> --invoices=n1,n2,...");
+            System.exit(2);
+        }
+        Path target = Paths.get(args[0]);
+        long start = System.nanoTime();
+        int count;
+        if (args[1].startsWith("--invoices=")) {
+            count = getInstance().reprint(Arrays.asList(args[1].substring("--invoices=".length()).split(",")), target);
+        } else {
+            LocalDate from = LocalDate.parse(args[1]);
+            LocalDate to = args.length > 2 ? LocalDate.parse(args[2]) : from;
+            count = getInstance().reprint(from, to, target);
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("%d receipts in %.1f s (%.0f/s) -> %s%n", count, seconds, count / Math.max(seconds, 0.001), target);
+    }
+
+    // Carries a renderer IOException out of a ReceiptSink callback
+    private static final class ReceiptWriteException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ReceiptWriteException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
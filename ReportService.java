@@ -0,0 +1,328 @@
+package com.newfoundsoftware.pos;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ReportService - Sales recording and sales queries, without any UI
+ *
+ * Owns the in-memory window of recent sales (see SalesHistoryBuffer);
+ * ranges older than that window are read from the database.
+ */
+public final class ReportService {
+
+    private static final Logger LOGGER = Logger.getLogger(ReportService.class.getName());
+    private static final ReportService INSTANCE = new ReportService();
+
+    private static final int RETENTION_DAYS = PosConfig.getInt("pos.sales.retentionDays", 30);
+
+    private final SalesHistoryBuffer recentSales =
+            new SalesHistoryBuffer(PosConfig.getInt("pos.sales.retentionCount", 5000));
+    private volatile boolean loaded;
+
+    private ReportService() {
+    }
+
+    public static ReportService getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== SCHEMA ====================
+
+    public void ensureSchema() throws SQLException {
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS sales (" +
+                        "id INT AUTO_INCREMENT PRIMARY KEY," +
+                        "sale_date DATE NOT NULL," +
+                        "product VARCHAR(100) NOT NULL," +
+                        "quantity INT NOT NULL," +
+                        "unit_price DOUBLE NOT NULL," +
+                        "total DOUBLE NOT NULL," +
+                        "category VARCHAR(50)," +
+                        "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                        "INDEX idx_sales_date (sale_date)" +
+                        ")");
+                // Date ranges and the end-of-day report read by sale_date
+                if (!hasIndex(conn, "sales", "idx_sales_date")) {
+                    stmt.executeUpdate("CREATE INDEX idx_sales_date ON sales (sale_date)");
+                }
+            }
+        }
+        LOGGER.info("Sales table created/verified");
+    }
+
+    private static boolean hasIndex(Connection conn, String table, String index) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Reload the in-memory window from the database. Returns the number of sales held.
+     */
+    public int reloadRecent() throws SQLException {
+        LocalDate cutoff = retentionCutoff();
+        recentSales.clear(cutoff);
+
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            String productCol;
+            try (Statement stmt = conn.createStatement()) {
+                productCol = resolveProductColumn(stmt);
+            }
+            // Only the retention window is held in memory
+            String query = "SELECT sale_date, " + productCol + " as product_name, quantity, unit_price, total, category " +
+                    "FROM sales WHERE sale_date >= ? ORDER BY sale_date DESC, id DESC LIMIT ?";
+            try (PreparedStatement ps = conn.prepareStatement(query)) {
+                ps.setString(1, cutoff.toString());
+                ps.setInt(2, recentSales.capacity() + 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        recentSales.addLast(readSalesItem(rs));
+                    }
+                }
+            }
+        }
+        loaded = true;
+        LOGGER.info("Loaded " + recentSales.size() + " recent sales records (complete since "
+                + recentSales.completeSince() + ")");
+        return recentSales.size();
+    }
+
+    /**
+     * Recent sales, newest first.
+     */
+    public List<SalesReportController.SalesItem> recentSales() {
+        return recentSales.snapshot();
+    }
+
+    /**
+     * True if every sale from the given date on is held in memory. Always
+     * false before the first reloadRecent().
+     */
+    public boolean isInMemory(LocalDate from) {
+        return loaded && !from.isBefore(recentSales.completeSince());
+    }
+
+    /**
+     * Read a date range straight from the database, newest first.
+     */
+    public List<SalesReportController.SalesItem> loadRange(LocalDate from, LocalDate to) throws SQLException {
+        List<SalesReportController.SalesItem> items = new ArrayList<>();
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            String productCol;
+            try (Statement stmt = conn.createStatement()) {
+                productCol = resolveProductColumn(stmt);
+            }
+            String query = "SELECT sale_date, " + productCol + " as product_name, quantity, unit_price, total, category " +
+                    "FROM sales WHERE sale_date BETWEEN ? AND ? ORDER BY sale_date DESC, id DESC";
+            try (PreparedStatement ps = conn.prepareStatement(query)) {
+                ps.setString(1, from.toString());
+                ps.setString(2, to.toString());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        items.add(readSalesItem(rs));
+                    }
+                }
+            }
+        }
+        LOGGER.info("Loaded " + items.size() + " sales records for " + from + " to " + to);
+        return items;
+    }
+
+    /**
+     * Sales from source within [from, to] (both null = any date) whose product
+     * contains searchText, ignoring case.
+     */
+    public List<SalesReportController.SalesItem> filter(List<SalesReportController.SalesItem> source,
+                                                        LocalDate from, LocalDate to, String searchText) {
+        boolean dateFilter = from != null && to != null;
+        String search = searchText != null ? searchText.toLowerCase(Locale.ROOT).trim() : "";
+
+        List<SalesReportController.SalesItem> matches = new ArrayList<>();
+        for (SalesReportController.SalesItem item : source) {
+            if (dateFilter) {
+                LocalDate itemDate = item.getSaleDate();
+                if (itemDate == null || itemDate.isBefore(from) || itemDate.isAfter(to)) {
+                    continue;
+                }
+            }
+            if (!search.isEmpty() && !item.getProduct().toLowerCase(Locale.ROOT).contains(search)) {
+                continue;
+            }
+            matches.add(item);
+        }
+        return matches;
+    }
+
+    public Summary summarize(List<SalesReportController.SalesItem> sales) {
+        double totalSales = 0;
+        int totalItems = 0;
+        for (SalesReportController.SalesItem item : sales) {
+            totalSales += item.getTotal();
+            totalItems += item.getQuantity();
+        }
+        return new Summary(totalSales, totalItems, sales.size());
+    }
+
+    private static String resolveProductColumn(Statement stmt) throws SQLException {
+        // First, check what columns exist in the sales table
+        try (ResultSet rs = stmt.executeQuery("SELECT * FROM sales LIMIT 0")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+
+            // Determine the correct column names
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                String colName = metaData.getColumnName(i).toLowerCase();
+                if (colName.equals("product_name") || colName.equals("product") || colName.equals("productname")) {
+                    return metaData.getColumnName(i);
+                }
+            }
+        }
+        throw new SQLException("Could not find product column in sales table");
+    }
+
+    private static SalesReportController.SalesItem readSalesItem(ResultSet rs) throws SQLException {
+        return new SalesReportController.SalesItem(
+            rs.getString("sale_date"),
+            rs.getString("product_name"),
+            rs.getInt("quantity"),
+            rs.getDouble("unit_price"),
+            rs.getDouble("total"),
+            rs.getString("category")
+        );
+    }
+
+    private static LocalDate retentionCutoff() {
+        return LocalDate.now().minusDays(RETENTION_DAYS);
+    }
+
+    // ==================== RECORDING ====================
+
+    /**
+     * Write one sales row per order line and add them to the in-memory window.
+     */
+    public void recordSales(List<DashboardController.OrderItem> orderItems) throws SQLException {
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            List<SalesReportController.SalesItem> added = writeSales(conn, orderItems);
+            // Only once the rows are written, so the report never shows unsaved sales
+            addToRecent(added);
+            LOGGER.info("Added " + orderItems.size() + " sales records");
+        }
+    }
+
+    /**
+     * Insert today's sales rows for orderItems on the caller's connection and
+     * transaction, and return them for addToRecent() once committed. Returns
+     * are written the same way, as lines with negative quantity and total.
+     */
+    List<SalesReportController.SalesItem> writeSales(Connection conn, List<DashboardController.OrderItem> orderItems)
+            throws SQLException {
+        String date = LocalDate.now().toString();
+        List<SalesReportController.SalesItem> added = new ArrayList<>(orderItems.size());
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO sales (sale_date, product, quantity, unit_price, total, category) " +
+                "VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (DashboardController.OrderItem item : orderItems) {
+                String category = categoryOf(conn, item);
+
+                ps.setString(1, date);
+                ps.setString(2, item.getDescription());
+                ps.setInt(3, item.getQuantity());
+                ps.setDouble(4, item.getPrice());
+                ps.setDouble(5, item.getTotal());
+                ps.setString(6, category);
+                ps.addBatch();
+
+                added.add(new SalesReportController.SalesItem(date, item.getDescription(),
+                        item.getQuantity(), item.getPrice(), item.getTotal(), category));
+            }
+            ps.executeBatch();
+        }
+        return added;
+    }
+
+    /**
+     * Put committed sales rows at the front of the in-memory window.
+     */
+    void addToRecent(List<SalesReportController.SalesItem> sales) {
+        for (SalesReportController.SalesItem sale : sales) {
+            recentSales.addFirst(sale); // O(1), evicts the oldest when full
+        }
+        recentSales.trimOlderThan(retentionCutoff());
+    }
+
+    /**
+     * Category of a sold product: from the cached catalog when it has the
+     * product, otherwise from the products table. "OTHER" if it has none.
+     */
+    private static String categoryOf(Connection conn, DashboardController.OrderItem item) {
+        String category = null;
+        DashboardController.Product product = ProductCatalog.find(item.getProductId());
+        if (product != null) {
+            category = product.getCategory();
+        } else {
+            try (PreparedStatement ps = conn.prepareStatement("SELECT category FROM products WHERE id = ?")) {
+                ps.setInt(1, item.getProductId());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        category = rs.getString("category");
+                    }
+                }
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Could not look up category of product " + item.getProductId(), e);
+            }
+        }
+        if (category == null || category.trim().isEmpty()) {
+            LOGGER.fine("No category for product " + item.getProductId() + " (" + item.getDescription() + ")");
+            return "OTHER";
+        }
+        return category;
+    }
+
+    // ==================== MODEL ====================
+
+    public static final class Summary {
+        private final double totalSales;
+        private final int totalItems;
+        private final int transactions;
+
+        Summary(double totalSales, int totalItems, int transactions) {
+            this.totalSales = totalSales;
+            this.totalItems = totalItems;
+            this.transactions = transactions;
+        }
+
+        public double getTotalSales() { return totalSales; }
+        public int getTotalItems() { return totalItems; }
+        public int getTransactions() { return transactions; }
+    }
+}
@@ -0,0 +1,345 @@
+package com.newfoundsoftware.pos;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ReservationService - Soft stock reservations held by open carts
+ *
+ * Adding to a cart reserves the quantity in stock_reservations, checked
+ * against current stock minus what other carts hold, so a customer who got
+ * the item into the cart gets it at payment. Reservations do not move stock:
+ * checkout may only take what other carts do not hold, and releases the
+ * cart's rows in the same transaction.
+ *
+ * Every change to a cart pushes its expiry out by pos.reservations.ttlMinutes.
+ * Expired rows stop counting straight away and are deleted by a sweeper
+ * every pos.reservations.sweepSeconds, so a terminal that crashes or walks
+ * away from a cart cannot hold stock for long.
+ *
+ * Reservers and checkouts of one product are serialized on its
+ * product_stock row (StockLedger.lock), held only for one short transaction
+ * per cart add, so contention is spread over the session instead of piling
+ * up at payment.
+ */
+public final class ReservationService {
+
+    private static final Logger LOGGER = Logger.getLogger(ReservationService.class.getName());
+    private static final ReservationService INSTANCE = new ReservationService();
+
+    private static final long TTL_MINUTES = PosConfig.getLong("pos.reservations.ttlMinutes", 15);
+    private static final long SWEEP_SECONDS = PosConfig.getLong("pos.reservations.sweepSeconds", 60);
+
+    private static final String HELD_SQL =
+            "SELECT COALESCE(SUM(CASE WHEN cart_id <> ? THEN quantity ELSE 0 END), 0) AS others, " +
+            "COALESCE(SUM(CASE WHEN cart_id = ? THEN quantity ELSE 0 END), 0) AS mine " +
+            "FROM stock_reservations WHERE product_id = ? AND expires_at > ?";
+    private static final String UPSERT_SQL =
+            "INSERT INTO stock_reservations (cart_id, product_id, quantity, expires_at) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE quantity = VALUES(quantity), expires_at = VALUES(expires_at)";
+    private static final String TOUCH_SQL =
+            "UPDATE stock_reservations SET expires_at = ? WHERE cart_id = ?";
+
+    private volatile boolean schemaReady;
+    private ScheduledExecutorService sweeper;
+
+    private ReservationService() {
+    }
+
+    public static ReservationService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * A new cart id; carts are only rows in stock_reservations, nothing is created here.
+     */
+    public String newCartId() {
+        return UUID.randomUUID().toString();
+    }
+
+    // ==================== SCHEMA ====================
+
+    public void ensureSchema() throws SQLException {
+        if (schemaReady) return;
+        synchronized (this) {
+            if (schemaReady) return;
+            StockLedger.ensureSchema();
+            try (Connection conn = connect();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS stock_reservations (" +
+                        "cart_id CHAR(36) NOT NULL, " +
+                        "product_id INT NOT NULL, " +
+                        "quantity INT NOT NULL, " +
+                        "expires_at TIMESTAMP NOT NULL, " +
+                        "PRIMARY KEY (cart_id, product_id), " +
+                        "INDEX idx_reservations_product (product_id, expires_at), " +
+                        "INDEX idx_reservations_expiry (expires_at))");
+            }
+            schemaReady = true;
+            LOGGER.info("Stock reservations initialized");
+        }
+    }
+
+    // ==================== RESERVE ====================
+
+    /**
+     * Add quantity to what cartId holds of a product. Nothing changes if the
+     * product does not have that much left after other carts' reservations;
+     * the result says how much the cart could still take.
+     */
+    public Reservation reserve(String cartId, int productId, int quantity) throws SQLException {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be greater than 0");
+        }
+        ensureSchema();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try (Connection conn = connect()) {
+            conn.setAutoCommit(false);
+            try {
+                StockLedger.lock(conn, Collections.singleton(productId));
+                int stock = StockLedger.currentStock(conn, productId);
+                int others;
+                int mine;
+                try (PreparedStatement ps = conn.prepareStatement(HELD_SQL)) {
+                    ps.setString(1, cartId);
+                    ps.setString(2, cartId);
+                    ps.setInt(3, productId);
+                    ps.setTimestamp(4, now);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        others = rs.getInt("others");
+                        mine = rs.getInt("mine");
+                    }
+                }
+
+                int available = stock - others - mine;
+                if (quantity > available) {
+                    conn.rollback();
+                    return new Reservation(false, mine, Math.max(0, available));
+                }
+                try (PreparedStatement ps = conn.prepareStatement(UPSERT_SQL)) {
+                    ps.setString(1, cartId);
+                    ps.setInt(2, productId);
+                    ps.setInt(3, mine + quantity);
+                    ps.setTimestamp(4, expiry(now));
+                    ps.executeUpdate();
+                }
+                touch(conn, cartId, now);
+                conn.commit();
+                return new Reservation(true, mine + quantity, available - quantity);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * What carts other than cartId hold of each product (productId -> quantity;
+     * products nobody else holds are left out), on the caller's connection.
+     * Expired reservations do not count. With a null cartId every cart counts.
+     * Call under StockLedger.lock() so the figure holds until commit.
+     */
+    Map<Integer, Integer> heldByOthers(Connection conn, String cartId, Collection<Integer> productIds)
+            throws SQLException {
+        Map<Integer, Integer> held = new HashMap<>();
+        if (productIds.isEmpty()) return held;
+        String placeholders = String.join(", ", Collections.nCopies(productIds.size(), "?"));
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT product_id, SUM(quantity) AS held FROM stock_reservations " +
+                "WHERE product_id IN (" + placeholders + ") AND expires_at > ? " +
+                "AND (? IS NULL OR cart_id <> ?) GROUP BY product_id")) {
+            int index = 1;
+            for (int productId : productIds) {
+                ps.setInt(index++, productId);
+            }
+            ps.setTimestamp(index++, new Timestamp(System.currentTimeMillis()));
+            ps.setString(index++, cartId);
+            ps.setString(index, cartId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    held.put(rs.getInt("product_id"), rs.getInt("held"));
+                }
+            }
+        }
+        return held;
+    }
+
+    /**
+     * Set what cartId holds to exactly quantities (productId -> quantity),
+     * dropping products not listed, in one batch. Unlike reserve() this does
+     * not check stock; the caller has just done so, e.g. when resuming a
+     * parked order.
+     */
+    public void hold(String cartId, Map<Integer, Integer> quantities) throws SQLException {
+        ensureSchema();
+        try (Connection conn = connect()) {
+            conn.setAutoCommit(false);
+            try {
+                hold(conn, cartId, quantities);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Same as hold(), on the caller's connection and transaction.
+     */
+    void hold(Connection conn, String cartId, Map<Integer, Integer> quantities) throws SQLException {
+        Timestamp expiresAt = expiry(new Timestamp(System.currentTimeMillis()));
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM stock_reservations WHERE cart_id = ?")) {
+            ps.setString(1, cartId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(UPSERT_SQL)) {
+            for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+                ps.setString(1, cartId);
+                ps.setInt(2, entry.getKey());
+                ps.setInt(3, entry.getValue());
+                ps.setTimestamp(4, expiresAt);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Give back what cartId holds of one product.
+     */
+    public void release(String cartId, int productId) throws SQLException {
+        ensureSchema();
+        try (Connection conn = connect();
+             PreparedStatement ps = conn.prepareStatement(
+                     "DELETE FROM stock_reservations WHERE cart_id = ? AND product_id = ?")) {
+            ps.setString(1, cartId);
+            ps.setInt(2, productId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Give back everything cartId holds - after checkout, or when the cart is abandoned.
+     */
+    public void releaseCart(String cartId) throws SQLException {
+        ensureSchema();
+        try (Connection conn = connect()) {
+            releaseCart(conn, cartId);
+        }
+    }
+
+    /**
+     * Same as releaseCart(), on the caller's connection and transaction, so
+     * the cart keeps its reservations if the checkout rolls back.
+     */
+    void releaseCart(Connection conn, String cartId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM stock_reservations WHERE cart_id = ?")) {
+            ps.setString(1, cartId);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Push the cart's expiry out by the TTL, e.g. while the customer is paying.
+     */
+    public void touch(String cartId) throws SQLException {
+        ensureSchema();
+        try (Connection conn = connect()) {
+            touch(conn, cartId, new Timestamp(System.currentTimeMillis()));
+        }
+    }
+
+    private void touch(Connection conn, String cartId, Timestamp now) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(TOUCH_SQL)) {
+            ps.setTimestamp(1, expiry(now));
+            ps.setString(2, cartId);
+            ps.executeUpdate();
+        }
+    }
+
+    // ==================== SWEEPER ====================
+
+    /**
+     * Delete expired reservations. Returns how many were removed.
+     */
+    public int sweep() throws SQLException {
+        ensureSchema();
+        try (Connection conn = connect();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM stock_reservations WHERE expires_at <= ?")) {
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            int removed = ps.executeUpdate();
+            if (removed > 0) {
+                LOGGER.info("Expired " + removed + " abandoned stock reservations");
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * Run sweep() every pos.reservations.sweepSeconds on a daemon thread.
+     * Only the first call starts the schedule.
+     */
+    public synchronized void startSweeper() {
+        if (sweeper != null) return;
+        sweeper = Executors.newSingleThreadScheduledExecutor(PosExecutors.daemonFactory("reservation-sweeper"));
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Reservation sweep failed", e);
+            }
+        }, SWEEP_SECONDS, SWEEP_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static Timestamp expiry(Timestamp now) {
+        return new Timestamp(now.getTime() + TimeUnit.MINUTES.toMillis(TTL_MINUTES));
+    }
+
+    private static Connection connect() throws SQLException {
+        Connection conn = new JdbcDao().getConnection();
+        if (conn == null) {
+            throw new SQLException("Could not connect to database");
+        }
+        return conn;
+    }
+
+    // ==================== MODEL ====================
+
+    public static final class Reservation {
+        private final boolean granted;
+        private final int held;
+        private final int available;
+
+        Reservation(boolean granted, int held, int available) {
+            this.granted = granted;
+            this.held = held;
+            this.available = available;
+        }
+
+        public boolean isGranted() { return granted; }
+        /** What the cart holds of the product now. */
+        public int getHeld() { return held; }
+        /** What the cart could still add. */
+        public int getAvailable() { return available; }
+    }
+}
@@ -0,0 +1,289 @@
+package com.newfoundsoftware.pos;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * ReturnService - Returns and refunds against stored invoices, without any UI
+ *
+ * A return is one transaction: each returned invoice line is claimed with a
+ * conditional update (returned_qty may never pass the quantity sold, so two
+ * terminals cannot refund the same units twice), the return is recorded in
+ * returns / return_lines, the sales table gets negative lines for today and
+ * stock goes back with RETURN movements. Nothing is applied unless all of
+ * it commits.
+ *
+ * Caches are updated in place once the return commits: the negative lines
+ * go to the front of ReportService's recent-sales window and the new stock
+ * levels go to LowStockIndex, so nothing needs a reload.
+ */
+public final class ReturnService {
+
+    private static final Logger LOGGER = Logger.getLogger(ReturnService.class.getName());
+    private static final ReturnService INSTANCE = new ReturnService();
+
+    // Only succeeds while enough of the line is left to return
+    private static final String CLAIM_SQL =
+            "UPDATE invoice_lines SET returned_qty = returned_qty + ? " +
+            "WHERE invoice_no = ? AND line_no = ? AND quantity - returned_qty >= ?";
+
+    private final ReceiptService receiptService = ReceiptService.getInstance();
+    private final ReportService reportService = ReportService.getInstance();
+    private final CheckoutService checkoutService = CheckoutService.getInstance();
+    private volatile boolean schemaReady;
+
+    private ReturnService() {
+    }
+
+    public static ReturnService getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== SCHEMA ====================
+
+    public void ensureSchema() throws SQLException {
+        if (schemaReady) return;
+        synchronized (this) {
+            if (schemaReady) return;
+            receiptService.ensureSchema();
+            StockLedger.ensureSchema();
+            try (Connection conn = connect();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS returns (" +
+                        "return_no VARCHAR(32) PRIMARY KEY, " +
+                        "invoice_no VARCHAR(32) NOT NULL, " +
+                        "returned_at DATETIME NOT NULL, " +
+                        "refund_total DOUBLE NOT NULL, " +
+                        "reason VARCHAR(255), " +
+                        "INDEX idx_returns_invoice (invoice_no), " +
+                        "INDEX idx_returns_date (returned_at), " +
+                        "FOREIGN KEY (invoice_no) REFERENCES invoices(invoice_no))");
+                stmt.execute("CREATE TABLE IF NOT EXISTS return_lines (" +
+                        "return_no VARCHAR(32) NOT NULL, " +
+                        "line_no INT NOT NULL, " +
+                        "product_id INT NOT NULL, " +
+                        "quantity INT NOT NULL, " +
+                        "refund DOUBLE NOT NULL, " +
+                        "PRIMARY KEY (return_no, line_no), " +
+                        "FOREIGN KEY (return_no) REFERENCES returns(return_no) ON DELETE CASCADE)");
+            }
+            schemaReady = true;
+            LOGGER.info("Returns initialized");
+        }
+    }
+
+    // ==================== LOOKUP ====================
+
+    /**
+     * The invoice's lines with how many units are still returnable, in
+     * invoice order. Empty if there is no such invoice.
+     */
+    public List<ReturnableLine> returnableLines(String invoiceNumber) throws SQLException {
+        ensureSchema();
+        List<ReturnableLine> lines = new ArrayList<>();
+        try (Connection conn = connect();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT line_no, product_id, description, quantity, returned_qty, unit_price " +
+                     "FROM invoice_lines WHERE invoice_no = ? ORDER BY line_no")) {
+            ps.setString(1, invoiceNumber);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    lines.add(new ReturnableLine(rs.getInt("line_no"), rs.getInt("product_id"),
+                            rs.getString("description"), rs.getInt("quantity"), rs.getInt("returned_qty"),
+                            rs.getDouble("unit_price")));
+                }
+            }
+        }
+        return lines;
+    }
+
+    // ==================== RETURN ====================
+
+    /**
+     * Return quantities (invoice line number -> units) from an invoice and
+     * refund them, VAT included. Lines with a quantity of 0 are skipped.
+     *
+     * @throws IllegalArgumentException if nothing is returned, a line is not
+     *         on the invoice or more units are returned than are left; nothing
+     *         is changed in that case
+     */
+    public ReturnResult processReturn(String invoiceNumber, Map<Integer, Integer> quantities, String reason)
+            throws SQLException {
+        ensureSchema();
+        Map<Integer, ReturnableLine> byLineNo = new TreeMap<>();
+        for (ReturnableLine line : returnableLines(invoiceNumber)) {
+            byLineNo.put(line.getLineNo(), line);
+        }
+        if (byLineNo.isEmpty()) {
+            throw new IllegalArgumentException("Invoice " + invoiceNumber + " not found");
+        }
+
+        Map<Integer, Integer> returned = new TreeMap<>();
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            if (entry.getValue() < 0) {
+                throw new IllegalArgumentException("Return quantities cannot be negative");
+            }
+            if (entry.getValue() == 0) continue;
+            if (!byLineNo.containsKey(entry.getKey())) {
+                throw new IllegalArgumentException("Invoice " + invoiceNumber + " has no line " + entry.getKey());
+            }
+            returned.put(entry.getKey(), entry.getValue());
+        }
+        if (returned.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to return");
+        }
+
+        List<DashboardController.OrderItem> negativeLines = new ArrayList<>(returned.size());
+        double subTotal = 0;
+        for (Map.Entry<Integer, Integer> entry : returned.entrySet()) {
+            ReturnableLine line = byLineNo.get(entry.getKey());
+            double amount = line.getUnitPrice() * entry.getValue();
+            subTotal += amount;
+            negativeLines.add(new DashboardController.OrderItem(line.getProductId(), line.getDescription(),
+                    line.getUnitPrice(), -entry.getValue(), -amount));
+        }
+        CheckoutService.Totals refund = checkoutService.totals(subTotal);
+
+        String returnNumber;
+        List<SalesReportController.SalesItem> salesRows;
+        Map<Integer, Integer> stocks = new HashMap<>();
+        try (Connection conn = connect()) {
+            conn.setAutoCommit(false);
+            try {
+                // Same lock order as a checkout: the invoice counter, then the product rows
+                returnNumber = "R" + receiptService.nextInvoiceNumber(conn);
+                List<Integer> productIds = new ArrayList<>(returned.size());
+                for (int lineNo : returned.keySet()) {
+                    productIds.add(byLineNo.get(lineNo).getProductId());
+                }
+                StockLedger.lock(conn, productIds);
+
+                try (PreparedStatement claim = conn.prepareStatement(CLAIM_SQL)) {
+                    for (Map.Entry<Integer, Integer> entry : returned.entrySet()) {
+                        claim.setInt(1, entry.getValue());
+                        claim.setString(2, invoiceNumber);
+                        claim.setInt(3, entry.getKey());
+                        claim.setInt(4, entry.getValue());
+                        if (claim.executeUpdate() == 0) {
+                            conn.rollback();
+                            ReturnableLine line = byLineNo.get(entry.getKey());
+                            throw new IllegalArgumentException(line.getDescription() + ": cannot return "
+                                    + entry.getValue() + ", only " + line.getReturnable() + " left on the invoice");
+                        }
+                    }
+                }
+
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO returns (return_no, invoice_no, returned_at, refund_total, reason) " +
+                        "VALUES (?, ?, ?, ?, ?)")) {
+                    ps.setString(1, returnNumber);
+                    ps.setString(2, invoiceNumber);
+                    ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                    ps.setDouble(4, refund.getGrandTotal());
+                    ps.setString(5, reason);
+                    ps.executeUpdate();
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO return_lines (return_no, line_no, product_id, quantity, refund) " +
+                        "VALUES (?, ?, ?, ?, ?)")) {
+                    for (Map.Entry<Integer, Integer> entry : returned.entrySet()) {
+                        ReturnableLine line = byLineNo.get(entry.getKey());
+                        ps.setString(1, returnNumber);
+                        ps.setInt(2, entry.getKey());
+                        ps.setInt(3, line.getProductId());
+                        ps.setInt(4, entry.getValue());
+                        ps.setDouble(5, checkoutService.totals(line.getUnitPrice() * entry.getValue()).getGrandTotal());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+
+                salesRows = reportService.writeSales(conn, negativeLines);
+
+                for (Map.Entry<Integer, Integer> entry : returned.entrySet()) {
+                    int productId = byLineNo.get(entry.getKey()).getProductId();
+                    stocks.put(productId, StockLedger.record(conn, productId,
+                            StockLedger.MovementType.RETURN, entry.getValue(), returnNumber));
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+
+        reportService.addToRecent(salesRows);
+        LowStockIndex.onStockChanged(stocks);
+        LOGGER.info("Return " + returnNumber + " against invoice " + invoiceNumber + ": "
+                + returned.size() + " lines, refund " + ReceiptRenderer.money(refund.getGrandTotal()));
+        return new ReturnResult(returnNumber, invoiceNumber, refund, negativeLines.size());
+    }
+
+    private static Connection connect() throws SQLException {
+        Connection conn = new JdbcDao().getConnection();
+        if (conn == null) {
+            throw new SQLException("Could not connect to database");
+        }
+        return conn;
+    }
+
+    // ==================== MODEL ====================
+
+    public static final class ReturnableLine {
+        private final int lineNo;
+        private final int productId;
+        private final String description;
+        private final int quantity;
+        private final int returned;
+        private final double unitPrice;
+
+        ReturnableLine(int lineNo, int productId, String description, int quantity, int returned, double unitPrice) {
+            this.lineNo = lineNo;
+            this.productId = productId;
+            this.description = description;
+            this.quantity = quantity;
+            this.returned = returned;
+            this.unitPrice = unitPrice;
+        }
+
+        public int getLineNo() { return lineNo; }
+        public int getProductId() { return productId; }
+        public String getDescription() { return description; }
+        public int getQuantity() { return quantity; }
+        public int getReturned() { return returned; }
+        public int getReturnable() { return quantity - returned; }
+        public double getUnitPrice() { return unitPrice; }
+    }
+
+    public static final class ReturnResult {
+        private final String returnNumber;
+        private final String invoiceNumber;
+        private final CheckoutService.Totals refund;
+        private final int lines;
+
+        ReturnResult(String returnNumber, String invoiceNumber, CheckoutService.Totals refund, int lines) {
+            this.returnNumber = returnNumber;
+            this.invoiceNumber = invoiceNumber;
+            this.refund = refund;
+            this.lines = lines;
+        }
+
+        public String getReturnNumber() { return returnNumber; }
+        public String getInvoiceNumber() { return invoiceNumber; }
+        /** Refunded subtotal, VAT and total. */
+        public CheckoutService.Totals getRefund() { return refund; }
+        public int getLines() { return lines; }
+    }
+}
@@ -0,0 +1,13 @@
+package com.newfoundsoftware.pos;
+
+/**
+ * ReusableController - Controller of a view that SceneCache parses once and shows many times
+ *
+ * reset() is called right before the cached view is shown again. It should
+ * clear whatever the previous session left behind (form fields, selection)
+ * and bring the data up to date without rebuilding the view.
+ */
+public interface ReusableController {
+
+    void reset();
+}
@@ -0,0 +1,127 @@
+package com.newfoundsoftware.pos;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SalesHistoryBuffer - Fixed-capacity, newest-first ring buffer of recent sales lines
+ *
+ * addFirst() is O(1) and evicts the oldest line once the buffer is full.
+ * Lines older than the retention window are dropped by trimOlderThan().
+ * completeSince() tells callers from which date the buffer is known to hold
+ * every sale; anything before that has to be read from the sales table.
+ *
+ * All methods are synchronized - sales can be recorded from any thread.
+ */
+public final class SalesHistoryBuffer {
+
+    private final SalesReportController.SalesItem[] ring;
+    private int head;   // index of the newest element
+    private int size;
+    private LocalDate completeSince;
+
+    public SalesHistoryBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.ring = new SalesReportController.SalesItem[capacity];
+        this.completeSince = LocalDate.now();
+    }
+
+    /**
+     * Add the newest sale. Evicts the oldest one if the buffer is full.
+     */
+    public synchronized void addFirst(SalesReportController.SalesItem item) {
+        head = (head - 1 + ring.length) % ring.length;
+        if (size == ring.length) {
+            // head now points at the old tail - it is overwritten
+            markEvicted(ring[head]);
+        } else {
+            size++;
+        }
+        ring[head] = item;
+    }
+
+    /**
+     * Append an older sale behind everything already held (used by the initial load,
+     * which reads newest first). Ignored once the buffer is full.
+     */
+    public synchronized boolean addLast(SalesReportController.SalesItem item) {
+        if (size == ring.length) {
+            markEvicted(item);
+            return false;
+        }
+        ring[(head + size) % ring.length] = item;
+        size++;
+        return true;
+    }
+
+    /**
+     * Drop every line dated before the cutoff.
+     */
+    public synchronized int trimOlderThan(LocalDate cutoff) {
+        int removed = 0;
+        while (size > 0) {
+            int tail = (head + size - 1) % ring.length;
+            LocalDate date = ring[tail].getSaleDate();
+            if (date != null && !date.isBefore(cutoff)) {
+                break;
+            }
+            ring[tail] = null;
+            size--;
+            removed++;
+        }
+        if (cutoff.isAfter(completeSince)) {
+            completeSince = cutoff;
+        }
+        return removed;
+    }
+
+    public synchronized void clear(LocalDate completeSince) {
+        Arrays.fill(ring, null);
+        head = 0;
+        size = 0;
+        this.completeSince = completeSince;
+    }
+
+    /**
+     * Copy of the contents, newest first.
+     */
+    public synchronized List<SalesReportController.SalesItem> snapshot() {
+        List<SalesReportController.SalesItem> copy = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            copy.add(ring[(head + i) % ring.length]);
+        }
+        return copy;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * Earliest date for which the buffer holds every sale.
+     */
+    public synchronized LocalDate completeSince() {
+        return completeSince;
+    }
+
+    /**
+     * An evicted line's day is no longer complete in memory.
+     */
+    private void markEvicted(SalesReportController.SalesItem evicted) {
+        if (evicted == null || evicted.getSaleDate() == null) {
+            return;
+        }
+        LocalDate nextDay = evicted.getSaleDate().plusDays(1);
+        if (nextDay.isAfter(completeSince)) {
+            completeSince = nextDay;
+        }
+    }
+}
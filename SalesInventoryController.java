@@ -1,28 +1,44 @@
 package com.newfoundsoftware.pos;
 
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.layout.GridPane;
+import javafx.util.Duration;
 
-import java.io.InputStream;
 import java.net.URL;
+import java.time.format.DateTimeFormatter;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * SalesInventoryController - Manages inventory with stock tracking
  */
-public class SalesInventoryController implements Initializable {
+public class SalesInventoryController implements Initializable, ReusableController {
     
     private static final Logger LOGGER = Logger.getLogger(SalesInventoryController.class.getName());
-    private static final int DEFAULT_STOCK = 100;
+    private static final long SEARCH_DEBOUNCE_MS = PosConfig.getLong("pos.inventory.searchDebounceMs", 150);
+    // Above this many items filtering runs off the FX thread
+    private static final int ASYNC_FILTER_THRESHOLD = PosConfig.getInt("pos.inventory.asyncFilterThreshold", 5000);
+    private static final DateTimeFormatter HISTORY_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String ALL_CATEGORIES = "All Categories";
     
     // ========== FXML Fields ==========
     @FXML private TextField searchField;
@@ -51,9 +67,19 @@ public class SalesInventoryController implements Initializable {
     @FXML private Label detailUnitPrice;
     @FXML private Label detailStatus;
     
+    private final InventoryService inventoryService = InventoryService.getInstance();
     private ObservableList<InventoryItem> inventoryList = FXCollections.observableArrayList();
     private ObservableList<InventoryItem> filteredList = FXCollections.observableArrayList();
     private InventoryItem selectedItem = null;
+    private CompletableFuture<Image> previewImage;
+    
+    // Search
+    private InventoryFilter inventoryFilter = new InventoryFilter(new ArrayList<>());
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(SEARCH_DEBOUNCE_MS));
+    private final AtomicLong filterGeneration = new AtomicLong();
+    private final AtomicLong indexGeneration = new AtomicLong();
+    private final AtomicLong loadGeneration = new AtomicLong();
+    private Task<List<InventoryItem>> runningFilter;
     
     @Override
     public void initialize(URL url, ResourceBundle rb) {
@@ -66,88 +92,44 @@ public class SalesInventoryController implements Initializable {
         hideDetailPanel();
     }
     
-    // Create stock table if not exists
-    private void initializeStockTable() {
-        JdbcDao jdbcDao = new JdbcDao();
-        Connection conn = jdbcDao.getConnection();
-        
-        if (conn == null) return;
-        
-        String createTableSQL = "CREATE TABLE IF NOT EXISTS product_stock (" +
-                "product_id INT PRIMARY KEY, " +
-                "stock INT NOT NULL DEFAULT " + DEFAULT_STOCK + ", " +
-                "FOREIGN KEY (product_id) REFERENCES products(id) ON DELETE CASCADE)";
-        
-        try (Statement stmt = conn.createStatement()) {
-            stmt.execute(createTableSQL);
-            LOGGER.info("Stock table initialized");
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error creating stock table", e);
-        }
+    /**
+     * Called when the cached screen is reopened: refresh stock in place and
+     * keep the user's filters.
+     */
+    @Override
+    public void reset() {
+        hideDetailPanel();
+        applyKnownStock();
+        loadInventoryData();
     }
     
-    // Get stock for a product (creates entry if not exists)
-    public static int getStock(int productId) {
-        JdbcDao jdbcDao = new JdbcDao();
-        Connection conn = jdbcDao.getConnection();
-        
-        if (conn == null) return 0;
-        
-        // Try to get existing stock
-        String selectSQL = "SELECT stock FROM product_stock WHERE product_id=?";
-        try (PreparedStatement ps = conn.prepareStatement(selectSQL)) {
-            ps.setInt(1, productId);
-            ResultSet rs = ps.executeQuery();
-            
-            if (rs.next()) {
-                return rs.getInt("stock");
+    /**
+     * Bring stock figures up to date from LowStockIndex, which every commit
+     * on this terminal updates, without touching the database. The full
+     * load that follows picks up other terminals' changes.
+     */
+    private void applyKnownStock() {
+        boolean changed = false;
+        for (InventoryItem item : inventoryList) {
+            LowStockIndex.StockLevel level = LowStockIndex.getIfLoaded(item.getId());
+            if (level != null && level.getStock() != item.getStock()) {
+                item.setStock(level.getStock());
+                changed = true;
             }
-        } catch (SQLException e) {
-            Logger.getLogger(SalesInventoryController.class.getName()).log(Level.WARNING, "Error getting stock", e);
         }
-        
-        // Create default stock entry if not exists
-        String insertSQL = "INSERT INTO product_stock (product_id, stock) VALUES (?, ?)";
-        try (PreparedStatement ps = conn.prepareStatement(insertSQL)) {
-            ps.setInt(1, productId);
-            ps.setInt(2, DEFAULT_STOCK);
-            ps.executeUpdate();
-            return DEFAULT_STOCK;
-        } catch (SQLException e) {
-            Logger.getLogger(SalesInventoryController.class.getName()).log(Level.SEVERE, "Error creating stock entry", e);
-            return 0;
+        if (changed) {
+            productTable.refresh();
+            applyFilters();
         }
     }
     
-    // Update stock
-    public static boolean updateStock(int productId, int newStock) {
-        JdbcDao jdbcDao = new JdbcDao();
-        Connection conn = jdbcDao.getConnection();
-        
-        if (conn == null) return false;
-        
-        String updateSQL = "INSERT INTO product_stock (product_id, stock) VALUES (?, ?) " +
-                "ON DUPLICATE KEY UPDATE stock=?";
-        
-        try (PreparedStatement ps = conn.prepareStatement(updateSQL)) {
-            ps.setInt(1, productId);
-            ps.setInt(2, newStock);
-            ps.setInt(3, newStock);
-            ps.executeUpdate();
-            return true;
+    // Create the stock ledger tables if not exists
+    private void initializeStockTable() {
+        try {
+            StockLedger.ensureSchema();
         } catch (SQLException e) {
-            Logger.getLogger(SalesInventoryController.class.getName()).log(Level.SEVERE, "Error updating stock", e);
-            return false;
-        }
-    }
-    
-    // Deduct stock (called when order is placed)
-    public static boolean deductStock(int productId, int quantity) {
-        int currentStock = getStock(productId);
-        if (currentStock >= quantity) {
-            return updateStock(productId, currentStock - quantity);
+            LOGGER.log(Level.SEVERE, "Error creating stock tables", e);
         }
-        return false;
     }
     
     private void setupTableColumns() {
@@ -175,9 +157,11 @@ public class SalesInventoryController implements Initializable {
                     setStyle("");
                 } else {
                     setText(String.valueOf(stock));
+                    InventoryItem item = getTableRow() != null ? getTableRow().getItem() : null;
+                    int reorderPoint = item != null ? item.getReorderPoint() : LowStockIndex.DEFAULT_REORDER_POINT;
                     if (stock == 0) {
                         setStyle("-fx-background-color: #ffcccc; -fx-text-fill: #cc0000; -fx-font-weight: bold;");
-                    } else if (stock < 10) {
+                    } else if (stock <= reorderPoint) {
                         setStyle("-fx-background-color: #fff4cc; -fx-text-fill: #ff9800; -fx-font-weight: bold;");
                     } else {
                         setStyle("-fx-text-fill: #4CAF50; -fx-font-weight: bold;");
@@ -208,17 +192,32 @@ public class SalesInventoryController implements Initializable {
     }
     
     private void setupFilters() {
-        ObservableList<String> categories = FXCollections.observableArrayList(
-            "All Categories", "FOUNDATION", "BLUSH", "CONCEALER", "LIPSTICK", "EYESHADOW"
-        );
-        categoryFilter.setItems(categories);
-        categoryFilter.setValue("All Categories");
+        categoryFilter.setItems(FXCollections.observableArrayList(ALL_CATEGORIES));
+        categoryFilter.setValue(ALL_CATEGORIES);
+    }
+    
+    /**
+     * Offer the categories present in the loaded inventory, keeping the
+     * selection if it still exists.
+     */
+    private void updateCategoryChoices() {
+        List<String> choices = new ArrayList<>();
+        choices.add(ALL_CATEGORIES);
+        choices.addAll(inventoryFilter.categories());
+        if (choices.equals(categoryFilter.getItems())) {
+            return;
+        }
+        String selected = categoryFilter.getValue();
+        categoryFilter.getItems().setAll(choices);
+        categoryFilter.setValue(choices.contains(selected) ? selected : ALL_CATEGORIES);
     }
     
     private void setupSpinner() {
+        // 0 = each product's own reorder point; anything else is a fixed "below" threshold
         SpinnerValueFactory<Integer> valueFactory = 
-            new SpinnerValueFactory.IntegerSpinnerValueFactory(0, 1000, 10, 5);
+            new SpinnerValueFactory.IntegerSpinnerValueFactory(0, 100000, 0, 5);
         lowStockSpinner.setValueFactory(valueFactory);
+        lowStockSpinner.setTooltip(new Tooltip("0 = at or below each product's reorder point"));
     }
     
     private void setupEventHandlers() {
@@ -226,102 +225,171 @@ public class SalesInventoryController implements Initializable {
             (obs, oldVal, newVal) -> handleTableSelection(newVal)
         );
         
+        // Typing restarts the pause; the search runs once the user stops
+        searchDebounce.setOnFinished(e -> applyFilters());
         if (searchField != null) {
-            searchField.textProperty().addListener((obs, oldVal, newVal) -> applyFilters());
+            searchField.textProperty().addListener((obs, oldVal, newVal) -> searchDebounce.playFromStart());
         }
         if (btnSearch != null) btnSearch.setOnAction(e -> applyFilters());
         if (btnApplyFilters != null) btnApplyFilters.setOnAction(e -> applyFilters());
         if (btnClearFilters != null) btnClearFilters.setOnAction(e -> clearFilters());
         if (btnCloseDetails != null) btnCloseDetails.setOnAction(e -> hideDetailPanel());
         if (btnUpdateStock != null) btnUpdateStock.setOnAction(e -> handleAddStock());
+        
+        MenuItem historyItem = new MenuItem("View Stock History");
+        historyItem.setOnAction(e -> showStockHistory());
+        MenuItem levelsItem = new MenuItem("Set Capacity / Reorder Point...");
+        levelsItem.setOnAction(e -> handleSetLevels());
+        productTable.setContextMenu(new ContextMenu(historyItem, levelsItem));
     }
     
+    /**
+     * Load the inventory in the background and merge it into the table when it arrives.
+     */
     public void loadInventoryData() {
-        inventoryList.clear();
-        JdbcDao jdbcDao = new JdbcDao();
-        Connection conn = jdbcDao.getConnection();
-        
-        if (conn == null) {
-            showError("Database Error", "Could not connect to database");
-            return;
+        long generation = loadGeneration.incrementAndGet();
+        Task<List<InventoryItem>> task = new Task<>() {
+            @Override
+            protected List<InventoryItem> call() throws Exception {
+                return inventoryService.loadInventory();
+            }
+        };
+        task.setOnSucceeded(e -> {
+            if (loadGeneration.get() != generation) return;
+            mergeInventory(task.getValue());
+            productTable.refresh(); // stock and status change in place on reused items
+            rebuildIndex();
+            showReorderAlerts();
+        });
+        task.setOnFailed(e -> {
+            if (loadGeneration.get() != generation) return;
+            LOGGER.log(Level.SEVERE, "Error loading inventory", task.getException());
+            showError("Database Error", "Failed to load inventory: " + task.getException().getMessage());
+        });
+        try {
+            PosExecutors.background().execute(task);
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.WARNING, "Inventory load not started, background queue full", e);
+            showError("Database Error", "The system is busy; the inventory was not refreshed.");
         }
-        
-        String query = "SELECT * FROM products ORDER BY id ASC";
-        
-        try (PreparedStatement ps = conn.prepareStatement(query);
-             ResultSet rs = ps.executeQuery()) {
-            
-            while (rs.next()) {
-                int productId = rs.getInt("id");
-                int stock = getStock(productId);
-                
-                InventoryItem item = new InventoryItem(
-                    productId,
-                    rs.getString("description"),
-                    rs.getString("category"),
-                    stock,
-                    rs.getDouble("price"),
-                    rs.getString("status"),
-                    rs.getString("image_path")
-                );
-                inventoryList.add(item);
+    }
+    
+    /**
+     * Index the loaded inventory in the background, then rerun the current
+     * filters against it. Until then searches use the previous index.
+     */
+    private void rebuildIndex() {
+        long generation = indexGeneration.incrementAndGet();
+        List<InventoryItem> snapshot = new ArrayList<>(inventoryList);
+        Task<InventoryFilter> task = new Task<>() {
+            @Override
+            protected InventoryFilter call() {
+                return new InventoryFilter(snapshot);
             }
-            
+        };
+        task.setOnSucceeded(e -> {
+            if (indexGeneration.get() != generation) return;
+            inventoryFilter = task.getValue();
+            updateCategoryChoices();
             applyFilters();
-            updateTotalLabel();
-            LOGGER.info("Loaded " + inventoryList.size() + " inventory items");
-            
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error loading inventory", e);
-            showError("Database Error", "Failed to load inventory: " + e.getMessage());
+        });
+        task.setOnFailed(e -> LOGGER.log(Level.WARNING, "Indexing inventory failed", task.getException()));
+        PosExecutors.background().execute(task);
+    }
+    
+    /**
+     * Apply freshly loaded rows to inventoryList, reusing the existing item objects.
+     */
+    private void mergeInventory(List<InventoryItem> fresh) {
+        Map<Integer, InventoryItem> existingById = new HashMap<>();
+        for (InventoryItem item : inventoryList) {
+            existingById.put(item.getId(), item);
+        }
+        
+        List<InventoryItem> merged = new ArrayList<>(fresh.size());
+        boolean structureChanged = fresh.size() != inventoryList.size();
+        for (int i = 0; i < fresh.size(); i++) {
+            InventoryItem item = fresh.get(i);
+            InventoryItem existing = existingById.get(item.getId());
+            if (existing == null) {
+                merged.add(item);
+                structureChanged = true;
+            } else {
+                existing.copyFrom(item);
+                merged.add(existing);
+                if (!structureChanged && inventoryList.get(i) != existing) {
+                    structureChanged = true;
+                }
+            }
+        }
+        
+        if (structureChanged) {
+            inventoryList.setAll(merged);
         }
     }
     
     @FXML
     private void applyFilters() {
-        filteredList.clear();
-        
-        String searchText = "";
-        if (searchField != null && searchField.getText() != null) {
-            searchText = searchField.getText().toLowerCase().trim();
+        searchDebounce.stop();
+        long generation = filterGeneration.incrementAndGet();
+        if (runningFilter != null) {
+            runningFilter.cancel();
+            runningFilter = null;
         }
         
         String selectedCategory = categoryFilter.getValue();
-        boolean filterLowStock = lowStockCheck.isSelected();
-        int lowStockThreshold = lowStockSpinner.getValue();
+        // Low stock with threshold 0 is a lookup in the low-stock index instead of a scan
+        boolean lowStock = lowStockCheck.isSelected();
+        int threshold = lowStockSpinner.getValue();
+        InventoryFilter.Query query = new InventoryFilter.Query(
+            searchField != null ? searchField.getText() : "",
+            ALL_CATEGORIES.equals(selectedCategory) || selectedCategory == null ? null : selectedCategory,
+            lowStock && threshold > 0 ? threshold : -1,
+            lowStock && threshold == 0 ? LowStockIndex.lowStockIds() : null
+        );
+        InventoryFilter filter = inventoryFilter;
         
-        for (InventoryItem item : inventoryList) {
-            boolean matchesSearch = searchText.isEmpty() ||
-                item.getName().toLowerCase().contains(searchText) ||
-                item.getCategory().toLowerCase().contains(searchText) ||
-                String.valueOf(item.getId()).contains(searchText);
-            
-            boolean matchesCategory = "All Categories".equals(selectedCategory) ||
-                item.getCategory().equalsIgnoreCase(selectedCategory);
-            
-            boolean matchesStock = !filterLowStock || item.getStock() < lowStockThreshold;
-            
-            if (matchesSearch && matchesCategory && matchesStock) {
-                filteredList.add(item);
-            }
+        if (filter.size() < ASYNC_FILTER_THRESHOLD) {
+            showFiltered(filter, filter.filter(query, () -> false));
+            return;
         }
         
+        // Large catalog: evaluate in the background, dropping results a newer search superseded
+        Task<List<InventoryItem>> task = new Task<>() {
+            @Override
+            protected List<InventoryItem> call() {
+                return filter.filter(query, () -> isCancelled() || filterGeneration.get() != generation);
+            }
+        };
+        task.setOnSucceeded(e -> {
+            if (filterGeneration.get() == generation && task.getValue() != null) {
+                showFiltered(filter, task.getValue());
+            }
+        });
+        task.setOnFailed(e -> LOGGER.log(Level.WARNING, "Inventory filter failed", task.getException()));
+        runningFilter = task;
+        PosExecutors.background().execute(task);
+    }
+    
+    private void showFiltered(InventoryFilter filter, List<InventoryItem> matches) {
+        InventoryFilter.applyDiff(filteredList, matches, filter::positionOf);
         updateTotalLabel();
-        productTable.refresh();
     }
     
     @FXML
     private void clearFilters() {
         if (searchField != null) searchField.clear();
-        categoryFilter.setValue("All Categories");
+        categoryFilter.setValue(ALL_CATEGORIES);
         lowStockCheck.setSelected(false);
-        lowStockSpinner.getValueFactory().setValue(10);
+        lowStockSpinner.getValueFactory().setValue(0);
         applyFilters();
     }
     
     private void updateTotalLabel() {
         if (totalProductsLabel != null) {
-            totalProductsLabel.setText("Showing " + filteredList.size() + " products");
+            int low = LowStockIndex.lowStockCount();
+            totalProductsLabel.setText("Showing " + filteredList.size() + " products"
+                + (low > 0 ? " • " + low + " at reorder point" : ""));
         }
     }
     
@@ -338,28 +406,41 @@ public class SalesInventoryController implements Initializable {
         if (detailUnitPrice != null) detailUnitPrice.setText(String.format("₱%.2f", item.getUnitPrice()));
         if (detailStatus != null) detailStatus.setText(item.getStatus());
         
-        if (item.getImagePath() != null && !item.getImagePath().isEmpty()) {
-            try {
-                InputStream imgStream = getClass().getResourceAsStream(item.getImagePath());
-                if (imgStream != null && detailImage != null) {
-                    detailImage.setImage(new Image(imgStream));
-                    detailImage.setVisible(true);
-                    if (noImageLabel != null) noImageLabel.setVisible(false);
-                } else {
-                    if (detailImage != null) detailImage.setVisible(false);
-                    if (noImageLabel != null) noImageLabel.setVisible(true);
+        // Decode the preview off the FX thread unless cached
+        cancelPreview();
+        CompletableFuture<Image> request = ImageCache.getAsync(item.getImagePath(), ImageStore.PREVIEW_SIZE);
+        if (request.isDone()) {
+            showPreview(request.join());
+        } else {
+            showPreview(null);
+            previewImage = request;
+            request.thenAccept(image -> Platform.runLater(() -> {
+                if (previewImage == request) {
+                    previewImage = null;
+                    showPreview(image);
                 }
-            } catch (Exception e) {
-                LOGGER.log(Level.WARNING, "Failed to load image", e);
-                if (detailImage != null) detailImage.setVisible(false);
-                if (noImageLabel != null) noImageLabel.setVisible(true);
-            }
+            }));
+        }
+        
+        if (btnCloseDetails != null) btnCloseDetails.setVisible(true);
+    }
+    
+    private void showPreview(Image image) {
+        if (image != null && detailImage != null) {
+            detailImage.setImage(image);
+            detailImage.setVisible(true);
+            if (noImageLabel != null) noImageLabel.setVisible(false);
         } else {
             if (detailImage != null) detailImage.setVisible(false);
             if (noImageLabel != null) noImageLabel.setVisible(true);
         }
-        
-        if (btnCloseDetails != null) btnCloseDetails.setVisible(true);
+    }
+    
+    private void cancelPreview() {
+        if (previewImage != null) {
+            previewImage.cancel(false);
+            previewImage = null;
+        }
     }
     
     private void hideDetailPanel() {
@@ -372,6 +453,7 @@ public class SalesInventoryController implements Initializable {
         if (detailStock != null) detailStock.setText("-");
         if (detailUnitPrice != null) detailUnitPrice.setText("-");
         if (detailStatus != null) detailStatus.setText("-");
+        cancelPreview();
         if (detailImage != null) detailImage.setVisible(false);
         if (noImageLabel != null) noImageLabel.setVisible(true);
         if (btnCloseDetails != null) btnCloseDetails.setVisible(false);
@@ -384,24 +466,25 @@ public class SalesInventoryController implements Initializable {
         }
         
         int currentStock = selectedItem.getStock();
+        int capacity = selectedItem.getCapacity();
         
         // Check if stock is already full
-        if (currentStock >= DEFAULT_STOCK) {
+        if (currentStock >= capacity) {
             showWarning("Stock is Full", 
                 "Cannot add more stock!\n\n" +
                 "Current Stock: " + currentStock + "\n" +
-                "Maximum Stock: " + DEFAULT_STOCK + "\n\n" +
+                "Maximum Stock: " + capacity + "\n\n" +
                 "Stock is already at maximum capacity.");
             return;
         }
         
-        int availableSpace = DEFAULT_STOCK - currentStock;
+        int availableSpace = capacity - currentStock;
         
         TextInputDialog dialog = new TextInputDialog("0");
         dialog.setTitle("Add Stock");
         dialog.setHeaderText(
             "Add stock for: " + selectedItem.getName() + "\n" +
-            "Current Stock: " + currentStock + "/" + DEFAULT_STOCK + "\n" +
+            "Current Stock: " + currentStock + "/" + capacity + "\n" +
             "Available Space: " + availableSpace
         );
         dialog.setContentText("Enter quantity to add:");
@@ -423,38 +506,60 @@ public class SalesInventoryController implements Initializable {
                 int newStock = currentStock + quantityToAdd;
                 
                 // Check if adding would exceed maximum
-                if (newStock > DEFAULT_STOCK) {
+                if (newStock > capacity) {
                     showWarning("Stock Limit Exceeded", 
                         "Cannot add " + quantityToAdd + " items!\n\n" +
                         "Current Stock: " + currentStock + "\n" +
                         "Trying to Add: +" + quantityToAdd + "\n" +
                         "Would Result In: " + newStock + "\n" +
-                        "Maximum Allowed: " + DEFAULT_STOCK + "\n\n" +
+                        "Maximum Allowed: " + capacity + "\n\n" +
                         "Maximum space available: " + availableSpace + " items");
                     return;
                 }
                 
-                if (updateStock(selectedItem.getId(), newStock)) {
-                    selectedItem.setStock(newStock);
+                // receiveStock() waits for the product's row lock - keep it off the FX thread
+                InventoryItem item = selectedItem;
+                Task<Void> task = new Task<>() {
+                    @Override
+                    protected Void call() throws Exception {
+                        inventoryService.receiveStock(item.getId(), quantityToAdd, "manual");
+                        return null;
+                    }
+                };
+                if (btnUpdateStock != null) btnUpdateStock.setDisable(true);
+                task.setOnSucceeded(e -> {
+                    if (btnUpdateStock != null) btnUpdateStock.setDisable(false);
+                    item.setStock(newStock);
                     productTable.refresh();
-                    showDetailPanel(selectedItem);
+                    updateTotalLabel();
+                    if (selectedItem == item) showDetailPanel(item);
                     
                     String message = String.format(
                         "Stock updated successfully!\n\n" +
                         "Previous: %d\n" +
                         "Added: +%d\n" +
                         "New Stock: %d/%d",
-                        currentStock, quantityToAdd, newStock, DEFAULT_STOCK
+                        currentStock, quantityToAdd, newStock, capacity
                     );
                     
                     // Show special message if stock is now full
-                    if (newStock == DEFAULT_STOCK) {
+                    if (newStock == capacity) {
                         message += "\n\n✓ Stock is now FULL!";
                     }
                     
                     showInfo("Success", message);
-                } else {
+                });
+                task.setOnFailed(e -> {
+                    if (btnUpdateStock != null) btnUpdateStock.setDisable(false);
+                    LOGGER.log(Level.SEVERE, "Error receiving stock", task.getException());
                     showError("Error", "Failed to update stock in database.");
+                });
+                try {
+                    PosExecutors.background().execute(task);
+                } catch (RejectedExecutionException e) {
+                    if (btnUpdateStock != null) btnUpdateStock.setDisable(false);
+                    LOGGER.log(Level.WARNING, "Receive stock not started, background queue full", e);
+                    showError("Error", "The system is busy, please try again.");
                 }
                 
             } catch (NumberFormatException e) {
@@ -463,6 +568,111 @@ public class SalesInventoryController implements Initializable {
         });
     }
     
+    private void handleSetLevels() {
+        if (selectedItem == null) {
+            showWarning("No Selection", "Please select a product first.");
+            return;
+        }
+        InventoryItem item = selectedItem;
+        
+        TextField capacityField = new TextField(String.valueOf(item.getCapacity()));
+        TextField reorderField = new TextField(String.valueOf(item.getReorderPoint()));
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.addRow(0, new Label("Capacity:"), capacityField);
+        grid.addRow(1, new Label("Reorder point:"), reorderField);
+        
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Stock Levels");
+        dialog.setHeaderText("Stock levels for: " + item.getName());
+        dialog.getDialogPane().setContent(grid);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        
+        dialog.showAndWait().filter(ButtonType.OK::equals).ifPresent(ok -> {
+            int capacity;
+            int reorderPoint;
+            try {
+                capacity = Integer.parseInt(capacityField.getText().trim());
+                reorderPoint = Integer.parseInt(reorderField.getText().trim());
+            } catch (NumberFormatException e) {
+                showError("Invalid Input", "Please enter whole numbers.");
+                return;
+            }
+            if (capacity <= 0 || reorderPoint < 0 || reorderPoint >= capacity) {
+                showError("Invalid Input", "Capacity must be positive and the reorder point must be below it.");
+                return;
+            }
+            
+            try {
+                inventoryService.setLevels(item.getId(), capacity, reorderPoint);
+            } catch (SQLException e) {
+                LOGGER.log(Level.SEVERE, "Error saving stock levels", e);
+                showError("Database Error", "Failed to save stock levels: " + e.getMessage());
+                return;
+            }
+            item.setCapacity(capacity);
+            item.setReorderPoint(reorderPoint);
+            productTable.refresh();
+            updateTotalLabel();
+            showInfo("Success", "Stock levels updated.");
+        });
+    }
+    
+    private void showReorderAlerts() {
+        List<LowStockIndex.ReorderAlert> alerts = LowStockIndex.drainAlerts();
+        if (alerts.isEmpty()) return;
+        
+        Map<Integer, InventoryItem> byId = new HashMap<>();
+        for (InventoryItem item : inventoryList) {
+            byId.put(item.getId(), item);
+        }
+        StringBuilder message = new StringBuilder("These products reached their reorder point:\n\n");
+        for (LowStockIndex.ReorderAlert alert : alerts) {
+            InventoryItem item = byId.get(alert.getProductId());
+            message.append("• ").append(item != null ? item.getName() : "Product #" + alert.getProductId())
+                   .append(" - ").append(alert.getStock()).append(" left, order ")
+                   .append(alert.getSuggestedQuantity()).append("\n");
+        }
+        showWarning("Reorder Needed", message.toString());
+    }
+    
+    private void showStockHistory() {
+        if (selectedItem == null) {
+            showWarning("No Selection", "Please select a product to view its stock history.");
+            return;
+        }
+        
+        List<StockLedger.Movement> movements;
+        try {
+            movements = inventoryService.history(selectedItem.getId(), 200);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error loading stock history", e);
+            showError("Database Error", "Failed to load stock history: " + e.getMessage());
+            return;
+        }
+        
+        StringBuilder text = new StringBuilder();
+        for (StockLedger.Movement movement : movements) {
+            text.append(String.format("%-20s %-8s %+6d  %s%n",
+                movement.getCreatedAt().toLocalDateTime().format(HISTORY_TIME_FORMAT),
+                movement.getType(),
+                movement.getQuantity(),
+                movement.getReference() != null ? movement.getReference() : ""));
+        }
+        
+        TextArea area = new TextArea(movements.isEmpty() ? "No stock movements recorded." : text.toString());
+        area.setEditable(false);
+        area.setStyle("-fx-font-family: monospace;");
+        area.setPrefSize(520, 360);
+        
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Stock History");
+        alert.setHeaderText(selectedItem.getName() + " - current stock " + selectedItem.getStock());
+        alert.getDialogPane().setContent(area);
+        alert.showAndWait();
+    }
+    
     private void showError(String title, String message) {
         Alert alert = new Alert(Alert.AlertType.ERROR);
         alert.setTitle(title);
@@ -495,9 +705,18 @@ public class SalesInventoryController implements Initializable {
         private double unitPrice;
         private String status;
         private String imagePath;
+        private int capacity;
+        private int reorderPoint;
         
         public InventoryItem(int id, String name, String category, int stock, 
                            double unitPrice, String status, String imagePath) {
+            this(id, name, category, stock, unitPrice, status, imagePath,
+                 LowStockIndex.DEFAULT_CAPACITY, LowStockIndex.DEFAULT_REORDER_POINT);
+        }
+        
+        public InventoryItem(int id, String name, String category, int stock, 
+                           double unitPrice, String status, String imagePath,
+                           int capacity, int reorderPoint) {
             this.id = id;
             this.name = name;
             this.category = category;
@@ -505,6 +724,8 @@ public class SalesInventoryController implements Initializable {
             this.unitPrice = unitPrice;
             this.status = status;
             this.imagePath = imagePath;
+            this.capacity = capacity;
+            this.reorderPoint = reorderPoint;
         }
         
         public int getId() { return id; }
@@ -514,8 +735,23 @@ public class SalesInventoryController implements Initializable {
         public double getUnitPrice() { return unitPrice; }
         public String getStatus() { return status; }
         public String getImagePath() { return imagePath; }
+        public int getCapacity() { return capacity; }
+        public int getReorderPoint() { return reorderPoint; }
         
         public void setStock(int stock) { this.stock = stock; }
         public void setStatus(String status) { this.status = status; }
+        public void setCapacity(int capacity) { this.capacity = capacity; }
+        public void setReorderPoint(int reorderPoint) { this.reorderPoint = reorderPoint; }
+        
+        void copyFrom(InventoryItem other) {
+            this.name = other.name;
+            this.category = other.category;
+            this.stock = other.stock;
+            this.unitPrice = other.unitPrice;
+            this.status = other.status;
+            this.imagePath = other.imagePath;
+            this.capacity = other.capacity;
+            this.reorderPoint = other.reorderPoint;
+        }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,13 +1,27 @@
 package com.newfoundsoftware.pos;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.GridPane;
+import javafx.stage.FileChooser;
 
-import java.sql.*;
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,7 +29,7 @@ import java.util.logging.Logger;
  * Enhanced SalesReportController
  * Features: Filtering, Summary Stats, Real-time Updates
  */
-public class SalesReportController {
+public class SalesReportController implements ReusableController {
     
     private static final Logger LOGGER = Logger.getLogger(SalesReportController.class.getName());
     
@@ -41,11 +55,20 @@ public class SalesReportController {
     
     // Buttons
     @FXML private Button btnRefresh;
+    @FXML private Button btnReprint;
+    @FXML private Button btnReturn;
+    @FXML private Button btnCloseDay;
     
-    // Data
-    private static final ObservableList<SalesItem> allSalesData = FXCollections.observableArrayList();
+    // Data - recent sales are held by ReportService; older ranges are read from the DB
+    private final ReportService reportService = ReportService.getInstance();
+    private final ReturnService returnService = ReturnService.getInstance();
     private final ObservableList<SalesItem> filteredSalesData = FXCollections.observableArrayList();
-    private final JdbcDao jdbcDao = new JdbcDao();
+    
+    // Last out-of-window range read from the DB, reused while only the search text changes
+    private LocalDate olderRangeFrom;
+    private LocalDate olderRangeTo;
+    private List<SalesItem> olderRange = Collections.emptyList();
+    private int sourceSize;
     
     @FXML
     public void initialize() {
@@ -56,6 +79,15 @@ public class SalesReportController {
         setupSearchListener();
     }
     
+    /**
+     * Called when the cached report is reopened. New sales were already added to
+     * ReportService's in-memory window at checkout, so only the filters need to be re-applied.
+     */
+    @Override
+    public void reset() {
+        applyFilters();
+    }
+    
     // ==================== SETUP ====================
     
     private void setupTableColumns() {
@@ -101,23 +133,8 @@ public class SalesReportController {
     // ==================== DATABASE ====================
     
     private void createSalesTable() {
-        try (Connection conn = jdbcDao.getConnection();
-             Statement stmt = conn.createStatement()) {
-            
-            String createTable = "CREATE TABLE IF NOT EXISTS sales (" +
-                    "id INT AUTO_INCREMENT PRIMARY KEY," +
-                    "sale_date DATE NOT NULL," +
-                    "product VARCHAR(100) NOT NULL," +
-                    "quantity INT NOT NULL," +
-                    "unit_price DOUBLE NOT NULL," +
-                    "total DOUBLE NOT NULL," +
-                    "category VARCHAR(50)," +
-                    "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-                    ")";
-            stmt.executeUpdate(createTable);
-            
-            LOGGER.info("Sales table created/verified");
-            
+        try {
+            reportService.ensureSchema();
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, "Error creating sales table", e);
             showError("Database Error", "Failed to create sales table: " + e.getMessage());
@@ -125,57 +142,31 @@ public class SalesReportController {
     }
     
     private void loadSalesData() {
-        allSalesData.clear();
+        olderRange = Collections.emptyList();
+        olderRangeFrom = null;
         
-        try (Connection conn = jdbcDao.getConnection();
-             Statement stmt = conn.createStatement()) {
-            
-            // First, check what columns exist in the sales table
-            String query = "SELECT * FROM sales ORDER BY sale_date DESC, id DESC LIMIT 1";
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData metaData = rs.getMetaData();
-            
-            // Determine the correct column names
-            String productCol = null;
-            for (int i = 1; i <= metaData.getColumnCount(); i++) {
-                String colName = metaData.getColumnName(i).toLowerCase();
-                if (colName.equals("product_name") || colName.equals("product") || colName.equals("productname")) {
-                    productCol = metaData.getColumnName(i);
-                    break;
-                }
-            }
-            
-            if (productCol == null) {
-                throw new SQLException("Could not find product column in sales table");
-            }
-            
-            // Now load all data with the correct column name
-            query = "SELECT sale_date, " + productCol + " as product_name, quantity, unit_price, total, category " +
-                    "FROM sales ORDER BY sale_date DESC, id DESC";
-            
-            rs = stmt.executeQuery(query);
-            
-            while (rs.next()) {
-                SalesItem item = new SalesItem(
-                    rs.getString("sale_date"),
-                    rs.getString("product_name"),
-                    rs.getInt("quantity"),
-                    rs.getDouble("unit_price"),
-                    rs.getDouble("total"),
-                    rs.getString("category")
-                );
-                allSalesData.add(item);
-            }
-            
+        try {
+            reportService.reloadRecent();
             applyFilters();
-            LOGGER.info("Loaded " + allSalesData.size() + " sales records");
-            
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, "Error loading sales data", e);
             showError("Database Error", "Failed to load sales data: " + e.getMessage());
         }
     }
     
+    /**
+     * Read a date range that is older than what ReportService holds in memory.
+     */
+    private List<SalesItem> loadSalesRange(LocalDate from, LocalDate to) {
+        try {
+            return reportService.loadRange(from, to);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error loading sales range", e);
+            showError("Database Error", "Failed to load sales data: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
     // ==================== FILTERING ====================
     
     @FXML
@@ -192,32 +183,26 @@ public class SalesReportController {
     }
     
     private void applyFilters() {
-        filteredSalesData.clear();
-        
         LocalDate fromDate = dateFrom != null ? dateFrom.getValue() : null;
         LocalDate toDate = dateTo != null ? dateTo.getValue() : null;
-        String searchText = txtSearchProduct != null ? txtSearchProduct.getText().toLowerCase().trim() : "";
+        String searchText = txtSearchProduct != null ? txtSearchProduct.getText() : "";
+        boolean dateFilter = fromDate != null && toDate != null;
         
-        for (SalesItem item : allSalesData) {
-            // Date filter
-            if (fromDate != null && toDate != null) {
-                try {
-                    LocalDate itemDate = LocalDate.parse(item.getDate());
-                    if (itemDate.isBefore(fromDate) || itemDate.isAfter(toDate)) {
-                        continue;
-                    }
-                } catch (Exception e) {
-                    continue;
-                }
-            }
-            
-            // Product search filter
-            if (!searchText.isEmpty() && !item.getProduct().toLowerCase().contains(searchText)) {
-                continue;
+        // Ranges reaching past the in-memory window come from the database
+        List<SalesItem> source;
+        if (dateFilter && !reportService.isInMemory(fromDate)) {
+            if (!fromDate.equals(olderRangeFrom) || !toDate.equals(olderRangeTo)) {
+                olderRange = loadSalesRange(fromDate, toDate);
+                olderRangeFrom = fromDate;
+                olderRangeTo = toDate;
             }
-            
-            filteredSalesData.add(item);
+            source = olderRange;
+        } else {
+            source = reportService.recentSales();
         }
+        sourceSize = source.size();
+        
+        filteredSalesData.setAll(reportService.filter(source, fromDate, toDate, searchText));
         
         updateSummary();
         updateRecordCount();
@@ -226,30 +211,22 @@ public class SalesReportController {
     // ==================== SUMMARY STATS ====================
     
     private void updateSummary() {
-        double totalSales = filteredSalesData.stream()
-                .mapToDouble(SalesItem::getTotal)
-                .sum();
-        
-        int totalItems = filteredSalesData.stream()
-                .mapToInt(SalesItem::getQuantity)
-                .sum();
-        
-        int totalTransactions = filteredSalesData.size();
+        ReportService.Summary summary = reportService.summarize(filteredSalesData);
         
         if (lblTotalSales != null) {
-            lblTotalSales.setText(String.format("₱%.2f", totalSales));
+            lblTotalSales.setText(String.format("₱%.2f", summary.getTotalSales()));
         }
         if (lblTotalItems != null) {
-            lblTotalItems.setText(String.valueOf(totalItems));
+            lblTotalItems.setText(String.valueOf(summary.getTotalItems()));
         }
         if (lblTotalTransactions != null) {
-            lblTotalTransactions.setText(String.valueOf(totalTransactions));
+            lblTotalTransactions.setText(String.valueOf(summary.getTransactions()));
         }
     }
     
     private void updateRecordCount() {
         if (lblRecordCount != null) {
-            lblRecordCount.setText(filteredSalesData.size() + " of " + allSalesData.size());
+            lblRecordCount.setText(filteredSalesData.size() + " of " + sourceSize);
         }
     }
     
@@ -261,93 +238,227 @@ public class SalesReportController {
         showInfo("Refreshed", "Sales data has been refreshed successfully!");
     }
     
-    // ==================== STATIC ADD SALES ====================
-    
     /**
-     * Called from PaymentController to add new sales
+     * Reprint every stored receipt in the selected date range (today if none)
+     * into one PDF, on a background thread.
      */
-    public static void addSales(ObservableList<DashboardController.OrderItem> orderItems) {
-        String date = LocalDate.now().toString();
-        JdbcDao dao = new JdbcDao();
+    @FXML
+    private void handleReprint() {
+        LocalDate fromDate = dateFrom != null && dateFrom.getValue() != null ? dateFrom.getValue() : LocalDate.now();
+        LocalDate toDate = dateTo != null && dateTo.getValue() != null ? dateTo.getValue() : fromDate;
+        
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Save Reprinted Receipts");
+        chooser.setInitialFileName("Receipts_" + fromDate + "_" + toDate + ".pdf");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PDF files", "*.pdf"));
+        File file = chooser.showSaveDialog(salesTable.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
         
-        try (Connection conn = dao.getConnection();
-             PreparedStatement ps = conn.prepareStatement(
-                 "INSERT INTO sales (sale_date, product, quantity, unit_price, total, category) " +
-                 "VALUES (?, ?, ?, ?, ?, ?)")) {
-            
-            for (DashboardController.OrderItem item : orderItems) {
-                String category = getCategoryFromDatabase(conn, item.getDescription());
-                
-                ps.setString(1, date);
-                ps.setString(2, item.getDescription());
-                ps.setInt(3, item.getQuantity());
-                ps.setDouble(4, item.getPrice());
-                ps.setDouble(5, item.getTotal());
-                ps.setString(6, category);
-                ps.addBatch();
-                
-                // Also add to in-memory list for real-time update
-                SalesItem newSale = new SalesItem(
-                    date,
-                    item.getDescription(),
-                    item.getQuantity(),
-                    item.getPrice(),
-                    item.getTotal(),
-                    category
-                );
-                allSalesData.add(0, newSale); // Add at top (most recent)
+        Task<Integer> task = new Task<>() {
+            @Override
+            protected Integer call() throws Exception {
+                return ReceiptService.getInstance().reprint(fromDate, toDate, file.toPath());
             }
-            
-            ps.executeBatch();
-            LOGGER.info("Added " + orderItems.size() + " sales records");
-            
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error adding sales", e);
-            e.printStackTrace();
+        };
+        btnReprint.setDisable(true);
+        task.setOnSucceeded(e -> {
+            btnReprint.setDisable(false);
+            showInfo("Receipts Reprinted", task.getValue() + " receipt(s) from " + fromDate + " to " + toDate
+                    + " written to:\n" + file.getAbsolutePath());
+        });
+        task.setOnFailed(e -> {
+            btnReprint.setDisable(false);
+            LOGGER.log(Level.SEVERE, "Receipt reprint failed", task.getException());
+            showError("Reprint Error", "Failed to reprint receipts: " + task.getException().getMessage());
+        });
+        try {
+            PosExecutors.background().execute(task);
+        } catch (RejectedExecutionException e) {
+            btnReprint.setDisable(false);
+            LOGGER.log(Level.WARNING, "Reprint not started, background queue full", e);
+            showError("Reprint Error", "The system is busy, please try again.");
         }
     }
     
     /**
-     * Get category from products table based on product name
+     * Close today (Z-report) on a background thread, or bring back the stored
+     * report if today is already closed, then save it as PDF and print it on
+     * the receipt printer when there is one.
      */
-    private static String getCategoryFromDatabase(Connection conn, String productName) {
-        // First, let's see what columns exist in the products table
-        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM products LIMIT 1")) {
-            ResultSet rs = ps.executeQuery();
-            ResultSetMetaData metaData = rs.getMetaData();
-            
-            System.out.println("=== Products Table Columns ===");
-            for (int i = 1; i <= metaData.getColumnCount(); i++) {
-                System.out.println("Column " + i + ": " + metaData.getColumnName(i));
+    @FXML
+    private void handleCloseDay() {
+        LocalDate today = LocalDate.now();
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Close Day");
+        confirm.setHeaderText("Close " + today + " and produce the Z-report?");
+        confirm.setContentText("A day can only be closed once; closing again reprints the stored report.");
+        Optional<ButtonType> answer = confirm.showAndWait();
+        if (!answer.isPresent() || answer.get() != ButtonType.OK) {
+            return;
+        }
+
+        Task<ZReportService.ZReport> task = new Task<>() {
+            @Override
+            protected ZReportService.ZReport call() throws Exception {
+                ZReportService service = ZReportService.getInstance();
+                ZReportService.ZReport existing = service.find(today);
+                return existing != null ? existing : service.close(today, ReceiptService.getInstance().getCashier());
             }
-            System.out.println("==============================");
-        } catch (SQLException e) {
-            LOGGER.log(Level.WARNING, "Could not inspect products table", e);
+        };
+        btnCloseDay.setDisable(true);
+        task.setOnSucceeded(e -> {
+            btnCloseDay.setDisable(false);
+            saveZReport(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            btnCloseDay.setDisable(false);
+            LOGGER.log(Level.SEVERE, "Closing the day failed", task.getException());
+            showError("Close Day Error", "Failed to close the day: " + task.getException().getMessage());
+        });
+        try {
+            PosExecutors.background().execute(task);
+        } catch (RejectedExecutionException e) {
+            btnCloseDay.setDisable(false);
+            LOGGER.log(Level.WARNING, "Close day not started, background queue full", e);
+            showError("Close Day Error", "The system is busy, please try again.");
         }
-        
-        // Try different possible column names for product
-        String[] productColumns = {"product_name", "product", "productname", "name", "productName", "description"};
-        
-        for (String colName : productColumns) {
-            try (PreparedStatement ps = conn.prepareStatement(
-                    "SELECT category FROM products WHERE " + colName + " = ?")) {
-                ps.setString(1, productName);
-                ResultSet rs = ps.executeQuery();
-                
-                if (rs.next()) {
-                    String category = rs.getString("category");
-                    System.out.println("✓ Found category for '" + productName + "': " + category + " (using column: " + colName + ")");
-                    return category != null && !category.trim().isEmpty() ? category : "OTHER";
+    }
+
+    private void saveZReport(ZReportService.ZReport report) {
+        ZReportService service = ZReportService.getInstance();
+        if (EscPosPrinter.getInstance().isEnabled()) {
+            // An unreachable printer takes seconds to time out - never on the FX thread
+            service.printAsync(report).whenComplete((printed, error) -> {
+                if (error != null) {
+                    LOGGER.log(Level.WARNING, "Could not print Z-report", error);
+                    Platform.runLater(() -> showError("Print Error",
+                            "The Z-report could not be printed: " + error.getMessage()));
                 }
-            } catch (SQLException e) {
-                // Column doesn't exist, try next one
-                continue;
+            });
+        }
+
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Save Z-Report");
+        chooser.setInitialFileName("Z-Report_" + report.getBusinessDate() + ".pdf");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PDF files", "*.pdf"));
+        File file = chooser.showSaveDialog(salesTable.getScene().getWindow());
+        if (file != null) {
+            try {
+                service.writePdf(report, file.toPath());
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Could not write Z-report PDF", e);
+                showError("Close Day Error", "Failed to save the Z-report: " + e.getMessage());
+                return;
             }
         }
-        
-        System.out.println("✗ Could not find category for product: " + productName);
-        LOGGER.log(Level.WARNING, "Could not find category for product: " + productName);
-        return "OTHER";
+        showInfo("Day Closed", String.format("%s closed: %d transactions, gross ₱%.2f, refunds ₱%.2f",
+                report.getBusinessDate(), report.getTransactions(), report.getGrandTotal(), report.getRefunded()));
+    }
+
+    /**
+     * Return items from an invoice: look it up, pick how many of each line
+     * come back, and refund them. The report picks up the negative lines
+     * straight away.
+     */
+    @FXML
+    private void handleReturn() {
+        TextInputDialog invoiceDialog = new TextInputDialog();
+        invoiceDialog.setTitle("Return / Refund");
+        invoiceDialog.setHeaderText("Enter the invoice number from the receipt");
+        invoiceDialog.setContentText("Invoice No:");
+        Optional<String> invoiceInput = invoiceDialog.showAndWait();
+        if (!invoiceInput.isPresent() || invoiceInput.get().trim().isEmpty()) {
+            return;
+        }
+        String invoiceNumber = invoiceInput.get().trim();
+
+        List<ReturnService.ReturnableLine> lines;
+        try {
+            lines = returnService.returnableLines(invoiceNumber);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error looking up invoice " + invoiceNumber, e);
+            showError("Database Error", "Failed to look up the invoice: " + e.getMessage());
+            return;
+        }
+        if (lines.isEmpty()) {
+            showError("Invoice Not Found", "There is no stored invoice " + invoiceNumber + ".");
+            return;
+        }
+
+        Dialog<Map<Integer, Integer>> dialog = new Dialog<>();
+        dialog.setTitle("Return / Refund");
+        dialog.setHeaderText("Invoice " + invoiceNumber + " - how many of each item are returned?");
+        ButtonType refundButtonType = new ButtonType("Refund", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(refundButtonType, ButtonType.CANCEL);
+
+        GridPane grid = new GridPane();
+        grid.setHgap(15);
+        grid.setVgap(8);
+        grid.setStyle("-fx-padding: 20;");
+        grid.addRow(0, new Label("Item"), new Label("Sold"), new Label("Returned"), new Label("Return now"));
+        Map<Integer, Spinner<Integer>> spinners = new LinkedHashMap<>();
+        int row = 1;
+        for (ReturnService.ReturnableLine line : lines) {
+            Spinner<Integer> spinner = new Spinner<>(0, line.getReturnable(), 0);
+            spinner.setEditable(true);
+            spinner.setDisable(line.getReturnable() == 0);
+            spinners.put(line.getLineNo(), spinner);
+            grid.addRow(row++, new Label(line.getDescription()), new Label(String.valueOf(line.getQuantity())),
+                    new Label(String.valueOf(line.getReturned())), spinner);
+        }
+        TextField reasonField = new TextField();
+        reasonField.setPromptText("Reason (optional)");
+        grid.add(reasonField, 0, row, 4, 1);
+        dialog.getDialogPane().setContent(grid);
+
+        dialog.setResultConverter(button -> {
+            if (button != refundButtonType) return null;
+            Map<Integer, Integer> quantities = new LinkedHashMap<>();
+            spinners.forEach((lineNo, spinner) -> quantities.put(lineNo, spinner.getValue()));
+            return quantities;
+        });
+        Optional<Map<Integer, Integer>> quantities = dialog.showAndWait();
+        if (!quantities.isPresent()) {
+            return;
+        }
+
+        String reason = reasonField.getText() == null || reasonField.getText().trim().isEmpty()
+                ? null : reasonField.getText().trim();
+        Map<Integer, Integer> returned = quantities.get();
+        // The return locks invoice lines and stock rows - keep it off the FX thread
+        Task<ReturnService.ReturnResult> task = new Task<>() {
+            @Override
+            protected ReturnService.ReturnResult call() throws Exception {
+                return returnService.processReturn(invoiceNumber, returned, reason);
+            }
+        };
+        btnReturn.setDisable(true);
+        task.setOnSucceeded(e -> {
+            btnReturn.setDisable(false);
+            ReturnService.ReturnResult result = task.getValue();
+            applyFilters();
+            showInfo("Refund Complete", String.format("Return %s recorded.%n%nRefund: ₱%.2f (incl. ₱%.2f VAT)",
+                    result.getReturnNumber(), result.getRefund().getGrandTotal(), result.getRefund().getVat()));
+        });
+        task.setOnFailed(e -> {
+            btnReturn.setDisable(false);
+            Throwable error = task.getException();
+            if (error instanceof IllegalArgumentException) {
+                showError("Return Not Possible", error.getMessage());
+            } else {
+                LOGGER.log(Level.SEVERE, "Error processing return for invoice " + invoiceNumber, error);
+                showError("Database Error", "Failed to process the return: " + error.getMessage());
+            }
+        });
+        try {
+            PosExecutors.background().execute(task);
+        } catch (RejectedExecutionException e) {
+            btnReturn.setDisable(false);
+            LOGGER.log(Level.WARNING, "Return not started, background queue full", e);
+            showError("Return Error", "The system is busy, please try again.");
+        }
     }
     
     // ==================== ALERTS ====================
@@ -372,6 +483,7 @@ public class SalesReportController {
     
     public static class SalesItem {
         private final String date;
+        private final LocalDate saleDate;
         private final String product;
         private final int quantity;
         private final double unitPrice;
@@ -385,14 +497,24 @@ public class SalesReportController {
             this.unitPrice = unitPrice;
             this.total = total;
             this.category = category != null ? category : "OTHER";
+            this.saleDate = parseDate(date);
+        }
+        
+        private static LocalDate parseDate(String date) {
+            try {
+                return date != null ? LocalDate.parse(date.length() > 10 ? date.substring(0, 10) : date) : null;
+            } catch (DateTimeParseException e) {
+                return null;
+            }
         }
         
         // Getters
         public String getDate() { return date; }
+        public LocalDate getSaleDate() { return saleDate; }
         public String getProduct() { return product; }
         public int getQuantity() { return quantity; }
         public double getUnitPrice() { return unitPrice; }
         public double getTotal() { return total; }
         public String getCategory() { return category; }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
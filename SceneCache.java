@@ -0,0 +1,108 @@
+package com.newfoundsoftware.pos;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SceneCache - Parses each secondary screen's FXML once and keeps its
+ * controller, Scene and Stage for reuse.
+ *
+ * Usage (FX thread):
+ *   CachedView view = SceneCache.get("Payment.fxml");
+ *   view.prepareForShow();            // resets a ReusableController on reopen
+ *   PaymentController c = view.getController();
+ *   view.getStage("Payment", Modality.APPLICATION_MODAL).showAndWait();
+ */
+public final class SceneCache {
+
+    private static final Map<String, CachedView> VIEWS = new ConcurrentHashMap<>();
+
+    private SceneCache() {
+    }
+
+    /**
+     * Cached view for an FXML resource, parsing it on first use.
+     */
+    public static CachedView get(String resource) throws IOException {
+        CachedView view = VIEWS.get(resource);
+        if (view != null) {
+            return view;
+        }
+        // Parsed outside the map: a controller may open other cached views while it loads
+        FXMLLoader loader = new FXMLLoader(SceneCache.class.getResource(resource));
+        loader.load();
+        view = new CachedView(loader);
+        // A seed() that got in first wins, so every caller shares one view
+        CachedView existing = VIEWS.putIfAbsent(resource, view);
+        return existing != null ? existing : view;
+    }
+
+    /**
+     * Register a view that was already parsed elsewhere (e.g. during start-up warm-up).
+     * Safe to call from any thread; an existing entry wins.
+     */
+    public static void seed(String resource, FXMLLoader loadedLoader) {
+        VIEWS.putIfAbsent(resource, new CachedView(loadedLoader));
+    }
+
+    /**
+     * Forget a view so the next get() parses it again.
+     */
+    public static void invalidate(String resource) {
+        VIEWS.remove(resource);
+    }
+
+    public static final class CachedView {
+        private final Parent root;
+        private final Object controller;
+        private Stage stage;
+        private boolean shownBefore;
+
+        private CachedView(FXMLLoader loader) {
+            this.root = loader.getRoot();
+            this.controller = loader.getController();
+        }
+
+        public Parent getRoot() {
+            return root;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <C> C getController() {
+            return (C) controller;
+        }
+
+        /**
+         * The view's window, created on first call. Modality can only be applied
+         * the first time; pass null for a normal window.
+         */
+        public Stage getStage(String title, Modality modality) {
+            if (stage == null) {
+                stage = new Stage();
+                stage.setScene(new Scene(root));
+                if (modality != null) {
+                    stage.initModality(modality);
+                }
+            }
+            stage.setTitle(title);
+            return stage;
+        }
+
+        /**
+         * Call right before showing. Resets the controller when the view is being reopened.
+         */
+        public void prepareForShow() {
+            if (shownBefore && controller instanceof ReusableController) {
+                ((ReusableController) controller).reset();
+            }
+            shownBefore = true;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.newfoundsoftware.pos;
+
+import javafx.fxml.FXMLLoader;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * StartupOrchestrator - Warms the application while the login form is shown
+ *
+ * Phases (run on background threads):
+ *   pool      - open the pooled DB connections, prepare the stock ledger and invoice tables
+ *   snapshot  - show the catalog saved on disk by the last run (independent)
+ *   catalog   - reconcile the catalog with the database     (after pool and snapshot)
+ *   images    - decode the catalog images         (after snapshot, or catalog if there was none)
+ *   dashboard - parse Dashboard.fxml              (likewise, its controller reads the snapshot)
+ *   payment   - parse Payment.fxml into SceneCache (independent)
+ *   api       - start PosHttpServer when pos.api.enabled=true (after catalog)
+ *
+ * Each phase's duration and the overall time-to-ready are logged and kept
+ * in getPhaseTimings(). A failed phase is logged and never blocks login;
+ * the screens fall back to loading on demand.
+ */
+public final class StartupOrchestrator {
+
+    private static final Logger LOGGER = Logger.getLogger(StartupOrchestrator.class.getName());
+    private static final String DASHBOARD_FXML = "Dashboard.fxml";
+    private static final String PAYMENT_FXML = "Payment.fxml";
+
+    private static final StartupOrchestrator INSTANCE = new StartupOrchestrator();
+
+    private final Map<String, Long> phaseMillis = Collections.synchronizedMap(new LinkedHashMap<>());
+    private CompletableFuture<FXMLLoader> dashboard;
+    private boolean started;
+
+    private StartupOrchestrator() {
+    }
+
+    public static StartupOrchestrator getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Kick off all warm-up phases. Returns immediately; only the first call does anything.
+     */
+    public synchronized void warmUp() {
+        if (started) return;
+        started = true;
+        long start = System.nanoTime();
+
+        CompletableFuture<Void> pool = phase("pool", CompletableFuture.completedFuture(null), () -> {
+            new JdbcDao().warmUpPool(PosConfig.getInt("pos.db.warmConnections", 2));
+            CredentialService.getInstance().ensureSchema();
+            StockLedger.ensureSchema();
+            ReceiptService.getInstance().ensureSchema();
+            StockLedger.startCompaction();
+            ReservationService.getInstance().ensureSchema();
+            ReservationService.getInstance().startSweeper();
+            LowStockIndex.reload();
+            return null;
+        });
+        CompletableFuture<Boolean> local = phase("snapshot", CompletableFuture.completedFuture(null),
+                ProductCatalog::loadLocal);
+        CompletableFuture<List<DashboardController.Product>> catalog =
+                phase("catalog", CompletableFuture.allOf(pool, local), ProductCatalog::reconcile);
+        // With a local snapshot the dashboard does not wait for the database
+        CompletableFuture<?> shown = local.handle((found, error) -> Boolean.TRUE.equals(found))
+                .thenCompose(found -> found ? CompletableFuture.completedFuture(null) : catalog);
+        CompletableFuture<Integer> images = phase("images", shown, () -> ImageCache.prime(
+                ProductCatalog.getSnapshot().stream()
+                        .map(DashboardController.Product::getImagePath)
+                        .collect(Collectors.toList())));
+        dashboard = phase("dashboard", shown, () -> loadFxml(DASHBOARD_FXML));
+        CompletableFuture<FXMLLoader> payment = phase("payment", CompletableFuture.completedFuture(null), () -> {
+            FXMLLoader loader = loadFxml(PAYMENT_FXML);
+            SceneCache.seed(PAYMENT_FXML, loader);
+            EscPosPrinter.getInstance(); // encodes the fixed receipt bytes before the first sale
+            return loader;
+        });
+
+        if (PosConfig.getBoolean("pos.api.enabled", false)) {
+            phase("api", catalog, () -> {
+                ReportService.getInstance().ensureSchema();
+                ReportService.getInstance().reloadRecent();
+                PosHttpServer.getInstance().start();
+                return null;
+            });
+        }
+
+        CompletableFuture.allOf(images, dashboard, payment).handle((ignored, error) -> {
+            long total = (System.nanoTime() - start) / 1_000_000;
+            phaseMillis.put("ready", total);
+            LOGGER.info("Time-to-ready " + total + " ms " + phaseMillis);
+            return null;
+        });
+    }
+
+    /**
+     * Hand over the pre-parsed dashboard. If none is waiting, a fresh one is
+     * loaded in the background. Each preloaded instance is given out once.
+     */
+    public synchronized CompletableFuture<FXMLLoader> takeDashboard() {
+        CompletableFuture<FXMLLoader> ready = dashboard;
+        dashboard = null;
+        return ready != null ? ready : phase("dashboard", CompletableFuture.completedFuture(null),
+                () -> loadFxml(DASHBOARD_FXML));
+    }
+
+    /**
+     * Prepare a dashboard for the next login (called when returning to the login screen).
+     */
+    public synchronized void preloadDashboard() {
+        if (dashboard == null) {
+            CompletableFuture<List<DashboardController.Product>> catalog =
+                    phase("catalog", CompletableFuture.completedFuture(null), ProductCatalog::reconcile);
+            dashboard = phase("dashboard", catalog, () -> loadFxml(DASHBOARD_FXML));
+        }
+    }
+
+    public Map<String, Long> getPhaseTimings() {
+        synchronized (phaseMillis) {
+            return new LinkedHashMap<>(phaseMillis);
+        }
+    }
+
+    private static FXMLLoader loadFxml(String resource) throws Exception {
+        FXMLLoader loader = new FXMLLoader(StartupOrchestrator.class.getResource(resource));
+        loader.load();
+        return loader;
+    }
+
+    private <T> CompletableFuture<T> phase(String name, CompletableFuture<?> after, Callable<T> work) {
+        return after.handleAsync((ignored, upstreamError) -> {
+            long start = System.nanoTime();
+            try {
+                return work.call();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Warm-up phase '" + name + "' failed", e);
+                throw new CompletionException(e);
+            } finally {
+                long elapsed = (System.nanoTime() - start) / 1_000_000;
+                phaseMillis.put(name, elapsed);
+                LOGGER.info("Warm-up phase '" + name + "' took " + elapsed + " ms");
+            }
+        }, PosExecutors.background());
+    }
+}
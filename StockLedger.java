@@ -0,0 +1,501 @@
+package com.newfoundsoftware.pos;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * StockLedger - Append-only stock movements with compacted snapshots
+ *
+ * Every stock change is a row in stock_movements (SALE, RECEIVE, ADJUST,
+ * RETURN) instead of an overwrite of product_stock.stock, so the full
+ * history stays available for audits and shrink analysis.
+ *
+ * product_stock holds a snapshot: the stock as of last_movement_id. Current
+ * stock is the snapshot plus the movements after it, read with one indexed
+ * query (or through the current_stock view for whole-catalog reads). A
+ * periodic compaction folds movements into the snapshots so that tail
+ * stays short.
+ *
+ * Writers lock the product's product_stock row (lock()) before appending
+ * and hold it until they commit; compaction folds each product under the
+ * same lock. A movement still in flight therefore always belongs to a
+ * locked row, and compaction can never fold past it.
+ *
+ * product_stock also carries each product's capacity and reorder point;
+ * every committed change is passed on to LowStockIndex.
+ */
+public final class StockLedger {
+
+    private static final Logger LOGGER = Logger.getLogger(StockLedger.class.getName());
+
+    private static final int DEFAULT_STOCK = 100;
+    private static final long COMPACT_INTERVAL_MINUTES = PosConfig.getLong("pos.stock.compactIntervalMinutes", 10);
+    // Products folded per compaction transaction, so writers wait on at most this many row locks
+    private static final int COMPACT_CHUNK_SIZE = 200;
+
+    private static final String CURRENT_STOCK_SQL =
+            "SELECT s.stock + COALESCE((SELECT SUM(m.quantity) FROM stock_movements m " +
+            "WHERE m.product_id = s.product_id AND m.id > s.last_movement_id), 0) AS stock " +
+            "FROM product_stock s WHERE s.product_id = ?";
+    private static final String ENSURE_SNAPSHOT_SQL =
+            "INSERT IGNORE INTO product_stock (product_id, stock) VALUES (?, ?)";
+    private static final String ENSURE_ALL_SNAPSHOTS_SQL =
+            "INSERT IGNORE INTO product_stock (product_id, stock) " +
+            "SELECT p.id, ? FROM products p WHERE NOT EXISTS " +
+            "(SELECT 1 FROM product_stock s WHERE s.product_id = p.id)";
+    private static final String INSERT_MOVEMENT_SQL =
+            "INSERT INTO stock_movements (product_id, movement_type, quantity, reference) VALUES (?, ?, ?, ?)";
+    // Records whatever ADJUST brings the product to the counted value; nothing if it already matches
+    private static final String SET_COUNT_SQL =
+            "INSERT INTO stock_movements (product_id, movement_type, quantity, reference) " +
+            "SELECT d.product_id, 'ADJUST', d.delta, ? FROM (" +
+            "  SELECT s.product_id, ? - (s.stock + COALESCE((SELECT SUM(m.quantity) FROM stock_movements m " +
+            "    WHERE m.product_id = s.product_id AND m.id > s.last_movement_id), 0)) AS delta " +
+            "  FROM product_stock s WHERE s.product_id = ?) d WHERE d.delta <> 0";
+
+    private static volatile boolean schemaReady;
+    private static ScheduledExecutorService compactor;
+
+    public enum MovementType {
+        SALE, RECEIVE, ADJUST, RETURN
+    }
+
+    private StockLedger() {
+    }
+
+    // ==================== SCHEMA ====================
+
+    /**
+     * Create the ledger tables and view, and upgrade an old product_stock table.
+     */
+    public static void ensureSchema() throws SQLException {
+        if (schemaReady) return;
+        synchronized (StockLedger.class) {
+            if (schemaReady) return;
+            try (Connection conn = new JdbcDao().getConnection()) {
+                if (conn == null) {
+                    throw new SQLException("Could not connect to database");
+                }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE IF NOT EXISTS product_stock (" +
+                            "product_id INT PRIMARY KEY, " +
+                            "stock INT NOT NULL DEFAULT " + DEFAULT_STOCK + ", " +
+                            "last_movement_id BIGINT NOT NULL DEFAULT 0, " +
+                            "capacity INT NULL, " +
+                            "reorder_point INT NULL, " +
+                            "FOREIGN KEY (product_id) REFERENCES products(id) ON DELETE CASCADE)");
+                    if (!hasColumn(conn, "product_stock", "last_movement_id")) {
+                        stmt.execute("ALTER TABLE product_stock ADD COLUMN last_movement_id BIGINT NOT NULL DEFAULT 0");
+                    }
+                    if (!hasColumn(conn, "product_stock", "capacity")) {
+                        stmt.execute("ALTER TABLE product_stock ADD COLUMN capacity INT NULL, ADD COLUMN reorder_point INT NULL");
+                    }
+                    stmt.execute("CREATE TABLE IF NOT EXISTS stock_movements (" +
+                            "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                            "product_id INT NOT NULL, " +
+                            "movement_type VARCHAR(10) NOT NULL, " +
+                            "quantity INT NOT NULL, " +
+                            "reference VARCHAR(64), " +
+                            "created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                            "INDEX idx_movements_product (product_id, id), " +
+                            "INDEX idx_movements_created (created_at))");
+                    stmt.execute("CREATE OR REPLACE VIEW current_stock AS " +
+                            "SELECT s.product_id, s.stock + COALESCE(SUM(m.quantity), 0) AS stock, " +
+                            "s.capacity, s.reorder_point " +
+                            "FROM product_stock s LEFT JOIN stock_movements m " +
+                            "ON m.product_id = s.product_id AND m.id > s.last_movement_id " +
+                            "GROUP BY s.product_id, s.stock, s.capacity, s.reorder_point");
+                }
+            }
+            schemaReady = true;
+            LOGGER.info("Stock ledger initialized");
+        }
+    }
+
+    static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getColumns(conn.getCatalog(), null, table, column)) {
+            return rs.next();
+        }
+    }
+
+    // ==================== READ ====================
+
+    /**
+     * Current stock of a product. A product without a snapshot row gets the
+     * default stock, as before the ledger existed.
+     */
+    public static int currentStock(int productId) throws SQLException {
+        ensureSchema();
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            ensureSnapshot(conn, productId);
+            return currentStock(conn, productId);
+        }
+    }
+
+    static int currentStock(Connection conn, int productId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(CURRENT_STOCK_SQL)) {
+            ps.setInt(1, productId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt("stock") : 0;
+            }
+        }
+    }
+
+    /**
+     * Newest-first movements of a product.
+     */
+    public static List<Movement> history(int productId, int limit) throws SQLException {
+        ensureSchema();
+        List<Movement> movements = new ArrayList<>();
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            String query = "SELECT id, product_id, movement_type, quantity, reference, created_at " +
+                    "FROM stock_movements WHERE product_id = ? ORDER BY id DESC LIMIT ?";
+            try (PreparedStatement ps = conn.prepareStatement(query)) {
+                ps.setInt(1, productId);
+                ps.setInt(2, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        movements.add(new Movement(
+                            rs.getLong("id"),
+                            rs.getInt("product_id"),
+                            MovementType.valueOf(rs.getString("movement_type")),
+                            rs.getInt("quantity"),
+                            rs.getString("reference"),
+                            rs.getTimestamp("created_at")
+                        ));
+                    }
+                }
+            }
+        }
+        return movements;
+    }
+
+    // ==================== WRITE ====================
+
+    /**
+     * Append a movement. quantity is the number of units for SALE (taken out),
+     * RECEIVE and RETURN (put back); for ADJUST it is the signed correction.
+     */
+    public static void record(int productId, MovementType type, int quantity, String reference) throws SQLException {
+        ensureSchema();
+        int stock;
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            conn.setAutoCommit(false);
+            try {
+                stock = record(conn, productId, type, quantity, reference);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        LowStockIndex.onStockChanged(productId, stock);
+    }
+
+    /**
+     * Same as record(), on the caller's connection and transaction. Returns
+     * the product's new stock, for LowStockIndex once the caller has
+     * committed; a rolled-back movement must never reach the index.
+     */
+    static int record(Connection conn, int productId, MovementType type, int quantity, String reference) throws SQLException {
+        lock(conn, Collections.singleton(productId));
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_MOVEMENT_SQL)) {
+            ps.setInt(1, productId);
+            ps.setString(2, type.name());
+            ps.setInt(3, type == MovementType.SALE ? -Math.abs(quantity) : quantity);
+            ps.setString(4, reference);
+            ps.executeUpdate();
+        }
+        return currentStock(conn, productId);
+    }
+
+    /**
+     * Bring products to counted stock levels (productId -> count), on the
+     * caller's connection and transaction. Products without a snapshot start
+     * at their count; the rest get an ADJUST movement for the difference.
+     * The caller passes the counts on to LowStockIndex once committed.
+     */
+    static void setCounts(Connection conn, Map<Integer, Integer> counts, String reference) throws SQLException {
+        if (counts.isEmpty()) return;
+        ensureSchema();
+        lock(conn, counts.keySet(), counts);
+        try (PreparedStatement adjust = conn.prepareStatement(SET_COUNT_SQL)) {
+            for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+                adjust.setString(1, reference);
+                adjust.setInt(2, entry.getValue());
+                adjust.setInt(3, entry.getKey());
+                adjust.addBatch();
+            }
+            adjust.executeBatch();
+        }
+    }
+
+    /**
+     * Set a product's capacity and reorder point. Null restores the default.
+     */
+    public static void setLevels(int productId, Integer capacity, Integer reorderPoint) throws SQLException {
+        ensureSchema();
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+            ensureSnapshot(conn, productId);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE product_stock SET capacity = ?, reorder_point = ? WHERE product_id = ?")) {
+                ps.setObject(1, capacity, Types.INTEGER);
+                ps.setObject(2, reorderPoint, Types.INTEGER);
+                ps.setInt(3, productId);
+                ps.executeUpdate();
+            }
+        }
+        LowStockIndex.onLevelsChanged(productId,
+                capacity != null ? capacity : LowStockIndex.DEFAULT_CAPACITY,
+                reorderPoint != null ? reorderPoint : LowStockIndex.DEFAULT_REORDER_POINT);
+    }
+
+    /**
+     * Lock the product_stock rows of productIds until the caller's
+     * transaction ends, creating missing ones at the default stock. Every
+     * writer takes this before appending movements. Lock all of a
+     * transaction's products in one call, before reading their stock: the
+     * rows are taken in id order, so two writers cannot deadlock on them,
+     * and the reads that follow see every movement committed before.
+     */
+    static void lock(Connection conn, Collection<Integer> productIds) throws SQLException {
+        lock(conn, productIds, Collections.emptyMap());
+    }
+
+    // Rows that have to be created start at initialStock (productId -> stock), else DEFAULT_STOCK
+    private static void lock(Connection conn, Collection<Integer> productIds, Map<Integer, Integer> initialStock)
+            throws SQLException {
+        if (productIds.isEmpty()) return;
+        Set<Integer> missing = new TreeSet<>(productIds);
+        missing.removeAll(selectForUpdate(conn, missing));
+        if (missing.isEmpty()) return;
+        try (PreparedStatement ps = conn.prepareStatement(ENSURE_SNAPSHOT_SQL)) {
+            for (int productId : missing) {
+                ps.setInt(1, productId);
+                ps.setInt(2, initialStock.getOrDefault(productId, DEFAULT_STOCK));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        // Rows inserted above are locked already; this takes the ones another writer created first
+        selectForUpdate(conn, missing);
+    }
+
+    private static Set<Integer> selectForUpdate(Connection conn, Collection<Integer> productIds) throws SQLException {
+        Set<Integer> found = new HashSet<>();
+        String placeholders = String.join(", ", Collections.nCopies(productIds.size(), "?"));
+        try (PreparedStatement ps = conn.prepareStatement("SELECT product_id FROM product_stock " +
+                "WHERE product_id IN (" + placeholders + ") ORDER BY product_id FOR UPDATE")) {
+            int index = 1;
+            for (int productId : productIds) {
+                ps.setInt(index++, productId);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    found.add(rs.getInt(1));
+                }
+            }
+        }
+        return found;
+    }
+
+    static void ensureSnapshot(Connection conn, int productId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(ENSURE_SNAPSHOT_SQL)) {
+            ps.setInt(1, productId);
+            ps.setInt(2, DEFAULT_STOCK);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Create the default stock row of every product that has none, in one
+     * statement on the caller's connection.
+     *
+     * @return how many rows were created
+     */
+    static int ensureSnapshots(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(ENSURE_ALL_SNAPSHOTS_SQL)) {
+            ps.setInt(1, DEFAULT_STOCK);
+            return ps.executeUpdate();
+        }
+    }
+
+    // ==================== COMPACTION ====================
+
+    /**
+     * Fold movements into the product_stock snapshots. Movements are kept
+     * for history; only the snapshot's last_movement_id moves forward.
+     *
+     * The high-water mark is simply the newest movement id. Each product is
+     * folded while holding its row lock, under READ COMMITTED, so the sum
+     * includes every movement committed up to then; a writer whose movement
+     * is still uncommitted holds that lock, so compaction waits for it
+     * rather than folding past it. Anything appended after the lock is
+     * released gets a higher id and is left for the next run.
+     *
+     * @return number of snapshots updated
+     */
+    public static int compact() throws SQLException {
+        ensureSchema();
+        long start = System.nanoTime();
+        try (Connection conn = new JdbcDao().getConnection()) {
+            if (conn == null) {
+                throw new SQLException("Could not connect to database");
+            }
+
+            long highWater;
+            try (PreparedStatement ps = conn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM stock_movements");
+                 ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                highWater = rs.getLong(1);
+            }
+            if (highWater == 0) return 0;
+
+            List<Integer> pending = new ArrayList<>();
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT DISTINCT s.product_id FROM product_stock s JOIN stock_movements m " +
+                    "ON m.product_id = s.product_id AND m.id > s.last_movement_id AND m.id <= ? " +
+                    "ORDER BY s.product_id")) {
+                ps.setLong(1, highWater);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        pending.add(rs.getInt(1));
+                    }
+                }
+            }
+            if (pending.isEmpty()) return 0;
+
+            int isolation = conn.getTransactionIsolation();
+            conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            conn.setAutoCommit(false);
+            try {
+                int updated = 0;
+                for (int from = 0; from < pending.size(); from += COMPACT_CHUNK_SIZE) {
+                    List<Integer> chunk = pending.subList(from, Math.min(from + COMPACT_CHUNK_SIZE, pending.size()));
+                    updated += fold(conn, chunk, highWater);
+                    conn.commit();
+                }
+                LOGGER.info("Compacted " + updated + " stock snapshots through movement " + highWater
+                        + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                return updated;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+                conn.setTransactionIsolation(isolation);
+            }
+        }
+    }
+
+    // One compaction transaction: lock the products, then fold what is committed up to highWater
+    private static int fold(Connection conn, List<Integer> productIds, long highWater) throws SQLException {
+        selectForUpdate(conn, productIds);
+        String placeholders = String.join(", ", Collections.nCopies(productIds.size(), "?"));
+        // Products another terminal compacted meanwhile have nothing left at or below highWater
+        String pending = "SELECT s.product_id, SUM(m.quantity) AS delta " +
+                "FROM product_stock s JOIN stock_movements m " +
+                "ON m.product_id = s.product_id AND m.id > s.last_movement_id AND m.id <= ? " +
+                "WHERE s.product_id IN (" + placeholders + ") GROUP BY s.product_id";
+        String fold = "UPDATE product_stock SET stock = stock + ?, last_movement_id = ? WHERE product_id = ?";
+        int updated = 0;
+        try (PreparedStatement select = conn.prepareStatement(pending);
+             PreparedStatement update = conn.prepareStatement(fold)) {
+            select.setLong(1, highWater);
+            int index = 2;
+            for (int productId : productIds) {
+                select.setInt(index++, productId);
+            }
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    update.setInt(1, rs.getInt("delta"));
+                    update.setLong(2, highWater);
+                    update.setInt(3, rs.getInt("product_id"));
+                    update.addBatch();
+                }
+            }
+            for (int count : update.executeBatch()) {
+                if (count > 0) updated++;
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Run compact() every pos.stock.compactIntervalMinutes on a daemon thread.
+     * Only the first call starts the schedule.
+     */
+    public static synchronized void startCompaction() {
+        if (compactor != null) return;
+        compactor = Executors.newSingleThreadScheduledExecutor(PosExecutors.daemonFactory("stock-compactor"));
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Stock compaction failed", e);
+            }
+        }, 1, COMPACT_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    // ==================== MODEL ====================
+
+    public static final class Movement {
+        private final long id;
+        private final int productId;
+        private final MovementType type;
+        private final int quantity;
+        private final String reference;
+        private final Timestamp createdAt;
+
+        Movement(long id, int productId, MovementType type, int quantity, String reference, Timestamp createdAt) {
+            this.id = id;
+            this.productId = productId;
+            this.type = type;
+            this.quantity = quantity;
+            this.reference = reference;
+            this.createdAt = createdAt;
+        }
+
+        public long getId() { return id; }
+        public int getProductId() { return productId; }
+        public MovementType getType() { return type; }
+        /** Signed: negative for units taken out. */
+        public int getQuantity() { return quantity; }
+        public String getReference() { return reference; }
+        public Timestamp getCreatedAt() { return createdAt; }
+    }
+}
@@ -0,0 +1,415 @@
+package com.newfoundsoftware.pos;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+/**
+ * ZReportService - End-of-day close (Z-report) over one business day
+ *
+ * Three grouped queries on date-indexed ranges do all the work: invoices by
+ * terminal / cashier / payment method, sales lines by category (returns
+ * count as negative lines) and the day's returns. Each returns a handful of
+ * rows however busy the day was, and they are folded into the report in one
+ * pass.
+ *
+ * The report is stored once per business day in z_reports, as its printed
+ * lines plus a SHA-256 of them, and never updated; reprints use the stored
+ * lines, so a Z-report reads the same however often it is printed. It
+ * renders to PDF and to the ESC/POS receipt printer.
+ */
+public final class ZReportService {
+
+    private static final Logger LOGGER = Logger.getLogger(ZReportService.class.getName());
+    private static final ZReportService INSTANCE = new ZReportService();
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private static final String INVOICE_ROLLUP_SQL =
+            "SELECT COALESCE(terminal_id, '-') AS terminal_id, COALESCE(cashier, '-') AS cashier, payment_method, " +
+            "COUNT(*) AS transactions, SUM(sub_total) AS sub_total, SUM(vat) AS vat, SUM(grand_total) AS grand_total " +
+            "FROM invoices WHERE issued_at >= ? AND issued_at < ? " +
+            "GROUP BY terminal_id, cashier, payment_method";
+    private static final String CATEGORY_ROLLUP_SQL =
+            "SELECT COALESCE(category, 'OTHER') AS category, SUM(quantity) AS quantity, SUM(total) AS total " +
+            "FROM sales WHERE sale_date = ? GROUP BY category ORDER BY category";
+    private static final String RETURNS_ROLLUP_SQL =
+            "SELECT COUNT(*) AS returns, COALESCE(SUM(refund_total), 0) AS refunded " +
+            "FROM returns WHERE returned_at >= ? AND returned_at < ?";
+
+    private static final Font TITLE_FONT = new Font(Font.COURIER, 11, Font.BOLD);
+    private static final Font TEXT_FONT = new Font(Font.COURIER, 8);
+    private static final Font SECTION_FONT = new Font(Font.COURIER, 8, Font.BOLD);
+
+    private volatile boolean schemaReady;
+
+    private ZReportService() {
+    }
+
+    public static ZReportService getInstance() {
+        return INSTANCE;
+    }
+
+    // ==================== SCHEMA ====================
+
+    public void ensureSchema() throws SQLException {
+        if (schemaReady) return;
+        synchronized (this) {
+            if (schemaReady) return;
+            ReportService.getInstance().ensureSchema();
+            ReturnService.getInstance().ensureSchema();
+            try (Connection conn = connect();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS z_reports (" +
+                        "business_date DATE PRIMARY KEY, " +
+                        "closed_at DATETIME NOT NULL, " +
+                        "closed_by VARCHAR(64), " +
+                        "transactions INT NOT NULL, " +
+                        "grand_total DOUBLE NOT NULL, " +
+                        "refunded DOUBLE NOT NULL, " +
+                        "body TEXT NOT NULL, " +
+                        "body_sha256 CHAR(64) NOT NULL)");
+            }
+            schemaReady = true;
+        }
+    }
+
+    // ==================== CLOSE ====================
+
+    /**
+     * Compute and store the Z-report for a business day.
+     *
+     * @throws IllegalStateException if the day is already closed
+     */
+    public ZReport close(LocalDate day, String closedBy) throws SQLException {
+        ensureSchema();
+        long start = System.nanoTime();
+        Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+
+        Map<String, double[]> byTerminal = new TreeMap<>();
+        Map<String, double[]> byCashier = new TreeMap<>();
+        Map<String, double[]> byPayment = new TreeMap<>();
+        Map<String, double[]> byCategory = new TreeMap<>();
+        int transactions = 0;
+        double subTotal = 0;
+        double vat = 0;
+        double grandTotal = 0;
+        int returns;
+        double refunded;
+
+        try (Connection conn = connect()) {
+            try (PreparedStatement ps = conn.prepareStatement(INVOICE_ROLLUP_SQL)) {
+                ps.setTimestamp(1, from);
+                ps.setTimestamp(2, to);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        int count = rs.getInt("transactions");
+                        double amount = rs.getDouble("grand_total");
+                        add(byTerminal, rs.getString("terminal_id"), count, amount);
+                        add(byCashier, rs.getString("cashier"), count, amount);
+                        add(byPayment, rs.getString("payment_method"), count, amount);
+                        transactions += count;
+                        subTotal += rs.getDouble("sub_total");
+                        vat += rs.getDouble("vat");
+                        grandTotal += amount;
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(CATEGORY_ROLLUP_SQL)) {
+                ps.setString(1, day.toString());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        add(byCategory, rs.getString("category"), rs.getInt("quantity"), rs.getDouble("total"));
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(RETURNS_ROLLUP_SQL)) {
+                ps.setTimestamp(1, from);
+                ps.setTimestamp(2, to);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    returns = rs.getInt("returns");
+                    refunded = rs.getDouble("refunded");
+                }
+            }
+        }
+
+        LocalDateTime closedAt = LocalDateTime.now();
+        List<String[]> lines = new ArrayList<>();
+        lines.add(new String[] {"Business day", day.toString()});
+        lines.add(new String[] {"Closed", closedAt.format(TIME_FORMAT)});
+        lines.add(new String[] {"Closed by", closedBy != null ? closedBy : "-"});
+        section(lines, "TOTALS");
+        lines.add(new String[] {"Transactions", String.valueOf(transactions)});
+        lines.add(new String[] {"Net sales", ReceiptRenderer.money(subTotal)});
+        lines.add(new String[] {"VAT", ReceiptRenderer.money(vat)});
+        lines.add(new String[] {"Gross sales", ReceiptRenderer.money(grandTotal)});
+        lines.add(new String[] {"Returns (" + returns + ")", "-" + ReceiptRenderer.money(refunded)});
+        lines.add(new String[] {"Net takings", ReceiptRenderer.money(grandTotal - refunded)});
+        breakdown(lines, "BY PAYMENT", byPayment, false);
+        breakdown(lines, "BY TERMINAL", byTerminal, false);
+        breakdown(lines, "BY CASHIER", byCashier, false);
+        breakdown(lines, "BY CATEGORY (net of returns)", byCategory, true);
+
+        ZReport report = new ZReport(day, closedAt, closedBy, transactions, grandTotal, refunded, lines);
+        try (Connection conn = connect();
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT INTO z_reports (business_date, closed_at, closed_by, transactions, grand_total, refunded, " +
+                     "body, body_sha256) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            String body = report.body();
+            ps.setString(1, day.toString());
+            ps.setTimestamp(2, Timestamp.valueOf(closedAt));
+            ps.setString(3, closedBy);
+            ps.setInt(4, transactions);
+            ps.setDouble(5, grandTotal);
+            ps.setDouble(6, refunded);
+            ps.setString(7, body);
+            ps.setString(8, sha256(body));
+            ps.executeUpdate();
+        } catch (SQLIntegrityConstraintViolationException e) {
+            throw new IllegalStateException(day + " is already closed", e);
+        }
+        LOGGER.info("Closed " + day + ": " + transactions + " transactions, gross "
+                + ReceiptRenderer.money(grandTotal) + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return report;
+    }
+
+    /**
+     * The stored Z-report for a day, or null if the day is not closed.
+     *
+     * @throws SQLException if the stored lines do not match their checksum
+     */
+    public ZReport find(LocalDate day) throws SQLException {
+        ensureSchema();
+        try (Connection conn = connect();
+             PreparedStatement ps = conn.prepareStatement("SELECT * FROM z_reports WHERE business_date = ?")) {
+            ps.setString(1, day.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                String body = rs.getString("body");
+                if (!sha256(body).equals(rs.getString("body_sha256"))) {
+                    throw new SQLException("Z-report for " + day + " has been altered");
+                }
+                return new ZReport(day, rs.getTimestamp("closed_at").toLocalDateTime(), rs.getString("closed_by"),
+                        rs.getInt("transactions"), rs.getDouble("grand_total"), rs.getDouble("refunded"),
+                        ZReport.parseBody(body));
+            }
+        }
+    }
+
+    private static void add(Map<String, double[]> totals, String key, double count, double amount) {
+        double[] entry = totals.computeIfAbsent(key, k -> new double[2]);
+        entry[0] += count;
+        entry[1] += amount;
+    }
+
+    private static void section(List<String[]> lines, String title) {
+        lines.add(new String[] {"", ""});
+        lines.add(new String[] {title, ""});
+    }
+
+    private static void breakdown(List<String[]> lines, String title, Map<String, double[]> totals, boolean units) {
+        section(lines, title);
+        if (totals.isEmpty()) {
+            lines.add(new String[] {"  (none)", ""});
+        }
+        for (Map.Entry<String, double[]> entry : totals.entrySet()) {
+            long count = Math.round(entry.getValue()[0]);
+            String key = entry.getKey().replace('\t', ' ').replace('\n', ' ');
+            lines.add(new String[] {"  " + key + " (" + count + (units ? " units)" : ")"),
+                    ReceiptRenderer.money(entry.getValue()[1])});
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+
+    private static Connection connect() throws SQLException {
+        Connection conn = new JdbcDao().getConnection();
+        if (conn == null) {
+            throw new SQLException("Could not connect to database");
+        }
+        return conn;
+    }
+
+    // ==================== RENDERING ====================
+
+    public void writePdf(ZReport report, Path target) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+            Document document = new Document(new Rectangle(250, 140 + report.getLines().size() * 12), 10, 10, 10, 10);
+            try {
+                PdfWriter.getInstance(document, out);
+                document.open();
+                Paragraph title = new Paragraph("Z-REPORT", TITLE_FONT);
+                title.setAlignment(Element.ALIGN_CENTER);
+                document.add(title);
+                document.add(new Paragraph(" "));
+
+                PdfPTable table = new PdfPTable(new float[] {70, 40});
+                table.setWidthPercentage(100);
+                for (String[] line : report.getLines()) {
+                    boolean heading = !line[0].isEmpty() && line[1].isEmpty() && !line[0].startsWith(" ");
+                    table.addCell(cell(line[0], heading ? SECTION_FONT : TEXT_FONT, Element.ALIGN_LEFT));
+                    table.addCell(cell(line[1], TEXT_FONT, Element.ALIGN_RIGHT));
+                }
+                document.add(table);
+            } catch (DocumentException e) {
+                throw new IOException("Could not render Z-report", e);
+            } finally {
+                document.close();
+            }
+        }
+    }
+
+    public void print(ZReport report) throws IOException {
+        EscPosPrinter.getInstance().printReport("Z-REPORT", report.getLines());
+    }
+
+    /**
+     * print() on the receipt printer's thread; the future fails if printing does.
+     */
+    public CompletableFuture<Void> printAsync(ZReport report) {
+        return EscPosPrinter.getInstance().printReportAsync("Z-REPORT", report.getLines());
+    }
+
+    private static PdfPCell cell(String text, Font font, int alignment) {
+        PdfPCell cell = new PdfPCell(new Phrase(text.isEmpty() ? " " : text, font));
+        cell.setBorder(Rectangle.NO_BORDER);
+        cell.setHorizontalAlignment(alignment);
+        return cell;
+    }
+
+    // ==================== MODEL ====================
+
+    public static final class ZReport {
+        private final LocalDate businessDate;
+        private final LocalDateTime closedAt;
+        private final String closedBy;
+        private final int transactions;
+        private final double grandTotal;
+        private final double refunded;
+        private final List<String[]> lines;
+
+        ZReport(LocalDate businessDate, LocalDateTime closedAt, String closedBy, int transactions,
+                double grandTotal, double refunded, List<String[]> lines) {
+            this.businessDate = businessDate;
+            this.closedAt = closedAt;
+            this.closedBy = closedBy;
+            this.transactions = transactions;
+            this.grandTotal = grandTotal;
+            this.refunded = refunded;
+            this.lines = Collections.unmodifiableList(lines);
+        }
+
+        public LocalDate getBusinessDate() { return businessDate; }
+        public LocalDateTime getClosedAt() { return closedAt; }
+        public String getClosedBy() { return closedBy; }
+        public int getTransactions() { return transactions; }
+        public double getGrandTotal() { return grandTotal; }
+        public double getRefunded() { return refunded; }
+        /** The printed report as {label, amount} rows. */
+        public List<String[]> getLines() { return lines; }
+
+        // label TAB amount, one row per line
+        String body() {
+            StringBuilder body = new StringBuilder();
+            for (String[] line : lines) {
+                body.append(line[0]).append('\t').append(line[1]).append('\n');
+            }
+            return body.toString();
+        }
+
+        static List<String[]> parseBody(String body) {
+            List<String[]> lines = new ArrayList<>();
+            for (String row : body.split("\n")) {
+                int tab = row.indexOf('\t');
+                lines.add(tab < 0 ? new String[] {row, ""} : new String[] {row.substring(0, tab), row.substring(tab + 1)});
+            }
+            return lines;
+        }
+    }
+
+    // ==================== MAIN ====================
+
+    /**
+     * Close a day from the command line or a scheduler; a day already closed is reprinted.
+     * Usage: ZReportService [yyyy-MM-dd] [--pdf=out.pdf] [--print]
+     */
+    public static void main(String[] args) throws Exception {
+        LocalDate day = LocalDate.now();
+        Path pdf = null;
+        boolean print = false;
+        for (String arg : args) {
+            if (arg.startsWith("--pdf=")) {
+                pdf = Paths.get(arg.substring("--pdf=".length()));
+            } else if (arg.equals("--print")) {
+                print = true;
+            } else {
+                day = LocalDate.parse(arg);
+            }
+        }
+
+        ZReportService service = getInstance();
+        ZReport report = service.find(day);
+        if (report == null) {
+            report = service.close(day, System.getProperty("user.name"));
+        } else {
+            System.out.println(day + " was already closed at " + report.getClosedAt().format(TIME_FORMAT));
+        }
+        for (String[] line : report.getLines()) {
+            System.out.printf("%-34s %12s%n", line[0], line[1]);
+        }
+        if (pdf != null) {
+            service.writePdf(report, pdf);
+            System.out.println("PDF written to " + pdf);
+        }
+        if (print) {
+            service.print(report);
+        }
+    }
+}